@@ -0,0 +1,201 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Arc flags for the edges of a graph whose nodes have been split into
+ * regions (see GraphPartitioner). Each edge has one flag per region, which
+ * is set when the edge lies on some shortest path to a node in that region.
+ * A search for a path to a node in region r can then skip every edge whose
+ * flag for r is unset, so that long searches stay close to the corridor of
+ * edges that lead toward their end instead of spreading out in every
+ * direction.
+ *
+ * Every edge between two nodes of a region is flagged for that region. A
+ * shortest path from outside of a region enters it through one of its
+ * boundary nodes (those with an edge entering from another region), so the
+ * remaining flags come from a backward search from each boundary node,
+ * which flags each edge that some shortest path to that node takes. These
+ * searches are independent, and run in parallel.
+ *
+ * Flags use the weight of each edge, so they only apply to searches without
+ * a departure time or an overlay. Since there is one long of flags per edge,
+ * there can be at most 64 regions.
+ */
+public class ArcFlags {
+
+    public static final int MAX_REGIONS = 64;
+
+    // relative slack when checking whether an edge is on a shortest path,
+    // since costs summed in a different order may differ in the last bits;
+    // flagging an extra edge only costs a little pruning
+    private static final double TOLERANCE = 1e-12;
+
+    private final int regionCount;
+    private final int[] regions; // region of each node id
+    private final int[] first; // flags of the edges leaving node i start at first[i]
+    private final long[] flags;
+    private final int boundaryCount;
+
+    /**
+     * Computes the flags of every edge.
+     * @param successors the successors of the edges leaving each node id, in
+     *        the order that searches will relax them
+     * @param weights the weight of each of those edges
+     * @param regions the region of each node id, from 0 to regionCount - 1
+     * @param regionCount the number of regions, at most MAX_REGIONS
+     * @param threads the number of boundary nodes to search from at once
+     * @throws IllegalArgumentException if there are too many regions, or a
+     *         node's region is out of range
+     */
+    public ArcFlags(int[][] successors, double[][] weights, int[] regions, int regionCount, int threads) {
+        if (regionCount < 1 || regionCount > MAX_REGIONS)
+            throw new IllegalArgumentException("Arc flags need 1 to " + MAX_REGIONS + " regions, not " + regionCount);
+        int count = successors.length;
+        for (int region : regions)
+            if (region < 0 || region >= regionCount)
+                throw new IllegalArgumentException("Region " + region + " is not one of " + regionCount + " regions.");
+        this.regionCount = regionCount;
+        this.regions = regions;
+        first = new int[count + 1];
+        for (int i = 0; i < count; i++)
+            first[i + 1] = first[i] + successors[i].length;
+
+        //Index the edges entering each node, for the backward searches.
+        int[] inDegree = new int[count];
+        for (int[] succs : successors)
+            for (int succ : succs) inDegree[succ]++;
+        int[][] predecessors = new int[count][];
+        double[][] reverseWeights = new double[count][];
+        for (int i = 0; i < count; i++) {
+            predecessors[i] = new int[inDegree[i]];
+            reverseWeights[i] = new double[inDegree[i]];
+            inDegree[i] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < successors[i].length; j++) {
+                int succ = successors[i][j];
+                predecessors[succ][inDegree[succ]] = i;
+                reverseWeights[succ][inDegree[succ]++] = weights[i][j];
+            }
+        }
+
+        //Edges within a region are flagged for it, and the successors of
+        //edges that cross into a region are its boundary nodes.
+        flags = new long[first[count]];
+        List<Integer> boundary = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            boolean entered = false;
+            for (int j = 0; j < predecessors[i].length; j++)
+                entered |= regions[predecessors[i][j]] != regions[i];
+            if (entered) boundary.add(i);
+            for (int j = 0; j < successors[i].length; j++)
+                if (regions[successors[i][j]] == regions[i]) flags[first[i] + j] |= 1L << regions[i];
+        }
+        boundaryCount = boundary.size();
+
+        //Each worker takes boundary nodes until none are left, setting flags
+        //in its own array, and the arrays are combined once all are done.
+        AtomicInteger next = new AtomicInteger();
+        List<Callable<long[]>> workers = new ArrayList<>();
+        for (int t = 0; t < Math.max(1, threads); t++) {
+            workers.add(() -> {
+                long[] found = new long[flags.length];
+                SearchWorkspace workspace = new SearchWorkspace();
+                int[] settled = new int[count];
+                for (int b = next.getAndIncrement(); b < boundary.size(); b = next.getAndIncrement())
+                    flagPathsTo(boundary.get(b), successors, weights, predecessors, reverseWeights,
+                                found, workspace, settled);
+                return found;
+            });
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            for (Future<long[]> worker : pool.invokeAll(workers)) {
+                long[] found = worker.get();
+                for (int e = 0; e < flags.length; e++)
+                    flags[e] |= found[e];
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Search failed while computing arc flags.", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // searches backward from a boundary node, then flags every edge that
+    // some shortest path to it takes for the node's region
+    private void flagPathsTo(int target, int[][] successors, double[][] weights, int[][] predecessors,
+                             double[][] reverseWeights, long[] found, SearchWorkspace workspace, int[] settled) {
+        int settledCount = 0;
+        workspace.reset(successors.length);
+        workspace.improve(target, 0, -1);
+        while (!workspace.isEmpty()) {
+            int current = workspace.pop();
+            if (workspace.isSettled(current)) continue;
+            workspace.settle(current);
+            settled[settledCount++] = current;
+            double cost = workspace.getCost(current);
+            for (int j = 0; j < predecessors[current].length; j++)
+                if (!workspace.isSettled(predecessors[current][j]))
+                    workspace.improve(predecessors[current][j], cost + reverseWeights[current][j], current);
+        }
+        long flag = 1L << regions[target];
+        for (int i = 0; i < settledCount; i++) {
+            int pred = settled[i];
+            double cost = workspace.getCost(pred);
+            for (int j = 0; j < successors[pred].length; j++) {
+                double through = weights[pred][j] + workspace.getCost(successors[pred][j]);
+                if (through <= cost + TOLERANCE * Math.max(1, cost)) found[first[pred] + j] |= flag;
+            }
+        }
+    }
+
+    /**
+     * Returns the region of a node.
+     * @param id the node's id, which must be below the number of nodes that
+     *        the flags were computed for
+     */
+    public int getRegion(int id) {
+        return regions[id];
+    }
+
+    /**
+     * Checks whether a node was in the graph when the flags were computed.
+     */
+    public boolean covers(int id) {
+        return id < regions.length;
+    }
+
+    /**
+     * Checks whether an edge lies on some shortest path into a region.
+     * @param id the id of the edge's predecessor
+     * @param position the position of the edge among those leaving it
+     * @param region the region of the end of the path being searched for
+     */
+    public boolean isFlagged(int id, int position, int region) {
+        return (flags[first[id] + position] & (1L << region)) != 0;
+    }
+
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    /**
+     * Returns the number of boundary nodes, which a search was run from.
+     */
+    public int getBoundaryCount() {
+        return boundaryCount;
+    }
+
+    /**
+     * Returns the number of bytes that the flags and regions take up.
+     */
+    public long getBytes() {
+        return 8L * flags.length + 4L * (first.length + regions.length);
+    }
+}
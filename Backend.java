@@ -1,6 +1,8 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 /**
  * This class makes use of a GraphADT to perform shortest path computations.
@@ -8,6 +10,21 @@ import java.util.*;
 public class Backend implements BackendInterface {
 
     private GraphADT<String, Double> graph = null;
+
+    //Built from the graph each time loadGraphData finishes, after which
+    //updates change the indexes by the locations that they add and remove.
+    private List<String> locations = null;
+    private LocationIndex locationIndex = null;
+    private LocationResolver locationResolver = null;
+    //Loaded along with snapshots that have them, to answer costs without searching.
+    private HubLabels hubLabels = null;
+
+    //Queries hold the read lock, so that any number of them run at once,
+    //while loads and updates hold the write lock to change the graph and
+    //the fields above. Updates also take turns on the updates monitor, so
+    //that each one compares a file to the graph without holding either lock.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object updates = new Object();
     
    /*
    * Constructor for Backend
@@ -26,7 +43,37 @@ public class Backend implements BackendInterface {
    */
    @Override
    public void loadGraphData(String filename) throws IOException {
+    GraphEvents.Load event = new GraphEvents.Load();
+    event.begin();
+    synchronized (updates) {
+        lock.writeLock().lock();
+        try {
+            readGraphData(filename);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = filename;
+                event.bytes = new File(filename).length();
+                event.nodes = graph.getNodeCount();
+                event.edges = graph.getEdgeCount();
+                event.commit();
+            }
+            lock.writeLock().unlock();
+        }
+    }
+   }
+
+   /**
+    * Helper method that replaces the graph's contents with those of a dot
+    * file or snapshot, then rebuilds the indexes over them.
+    */
+   private void readGraphData(String filename) throws IOException {
     
+    locations = null;
+    locationIndex = null;
+    locationResolver = null;
+    hubLabels = null;
+
     //Delete all contents of previous graph if there were any.
     List<String> allNodes = new ArrayList<>(graph.getAllNodes());
     if (!allNodes.isEmpty()) {
@@ -35,33 +82,245 @@ public class Backend implements BackendInterface {
         }
     }
 
-    //Add data from dot file into the graph.
+    //Snapshots written by GraphSnapshot load without any parsing.
+    if (GraphSnapshot.isSnapshot(filename)) {
+        hubLabels = GraphSnapshot.read(filename, graph);
+        buildIndexes();
+        return;
+    }
+
+    readDotFile(filename, graph);
+    buildIndexes();
+   }
+
+   /**
+    * Helper method that adds the nodes and edges of a dot file to a graph.
+    */
+   private void readDotFile(String filename, GraphADT<String,Double> target) throws IOException {
     try (Scanner scanner = new Scanner(new File(filename))) {
         while (scanner.hasNextLine()) {
             String line = scanner.nextLine();
             //Call helper method to parse line and add data to graph.
-            parseLine(line);
+            parseLine(line, target);
         }
     } catch (IOException e) {
         throw new IOException("There was a problem with loading the file: " + filename);
     }
    }
 
+   /**
+    * Updates the loaded graph to match a new dot file or snapshot, or applies
+    * a patch file to it, changing only the nodes and edges that differ. A
+    * patch lists one change per line, and may have comments starting with #:
+    *     add "A" -> "B" [seconds=120];      adds a path, and its locations
+    *                                        if they are new
+    *     reweight "A" -> "B" [seconds=90];  changes a path's time or profile
+    *     remove "A" -> "B";                 removes a path
+    *     add "A";                           adds a location
+    *     remove "A";                        removes a location and its paths
+    * Each location and path may only be changed once, and every change is
+    * checked against the graph before any is made. A patch is applied in
+    * time proportional to its length, while a new map is first read in full
+    * and compared to the graph. The location indexes are only changed by the
+    * locations that are added or removed, and hub labels are dropped once
+    * any path's time changes, unless the new snapshot has labels of its own.
+    * Queries keep running while the file is read and compared, and only
+    * wait while the changes are made.
+    * @param filename the path to a dot file, snapshot, or patch file
+    * @return the changes that were made
+    * @throws IOException if there was any problem reading from this file
+    * @throws IllegalArgumentException if a line of a patch is malformed or
+    *         does not fit the graph
+    */
+   @Override
+   public GraphDelta updateGraphData(String filename) throws IOException {
+    synchronized (updates) {
+        //Only updates change the graph, so reading it here races with nothing.
+        GraphDelta delta;
+        HubLabels labels = null;
+        if (isPatch(filename)) {
+            delta = readPatch(filename);
+        } else {
+            GraphADT<String,Double> updated = new DijkstraGraph<>();
+            if (GraphSnapshot.isSnapshot(filename)) {
+                labels = GraphSnapshot.read(filename, updated);
+            } else {
+                readDotFile(filename, updated);
+            }
+            delta = GraphDelta.between(graph, updated);
+        }
+        delta.validate(graph);
+
+        //The indexes are changed before the lock is taken, since they are
+        //immutable, so queries only wait while the graph changes.
+        LocationIndex index = locationIndex;
+        LocationResolver resolver = locationResolver;
+        if (delta.changesNodes() && index != null) {
+            index = index.withChanges(delta.getAddedNodes(), delta.getRemovedNodes());
+            resolver = resolver.withChanges(delta.getAddedNodes(), delta.getRemovedNodes());
+        }
+        lock.writeLock().lock();
+        try {
+            delta.apply(graph);
+            if (delta.changesNodes()) {
+                locations = null;
+            }
+            locationIndex = index;
+            locationResolver = resolver;
+            if (labels != null) {
+                hubLabels = labels;
+            } else if (delta.changesWeights()) {
+                hubLabels = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return delta;
+    }
+   }
+
+   /**
+    * Helper method that answers a query while holding the read lock, so
+    * that no update changes the graph or its indexes part way through it.
+    */
+   private <T> T read(Supplier<T> query) {
+    lock.readLock().lock();
+    try {
+        return query.get();
+    } finally {
+        lock.readLock().unlock();
+    }
+   }
+
+   /**
+    * Helper method that checks whether a file is a patch, rather than a map:
+    * whether its first line that is not blank is a comment or a change.
+    */
+   private static boolean isPatch(String filename) throws IOException {
+    if (GraphSnapshot.isSnapshot(filename)) {
+        return false;
+    }
+    try (Scanner scanner = new Scanner(new File(filename))) {
+        while (scanner.hasNextLine()) {
+            String line = scanner.nextLine().trim();
+            if (!line.isEmpty()) {
+                return line.startsWith("#") || line.startsWith("add ") || line.startsWith("remove ") ||
+                    line.startsWith("reweight ");
+            }
+        }
+    }
+    return false;
+   }
+
+   /**
+    * Helper method that reads the changes in a patch file, checking each one
+    * against the graph and the changes before it.
+    */
+   private GraphDelta readPatch(String filename) throws IOException {
+    GraphDelta delta = new GraphDelta();
+    Set<String> added = new HashSet<>();
+    Set<String> removed = new HashSet<>();
+    Set<List<String>> changedEdges = new HashSet<>();
+    try (Scanner scanner = new Scanner(new File(filename))) {
+        for (int number = 1; scanner.hasNextLine(); number++) {
+            String line = scanner.nextLine().trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String where = filename + ":" + number + ": ";
+            String operation = line.split("\\s", 2)[0];
+            String predecessor = getPredecessor(line);
+            String successor = getSuccessor(line);
+            if (predecessor.equals("")) {
+                throw new IllegalArgumentException(where + "Expected a quoted location: " + line);
+            }
+            if (!line.contains("->")) {
+                //A change to a location.
+                if (added.contains(predecessor) || removed.contains(predecessor)) {
+                    throw new IllegalArgumentException(where + "Location is changed twice: " + predecessor);
+                }
+                boolean exists = graph.containsNode(predecessor);
+                if (operation.equals("add") && !exists) {
+                    delta.addNode(predecessor);
+                    added.add(predecessor);
+                } else if (operation.equals("remove") && exists) {
+                    delta.removeNode(predecessor);
+                    removed.add(predecessor);
+                } else {
+                    throw new IllegalArgumentException(where + "Cannot " + operation + " location " +
+                        (exists ? "that is already in the map: " : "that is not in the map: ") + predecessor);
+                }
+                continue;
+            }
+
+            //A change to a path, whose locations must not be removed.
+            if (successor.equals("")) {
+                throw new IllegalArgumentException(where + "Expected a second quoted location: " + line);
+            }
+            if (removed.contains(predecessor) || removed.contains(successor)) {
+                throw new IllegalArgumentException(where + "Path to or from a removed location: " + line);
+            }
+            if (!changedEdges.add(List.of(predecessor, successor))) {
+                throw new IllegalArgumentException(where + "Path is changed twice: " + line);
+            }
+            boolean exists = graph.containsNode(predecessor) && graph.containsNode(successor) &&
+                graph.containsEdge(predecessor, successor);
+            Double weight = operation.equals("remove") ? null : getEdgeWeight(line);
+            if (!operation.equals("remove") && weight == null) {
+                throw new IllegalArgumentException(where + "Expected seconds or a profile: " + line);
+            }
+            if (operation.equals("add") && !exists) {
+                for (String location : List.of(predecessor, successor)) {
+                    if (!graph.containsNode(location) && added.add(location)) {
+                        delta.addNode(location);
+                    }
+                }
+                delta.addEdge(predecessor, successor, weight, getTravelTime(line));
+            } else if (operation.equals("reweight") && exists) {
+                delta.reweightEdge(predecessor, successor, graph.getEdge(predecessor, successor), weight,
+                                   getTravelTime(line));
+            } else if (operation.equals("remove") && exists) {
+                delta.removeEdge(predecessor, successor, graph.getEdge(predecessor, successor));
+            } else if (operation.equals("add") || operation.equals("reweight") || operation.equals("remove")) {
+                throw new IllegalArgumentException(where + "Cannot " + operation + " path " +
+                    (exists ? "that is already in the map: " : "that is not in the map: ") + line);
+            } else {
+                throw new IllegalArgumentException(where + "Expected add, reweight or remove: " + line);
+            }
+        }
+    }
+    return delta;
+   }
+
+   /**
+    * Helper method that saves the list of locations and builds the prefix
+    * and typo indexes over their names, so that none are rebuilt on each
+    * request.
+    */
+    private void buildIndexes() {
+        locations = Collections.unmodifiableList(new ArrayList<>(graph.getAllNodes()));
+        locationIndex = new LocationIndex(locations);
+        locationResolver = new LocationResolver(locations);
+    }
+
    /**
     * Helper method that calls other helper methods to parse data for each 
-    * line in the dot file and add its data to the graph.
+    * line in the dot file and add its data to a graph.
     */
-    private void parseLine(String line) {
+    private void parseLine(String line, GraphADT<String,Double> target) {
 
         //Smaller helper methods to extract predecessor, successor, and edgeweight.
         String predecessor = getPredecessor(line);
         String successor = getSuccessor(line);
         Double edgeWeight = getEdgeWeight(line);
 
+        TravelTimeFunction travelTime = getTravelTime(line);
+
         //Insert data into graph
-        if (!predecessor.equals("")) { graph.insertNode(predecessor); }
-        if (!successor.equals("")) { graph.insertNode(successor); }
-        if (edgeWeight != null) { graph.insertEdge(predecessor, successor, edgeWeight); }
+        if (!predecessor.equals("")) { target.insertNode(predecessor); }
+        if (!successor.equals("")) { target.insertNode(successor); }
+        if (edgeWeight != null) { target.insertEdge(predecessor, successor, edgeWeight); }
+        if (travelTime != null) { target.setTravelTime(predecessor, successor, travelTime); }
         
     }
     /**
@@ -99,19 +358,71 @@ public class Backend implements BackendInterface {
         return result;
     }
     /**
-     * Helper method that finds edge weight within a given line.
+     * Helper method that finds edge weight within a given line. An edge with
+     * only a time of day dependent travel time weighs its shortest time.
      */
     private Double getEdgeWeight(String line) {
-        Double result = null;
+        String seconds = getAttribute(line, "seconds");
+        if (seconds != null) {
+            return Double.parseDouble(seconds);
+        }
+        TravelTimeFunction travelTime = getTravelTime(line);
+        return travelTime == null ? null : travelTime.getMinimum();
+    }
 
-        //Edge weight should start at "=" and ends at a closing bracket.
-        int start = line.indexOf("=");
-        int end = line.indexOf(']', start);
+    /**
+     * Helper method that finds the time of day dependent travel time within
+     * a given line, written as profile="H:MM=seconds H:MM=seconds ...".
+     */
+    private TravelTimeFunction getTravelTime(String line) {
+        String profile = getAttribute(line, "profile");
+        return profile == null ? null : TravelTimeFunction.parse(profile);
+    }
 
-        if (start != -1 && end != -1) {
-            result = Double.parseDouble(line.substring(start+1, end));
+    /**
+     * Helper method that finds the value of a named attribute within the
+     * brackets at the end of a line, or null when there is no such attribute.
+     */
+    private String getAttribute(String line, String name) {
+        int open = line.lastIndexOf('[');
+        int close = line.lastIndexOf(']');
+        if (open == -1 || close < open) {
+            return null;
         }
-        return result;
+
+        //Attributes are name=value, separated by commas or spaces, where
+        //values may be quoted.
+        int i = open + 1;
+        while (i < close) {
+            while (i < close && (line.charAt(i) == ',' || Character.isWhitespace(line.charAt(i)))) {
+                i++;
+            }
+            int equals = line.indexOf('=', i);
+            if (i == close || equals == -1 || equals > close) {
+                return null;
+            }
+            String key = line.substring(i, equals).trim();
+            int start = equals + 1;
+            int end;
+            if (start < close && line.charAt(start) == '"') {
+                start++;
+                end = line.indexOf('"', start);
+                if (end == -1) {
+                    return null;
+                }
+                i = end + 1;
+            } else {
+                end = start;
+                while (end < close && line.charAt(end) != ',' && !Character.isWhitespace(line.charAt(end))) {
+                    end++;
+                }
+                i = end;
+            }
+            if (key.equals(name)) {
+                return line.substring(start, end).trim();
+            }
+        }
+        return null;
     }
     
 
@@ -121,7 +432,53 @@ public class Backend implements BackendInterface {
    */
    @Override
    public List<String> getListOfAllLocations() {
-    return graph.getAllNodes();
+    return read(() -> {
+        //The saved list only exists once a graph has been loaded from a file,
+        //and until an update adds or removes locations.
+        if (locations != null) {
+            return locations;
+        }
+        return graph.getAllNodes();
+    });
+   }
+
+   /**
+   * Returns up to limit locations with a word in their name that starts with
+   * the provided prefix (ignoring case), listing those whose names start
+   * with the prefix first.
+   * @param prefix the start of a location name, or of a word within one
+   * @param limit the most locations to return
+   * @return list of matching locations, in order of preference
+   */
+   @Override
+   public List<String> findLocationsStartingWith(String prefix, int limit) {
+    return read(() -> {
+        LocationIndex index = locationIndex;
+        if (index == null) {
+            index = new LocationIndex(graph.getAllNodes());
+        }
+        return index.startingWith(prefix, limit);
+    });
+   }
+
+   /**
+   * Returns the locations that best match what a user typed, allowing for
+   * differences in case and spacing and a few typos.
+   * @param input the typed name of a location
+   * @param limit the most locations to return
+   * @return input alone if it is a location, otherwise up to limit similar
+   *         locations in order of similarity, or an empty list if there are
+   *         none
+   */
+   @Override
+   public List<String> resolveLocation(String input, int limit) {
+    return read(() -> {
+        LocationResolver resolver = locationResolver;
+        if (resolver == null) {
+            resolver = new LocationResolver(graph.getAllNodes());
+        }
+        return resolver.resolve(input, limit);
+    });
    }
 
    /**
@@ -134,7 +491,7 @@ public class Backend implements BackendInterface {
    */
    @Override
    public List<String> findLocationsOnShortestPath(String startLocation, String endLocation) {
-    return graph.shortestPathData(startLocation, endLocation);
+    return read(() -> graph.shortestPathData(startLocation, endLocation));
    }
 
    /**
@@ -149,23 +506,242 @@ public class Backend implements BackendInterface {
    */
    @Override
    public List<Double> findTimesOnShortestPath(String startLocation, String endLocation) {
-    
-    //First, get the path itself in terms of its locations.
-    List<String> shortestPath = graph.shortestPathData(startLocation, endLocation);
-    List<Double> times = new ArrayList<>();
+    return read(() -> {
+        //First, get the path itself in terms of its locations.
+        List<String> shortestPath = graph.shortestPathData(startLocation, endLocation);
+        List<Double> times = new ArrayList<>();
 
-    //End the loop one iteration early to avoid index out of bounds.
-    for (int i = 0; i < shortestPath.size()-1; i++) {
-        String pred = shortestPath.get(i);
-        String suc = shortestPath.get(i+1);
+        //End the loop one iteration early to avoid index out of bounds.
+        for (int i = 0; i < shortestPath.size()-1; i++) {
+            String pred = shortestPath.get(i);
+            String suc = shortestPath.get(i+1);
 
-        //Add the current edge weight to list of edges.
-        times.add(graph.getEdge(pred, suc));
+            //Add the current edge weight to list of edges.
+            times.add(graph.getEdge(pred, suc));
+        }
+
+        return times;
+    });
+   }
+
+   /**
+   * Return the total walking time in seconds of the shortest path from
+   * startLocation to endLocation. When the map was loaded from a snapshot
+   * with hub labels, this compares two labels rather than searching.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @return the walking time of the shortest path in seconds
+   * @throws NoSuchElementException if either location or the path between
+   *         them does not exist
+   */
+   @Override
+   public double findTimeOfShortestPath(String startLocation, String endLocation) {
+    return read(() -> {
+        if (hubLabels == null) {
+            return graph.shortestPathCost(startLocation, endLocation);
+        }
+        double seconds = hubLabels.distance(startLocation, endLocation);
+        if (seconds == Double.POSITIVE_INFINITY) {
+            throw new NoSuchElementException("Path does not exist.");
+        }
+        return seconds;
+    });
+   }
+
+   /**
+   * Return the sequence of locations along the quickest path from
+   * startLocation to endLocation when leaving at the provided time of day.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param departure seconds after midnight that the path leaves
+   * @return a list with the nodes along the quickest path at that time
+   * @throws NoSuchElementException if there is no such path
+   */
+   @Override
+   public List<String> findLocationsOnShortestPath(String startLocation, String endLocation, double departure) {
+    return read(() -> graph.shortestPathData(startLocation, endLocation, departure));
+   }
+
+   /**
+   * Return the sequence of locations along the shortest path from
+   * startLocation to endLocation with the overlay applied to the map.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param overlay the locations and paths to avoid or slow down, or null
+   * @return a list with the nodes along the shortest such path
+   * @throws NoSuchElementException if there is no such path
+   */
+   @Override
+   public List<String> findLocationsOnShortestPath(String startLocation, String endLocation,
+                                                   RouteOverlay<String> overlay) {
+    return read(() -> graph.shortestPathData(startLocation, endLocation, overlay));
+   }
+
+   /**
+   * Return the walking times in seconds between each two nodes on the
+   * shortest path from startLocation to endLocation with the overlay applied.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param overlay the locations and paths to avoid or slow down, or null
+   * @return a list with the walking time of each step of that path
+   * @throws NoSuchElementException if there is no such path
+   */
+   @Override
+   public List<Double> findTimesOnShortestPath(String startLocation, String endLocation,
+                                               RouteOverlay<String> overlay) {
+    return stepTimes(findStepsOnShortestPath(startLocation, endLocation, overlay));
+   }
+
+   /**
+   * Return the sequence of locations along the quickest path from
+   * startLocation to endLocation when leaving at the provided time of day,
+   * with the overlay applied to the map.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param departure seconds after midnight that the path leaves
+   * @param overlay the locations and paths to avoid or slow down, or null
+   * @return a list with the nodes along the quickest such path at that time
+   * @throws NoSuchElementException if there is no such path
+   */
+   @Override
+   public List<String> findLocationsOnShortestPath(String startLocation, String endLocation, double departure,
+                                                   RouteOverlay<String> overlay) {
+    return read(() -> graph.shortestPathData(startLocation, endLocation, departure, overlay));
+   }
+
+   /**
+   * Return the walking times in seconds between each two nodes on the
+   * quickest path from startLocation to endLocation when leaving at the
+   * provided time of day.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param departure seconds after midnight that the path leaves
+   * @return a list with the walking time of each step of the quickest path,
+   *         at the time that the path reaches that step
+   * @throws NoSuchElementException if there is no such path
+   */
+   @Override
+   public List<Double> findTimesOnShortestPath(String startLocation, String endLocation, double departure) {
+    return findTimesOnShortestPath(startLocation, endLocation, departure, null);
+   }
+
+   /**
+   * Return the walking times in seconds between each two nodes on the
+   * quickest path from startLocation to endLocation when leaving at the
+   * provided time of day, with the overlay applied to each of them.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param departure seconds after midnight that the path leaves
+   * @param overlay the locations and paths to avoid or slow down, or null
+   * @return a list with the walking time of each step of the quickest path,
+   *         at the time that the path reaches that step
+   * @throws NoSuchElementException if there is no such path
+   */
+   @Override
+   public List<Double> findTimesOnShortestPath(String startLocation, String endLocation, double departure,
+                                               RouteOverlay<String> overlay) {
+    return stepTimes(findStepsOnShortestPath(startLocation, endLocation, departure, overlay));
+   }
+
+   /**
+   * Return each location along the shortest path from startLocation to
+   * endLocation with the overlay applied, mapped to the walking time of the
+   * step that reaches it.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param overlay the locations and paths to avoid or slow down, or null
+   * @return the locations along that path, in order, each mapped to the
+   *         seconds of the step that reaches it (0 for startLocation)
+   * @throws NoSuchElementException if there is no such path
+   */
+   @Override
+   public Map<String, Double> findStepsOnShortestPath(String startLocation, String endLocation,
+                                                      RouteOverlay<String> overlay) {
+    return read(() -> {
+        List<String> shortestPath = graph.shortestPathData(startLocation, endLocation, overlay);
+        return steps(shortestPath, 0, false, overlay);
+    });
+   }
+
+   /**
+   * Return each location along the quickest path from startLocation to
+   * endLocation when leaving at the provided time of day, with the overlay
+   * applied, mapped to the walking time of the step that reaches it.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param departure seconds after midnight that the path leaves
+   * @param overlay the locations and paths to avoid or slow down, or null
+   * @return the locations along that path, in order, each mapped to the
+   *         seconds of the step that reaches it at the time that the path
+   *         reaches that step (0 for startLocation)
+   * @throws NoSuchElementException if there is no such path
+   */
+   @Override
+   public Map<String, Double> findStepsOnShortestPath(String startLocation, String endLocation, double departure,
+                                                      RouteOverlay<String> overlay) {
+    return read(() -> {
+        List<String> quickestPath = graph.shortestPathData(startLocation, endLocation, departure, overlay);
+        return steps(quickestPath, departure, true, overlay);
+    });
+   }
+
+   //Times each step of a path that a search just found, the way that search did,
+   //so that the steps add up to its cost.
+   private Map<String, Double> steps(List<String> path, double departure, boolean timed,
+                                     RouteOverlay<String> overlay) {
+    Map<String, Double> steps = new LinkedHashMap<>();
+    if (path.isEmpty()) {
+        return steps;
     }
+    steps.put(path.get(0), 0.0);
 
+    //Each step starts when the one before it ends.
+    double time = departure;
+    for (int i = 0; i < path.size()-1; i++) {
+        String pred = path.get(i);
+        String suc = path.get(i+1);
+        TravelTimeFunction travelTime = timed ? graph.getTravelTime(pred, suc) : null;
+        double factor = overlay == null ? 1 : overlay.getFactor(pred, suc);
+        double seconds = travelTime == null ? graph.getEdge(pred, suc) * factor
+                : travelTime.travelTime(time, factor);
+        steps.put(suc, seconds);
+        time += seconds;
+    }
+    return steps;
+   }
+
+   //Leaves out the start of a path's steps, which no step reaches.
+   private static List<Double> stepTimes(Map<String, Double> steps) {
+    List<Double> times = new ArrayList<>(steps.values());
+    if (!times.isEmpty()) times.remove(0);
     return times;
    }
 
+   /**
+   * Return the sequence of locations along the shortest path from 
+   * startLocation to each of the endLocations, all found by a single search
+   * from startLocation.
+   * @param startLocation the start location of every path
+   * @param endLocations the end locations of the paths
+   * @return a list with the shortest path to each end location, in the same
+   *         order as endLocations, where each path is empty if no such path
+   *         exists
+   */
+   @Override
+   public List<List<String>> findLocationsOnShortestPaths(String startLocation, List<String> endLocations) {
+    return read(() -> {
+        //An unknown start location means that none of these paths exist.
+        if (!graph.containsNode(startLocation)) {
+            List<List<String>> paths = new ArrayList<>();
+            for (int i = 0; i < endLocations.size(); i++) {
+                paths.add(new ArrayList<>());
+            }
+            return paths;
+        }
+        return graph.shortestPathDataToEach(startLocation, endLocations);
+    });
+   }
+
    /**
    * Returns the most distant location (the one that takes the longest time to 
    * reach) when comparing all shortest paths that begin from the provided 
@@ -178,31 +754,81 @@ public class Backend implements BackendInterface {
    */
    @Override
    public String getFurthestDestinationFrom(String startLocation) throws NoSuchElementException {
-    Double longestTime = -1.0;
-    String furthestDestination = "";
-    
-    //Check if given location exists.
-    if (!graph.containsNode(startLocation)) {
-        throw new NoSuchElementException("Location does not exist.");
-    } 
+    return read(() -> {
+        //Check if given location exists.
+        if (!graph.containsNode(startLocation)) {
+            throw new NoSuchElementException("Location does not exist.");
+        } 
 
-    //Iterate through each location.
-    for (String currLocation : graph.getAllNodes()) {
+        //Hub labels give the time to every location in one pass over them.
+        if (hubLabels != null) {
+            String furthest = hubLabels.furthestFrom(startLocation);
+            return furthest == null ? "" : furthest;
+        }
 
-        if (!currLocation.equals(startLocation)) {
+        //One unbounded search reaches every location in order of time, so the
+        //last location that it reaches is the furthest.
+        String furthestDestination = "";
+        for (String currLocation : graph.reachableWithin(startLocation, Double.POSITIVE_INFINITY).keySet()) {
+            furthestDestination = currLocation;
+        }
+        if (furthestDestination.equals(startLocation)) {
+            furthestDestination = "";
+        }
 
-            try {
-                double currTime = graph.shortestPathCost(startLocation, currLocation);
-                if (currTime > longestTime) {
-                    longestTime = currTime;
-                    furthestDestination = currLocation;
-                }
-            } catch (NoSuchElementException e) { }
+         return furthestDestination;
+    });
+   }
 
+   /**
+   * Return the sequence of locations along the shortest path from 
+   * startLocation to whichever of the candidate locations is nearest to it,
+   * or an empty list if none of the candidates can be reached.
+   * @param startLocation the start location of the path
+   * @param candidates the locations that the path may end at
+   * @return a list with the nodes along the shortest path from startLocation
+   *         to its nearest candidate, or an empty list if no such path exists
+   */
+   @Override
+   public List<String> findLocationsOnPathToNearest(String startLocation, List<String> candidates) {
+    return read(() -> {
+        try {
+            return graph.shortestPathToNearest(startLocation, candidates);
+        } catch (NoSuchElementException e) {
+            return new ArrayList<>();
         }
-    }
-    
-     return furthestDestination;
+    });
+   }
+
+   /**
+   * Returns the nearest of the candidate locations to every location that
+   * can reach at least one of them.
+   * @param candidates the locations to choose the nearest from
+   * @return map from each location to its nearest candidate location
+   */
+   @Override
+   public Map<String, String> findNearestOfEach(List<String> candidates) {
+    return read(() -> graph.nearestTargets(candidates));
+   }
+
+   /**
+   * Returns every location that can be reached from startLocation within
+   * the provided number of seconds, along with the walking time in seconds
+   * of its shortest path.
+   * @param startLocation the location to start walking from
+   * @param seconds the greatest walking time to include
+   * @return map from each location within that time to its walking time,
+   *         in order of increasing time and beginning with startLocation
+   * @throws NoSuchElementException if startLocation does not exist
+   */
+   @Override
+   public Map<String, Double> findLocationsReachableWithin(String startLocation, double seconds) throws NoSuchElementException {
+    return read(() -> {
+        if (!graph.containsNode(startLocation)) {
+            throw new NoSuchElementException("Location does not exist.");
+        }
+        return graph.reachableWithin(startLocation, seconds);
+    });
    }
 }
 
@@ -1,5 +1,6 @@
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
@@ -24,12 +25,44 @@ public interface BackendInterface {
    */
   public void loadGraphData(String filename) throws IOException;
 
+  /**
+   * Updates the loaded graph to match a new dot file or snapshot, or applies
+   * a patch file of added, reweighted and removed paths and locations to
+   * it, changing only the nodes and edges that differ.
+   * @param filename the path to a dot file, snapshot, or patch file
+   * @return the changes that were made
+   * @throws IOException if there was any problem reading from this file
+   * @throws IllegalArgumentException if a patch does not fit the graph
+   */
+  public GraphDelta updateGraphData(String filename) throws IOException;
+
   /**
    * Returns a list of all locations (node data) available in the graph.
    * @return list of all location names
    */
   public List<String> getListOfAllLocations();
 
+  /**
+   * Returns up to limit locations with a word in their name that starts with
+   * the provided prefix (ignoring case), listing those whose names start
+   * with the prefix first.
+   * @param prefix the start of a location name, or of a word within one
+   * @param limit the most locations to return
+   * @return list of matching locations, in order of preference
+   */
+  public List<String> findLocationsStartingWith(String prefix, int limit);
+
+  /**
+   * Returns the locations that best match what a user typed, allowing for
+   * differences in case and spacing and a few typos.
+   * @param input the typed name of a location
+   * @param limit the most locations to return
+   * @return input alone if it is a location, otherwise up to limit similar
+   *         locations in order of similarity, or an empty list if there are
+   *         none
+   */
+  public List<String> resolveLocation(String input, int limit);
+
   /**
    * Return the sequence of locations along the shortest path from 
    * startLocation to endLocation, or an empty list if no such path exists.
@@ -52,6 +85,154 @@ public interface BackendInterface {
    */
   public List<Double> findTimesOnShortestPath(String startLocation, String endLocation);
 
+  /**
+   * Return the total walking time in seconds of the shortest path from
+   * startLocation to endLocation, without finding the path itself.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @return the walking time of the shortest path in seconds
+   * @throws NoSuchElementException if either location or the path between
+   *         them does not exist
+   */
+  public double findTimeOfShortestPath(String startLocation, String endLocation);
+
+  /**
+   * Return the sequence of locations along the quickest path from
+   * startLocation to endLocation when leaving at the provided time of day,
+   * taking into account walking times that depend on the time of day.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param departure seconds after midnight that the path leaves from
+   *        startLocation
+   * @return a list with the nodes along the quickest path from startLocation
+   *         to endLocation at that time
+   * @throws NoSuchElementException if either location does not exist, or if
+   *         there is no path between them
+   */
+  public List<String> findLocationsOnShortestPath(String startLocation, String endLocation, double departure);
+
+  /**
+   * Return the walking times in seconds between each two nodes on the
+   * quickest path from startLocation to endLocation when leaving at the
+   * provided time of day, where each is the walking time at the moment that
+   * the path reaches it.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param departure seconds after midnight that the path leaves from
+   *        startLocation
+   * @return a list with the walking times in seconds between two nodes along
+   *         the quickest path from startLocation to endLocation at that time
+   * @throws NoSuchElementException if either location does not exist, or if
+   *         there is no path between them
+   */
+  public List<Double> findTimesOnShortestPath(String startLocation, String endLocation, double departure);
+
+  /**
+   * Return the sequence of locations along the shortest path from
+   * startLocation to endLocation that avoids the locations and paths that
+   * the overlay avoids, where every other path's walking time is multiplied
+   * by the overlay's factor for it. The map itself is not changed.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param overlay the locations and paths to avoid or slow down, or null
+   * @return a list with the nodes along the shortest such path
+   * @throws NoSuchElementException if either location does not exist, or if
+   *         there is no path between them that the overlay allows
+   */
+  public List<String> findLocationsOnShortestPath(String startLocation, String endLocation,
+                                                  RouteOverlay<String> overlay);
+
+  /**
+   * Return the walking times in seconds between each two nodes on the path
+   * that findLocationsOnShortestPath(startLocation, endLocation, overlay)
+   * returns, each multiplied by the overlay's factor for it.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param overlay the locations and paths to avoid or slow down, or null
+   * @return a list with the walking times in seconds along that path
+   * @throws NoSuchElementException if either location does not exist, or if
+   *         there is no path between them that the overlay allows
+   */
+  public List<Double> findTimesOnShortestPath(String startLocation, String endLocation,
+                                              RouteOverlay<String> overlay);
+
+  /**
+   * Return the sequence of locations along the quickest path from
+   * startLocation to endLocation when leaving at the provided time of day,
+   * with the overlay applied to the walking time of each path.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param departure seconds after midnight that the path leaves from
+   *        startLocation
+   * @param overlay the locations and paths to avoid or slow down, or null
+   * @return a list with the nodes along the quickest such path at that time
+   * @throws NoSuchElementException if either location does not exist, or if
+   *         there is no path between them that the overlay allows
+   */
+  public List<String> findLocationsOnShortestPath(String startLocation, String endLocation, double departure,
+                                                  RouteOverlay<String> overlay);
+
+  /**
+   * Return the walking times in seconds between each two nodes on the path
+   * that findLocationsOnShortestPath(startLocation, endLocation, departure,
+   * overlay) returns, at the moment the path reaches each one and with the
+   * overlay applied.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param departure seconds after midnight that the path leaves from
+   *        startLocation
+   * @param overlay the locations and paths to avoid or slow down, or null
+   * @return a list with the walking times in seconds along that path
+   * @throws NoSuchElementException if either location does not exist, or if
+   *         there is no path between them that the overlay allows
+   */
+  public List<Double> findTimesOnShortestPath(String startLocation, String endLocation, double departure,
+                                              RouteOverlay<String> overlay);
+
+  /**
+   * Return both the path and the times of
+   * findTimesOnShortestPath(startLocation, endLocation, overlay), from a
+   * single search.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param overlay the locations and paths to avoid or slow down, or null
+   * @return each location along that path, in order, mapped to the walking
+   *         time in seconds of the step that reaches it (0 for startLocation)
+   * @throws NoSuchElementException if either location does not exist, or if
+   *         there is no path between them that the overlay allows
+   */
+  public Map<String, Double> findStepsOnShortestPath(String startLocation, String endLocation,
+                                                     RouteOverlay<String> overlay);
+
+  /**
+   * Return both the path and the times of
+   * findTimesOnShortestPath(startLocation, endLocation, departure, overlay),
+   * from a single search.
+   * @param startLocation the start location of the path
+   * @param endLocation the end location of the path
+   * @param departure seconds after midnight that the path leaves from
+   *        startLocation
+   * @param overlay the locations and paths to avoid or slow down, or null
+   * @return each location along that path, in order, mapped to the walking
+   *         time in seconds of the step that reaches it (0 for startLocation)
+   * @throws NoSuchElementException if either location does not exist, or if
+   *         there is no path between them that the overlay allows
+   */
+  public Map<String, Double> findStepsOnShortestPath(String startLocation, String endLocation, double departure,
+                                                     RouteOverlay<String> overlay);
+
+  /**
+   * Return the sequence of locations along the shortest path from 
+   * startLocation to each of the endLocations, all found by a single search
+   * from startLocation.
+   * @param startLocation the start location of every path
+   * @param endLocations the end locations of the paths
+   * @return a list with the shortest path to each end location, in the same
+   *         order as endLocations, where each path is empty if no such path
+   *         exists
+   */
+  public List<List<String>> findLocationsOnShortestPaths(String startLocation, List<String> endLocations);
+
   /**
    * Returns the most distant location (the one that takes the longest time to 
    * reach) when comparing all shortest paths that begin from the provided 
@@ -64,4 +245,35 @@ public interface BackendInterface {
    */
   public String getFurthestDestinationFrom(String startLocation) throws NoSuchElementException;
 
+  /**
+   * Returns every location that can be reached from startLocation within
+   * the provided number of seconds, along with the walking time in seconds
+   * of its shortest path.
+   * @param startLocation the location to start walking from
+   * @param seconds the greatest walking time to include
+   * @return map from each location within that time to its walking time,
+   *         in order of increasing time and beginning with startLocation
+   * @throws NoSuchElementException if startLocation does not exist
+   */
+  public Map<String,Double> findLocationsReachableWithin(String startLocation, double seconds) throws NoSuchElementException;
+
+  /**
+   * Return the sequence of locations along the shortest path from 
+   * startLocation to whichever of the candidate locations is nearest to it,
+   * or an empty list if none of the candidates can be reached.
+   * @param startLocation the start location of the path
+   * @param candidates the locations that the path may end at
+   * @return a list with the nodes along the shortest path from startLocation
+   *         to its nearest candidate, or an empty list if no such path exists
+   */
+  public List<String> findLocationsOnPathToNearest(String startLocation, List<String> candidates);
+
+  /**
+   * Returns the nearest of the candidate locations to every location that
+   * can reach at least one of them.
+   * @param candidates the locations to choose the nearest from
+   * @return map from each location to its nearest candidate location
+   */
+  public Map<String,String> findNearestOfEach(List<String> candidates);
+
 }
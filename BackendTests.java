@@ -1,8 +1,12 @@
 import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Random;
 import org.junit.jupiter.api.Test;
 
 public class BackendTests {
@@ -111,8 +115,9 @@ public class BackendTests {
     }
 
     /**
-     * Tests if the program correctly throws an error when trying to find the 
-     * shortest path between two locations that don't exist.
+     * Tests if the program correctly reports when trying to find the shortest
+     * path between two locations that don't exist, and resolves a misspelled
+     * location to the one that was meant.
      */
     @Test
     public void IntegrationTest1() {
@@ -127,13 +132,18 @@ public class BackendTests {
 
         //Call frontend directly with a nonvalid start and end location.
         //This will utilize the backend to find the result.
-        //This will cause an error to be thrown.
-        assertThrows(NoSuchElementException.class, () -> 
-                    frontend.generateShortestPathResponseHTML("China", "America"));
+        //This should say that the start location matches nothing.
+        assertTrue(frontend.generateShortestPathResponseHTML("China", "America")
+                   .contains("No location matches China."));
 
         //Call frontend directly with a valid start but invalid end loaction.
-        assertThrows(NoSuchElementException.class, () -> 
-                    frontend.generateShortestPathResponseHTML("Memorial Union", "America"));
+        assertTrue(frontend.generateShortestPathResponseHTML("Memorial Union", "America")
+                   .contains("No location matches America."));
+
+        //Call frontend directly with a start that is one typo away from a location.
+        String test = frontend.generateShortestPathResponseHTML("Memorial Unoin", "Science Hall");
+        assertTrue(test.contains("Showing results for Memorial Union to Science Hall."));
+        assertTrue(test.contains("Shortest path from Memorial Union to Science Hall:"));
 
     }
 
@@ -160,8 +170,8 @@ public class BackendTests {
     }
 
     /**
-     * Tests if the program correctly throws an error when trying to find the
-     * furthest destination from a location that doesn't exist.
+     * Tests if the program correctly reports when trying to find the furthest
+     * destination from a location that doesn't exist.
      */
     @Test
     public void IntegrationTest3() {
@@ -178,7 +188,7 @@ public class BackendTests {
         //This will utilize the backend to find the result.
         //This should output a string that claims that the location doesn't exist.
         String test = frontend.generateFurthestDestinationFromResponseHTML("China");
-        assertTrue(test.contains("Location does not exist."));
+        assertTrue(test.contains("No location matches China."));
     }
 
     /**
@@ -203,6 +213,236 @@ public class BackendTests {
         assertTrue(test.contains("Microbial Sciences Building"));
     }
 
+    /**
+     * Tests if a map saved as a snapshot with hub labels gives the same
+     * walking times and furthest destinations as searching the map.
+     */
+    @Test
+    public void IntegrationTest5() throws IOException {
+        GraphADT<String, Double> graph = new DijkstraGraph<>();
+        Backend backend = new Backend(graph);
+        backend.loadGraphData("campus.dot");
+        File snapshot = File.createTempFile("campus", ".snap");
+        snapshot.deleteOnExit();
+        GraphSnapshot.write(snapshot.getPath(), graph, HubLabels.build(graph));
+
+        Backend labelled = new Backend(new DijkstraGraph<>());
+        labelled.loadGraphData(snapshot.getPath());
+        List<String> locations = backend.getListOfAllLocations();
+        for (String start : locations) {
+            for (String end : locations) {
+                double expected;
+                try {
+                    expected = backend.findTimeOfShortestPath(start, end);
+                } catch (NoSuchElementException e) {
+                    assertThrows(NoSuchElementException.class, () -> labelled.findTimeOfShortestPath(start, end));
+                    continue;
+                }
+                assertEquals(expected, labelled.findTimeOfShortestPath(start, end), 1e-6);
+            }
+        }
+        assertEquals("Microbial Sciences Building", labelled.getFurthestDestinationFrom("Slichter Residence Hall"));
+        assertThrows(NoSuchElementException.class, () -> labelled.findTimeOfShortestPath("China", "Union South"));
+        //Paths are still found by searching the graph.
+        assertEquals(backend.findLocationsOnShortestPath("Union South", "Slichter Residence Hall"),
+                     labelled.findLocationsOnShortestPath("Union South", "Slichter Residence Hall"));
+    }
+
+    /**
+     * Tests if updating a loaded map from a changed dot file, or from a
+     * patch, changes only what differs and reports those changes.
+     */
+    @Test
+    public void IntegrationTest6() throws IOException {
+        GraphADT<String, Double> graph = new DijkstraGraph<>();
+        Backend backend = new Backend(graph);
+        backend.loadGraphData("campus.dot");
+        int edges = graph.getEdgeCount();
+
+        //A new map with one path removed, one reweighted and one added to a new location.
+        String map = new String(Files.readAllBytes(new File("campus.dot").toPath()));
+        map = map.replace("\t\"Memorial Union\" -> \"Science Hall\" [seconds=105.8];", "")
+                 .replace("\"Radio Hall\" -> \"Science Hall\" [seconds=108.80000000000003]",
+                          "\"Radio Hall\" -> \"Science Hall\" [seconds=50.0]")
+                 .replace("}", "\t\"Radio Hall\" -> \"Bike Shed\" [seconds=20.0];\n}");
+        File updated = File.createTempFile("campus", ".dot");
+        updated.deleteOnExit();
+        Files.write(updated.toPath(), map.getBytes());
+        GraphDelta delta = backend.updateGraphData(updated.getPath());
+        assertEquals(List.of("Bike Shed"), delta.getAddedNodes());
+        assertEquals(1, delta.getAddedEdges().size());
+        assertEquals(1, delta.getRemovedEdges().size());
+        assertEquals(1, delta.getReweightedEdges().size());
+        assertEquals(105.8, delta.getRemovedEdges().get(0).previousWeight);
+        assertTrue(delta.getAffectedNodes().containsAll(List.of("Memorial Union", "Radio Hall", "Bike Shed")));
+        assertEquals(edges, graph.getEdgeCount());
+        assertEquals(50.0, graph.getEdge("Radio Hall", "Science Hall"));
+        assertFalse(graph.containsEdge("Memorial Union", "Science Hall"));
+        assertTrue(backend.getListOfAllLocations().contains("Bike Shed"));
+        assertTrue(backend.updateGraphData(updated.getPath()).isEmpty());
+
+        //A patch that reverses those changes.
+        File patch = File.createTempFile("campus", ".patch");
+        patch.deleteOnExit();
+        Files.write(patch.toPath(), String.join("\n",
+            "# undo the changes above",
+            "add \"Memorial Union\" -> \"Science Hall\" [seconds=105.8];",
+            "reweight \"Radio Hall\" -> \"Science Hall\" [seconds=108.80000000000003];",
+            "remove \"Bike Shed\";").getBytes());
+        delta = backend.updateGraphData(patch.getPath());
+        assertEquals("0 locations added, 1 removed; 1 paths added, 0 removed, 1 reweighted", delta.toString());
+        assertEquals(edges, graph.getEdgeCount());
+        assertFalse(backend.getListOfAllLocations().contains("Bike Shed"));
+        assertTrue(backend.updateGraphData("campus.dot").isEmpty());
+
+        //A patch that does not fit the map changes nothing.
+        Files.write(patch.toPath(), String.join("\n",
+            "remove \"Radio Hall\" -> \"Science Hall\";",
+            "reweight \"Radio Hall\" -> \"Bike Shed\" [seconds=5];").getBytes());
+        assertThrows(IllegalArgumentException.class, () -> backend.updateGraphData(patch.getPath()));
+        assertTrue(graph.containsEdge("Radio Hall", "Science Hall"));
+
+        //Neither does a delta whose last change does not fit.
+        GraphDelta misfit = new GraphDelta();
+        misfit.addNode("Bike Shed");
+        misfit.removeEdge("Radio Hall", "Science Hall", 108.80000000000003);
+        misfit.addEdge("Bike Shed", "Nowhere", 5.0, null);
+        assertThrows(IllegalArgumentException.class, () -> misfit.apply(graph));
+        assertFalse(graph.containsNode("Bike Shed"));
+        assertTrue(graph.containsEdge("Radio Hall", "Science Hall"));
+        assertEquals(edges, graph.getEdgeCount());
+    }
+
+    /**
+     * Tests if misspelled locations are resolved to the closest names, within
+     * a number of typos that grows with the length of the input.
+     */
+    @Test
+    public void IntegrationTest7() throws IOException {
+        GraphADT<String, Double> graph = new DijkstraGraph<>();
+        Backend backend = new Backend(graph);
+        backend.loadGraphData("campus.dot");
+
+        //An exact or differently spaced and cased name resolves to itself alone.
+        assertEquals(List.of("Memorial Union"), backend.resolveLocation("Memorial Union", 5));
+        assertEquals(List.of("Memorial Union"), backend.resolveLocation("memorial  union", 5));
+
+        //One and two typos.
+        assertEquals(List.of("Memorial Union"), backend.resolveLocation("Memorial Unoin", 5));
+        assertEquals(List.of("Memorial Union"), backend.resolveLocation("Memroial Unoin", 5));
+        assertEquals(List.of("Science Hall"), backend.resolveLocation("Sciense Hal", 5));
+
+        //Too many typos for the length of the input, or nothing close.
+        assertEquals(List.of(), backend.resolveLocation("Memorial Xxxxx", 5));
+        assertEquals(List.of(), backend.resolveLocation("China", 5));
+
+        //Closer names come first, and names as close are in alphabetical order.
+        assertEquals(List.of("North Hall", "South Hall"), backend.resolveLocation("Nozth Hall", 5));
+        assertEquals(List.of("South Hall", "North Hall"), backend.resolveLocation("Soth Hall", 5));
+        assertEquals(List.of("North Hall"), backend.resolveLocation("Nozth Hall", 1));
+        assertEquals(List.of("South Hall"), backend.resolveLocation("Soth Hall", 1));
+    }
+
+    /**
+     * Tests if locations are found by a prefix of their name or of a later
+     * word in it, with names that start with the prefix first.
+     */
+    @Test
+    public void IntegrationTest8() throws IOException {
+        GraphADT<String, Double> graph = new DijkstraGraph<>();
+        Backend backend = new Backend(graph);
+        backend.loadGraphData("campus.dot");
+
+        //Names that start with the prefix, then names with a later word that does.
+        List<String> expected = List.of("Engineering Centers Building", "Engineering Drive Ramp (Lot 17)",
+            "Engineering Hall", "Engineering Research Building", "Agricultural Engineering",
+            "Materials Science and Engineering", "Mechanical Engineering Building", "1410 Engineering Dr",
+            "Water Science & Engineering Laboratory");
+        assertEquals(expected, backend.findLocationsStartingWith("eng", 20));
+
+        //The prefix is not case sensitive.
+        assertEquals(expected, backend.findLocationsStartingWith("ENG", 20));
+
+        //A blank prefix matches every name, in alphabetical order.
+        assertEquals(List.of("1 South Park UW Health Clinic", "1410 Engineering Dr", "206 Bernard Ct."),
+                     backend.findLocationsStartingWith("  ", 3));
+
+        //The limit keeps the first matches.
+        assertEquals(expected.subList(0, 3), backend.findLocationsStartingWith("eng", 3));
+        assertEquals(List.of("Science Hall"), backend.findLocationsStartingWith("sci", 1));
+    }
+
+    /**
+     * Tests if the times along a quickest path with an overlay add up to the
+     * time that the search found, when a slowed path has a travel time.
+     */
+    @Test
+    public void IntegrationTest9() {
+        GraphADT<String, Double> graph = new DijkstraGraph<>();
+        Backend backend = new Backend(graph);
+        graph.insertNode("A");
+        graph.insertNode("B");
+        graph.insertNode("C");
+        graph.insertEdge("A", "B", 40.0);
+        graph.insertEdge("B", "C", 10.0);
+        graph.setTravelTime("A", "B", TravelTimeFunction.parse("8:00=100 8:01=40 12:00=40"));
+        RouteOverlay<String> overlay = new RouteOverlay<String>().slower("B", 3);
+        double departure = 8 * 3600;
+
+        //Slowing keeps the delay beyond the shortest duration rather than scaling it.
+        List<Double> times = backend.findTimesOnShortestPath("A", "C", departure, overlay);
+        assertEquals(List.of(180.0, 10.0), times);
+        assertEquals(graph.shortestPathCost("A", "C", departure, overlay),
+                     times.stream().mapToDouble(Double::doubleValue).sum());
+
+        //The path and its times from a single search agree with both.
+        Map<String, Double> steps = backend.findStepsOnShortestPath("A", "C", departure, overlay);
+        assertEquals(List.of("A", "B", "C"), new ArrayList<>(steps.keySet()));
+        assertEquals(List.of(0.0, 180.0, 10.0), new ArrayList<>(steps.values()));
+        assertEquals(backend.findLocationsOnShortestPath("A", "C", departure, overlay),
+                     new ArrayList<>(steps.keySet()));
+    }
+
+    /**
+     * Tests if the location indexes that updates change by the locations
+     * they add and remove find the same names as indexes built from scratch,
+     * both before and after enough changes that they are rebuilt.
+     */
+    @Test
+    public void IntegrationTest10() throws IOException {
+        GraphADT<String, Double> graph = new DijkstraGraph<>();
+        Backend backend = new Backend(graph);
+        backend.loadGraphData("campus.dot");
+        File patch = File.createTempFile("campus", ".patch");
+        patch.deleteOnExit();
+        Random random = new Random(1);
+        List<String> prefixes = List.of("", "eng", "hall", "s", "new", "union", "bike");
+        List<String> typed = List.of("Memorial Unoin", "Nozth Hall", "Bike Shde 3", "New Hal 12", "sciense hall");
+        for (int round = 0; round < 40; round++) {
+            //Remove two locations and add two, one of them named like another.
+            List<String> all = new ArrayList<>(graph.getAllNodes());
+            String first = all.get(random.nextInt(all.size()));
+            String second = all.get(random.nextInt(all.size()));
+            List<String> lines = new ArrayList<>(List.of("remove \"" + first + "\";",
+                "add \"Bike Shed " + round + "\" -> \"Union South\" [seconds=5];",
+                "add \"New Hall " + round + "\";"));
+            if (!second.equals(first) && !second.equals("Union South")) lines.add("remove \"" + second + "\";");
+            if (first.equals("Union South")) lines.remove(1);
+            Files.write(patch.toPath(), String.join("\n", lines).getBytes());
+            backend.updateGraphData(patch.getPath());
+
+            LocationIndex index = new LocationIndex(graph.getAllNodes());
+            LocationResolver resolver = new LocationResolver(graph.getAllNodes());
+            for (String prefix : prefixes) {
+                assertEquals(index.startingWith(prefix, 15), backend.findLocationsStartingWith(prefix, 15));
+            }
+            for (String input : typed) {
+                assertEquals(resolver.resolve(input, 5), backend.resolveLocation(input, 5));
+            }
+            assertEquals(graph.getNodeCount(), backend.getListOfAllLocations().size());
+        }
+    }
+
     //Random comment so that changes to checkSubmission or something will be pushed to gitlab...
 }
 
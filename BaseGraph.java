@@ -1,3 +1,4 @@
+import java.util.ArrayList;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.NoSuchElementException;
@@ -8,25 +9,35 @@ import java.util.NoSuchElementException;
  */
 public class BaseGraph<NodeType, EdgeType extends Number> {
 
-    // Each node contains unique data along with two lists of directed edges
+    // Each node contains unique data along with two lists of directed edges,
+    // and an id that indexes it within nodesById
     protected class Node {
         public NodeType data;
+        public final int id;
         public List<Edge> edgesLeaving = new LinkedList<>();
         public List<Edge> edgesEntering = new LinkedList<>();
 
-        public Node(NodeType data) {
+        public Node(NodeType data, int id) {
             this.data = data;
+            this.id = id;
         }
     }
 
     // Nodes can be retrieved from this map by their unique data
     protected MapADT<NodeType, Node> nodes = null;
 
-    // Each edge contains data/weight, and two nodes that it connects
+    // Nodes can also be retrieved by their id, which is their position in this
+    // list (a removed node leaves null behind until the graph is emptied), so
+    // that searches can record their progress in arrays indexed by id
+    protected List<Node> nodesById = new ArrayList<>();
+
+    // Each edge contains data/weight, and two nodes that it connects, and may
+    // also have a travel time that depends on the time of day it is taken
     protected class Edge {
         public EdgeType data; // the weight or cost of this edge
         public Node predecessor;
         public Node successor;
+        public TravelTimeFunction travelTime = null; // null when always data
 
         public Edge(EdgeType data, Node pred, Node succ) {
             this.data = data;
@@ -59,7 +70,12 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
     public boolean insertNode(NodeType data) {
         if (nodes.containsKey(data))
             return false; // throws NPE when data's null
-        nodes.put(data, new Node(data));
+        // ids start over once every node has been removed
+        if (nodes.getSize() == 0)
+            nodesById.clear();
+        Node newNode = new Node(data, nodesById.size());
+        nodes.put(data, newNode);
+        nodesById.add(newNode);
         return true;
     }
 
@@ -77,6 +93,12 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
         if (!nodes.containsKey(data))
             return false; // throws NPE when data==null
         Node oldNode = nodes.remove(data);
+        nodesById.set(oldNode.id, null);
+        // count each edge once, including a loop that is in both lists
+        this.edgeCount -= oldNode.edgesLeaving.size();
+        for (Edge edge : oldNode.edgesEntering)
+            if (edge.predecessor != oldNode)
+                this.edgeCount--;
         // remove all edges entering neighboring nodes from this one
         for (Edge edge : oldNode.edgesLeaving)
             edge.successor.edgesEntering.remove(edge);
@@ -187,6 +209,43 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
         }
     }
 
+    /**
+     * Sets the travel time of an edge to depend on the time of day that it
+     * is taken, or to be its weight at all times. Searches that are not given
+     * a departure time always use the edge's weight.
+     * 
+     * @param pred       the data item contained in the source node for the edge
+     * @param succ       the data item contained in the target node for the edge
+     * @param travelTime the edge's travel time, or null to use its weight
+     * @return true if the travel time was set, or
+     *         false if such an edge is not found in the graph
+     */
+    public boolean setTravelTime(NodeType pred, NodeType succ, TravelTimeFunction travelTime) {
+        if (!nodes.containsKey(pred))
+            return false;
+        try {
+            getEdgeHelper(pred, succ).travelTime = travelTime;
+            return true;
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Return the time of day dependent travel time of a specific edge.
+     * 
+     * @param pred the data item contained in the source node for the edge
+     * @param succ the data item contained in the target node for the edge
+     * @return the edge's travel time, or null if it is always its weight
+     * @throws NoSuchElementException if either node or the edge between them
+     *                                are not found within this graph
+     */
+    public TravelTimeFunction getTravelTime(NodeType pred, NodeType succ) {
+        if (!nodes.containsKey(pred))
+            throw new NoSuchElementException("No edge from " + pred + " to " + succ);
+        return getEdgeHelper(pred, succ).travelTime;
+    }
+
     /**
      * Return the data associated with a specific edge.
      * 
@@ -212,6 +271,22 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
                 succ.toString());
     }
 
+    /**
+     * Returns the data of each node that an edge leaves the provided node
+     * for, in the order that those edges were inserted.
+     * 
+     * @param data the data item contained in the node
+     * @return the data in the successor of each edge leaving that node
+     * @throws NoSuchElementException if the node is not found in the graph
+     */
+    public List<NodeType> getSuccessors(NodeType data) {
+        List<NodeType> successors = new ArrayList<>();
+        // throws NSE when there is no such node
+        for (Edge edge : nodes.get(data).edgesLeaving)
+            successors.add(edge.successor.data);
+        return successors;
+    }
+
     /**
      * Return the number of edges in the graph.
      * 
@@ -221,5 +296,60 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
         return this.edgeCount;
     }
 
+    /**
+     * Estimates the memory taken up by this graph's nodes, edges, lists and
+     * map, without a heap dump.
+     *
+     * @return the bytes taken up by each part of this graph
+     */
+    public MemoryFootprint getFootprint() {
+        MemoryFootprint footprint = new MemoryFootprint();
+        addFootprint(footprint);
+        return footprint;
+    }
+
+    /**
+     * Adds the parts of this graph to an estimate. Subclasses that keep
+     * more than nodes and edges add their own parts as well.
+     *
+     * @param footprint the estimate to add to
+     */
+    protected void addFootprint(MemoryFootprint footprint) {
+        int ref = footprint.getReferenceBytes();
+        long nodeCount = 0, edges = 0, entries = 0, dataBytes = 0, weightBytes = 0;
+        long travelTimes = 0, travelTimeBytes = 0;
+        for (Node node : nodesById) {
+            if (node == null) continue;
+            nodeCount++;
+            dataBytes += footprint.valueBytes(node.data);
+            entries += node.edgesLeaving.size() + node.edgesEntering.size();
+            for (Edge edge : node.edgesLeaving) {
+                edges++;
+                weightBytes += footprint.valueBytes(edge.data);
+                if (edge.travelTime != null) {
+                    travelTimes++;
+                    travelTimeBytes += footprint.objectBytes(1, 8) +
+                        footprint.arrayBytes(8, 2L * edge.travelTime.getTimes().length);
+                }
+            }
+        }
+        // Node: data, two lists and an id; LinkedList: first, last, size and modCount
+        footprint.add("nodes", nodeCount, nodeCount * footprint.objectBytes(3, 4));
+        footprint.add("node data", nodeCount, dataBytes);
+        footprint.add("edge lists", 2 * nodeCount, 2 * nodeCount * footprint.objectBytes(2, 8));
+        // LinkedList entry: item, next and previous
+        footprint.add("edge list entries", entries, entries * footprint.objectBytes(3, 0));
+        // Edge: weight, predecessor, successor and travel time
+        footprint.add("edges", edges, edges * footprint.objectBytes(4, 0));
+        footprint.add("boxed weights", edges, weightBytes);
+        if (travelTimes > 0)
+            footprint.add("travel time functions", travelTimes, travelTimeBytes);
+        // ArrayList of nodes by id, counting its array as exactly full
+        footprint.add("nodes by id", nodesById.size(),
+                      footprint.objectBytes(1, 8) + footprint.arrayBytes(ref, nodesById.size()));
+        if (nodes instanceof HashtableMap)
+            ((HashtableMap<NodeType, Node>) nodes).addFootprint(footprint, "node map");
+    }
+
 }
 
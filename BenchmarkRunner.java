@@ -0,0 +1,228 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A small microbenchmark harness in the style of JMH. Each benchmark is
+ * measured in average time mode: after warmup iterations, the operation is
+ * run repeatedly for a fixed time per iteration, and the mean time per
+ * operation (with a 99.9% confidence interval) is reported. Results are
+ * printed as a table and can also be written as JSON in the same layout as
+ * JMH's -rf json output, so existing JMH tooling can compare runs.
+ *
+ * Settings are read from key=value arguments:
+ *     filter=REGEX   only run benchmarks whose name matches
+ *     warmup=N       warmup iterations per benchmark (default 3)
+ *     iterations=N   measured iterations per benchmark (default 5)
+ *     time=SECONDS   length of each iteration (default 1)
+ *     out=FILE       write results as json to this file
+ */
+public class BenchmarkRunner {
+
+    // one invocation of the code being measured, whose result is consumed
+    // so that the jit cannot eliminate the work that produced it
+    public interface Operation {
+        public Object run() throws Exception;
+    }
+
+    // prepares the state for a benchmark and returns its operation
+    public interface Setup {
+        public Operation setUp() throws Exception;
+    }
+
+    private static class Benchmark {
+        String name;
+        Map<String,String> params;
+        Setup setup;
+    }
+
+    private static class Result {
+        Benchmark benchmark;
+        double[] nanosPerOp;
+        double mean;
+        double error;
+    }
+
+    // probability covered by a confidence interval, as in jmh's scoreError
+    private static final double CONFIDENCE = 0.999;
+
+    private final List<Benchmark> benchmarks = new ArrayList<>();
+    private volatile int sink = 0;
+
+    /**
+     * Adds a benchmark to be run.
+     * @param name the name of the benchmark, such as HashtableMap.put
+     * @param params parameters that identify this variation of the benchmark
+     * @param setup prepares the benchmark's state, outside of measurement
+     */
+    public void add(String name, Map<String,String> params, Setup setup) {
+        Benchmark benchmark = new Benchmark();
+        benchmark.name = name;
+        benchmark.params = params == null ? new LinkedHashMap<>() : params;
+        benchmark.setup = setup;
+        benchmarks.add(benchmark);
+    }
+
+    /**
+     * Runs every benchmark that matches the filter in args, printing and
+     * optionally saving the results.
+     * @param args key=value settings, as described above
+     */
+    public void run(String[] args) throws Exception {
+        Map<String,String> settings = new LinkedHashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2)
+                throw new IllegalArgumentException("Settings must be key=value, not: " + arg);
+            settings.put(pair[0], pair[1]);
+        }
+        Pattern filter = Pattern.compile(settings.getOrDefault("filter", ".*"));
+        int warmup = Integer.parseInt(settings.getOrDefault("warmup", "3"));
+        int iterations = Integer.parseInt(settings.getOrDefault("iterations", "5"));
+        long iterationNanos = (long) (Double.parseDouble(settings.getOrDefault("time", "1")) * 1e9);
+
+        List<Result> results = new ArrayList<>();
+        for (Benchmark benchmark : benchmarks) {
+            if (!filter.matcher(benchmark.name).find()) continue;
+            System.out.println("# Benchmark: " + benchmark.name + " " + benchmark.params);
+            Operation operation = benchmark.setup.setUp();
+            for (int i = 0; i < warmup; i++)
+                System.out.printf("# Warmup Iteration %d: %.3f us/op%n", i + 1,
+                                  measure(operation, iterationNanos) / 1000);
+            Result result = new Result();
+            result.benchmark = benchmark;
+            result.nanosPerOp = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                result.nanosPerOp[i] = measure(operation, iterationNanos);
+                System.out.printf("Iteration %d: %.3f us/op%n", i + 1, result.nanosPerOp[i] / 1000);
+            }
+            summarize(result);
+            results.add(result);
+        }
+
+        System.out.println();
+        System.out.printf("%-45s %-30s %14s %12s  %s%n", "Benchmark", "Params", "Score", "Error", "Units");
+        for (Result result : results)
+            System.out.printf("%-45s %-30s %14.3f +- %10.3f  us/op%n", result.benchmark.name,
+                              result.benchmark.params, result.mean / 1000, result.error / 1000);
+
+        if (settings.containsKey("out")) {
+            try (OutputStream out = new FileOutputStream(settings.get("out"))) {
+                writeJson(results, warmup, iterations, iterationNanos, out);
+            }
+            System.out.println("Results written to " + settings.get("out"));
+        }
+    }
+
+    // runs operation repeatedly for about iterationNanos, returning the mean
+    // time taken by each run
+    private double measure(Operation operation, long iterationNanos) throws Exception {
+        long operations = 0;
+        long startTime = System.nanoTime();
+        long elapsed;
+        int consumed = 0;
+        do {
+            Object result = operation.run();
+            consumed += result == null ? 0 : System.identityHashCode(result);
+            operations++;
+            elapsed = System.nanoTime() - startTime;
+        } while (elapsed < iterationNanos);
+        sink += consumed;
+        return (double) elapsed / operations;
+    }
+
+    // computes the mean and confidence interval of a benchmark's iterations
+    private static void summarize(Result result) {
+        double sum = 0;
+        for (double value : result.nanosPerOp) sum += value;
+        result.mean = sum / result.nanosPerOp.length;
+        if (result.nanosPerOp.length < 2) {
+            result.error = Double.NaN;
+            return;
+        }
+        double squares = 0;
+        for (double value : result.nanosPerOp) squares += (value - result.mean) * (value - result.mean);
+        double deviation = Math.sqrt(squares / (result.nanosPerOp.length - 1));
+        result.error = studentT(CONFIDENCE, result.nanosPerOp.length - 1) * deviation /
+            Math.sqrt(result.nanosPerOp.length);
+    }
+
+    // the t value for a two sided confidence interval with these degrees of
+    // freedom (8.61 for 99.9% and 4), found by bisection
+    private static double studentT(double confidence, int degrees) {
+        double low = 0;
+        double high = 1;
+        while (centralProbability(high, degrees) < confidence) {
+            low = high;
+            high *= 2;
+        }
+        for (int i = 0; i < 100; i++) {
+            double middle = (low + high) / 2;
+            if (centralProbability(middle, degrees) < confidence) low = middle;
+            else high = middle;
+        }
+        return high;
+    }
+
+    // the probability that |T| < t for Student's t distribution with these
+    // degrees of freedom, from its closed form for a whole number of degrees
+    // (Abramowitz and Stegun 26.7.3 and 26.7.4)
+    private static double centralProbability(double t, int degrees) {
+        double theta = Math.atan(t / Math.sqrt(degrees));
+        double cos2 = Math.cos(theta) * Math.cos(theta);
+        double sum = 1;
+        double term = 1;
+        for (int k = degrees % 2 == 0 ? 2 : 3; k <= degrees - 2; k += 2) {
+            term *= cos2 * (k - 1) / k;
+            sum += term;
+        }
+        if (degrees % 2 == 0)
+            return Math.sin(theta) * sum;
+        if (degrees == 1)
+            return 2 / Math.PI * theta;
+        return 2 / Math.PI * (theta + Math.sin(theta) * Math.cos(theta) * sum);
+    }
+
+    // writes results in the same layout as jmh's json result format
+    private static void writeJson(List<Result> results, int warmup, int iterations,
+                                  long iterationNanos, OutputStream out) throws IOException {
+        JsonWriter json = JsonWriter.acquire(out);
+        try {
+            json.beginArray();
+            for (Result result : results) {
+                json.beginObject();
+                json.name("benchmark").value(result.benchmark.name);
+                json.name("mode").value("avgt");
+                json.name("threads").value(1);
+                json.name("forks").value(1);
+                json.name("jvm").value(System.getProperty("java.home"));
+                json.name("jdkVersion").value(System.getProperty("java.version"));
+                json.name("warmupIterations").value(warmup);
+                json.name("warmupTime").value(iterationNanos / 1e9 + " s");
+                json.name("measurementIterations").value(iterations);
+                json.name("measurementTime").value(iterationNanos / 1e9 + " s");
+                json.name("params").beginObject();
+                for (Map.Entry<String,String> param : result.benchmark.params.entrySet())
+                    json.name(param.getKey()).value(param.getValue());
+                json.endObject();
+                json.name("primaryMetric").beginObject();
+                json.name("score").value(result.mean / 1000);
+                json.name("scoreError").value(result.error / 1000);
+                json.name("scoreUnit").value("us/op");
+                json.name("rawData").beginArray().beginArray();
+                for (double value : result.nanosPerOp) json.value(value / 1000);
+                json.endArray().endArray();
+                json.endObject();
+                json.endObject();
+            }
+            json.endArray();
+        } finally {
+            json.release();
+        }
+    }
+}
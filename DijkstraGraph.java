@@ -5,6 +5,7 @@
 // Notes to Grader: <optional extra notes>
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
@@ -52,6 +53,18 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
         }
     }
 
+    // Totals of the work done by every search over this graph
+    protected SearchCounters counters = new SearchCounters();
+
+    // Workspaces that searches with a departure time or an overlay record
+    // their progress in, which are returned here to be reused by later searches
+    private final ConcurrentLinkedQueue<SearchWorkspace> workspaces = new ConcurrentLinkedQueue<>();
+
+    // Flags that let searches without a departure time or an overlay skip
+    // edges that lead away from their end, or null until they are built;
+    // any change to the edges drops them, since their positions may shift
+    private volatile ArcFlags arcFlags = null;
+
     /**
      * Constructor that sets the map that the graph uses.
      */
@@ -59,6 +72,74 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
         super(new HashtableMap<>());
     }
 
+    /**
+     * Returns the running totals of work done by this graph's searches: the
+     * nodes they settled, edges they relaxed, and queue pushes and stale pops.
+     *
+     * @return the search counters for this graph
+     */
+    public SearchCounters getSearchCounters() {
+        return counters;
+    }
+
+    /**
+     * Splits the nodes into regions and computes arc flags for every edge,
+     * which searches use until the graph next changes. This pays off for
+     * long paths, where most of the graph lies away from the end.
+     *
+     * @param regions the number of regions, from 1 to ArcFlags.MAX_REGIONS
+     * @param threads the number of searches to run at once while computing
+     * @return the flags, which searches now use
+     * @throws IllegalArgumentException if the number of regions is invalid
+     */
+    public ArcFlags buildArcFlags(int regions, int threads) {
+        if (regions < 1 || regions > ArcFlags.MAX_REGIONS)
+            throw new IllegalArgumentException("Arc flags need 1 to " + ArcFlags.MAX_REGIONS +
+                                               " regions, not " + regions);
+        int count = nodesById.size();
+        int[][] successors = new int[count][];
+        double[][] weights = new double[count][];
+        for (int id = 0; id < count; id++) {
+            Node node = nodesById.get(id);
+            List<Edge> edges = node == null ? List.of() : node.edgesLeaving;
+            successors[id] = new int[edges.size()];
+            weights[id] = new double[edges.size()];
+            int position = 0;
+            for (Edge edge : edges) {
+                successors[id][position] = edge.successor.id;
+                weights[id][position++] = edge.data.doubleValue();
+            }
+        }
+        int[] parts = new GraphPartitioner(successors).partition(regions, 0.05);
+        arcFlags = new ArcFlags(successors, weights, parts, regions, threads);
+        return arcFlags;
+    }
+
+    /**
+     * Returns the arc flags that searches use, or null when there are none.
+     */
+    public ArcFlags getArcFlags() {
+        return arcFlags;
+    }
+
+    @Override
+    public boolean removeNode(NodeType data) {
+        arcFlags = null;
+        return super.removeNode(data);
+    }
+
+    @Override
+    public boolean insertEdge(NodeType pred, NodeType succ, EdgeType weight) {
+        arcFlags = null;
+        return super.insertEdge(pred, succ, weight);
+    }
+
+    @Override
+    public boolean removeEdge(NodeType pred, NodeType succ) {
+        arcFlags = null;
+        return super.removeEdge(pred, succ);
+    }
+
     
     /**
      * This helper method creates a network of SearchNodes while computing the
@@ -87,6 +168,15 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
         PriorityQueue<SearchNode> pq = new PriorityQueue<>();
         MapADT<Node, Node> map = new HashtableMap<>();
 
+        //Count the work done by this search.
+        long settled = 0, relaxed = 0, pushes = 1, stale = 0, queuePeak = 1;
+        GraphEvents.Search event = new GraphEvents.Search();
+        event.begin();
+
+        //Arc flags, when there are some, mark the edges toward end's region.
+        ArcFlags flags = arcFlags;
+        int region = flags != null && flags.covers(nodes.get(end).id) ? flags.getRegion(nodes.get(end).id) : -1;
+
         //Create first search node and add to queue.
         Node first = nodes.get(start);
         SearchNode searchNode = new SearchNode(first, 0.0, null);
@@ -100,6 +190,7 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
             if (!map.containsKey(current.node)) { 
                 //Mark the node as visited.
                 map.put(current.node, current.node); 
+                settled++;
 
                 //Create a search node for the destination of the current node. 
                 SearchNode dest = new SearchNode(current.node, current.cost, current.predecessor);
@@ -107,6 +198,7 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
                 //If the destination node equals the end node, we have found the shortest path.
                 if (dest.node.data.equals(end)) {
                     result = dest;
+                    break;
                 }
 
                 //Find unvisited neighbors of destination node.
@@ -114,6 +206,10 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
 
                 //Process each neighbor.
                 for (int i = 0; i < neighbors.size(); i++) {
+                    if (region != -1 && !flags.isFlagged(dest.node.id, i, region)) {
+                        continue;
+                    }
+                    relaxed++;
                     if (!map.containsKey(neighbors.get(i).successor)) {
 
                         //Add neighboring node, if unvisited, to priority queue.
@@ -121,10 +217,16 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
                         Double neighborCost = neighbors.get(i).data.doubleValue();
                         SearchNode neighbor = new SearchNode(neighborNode, neighborCost + dest.cost, dest);
                         pq.add(neighbor);
+                        pushes++;
                     }
                 }
+                queuePeak = Math.max(queuePeak, pq.size());
+            } else {
+                stale++;
             }
         }
+        counters.recordSearch(settled, relaxed, pushes, stale);
+        commitSearch(event, start, end, settled, queuePeak);
         
         if (result != null) {
             return result;
@@ -178,6 +280,546 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
         return result.cost;
     }
 
+    /**
+     * This helper method runs a time-dependent Dijkstra search from the
+     * provided start location, leaving it at the provided departure time. It
+     * settles nodes in order of the earliest time that they can be reached,
+     * where the time of reaching the successor of an edge is the time of
+     * reaching its predecessor plus the edge's travel time at that moment (or
+     * plus its weight, when it has no travel time or timed is false). Since
+     * no travel time lets a later departure arrive earlier, each node is
+     * settled at its earliest arrival, and the search stops as soon as end is
+     * settled. When there is an overlay, edges that it avoids are skipped and
+     * the time of every other edge is multiplied by its factor. Without
+     * either, the search skips edges that the graph's arc flags (if any) do
+     * not mark as leading toward end.
+     *
+     * The search records its progress by node id in a SearchWorkspace that
+     * is reused by later searches, and only creates SearchNodes for the path
+     * that it returns.
+     *
+     * @param start     the data item in the starting node for the path
+     * @param end       the data item in the destination node for the path
+     * @param departure seconds after midnight that the path leaves start
+     * @param timed     whether edges take their travel time, or their weight
+     * @param overlay   changes to the graph for this search only, or null
+     * @return SearchNode for the final end node within the quickest path,
+     *         where the cost of each SearchNode is the time taken to reach it
+     * @throws NoSuchElementException when no path from start to end is found
+     *                                or when either start or end data do not
+     *                                correspond to a graph node
+     */
+    protected SearchNode computeWorkspacePath(NodeType start, NodeType end, double departure, boolean timed,
+                                              RouteOverlay<NodeType> overlay) {
+        if (!nodes.containsKey(start) || (!nodes.containsKey(end))) {
+            throw new NoSuchElementException("Start or end data does not correspond to a graph node.");
+        }
+        int first = nodes.get(start).id;
+        int last = nodes.get(end).id;
+        RouteOverlay.Resolved filter = overlay == null || overlay.isEmpty() ? null
+                : overlay.resolve(data -> nodes.containsKey(data) ? nodes.get(data).id : -1, nodesById.size());
+        ArcFlags flags = arcFlags;
+        int region = flags != null && !timed && filter == null && flags.covers(last) ? flags.getRegion(last) : -1;
+
+        SearchWorkspace workspace = workspaces.poll();
+        if (workspace == null) {
+            workspace = new SearchWorkspace();
+        }
+        try {
+            //Costs in the workspace are arrival times.
+            workspace.reset(nodesById.size());
+            workspace.improve(first, departure, -1);
+            long settled = 0, relaxed = 0, pushes = 1, stale = 0, queuePeak = 1;
+            GraphEvents.Search event = new GraphEvents.Search();
+            event.begin();
+
+            while (!workspace.isEmpty()) {
+                int current = workspace.pop();
+                if (workspace.isSettled(current)) {
+                    stale++;
+                    continue;
+                }
+                workspace.settle(current);
+                settled++;
+                if (current == last) {
+                    break;
+                }
+
+                double arrival = workspace.getCost(current);
+                int position = -1;
+                for (Edge edge : nodesById.get(current).edgesLeaving) {
+                    position++;
+                    if (region != -1 && !flags.isFlagged(current, position, region)) {
+                        continue;
+                    }
+                    relaxed++;
+                    int next = edge.successor.id;
+                    if (workspace.isSettled(next)) {
+                        continue;
+                    }
+                    double factor = filter == null ? 1.0 : filter.factor(current, next);
+                    if (factor == Double.POSITIVE_INFINITY) {
+                        continue;
+                    }
+                    double travel = !timed || edge.travelTime == null
+                            ? edge.data.doubleValue() * factor : edge.travelTime.travelTime(arrival, factor);
+                    if (workspace.improve(next, arrival + travel, current)) {
+                        pushes++;
+                    }
+                }
+                queuePeak = Math.max(queuePeak, workspace.size());
+            }
+            counters.recordSearch(settled, relaxed, pushes, stale);
+            commitSearch(event, start, end, settled, queuePeak);
+            if (!workspace.isSettled(last)) {
+                throw new NoSuchElementException("Path does not exist.");
+            }
+
+            //Link SearchNodes along the path, from start through end.
+            List<Node> path = new ArrayList<>();
+            for (int id = last; id != -1; id = workspace.getPrevious(id)) {
+                path.add(nodesById.get(id));
+            }
+            SearchNode result = null;
+            for (int i = path.size() - 1; i >= 0; i--) {
+                Node node = path.get(i);
+                result = new SearchNode(node, workspace.getCost(node.id) - departure, result);
+            }
+            return result;
+        } finally {
+            workspaces.offer(workspace);
+        }
+    }
+
+    /**
+     * Returns the list of data values from nodes along the quickest path from
+     * the node with the provided start value to the node with the provided
+     * end value, when leaving start at the provided time. This method uses a
+     * time-dependent version of Dijkstra's algorithm to find this solution.
+     *
+     * @param start     the data item in the starting node for the path
+     * @param end       the data item in the destination node for the path
+     * @param departure seconds after midnight that the path leaves start
+     * @return list of data item from node along this quickest path
+     */
+    public List<NodeType> shortestPathData(NodeType start, NodeType end, double departure) {
+        return shortestPathData(start, end, departure, null);
+    }
+
+    /**
+     * Returns the time taken by the quickest path from the node containing
+     * the start data to the node containing the end data, when leaving start
+     * at the provided time.
+     *
+     * @param start     the data item in the starting node for the path
+     * @param end       the data item in the destination node for the path
+     * @param departure seconds after midnight that the path leaves start
+     * @return the seconds from leaving start until arriving at end
+     */
+    public double shortestPathCost(NodeType start, NodeType end, double departure) {
+        return computeWorkspacePath(start, end, departure, true, null).cost;
+    }
+
+    /**
+     * Returns the list of data values from nodes along the shortest path from
+     * the node with the provided start value to the node with the provided
+     * end value, after the provided overlay has avoided or scaled some of the
+     * edges. The graph itself is not changed.
+     *
+     * @param start   the data item in the starting node for the path
+     * @param end     the data item in the destination node for the path
+     * @param overlay the changes to make for this path only, or null for none
+     * @return list of data item from node along this shortest path
+     */
+    public List<NodeType> shortestPathData(NodeType start, NodeType end, RouteOverlay<NodeType> overlay) {
+        return pathData(computeWorkspacePath(start, end, 0, false, overlay));
+    }
+
+    /**
+     * Returns the cost of the shortest path from the node containing the
+     * start data to the node containing the end data, after the provided
+     * overlay has avoided or scaled some of the edges.
+     *
+     * @param start   the data item in the starting node for the path
+     * @param end     the data item in the destination node for the path
+     * @param overlay the changes to make for this path only, or null for none
+     * @return the cost of the shortest path between these nodes
+     */
+    public double shortestPathCost(NodeType start, NodeType end, RouteOverlay<NodeType> overlay) {
+        return computeWorkspacePath(start, end, 0, false, overlay).cost;
+    }
+
+    /**
+     * Returns the list of data values from nodes along the quickest path from
+     * the node with the provided start value to the node with the provided
+     * end value, when leaving start at the provided time, after the provided
+     * overlay has avoided or scaled some of the edges.
+     *
+     * @param start     the data item in the starting node for the path
+     * @param end       the data item in the destination node for the path
+     * @param departure seconds after midnight that the path leaves start
+     * @param overlay   the changes to make for this path only, or null
+     * @return list of data item from node along this quickest path
+     */
+    public List<NodeType> shortestPathData(NodeType start, NodeType end, double departure,
+                                           RouteOverlay<NodeType> overlay) {
+        return pathData(computeWorkspacePath(start, end, departure, true, overlay));
+    }
+
+    /**
+     * Returns the time taken by the quickest path from the node containing
+     * the start data to the node containing the end data, when leaving start
+     * at the provided time, after the provided overlay has avoided or scaled
+     * some of the edges.
+     *
+     * @param start     the data item in the starting node for the path
+     * @param end       the data item in the destination node for the path
+     * @param departure seconds after midnight that the path leaves start
+     * @param overlay   the changes to make for this path only, or null
+     * @return the seconds from leaving start until arriving at end
+     */
+    public double shortestPathCost(NodeType start, NodeType end, double departure,
+                                   RouteOverlay<NodeType> overlay) {
+        return computeWorkspacePath(start, end, departure, true, overlay).cost;
+    }
+
+    /**
+     * Adds this graph's arc flags and pooled search workspaces, if any, to
+     * the nodes, edges and map counted by BaseGraph.
+     */
+    @Override
+    protected void addFootprint(MemoryFootprint footprint) {
+        super.addFootprint(footprint);
+        ArcFlags flags = arcFlags;
+        if (flags != null)
+            footprint.add("arc flags", flags.getRegionCount(), flags.getBytes());
+        long bytes = 0;
+        int count = 0;
+        for (SearchWorkspace workspace : workspaces) {
+            bytes += workspace.getBytes();
+            count++;
+        }
+        if (count > 0)
+            footprint.add("search workspaces", count, bytes);
+    }
+
+    // records a finished search in a flight recording, if one wants it
+    private void commitSearch(GraphEvents.Search event, NodeType start, NodeType end, long settled,
+                              long queuePeak) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.start = String.valueOf(start);
+            event.end = String.valueOf(end);
+            event.settled = settled;
+            event.queuePeak = queuePeak;
+            event.commit();
+        }
+    }
+
+    // lists the data of each node on the path that ends at last, in order
+    private List<NodeType> pathData(SearchNode last) {
+        List<NodeType> result = new ArrayList<>();
+        for (SearchNode current = last; current != null; current = current.predecessor) {
+            result.add(current.node.data);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * This helper method runs a single Dijkstra search from the provided start
+     * location that continues until every one of the provided end locations
+     * has been reached, or until no more nodes can be reached from start. The
+     * SearchNodes that are returned each represent the end of the shortest
+     * path to one of those end locations, as in computeShortestPath.
+     *
+     * @param start the data item in the starting node for the paths
+     * @param ends  the data items in the destination nodes for the paths
+     * @return map from each reachable end location to the SearchNode for the
+     *         final node within its shortest path (unreachable end locations,
+     *         and those that are not in the graph, are left out of this map)
+     * @throws NoSuchElementException when start does not correspond to a
+     *                                graph node
+     */
+    protected MapADT<NodeType, SearchNode> computeShortestPaths(NodeType start, List<NodeType> ends) {
+        if (!nodes.containsKey(start)) {
+            throw new NoSuchElementException("Start data does not correspond to a graph node.");
+        }
+
+        //Mark each distinct end node that the search still has to reach.
+        MapADT<Node, Node> remaining = new HashtableMap<>();
+        for (NodeType end : ends) {
+            if (nodes.containsKey(end) && !remaining.containsKey(nodes.get(end))) {
+                remaining.put(nodes.get(end), nodes.get(end));
+            }
+        }
+
+        MapADT<NodeType, SearchNode> results = new HashtableMap<>();
+        PriorityQueue<SearchNode> pq = new PriorityQueue<>();
+        MapADT<Node, Node> visited = new HashtableMap<>();
+        pq.add(new SearchNode(nodes.get(start), 0.0, null));
+        long settled = 0, relaxed = 0, pushes = 1, stale = 0;
+
+        //Settle nodes in order of cost until every end node has been settled.
+        while (!pq.isEmpty() && remaining.getSize() > 0) {
+            SearchNode current = pq.remove();
+            if (visited.containsKey(current.node)) {
+                stale++;
+                continue;
+            }
+            visited.put(current.node, current.node);
+            settled++;
+
+            if (remaining.containsKey(current.node)) {
+                remaining.remove(current.node);
+                results.put(current.node.data, current);
+            }
+
+            for (Edge edge : current.node.edgesLeaving) {
+                relaxed++;
+                if (!visited.containsKey(edge.successor)) {
+                    pq.add(new SearchNode(edge.successor,
+                            current.cost + edge.data.doubleValue(), current));
+                    pushes++;
+                }
+            }
+        }
+        counters.recordSearch(settled, relaxed, pushes, stale);
+        return results;
+    }
+
+    /**
+     * Returns the shortest paths from the node with the provided start value
+     * to each of the nodes with the provided end values, computed with a
+     * single run of Dijkstra's algorithm that stops once every end has been
+     * reached.
+     *
+     * @param start the data item in the starting node for the paths
+     * @param ends  the data items in the destination nodes for the paths
+     * @return list holding the shortest path to each end, in the same order as
+     *         ends, where an end that cannot be reached has an empty path
+     * @throws NoSuchElementException if the start node cannot be found
+     */
+    public List<List<NodeType>> shortestPathDataToEach(NodeType start, List<NodeType> ends) {
+        MapADT<NodeType, SearchNode> endNodes = computeShortestPaths(start, ends);
+        List<List<NodeType>> result = new ArrayList<>();
+        for (NodeType end : ends) {
+            List<NodeType> path = new ArrayList<>();
+            if (endNodes.containsKey(end)) {
+                //Follow predecessors back from the end, then reverse.
+                SearchNode current = endNodes.get(end);
+                while (current != null) {
+                    path.add(current.node.data);
+                    current = current.predecessor;
+                }
+                Collections.reverse(path);
+            }
+            result.add(path);
+        }
+        return result;
+    }
+
+    /**
+     * This helper method runs a Dijkstra search from the provided start
+     * location that settles nodes in order of cost, and stops as soon as the
+     * cheapest path left in the queue costs more than the provided limit.
+     * Paths that would exceed the limit are never added to the queue.
+     *
+     * @param start the data item in the starting node for the search
+     * @param limit the greatest path cost that should be settled
+     * @return the SearchNode for each node within the limit, in the order
+     *         they were settled (which is ordered by increasing cost)
+     * @throws NoSuchElementException when start does not correspond to a
+     *                                graph node
+     */
+    protected List<SearchNode> computeReachable(NodeType start, double limit) {
+        if (!nodes.containsKey(start)) {
+            throw new NoSuchElementException("Start data does not correspond to a graph node.");
+        }
+
+        List<SearchNode> results = new ArrayList<>();
+        PriorityQueue<SearchNode> pq = new PriorityQueue<>();
+        MapADT<Node, Node> visited = new HashtableMap<>();
+        pq.add(new SearchNode(nodes.get(start), 0.0, null));
+        long settled = 0, relaxed = 0, pushes = 1, stale = 0;
+
+        while (!pq.isEmpty() && pq.peek().cost <= limit) {
+            SearchNode current = pq.remove();
+            if (visited.containsKey(current.node)) {
+                stale++;
+                continue;
+            }
+            visited.put(current.node, current.node);
+            settled++;
+            results.add(current);
+
+            for (Edge edge : current.node.edgesLeaving) {
+                relaxed++;
+                double cost = current.cost + edge.data.doubleValue();
+                if (cost <= limit && !visited.containsKey(edge.successor)) {
+                    pq.add(new SearchNode(edge.successor, cost, current));
+                    pushes++;
+                }
+            }
+        }
+        counters.recordSearch(settled, relaxed, pushes, stale);
+        return results;
+    }
+
+    /**
+     * Returns every node that can be reached from the node with the provided
+     * start value by a path costing no more than the provided limit, along
+     * with the cost of its shortest path. This search stops as soon as every
+     * node within the limit has been found, rather than exploring the whole
+     * graph.
+     *
+     * @param start the data item in the starting node
+     * @param limit the greatest path cost to include
+     * @return map from each reachable node's data to its shortest path cost,
+     *         iterating in order of increasing cost and beginning with start
+     * @throws NoSuchElementException if the start node cannot be found
+     */
+    public Map<NodeType, Double> reachableWithin(NodeType start, double limit) {
+        Map<NodeType, Double> result = new LinkedHashMap<>();
+        for (SearchNode reached : computeReachable(start, limit)) {
+            result.put(reached.node.data, reached.cost);
+        }
+        return result;
+    }
+
+    /**
+     * This helper method runs a single Dijkstra search backwards along the
+     * edges entering each node, starting from every one of the provided
+     * targets at once with a cost of zero. Each node is therefore settled by
+     * a path from its nearest target, and following predecessors from its
+     * SearchNode walks forward along its shortest path to that target. The
+     * search stops once the stop node has been settled, or when stop is
+     * null, continues until every node that can reach a target is settled.
+     *
+     * @param targets the data items in the nodes to search from, where those
+     *                that do not correspond to a graph node are ignored
+     * @param stop    the data item in the node to stop at, or null
+     * @return the SearchNode for each node that was settled, in the order
+     *         they were settled
+     */
+    protected List<SearchNode> computeNearest(List<NodeType> targets, NodeType stop) {
+        List<SearchNode> results = new ArrayList<>();
+        PriorityQueue<SearchNode> pq = new PriorityQueue<>();
+        MapADT<Node, Node> visited = new HashtableMap<>();
+        for (NodeType target : targets) {
+            if (nodes.containsKey(target)) {
+                pq.add(new SearchNode(nodes.get(target), 0.0, null));
+            }
+        }
+        long settled = 0, relaxed = 0, pushes = pq.size(), stale = 0;
+
+        while (!pq.isEmpty()) {
+            SearchNode current = pq.remove();
+            if (visited.containsKey(current.node)) {
+                stale++;
+                continue;
+            }
+            visited.put(current.node, current.node);
+            settled++;
+            results.add(current);
+            if (stop != null && current.node.data.equals(stop)) {
+                break;
+            }
+
+            //Walk edges backwards, from their successor to their predecessor.
+            for (Edge edge : current.node.edgesEntering) {
+                relaxed++;
+                if (!visited.containsKey(edge.predecessor)) {
+                    pq.add(new SearchNode(edge.predecessor,
+                            current.cost + edge.data.doubleValue(), current));
+                    pushes++;
+                }
+            }
+        }
+        counters.recordSearch(settled, relaxed, pushes, stale);
+        return results;
+    }
+
+    /**
+     * Returns the shortest path from the node with the provided start value
+     * to whichever of the nodes with the provided target values is nearest to
+     * it. This is found by a single search backwards from all of the targets
+     * at once, which stops as soon as it reaches start.
+     *
+     * @param start   the data item in the starting node for the path
+     * @param targets the data items in the nodes that the path may end at
+     * @return list of data items from nodes along the shortest path from start
+     *         to its nearest target, which ends with that target
+     * @throws NoSuchElementException if the start node cannot be found, or if
+     *                                none of the targets can be reached
+     */
+    public List<NodeType> shortestPathToNearest(NodeType start, List<NodeType> targets) {
+        if (!nodes.containsKey(start)) {
+            throw new NoSuchElementException("Start data does not correspond to a graph node.");
+        }
+        List<SearchNode> settled = computeNearest(targets, start);
+        if (settled.isEmpty() || !settled.get(settled.size() - 1).node.data.equals(start)) {
+            throw new NoSuchElementException("Path does not exist.");
+        }
+
+        //Predecessors of a backwards search already lead toward the target.
+        List<NodeType> result = new ArrayList<>();
+        for (SearchNode current = settled.get(settled.size() - 1); current != null;
+             current = current.predecessor) {
+            result.add(current.node.data);
+        }
+        return result;
+    }
+
+    /**
+     * Labels every node with whichever of the nodes with the provided target
+     * values is nearest to it (by the cost of the shortest path from the node
+     * to the target), partitioning the graph into one region per target. All
+     * of these labels are found by a single search backwards from every
+     * target at once.
+     *
+     * @param targets the data items in the nodes to label other nodes with
+     * @return map from the data in each node that can reach some target to
+     *         the data in its nearest target, in order of increasing cost
+     *         (nodes that cannot reach any target are left out)
+     */
+    public Map<NodeType, NodeType> nearestTargets(List<NodeType> targets) {
+        Map<NodeType, NodeType> labels = new LinkedHashMap<>();
+        for (SearchNode current : computeNearest(targets, null)) {
+            //A node's predecessor was settled first, and shares its target.
+            labels.put(current.node.data, current.predecessor == null
+                    ? current.node.data : labels.get(current.predecessor.node.data));
+        }
+        return labels;
+    }
+
+    /**
+     * Checks whether every edge in this graph is matched by an edge of equal
+     * weight in the opposite direction. In such a graph, the cost of the
+     * shortest path from one node to another is the same as the cost of the
+     * shortest path back.
+     *
+     * @return true if every edge has an equal reverse edge, or false otherwise
+     */
+    public boolean isSymmetric() {
+        for (NodeType data : nodes.getKeys()) {
+            for (Edge edge : nodes.get(data).edgesLeaving) {
+                boolean matched = false;
+                for (Edge reverse : edge.successor.edgesLeaving) {
+                    if (reverse.successor == edge.predecessor
+                            && reverse.data.doubleValue() == edge.data.doubleValue()) {
+                        matched = true;
+                        break;
+                    }
+                }
+                if (!matched) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     // TODO: implement 3+ tests in step 4.1
 
     /**
@@ -333,6 +975,219 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
         assertEquals(2.0, graph.getEdge('A', 'C'));          
     }
 
+    /**
+     * Test that one search from A finds the same paths as separate searches to
+     * each end, and leaves unreachable or unknown ends with empty paths.
+     */
+    @Test
+    public void dijkstraTest6() {
+        DijkstraGraph<Character, Double> graph = makeGraph();
+
+        List<Character> ends = List.of('E', 'F', 'G', 'Z', 'E', 'A');
+        List<List<Character>> paths = graph.shortestPathDataToEach('A', ends);
+
+        assertEquals(ends.size(), paths.size());
+        assertEquals(graph.shortestPathData('A', 'E'), paths.get(0));
+        assertEquals(graph.shortestPathData('A', 'F'), paths.get(1));
+        assertTrue(paths.get(2).isEmpty());
+        assertTrue(paths.get(3).isEmpty());
+        assertEquals(paths.get(0), paths.get(4));
+        assertEquals(List.of('A'), paths.get(5));
+
+        //An unknown start node should throw an exception.
+        assertThrows(NoSuchElementException.class, () -> {
+            graph.shortestPathDataToEach('Z', ends);
+        });
+    }
+
+    /**
+     * Test that a bounded search from A finds exactly the nodes within its
+     * limit (including those exactly at the limit), in order of cost.
+     */
+    @Test
+    public void dijkstraTest7() {
+        DijkstraGraph<Character, Double> graph = makeGraph();
+
+        Map<Character, Double> reached = graph.reachableWithin('A', 5.0);
+        assertEquals(List.of('A', 'C', 'B', 'D', 'F'), new ArrayList<>(reached.keySet()));
+        assertEquals(0.0, reached.get('A'));
+        assertEquals(graph.shortestPathCost('A', 'F'), reached.get('F'));
+
+        //Every reachable node is found when the limit is unbounded.
+        assertEquals(7, graph.reachableWithin('A', Double.POSITIVE_INFINITY).size());
+        assertEquals(Map.of('G', 0.0), graph.reachableWithin('G', 0.0));
+
+        //An unknown start node should throw an exception.
+        assertThrows(NoSuchElementException.class, () -> {
+            graph.reachableWithin('Z', 5.0);
+        });
+    }
+
+    /**
+     * Test that a graph is only symmetric once every edge has a reverse edge
+     * with the same weight.
+     */
+    @Test
+    public void dijkstraTest8() {
+        DijkstraGraph<Character, Double> graph = new DijkstraGraph<>();
+        graph.insertNode('A');
+        graph.insertNode('B');
+        assertTrue(graph.isSymmetric());
+
+        graph.insertEdge('A', 'B', 3.0);
+        assertFalse(graph.isSymmetric());
+        graph.insertEdge('B', 'A', 4.0);
+        assertFalse(graph.isSymmetric());
+        graph.insertEdge('B', 'A', 3.0);
+        assertTrue(graph.isSymmetric());
+        assertFalse(makeGraph().isSymmetric());
+    }
+
+    /**
+     * Test that paths to the nearest of several targets match the shortest
+     * of the individual paths, and that every node is labeled with the target
+     * that it reaches most cheaply.
+     */
+    @Test
+    public void dijkstraTest9() {
+        DijkstraGraph<Character, Double> graph = makeGraph();
+
+        assertEquals(List.of('A', 'B', 'D', 'F'), graph.shortestPathToNearest('A', List.of('E', 'F')));
+        assertEquals(List.of('B', 'D', 'E'), graph.shortestPathToNearest('B', List.of('E', 'C')));
+        assertEquals(List.of('E'), graph.shortestPathToNearest('E', List.of('E', 'A')));
+        assertThrows(NoSuchElementException.class, () -> {
+            graph.shortestPathToNearest('H', List.of('A', 'Z'));
+        });
+
+        //A, B, C and D are nearer to E, while F and G are nearer to H.
+        Map<Character, Character> labels = graph.nearestTargets(List.of('E', 'H'));
+        assertEquals(Map.of('A', 'E', 'B', 'E', 'C', 'E', 'D', 'E', 'E', 'E',
+                            'F', 'H', 'G', 'H', 'H', 'H'), labels);
+        assertTrue(graph.nearestTargets(List.of('Z')).isEmpty());
+    }
+
+    /**
+     * Test that paths with a departure time follow the travel time of each
+     * edge at the time it is reached, and match the static paths when no
+     * edge has a travel time.
+     */
+    @Test
+    public void dijkstraTest10() {
+        DijkstraGraph<Character, Double> graph = makeGraph();
+        assertEquals(graph.shortestPathData('A', 'E'), graph.shortestPathData('A', 'E', 8 * 3600));
+        assertEquals(8.0, graph.shortestPathCost('A', 'E', 8 * 3600));
+
+        //A to B is slow around 8:00, and back to its weight by 9:00.
+        TravelTimeFunction rush = TravelTimeFunction.parse("7:00=4 8:00=20 9:00=4");
+        assertTrue(graph.setTravelTime('A', 'B', rush));
+        assertFalse(graph.setTravelTime('A', 'G', rush));
+        assertEquals(12.0, rush.travelTime(7.5 * 3600));
+        assertEquals(4.0, rush.travelTime(3 * 3600));
+        assertEquals(List.of('A', 'C', 'D', 'E'), graph.shortestPathData('A', 'E', 8 * 3600));
+        assertEquals(10.0, graph.shortestPathCost('A', 'E', 8 * 3600));
+        assertEquals(List.of('A', 'B', 'D', 'E'), graph.shortestPathData('A', 'E', 6 * 3600));
+        assertEquals(8.0, graph.shortestPathCost('A', 'E', 24 * 3600 + 6 * 3600));
+
+        //Static searches still use each edge's weight.
+        assertEquals(8.0, graph.shortestPathCost('A', 'E'));
+
+        //A later departure may never arrive earlier.
+        assertThrows(IllegalArgumentException.class, () -> {
+            TravelTimeFunction.parse("8:00=600 8:01=0");
+        });
+        assertThrows(NoSuchElementException.class, () -> {
+            graph.shortestPathData('A', 'G', 0);
+        });
+    }
+
+    /**
+     * Test that an overlay avoids and scales edges for a single search,
+     * without changing the graph for any other search.
+     */
+    @Test
+    public void dijkstraTest11() {
+        DijkstraGraph<Character, Double> graph = makeGraph();
+        assertEquals(List.of('A', 'B', 'D', 'E'), graph.shortestPathData('A', 'E', new RouteOverlay<>()));
+
+        RouteOverlay<Character> overlay = new RouteOverlay<Character>().avoid('B');
+        assertEquals(List.of('A', 'C', 'D', 'E'), graph.shortestPathData('A', 'E', overlay));
+        assertEquals(10.0, graph.shortestPathCost('A', 'E', overlay));
+        assertEquals(List.of('A', 'B', 'D', 'E'), graph.shortestPathData('A', 'E'));
+        assertEquals(8.0, graph.shortestPathCost('A', 'E'));
+
+        //Scaling edges changes their cost, and avoiding an edge skips it.
+        overlay = new RouteOverlay<Character>().slower('B', 3).slower('D', 'E', 2);
+        assertEquals(List.of('A', 'C', 'D', 'E'), graph.shortestPathData('A', 'E', overlay));
+        assertEquals(13.0, graph.shortestPathCost('A', 'E', overlay));
+        assertEquals(Double.POSITIVE_INFINITY, overlay.slower('A', 'C', 1).avoid('A', 'C').getFactor('A', 'C'));
+        assertEquals(List.of('A', 'E'), graph.shortestPathData('A', 'E', overlay));
+
+        //Overlays apply to searches with a departure time as well.
+        graph.setTravelTime('A', 'B', TravelTimeFunction.parse("8:00=20"));
+        assertEquals(List.of('A', 'C', 'D', 'E'), graph.shortestPathData('A', 'E', 8 * 3600));
+        overlay = new RouteOverlay<Character>().avoid('C');
+        assertEquals(List.of('A', 'E'), graph.shortestPathData('A', 'E', 8 * 3600, overlay));
+        assertEquals(List.of('A', 'B', 'D', 'E'), graph.shortestPathData('A', 'E', overlay));
+
+        //Slowing an edge with a travel time scales its shortest duration and
+        //keeps the delay beyond it, so leaving later never arrives sooner.
+        TravelTimeFunction drop = TravelTimeFunction.parse("8:00=100 8:01=40 12:00=40");
+        assertEquals(180.0, drop.travelTime(8 * 3600, 3));
+        assertEquals(120.0, drop.travelTime(8 * 3600 + 60, 3));
+        assertEquals(60.0, drop.travelTime(8 * 3600 + 60, 1.5));
+        assertTrue(drop.travelTime(8 * 3600, 3) <= 60 + drop.travelTime(8 * 3600 + 60, 3));
+        overlay = new RouteOverlay<Character>().slower('B', 3);
+        assertEquals(List.of('A', 'C', 'D', 'E'), graph.shortestPathData('A', 'E', 8 * 3600, overlay));
+
+        //An avoided destination cannot be reached.
+        assertThrows(NoSuchElementException.class, () -> {
+            graph.shortestPathData('A', 'E', new RouteOverlay<Character>().avoid('E'));
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            new RouteOverlay<Character>().slower('A', -1);
+        });
+    }
+
+    /**
+     * Test that searches which skip edges by their arc flags find paths of
+     * the same cost, and that changing the graph drops the flags.
+     */
+    @Test
+    public void dijkstraTest12() throws java.io.IOException {
+        DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+        GraphGenerator generator = new GraphGenerator("road", 400, 4, 3);
+        for (int i = 0; i < generator.getNodeCount(); i++)
+            graph.insertNode(GraphGenerator.nameOf(i));
+        generator.generate((pred, succ, seconds) ->
+            graph.insertEdge(GraphGenerator.nameOf(pred), GraphGenerator.nameOf(succ), seconds));
+        List<String> nodes = graph.getAllNodes();
+        Map<String, Map<String, Double>> expected = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i += 7)
+            expected.put(nodes.get(i), graph.reachableWithin(nodes.get(i), Double.POSITIVE_INFINITY));
+
+        ArcFlags flags = graph.buildArcFlags(8, 2);
+        assertEquals(8, flags.getRegionCount());
+        for (String start : expected.keySet()) {
+            for (int j = 0; j < nodes.size(); j += 3) {
+                String end = nodes.get(j);
+                Double cost = expected.get(start).get(end);
+                if (cost == null) {
+                    assertThrows(NoSuchElementException.class, () -> graph.shortestPathCost(start, end));
+                    continue;
+                }
+                assertEquals(cost, graph.shortestPathCost(start, end), 1e-9);
+                assertEquals(cost, graph.shortestPathCost(start, end, (RouteOverlay<String>) null), 1e-9);
+                List<String> path = graph.shortestPathData(start, end);
+                assertEquals(end, path.get(path.size() - 1));
+            }
+        }
+
+        //Any change to the edges drops the flags.
+        graph.insertEdge(nodes.get(0), nodes.get(1), 1.0);
+        assertNull(graph.getArcFlags());
+        assertThrows(IllegalArgumentException.class, () -> graph.buildArcFlags(ArcFlags.MAX_REGIONS + 1, 1));
+    }
+
 }
 
 
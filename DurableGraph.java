@@ -0,0 +1,696 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32C;
+
+/**
+ * A graph whose changes survive a restart. Every insertNode, removeNode,
+ * insertEdge, removeEdge and setTravelTime that changes the wrapped graph is
+ * appended to a log in a directory, and has been written to disk by the time
+ * the call returns. Queries go straight to the wrapped graph.
+ *
+ * Each log record holds its length, a CRC-32C checksum, a sequence number,
+ * and the change. Writes use group commit: a thread that needs its change
+ * on disk either writes and syncs every record waiting to be written,
+ * including those of other threads, or waits for the thread that is
+ * already doing so. Many threads changing the graph at once then share each
+ * fsync, rather than each waiting for its own.
+ *
+ * Once compactAfter records have been logged since the last snapshot, a new
+ * GraphSnapshot is written in the background, and the logs before it are
+ * deleted. Changes only wait while the log is switched to a new file. The
+ * snapshot is then built without holding up changes, by reading the
+ * previous snapshot and replaying the logs since it into a separate graph,
+ * so compacting briefly takes memory for a second copy of the graph. A
+ * snapshot is written to a temporary file and renamed into place once it is
+ * synced, so a crash never leaves a partial snapshot, and older files are
+ * only deleted after that.
+ *
+ * Opening a directory recovers the graph by reading the latest snapshot,
+ * then replaying each log, which is mapped into memory, from the first
+ * record after that snapshot. A record cut short by a crash at the end of
+ * the last log is discarded, along with anything after it.
+ *
+ * Changes are made one at a time, but queries are not synchronized with
+ * them, so a graph that is queried while it changes must allow that itself.
+ * A change is made to the wrapped graph before its record is written, so
+ * queries may see it before it is durable, and a crash before the call
+ * returns may lose it. If the record cannot be written, the graph keeps the
+ * change, and every later change throws, so the graph never strays further
+ * from the log than that one change.
+ *
+ * A change listener (see setChangeListener) is told of each change once it
+ * is durable, so that anything computed from the graph, such as rendered
+ * pages, can be dropped when the change may have made it stale.
+ */
+public class DurableGraph implements GraphADT<String,Double>, AutoCloseable {
+
+    // the changes that records hold
+    private static final byte INSERT_NODE = 1;
+    private static final byte REMOVE_NODE = 2;
+    private static final byte INSERT_EDGE = 3;
+    private static final byte REMOVE_EDGE = 4;
+    private static final byte SET_TRAVEL_TIME = 5;
+
+    // files are named by the sequence number that they start after
+    private static final String SNAPSHOT_PREFIX = "graph-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final String LOG_PREFIX = "mutations-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final int HEADER_BYTES = 8; // length and checksum of each record
+    private static final int MAX_RECORD_BYTES = 1 << 24;
+
+    // encodes one change into a record
+    private interface Change {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private final GraphADT<String,Double> graph;
+    private final Path directory;
+    private final long compactAfter;
+
+    private final Object compactLock = new Object(); // held by one compaction at a time
+    private final Object lock = new Object(); // guards the graph's changes and all fields below
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(); // records not yet written
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(); // the record being encoded
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32C checksum = new CRC32C();
+    private FileChannel log;
+    private long snapshotSequence; // the last change included in the latest snapshot
+    private long lastSequence; // the last change made
+    private long durableSequence; // the last change written and synced
+    private long recovered = 0; // changes replayed from the logs when opened
+    private long syncs = 0;
+    private boolean flushing = false;
+    private boolean compactionQueued = false;
+    private boolean closed = false;
+    private IOException failure = null;
+    private volatile Consumer<GraphDelta> listener = null;
+
+    /**
+     * Opens the log in a directory, recovering the graph from it. When the
+     * directory holds no snapshot, a snapshot of the graph as it is is
+     * written first, so that an existing map can be loaded and then made
+     * durable.
+     * @param directory the directory of snapshots and logs, which is created
+     *        if it does not exist
+     * @param graph the graph to change, which must be empty when the
+     *        directory already holds a snapshot
+     * @param compactAfter the number of changes to log before writing a new
+     *        snapshot
+     * @throws IOException if the directory cannot be read or written, or a
+     *         log is damaged before its end
+     * @throws IllegalArgumentException if compactAfter is not positive, or
+     *         a snapshot would be read into a graph that is not empty
+     */
+    public DurableGraph(Path directory, GraphADT<String,Double> graph, long compactAfter) throws IOException {
+        if (compactAfter < 1)
+            throw new IllegalArgumentException("compactAfter must be positive, not " + compactAfter);
+        this.graph = graph;
+        this.directory = directory;
+        this.compactAfter = compactAfter;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + TEMPORARY_SUFFIX)) {
+            for (Path file : files) Files.delete(file);
+        }
+
+        List<Long> snapshots = sequences(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        if (snapshots.isEmpty()) {
+            writeSnapshot(0, graph);
+        } else {
+            if (graph.getNodeCount() > 0)
+                throw new IllegalArgumentException("A graph must be empty to recover " + directory + " into it.");
+            snapshotSequence = snapshots.get(snapshots.size() - 1);
+            GraphSnapshot.read(file(SNAPSHOT_PREFIX, snapshotSequence, SNAPSHOT_SUFFIX).toString(), graph);
+        }
+        lastSequence = snapshotSequence;
+
+        List<Long> logs = sequences(LOG_PREFIX, LOG_SUFFIX);
+        for (int i = 0; i < logs.size(); i++)
+            lastSequence = replay(file(LOG_PREFIX, logs.get(i), LOG_SUFFIX), i == logs.size() - 1, graph,
+                                  lastSequence);
+        recovered = lastSequence - snapshotSequence;
+        durableSequence = lastSequence;
+        Path current = logs.isEmpty() ? file(LOG_PREFIX, lastSequence, LOG_SUFFIX)
+                                      : file(LOG_PREFIX, logs.get(logs.size() - 1), LOG_SUFFIX);
+        log = FileChannel.open(current, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                               StandardOpenOption.APPEND);
+        forceDirectory();
+    }
+
+    private Path file(String prefix, long sequence, String suffix) {
+        return directory.resolve(prefix + sequence + suffix);
+    }
+
+    // the sequence numbers of the files with this prefix and suffix, in order
+    private List<Long> sequences(String prefix, String suffix) throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    sequences.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        Collections.sort(sequences);
+        return sequences;
+    }
+
+    // applies the records of a log that come after a sequence number to a
+    // graph, cutting off a damaged record at the end of the last log, and
+    // returns the sequence number of the last change applied
+    private long replay(Path file, boolean last, GraphADT<String,Double> target, long sequence)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            long valid = 0;
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int length = buffer.getInt();
+                int expected = buffer.getInt();
+                if (length < 9 || length > MAX_RECORD_BYTES || length > buffer.remaining())
+                    break;
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                CRC32C crc = new CRC32C();
+                crc.update(bytes);
+                if ((int) crc.getValue() != expected)
+                    break;
+                sequence = apply(bytes, file, target, sequence);
+                valid = buffer.position();
+            }
+            if (valid < size) {
+                if (!last)
+                    throw new IOException(file + " is damaged at byte " + valid + ", before the end of the log.");
+                channel.truncate(valid);
+                channel.force(true);
+            }
+        }
+        return sequence;
+    }
+
+    // makes the change in one record, unless the graph already has it, and
+    // returns the sequence number of the last change the graph has
+    private long apply(byte[] bytes, Path file, GraphADT<String,Double> target, long previous)
+        throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        long sequence = in.readLong();
+        if (sequence <= previous)
+            return previous;
+        if (sequence != previous + 1)
+            throw new IOException(file + " skips from change " + previous + " to " + sequence + ".");
+        byte operation = in.readByte();
+        switch (operation) {
+        case INSERT_NODE:
+            target.insertNode(in.readUTF());
+            break;
+        case REMOVE_NODE:
+            target.removeNode(in.readUTF());
+            break;
+        case INSERT_EDGE:
+            target.insertEdge(in.readUTF(), in.readUTF(), in.readDouble());
+            break;
+        case REMOVE_EDGE:
+            target.removeEdge(in.readUTF(), in.readUTF());
+            break;
+        case SET_TRAVEL_TIME: {
+            String pred = in.readUTF();
+            String succ = in.readUTF();
+            int count = in.readInt();
+            TravelTimeFunction travelTime = null;
+            if (count >= 0) {
+                double[] times = new double[count];
+                double[] durations = new double[count];
+                for (int i = 0; i < count; i++) {
+                    times[i] = in.readDouble();
+                    durations[i] = in.readDouble();
+                }
+                travelTime = new TravelTimeFunction(times, durations);
+            }
+            target.setTravelTime(pred, succ, travelTime);
+            break;
+        }
+        default:
+            throw new IOException(file + " has change " + sequence + " of unknown type " + operation + ".");
+        }
+        return sequence;
+    }
+
+    // writes a graph to the snapshot of this sequence number, and returns
+    // once the snapshot is durable
+    private void writeSnapshot(long sequence, GraphADT<String,Double> source) throws IOException {
+        Path snapshot = file(SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX);
+        Path temporary = directory.resolve(snapshot.getFileName() + TEMPORARY_SUFFIX);
+        GraphSnapshot.write(temporary.toString(), source, null);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory();
+        synchronized (lock) {
+            snapshotSequence = sequence;
+        }
+    }
+
+    // makes renames and new files durable, where the platform allows it
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not every platform can sync a directory
+        }
+    }
+
+    /**
+     * Starts a new log, writes a snapshot of every change before it, and
+     * deletes the older snapshots and logs. Changes only wait while the log
+     * is switched; the snapshot is built from the previous snapshot and the
+     * logs since it, not from the graph being changed.
+     * @throws IOException if the snapshot cannot be written, in which case
+     *         the logs still hold every change
+     */
+    public void compact() throws IOException {
+        synchronized (compactLock) {
+            long previous;
+            long sequence;
+            synchronized (lock) {
+                awaitFlush();
+                if (closed)
+                    return;
+                flushPending();
+                previous = snapshotSequence;
+                sequence = lastSequence;
+                if (sequence == previous)
+                    return;
+                log.close();
+                log = FileChannel.open(file(LOG_PREFIX, sequence, LOG_SUFFIX), StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                forceDirectory();
+            }
+
+            //The logs before the new one are closed, and hold every change up to sequence.
+            DijkstraGraph<String,Double> snapshot = new DijkstraGraph<>();
+            GraphSnapshot.read(file(SNAPSHOT_PREFIX, previous, SNAPSHOT_SUFFIX).toString(), snapshot);
+            long replayed = previous;
+            for (long logSequence : sequences(LOG_PREFIX, LOG_SUFFIX))
+                if (logSequence < sequence)
+                    replayed = replay(file(LOG_PREFIX, logSequence, LOG_SUFFIX), false, snapshot, replayed);
+            if (replayed != sequence)
+                throw new IOException("The logs in " + directory + " end at change " + replayed + ", not " +
+                                      sequence + ".");
+            writeSnapshot(sequence, snapshot);
+
+            for (long older : sequences(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX))
+                if (older < sequence) Files.delete(file(SNAPSHOT_PREFIX, older, SNAPSHOT_SUFFIX));
+            for (long older : sequences(LOG_PREFIX, LOG_SUFFIX))
+                if (older < sequence) Files.delete(file(LOG_PREFIX, older, LOG_SUFFIX));
+        }
+    }
+
+    // waits, while holding the lock, until no thread is writing records
+    private void awaitFlush() {
+        boolean interrupted = false;
+        while (flushing) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    // writes and syncs every pending record, while holding the lock
+    private void flushPending() throws IOException {
+        if (failure != null)
+            throw failure;
+        if (pending.size() > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+            while (buffer.hasRemaining()) log.write(buffer);
+            pending.reset();
+        }
+        log.force(false);
+        syncs++;
+        durableSequence = lastSequence;
+        lock.notifyAll();
+    }
+
+    // makes a change to the graph, and logs it if it changed anything:
+    // apply makes the change and records it in a delta, and the change is
+    // made before its record is written and synced, so it may be seen, and
+    // lost in a crash, before this returns; the listener is only told of it
+    // once it is durable
+    private boolean mutate(Predicate<GraphDelta> apply, Change change) {
+        long sequence;
+        GraphDelta delta = new GraphDelta();
+        synchronized (lock) {
+            if (closed)
+                throw new IllegalStateException("The log in " + directory + " is closed.");
+            if (failure != null)
+                throw new UncheckedIOException("The log in " + directory + " could not be written.", failure);
+            if (!apply.test(delta))
+                return false;
+            sequence = ++lastSequence;
+            try {
+                record.reset();
+                recordOut.writeLong(sequence);
+                change.write(recordOut);
+                checksum.reset();
+                checksum.update(record.toByteArray());
+                pendingOut.writeInt(record.size());
+                pendingOut.writeInt((int) checksum.getValue());
+                record.writeTo(pendingOut);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // never thrown when writing to memory
+            }
+            if (!compactionQueued && sequence - snapshotSequence >= compactAfter) {
+                compactionQueued = true;
+                Thread compactor = new Thread(this::compactInBackground, "graph-compactor");
+                compactor.setDaemon(true);
+                compactor.start();
+            }
+        }
+        awaitDurable(sequence);
+        Consumer<GraphDelta> listener = this.listener;
+        if (listener != null)
+            listener.accept(delta);
+        return true;
+    }
+
+    private void compactInBackground() {
+        try {
+            compact();
+        } catch (IOException e) {
+            System.err.println("Unable to compact " + directory + ", will retry: " + e);
+        } finally {
+            synchronized (lock) {
+                compactionQueued = false;
+            }
+        }
+    }
+
+    // returns once the change with this sequence number is synced, either
+    // by syncing every pending record or by waiting for the thread that is
+    private void awaitDurable(long sequence) {
+        while (true) {
+            byte[] batch;
+            long upTo;
+            FileChannel channel;
+            synchronized (lock) {
+                while (flushing && durableSequence < sequence) {
+                    awaitFlush();
+                }
+                if (durableSequence >= sequence)
+                    return;
+                if (failure != null)
+                    throw new UncheckedIOException("The log in " + directory + " could not be written.", failure);
+                flushing = true;
+                batch = pending.toByteArray();
+                pending.reset();
+                upTo = lastSequence;
+                channel = log;
+            }
+            IOException error = null;
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                while (buffer.hasRemaining()) channel.write(buffer);
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            synchronized (lock) {
+                flushing = false;
+                syncs++;
+                if (error != null)
+                    failure = error;
+                else
+                    durableSequence = upTo;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Syncs any changes that are still being written, and closes the log.
+     * The graph itself is left open.
+     * @throws IOException if the last changes cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            awaitFlush();
+            if (closed)
+                return;
+            closed = true;
+            try {
+                flushPending();
+            } finally {
+                log.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last change, which counts every
+     * change logged since the directory was first opened.
+     */
+    public long getSequence() {
+        synchronized (lock) {
+            return lastSequence;
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last change in the latest snapshot.
+     */
+    public long getSnapshotSequence() {
+        synchronized (lock) {
+            return snapshotSequence;
+        }
+    }
+
+    /**
+     * Returns the number of changes replayed from the logs when opened.
+     */
+    public long getRecoveredCount() {
+        return recovered;
+    }
+
+    /**
+     * Returns the number of times that the log has been synced to disk.
+     */
+    public long getSyncCount() {
+        synchronized (lock) {
+            return syncs;
+        }
+    }
+
+    /**
+     * Sets a listener to tell of each change once it is durable, as a delta
+     * of that one change. Listeners are called on the thread that made the
+     * change, before its call returns.
+     * @param listener the listener, or null to tell no one
+     */
+    public void setChangeListener(Consumer<GraphDelta> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the graph that changes are made to.
+     */
+    public GraphADT<String,Double> getGraph() {
+        return graph;
+    }
+
+    @Override
+    public boolean insertNode(String data) {
+        return mutate(delta -> {
+            if (!graph.insertNode(data)) return false;
+            delta.addNode(data);
+            return true;
+        }, out -> {
+            out.writeByte(INSERT_NODE);
+            out.writeUTF(data);
+        });
+    }
+
+    @Override
+    public boolean removeNode(String data) {
+        return mutate(delta -> {
+            if (!graph.removeNode(data)) return false;
+            delta.removeNode(data);
+            return true;
+        }, out -> {
+            out.writeByte(REMOVE_NODE);
+            out.writeUTF(data);
+        });
+    }
+
+    @Override
+    public boolean insertEdge(String pred, String succ, Double weight) {
+        return mutate(delta -> {
+            Double previous = graph.containsEdge(pred, succ) ? graph.getEdge(pred, succ) : null;
+            if (!graph.insertEdge(pred, succ, weight)) return false;
+            if (previous == null)
+                delta.addEdge(pred, succ, weight, null);
+            else
+                delta.reweightEdge(pred, succ, previous, weight, graph.getTravelTime(pred, succ));
+            return true;
+        }, out -> {
+            out.writeByte(INSERT_EDGE);
+            out.writeUTF(pred);
+            out.writeUTF(succ);
+            out.writeDouble(weight);
+        });
+    }
+
+    @Override
+    public boolean removeEdge(String pred, String succ) {
+        return mutate(delta -> {
+            Double previous = graph.containsEdge(pred, succ) ? graph.getEdge(pred, succ) : null;
+            if (!graph.removeEdge(pred, succ)) return false;
+            delta.removeEdge(pred, succ, previous);
+            return true;
+        }, out -> {
+            out.writeByte(REMOVE_EDGE);
+            out.writeUTF(pred);
+            out.writeUTF(succ);
+        });
+    }
+
+    @Override
+    public boolean setTravelTime(String pred, String succ, TravelTimeFunction travelTime) {
+        return mutate(delta -> {
+            if (!graph.setTravelTime(pred, succ, travelTime)) return false;
+            double weight = graph.getEdge(pred, succ);
+            delta.reweightEdge(pred, succ, weight, weight, travelTime);
+            return true;
+        }, out -> {
+            out.writeByte(SET_TRAVEL_TIME);
+            out.writeUTF(pred);
+            out.writeUTF(succ);
+            if (travelTime == null) {
+                out.writeInt(-1);
+                return;
+            }
+            double[] times = travelTime.getTimes();
+            double[] durations = travelTime.getDurations();
+            out.writeInt(times.length);
+            for (int i = 0; i < times.length; i++) {
+                out.writeDouble(times[i]);
+                out.writeDouble(durations[i]);
+            }
+        });
+    }
+
+    @Override
+    public boolean containsNode(String data) { return graph.containsNode(data); }
+
+    @Override
+    public List<String> getAllNodes() { return graph.getAllNodes(); }
+
+    @Override
+    public int getNodeCount() { return graph.getNodeCount(); }
+
+    @Override
+    public boolean containsEdge(String pred, String succ) { return graph.containsEdge(pred, succ); }
+
+    @Override
+    public Double getEdge(String pred, String succ) { return graph.getEdge(pred, succ); }
+
+    @Override
+    public TravelTimeFunction getTravelTime(String pred, String succ) { return graph.getTravelTime(pred, succ); }
+
+    @Override
+    public int getEdgeCount() { return graph.getEdgeCount(); }
+
+    @Override
+    public List<String> getSuccessors(String data) { return graph.getSuccessors(data); }
+
+    @Override
+    public MemoryFootprint getFootprint() { return graph.getFootprint(); }
+
+    @Override
+    public List<String> shortestPathData(String start, String end) {
+        return graph.shortestPathData(start, end);
+    }
+
+    @Override
+    public double shortestPathCost(String start, String end) {
+        return graph.shortestPathCost(start, end);
+    }
+
+    @Override
+    public List<String> shortestPathData(String start, String end, double departure) {
+        return graph.shortestPathData(start, end, departure);
+    }
+
+    @Override
+    public double shortestPathCost(String start, String end, double departure) {
+        return graph.shortestPathCost(start, end, departure);
+    }
+
+    @Override
+    public List<String> shortestPathData(String start, String end, RouteOverlay<String> overlay) {
+        return graph.shortestPathData(start, end, overlay);
+    }
+
+    @Override
+    public double shortestPathCost(String start, String end, RouteOverlay<String> overlay) {
+        return graph.shortestPathCost(start, end, overlay);
+    }
+
+    @Override
+    public List<String> shortestPathData(String start, String end, double departure,
+                                         RouteOverlay<String> overlay) {
+        return graph.shortestPathData(start, end, departure, overlay);
+    }
+
+    @Override
+    public double shortestPathCost(String start, String end, double departure, RouteOverlay<String> overlay) {
+        return graph.shortestPathCost(start, end, departure, overlay);
+    }
+
+    @Override
+    public List<List<String>> shortestPathDataToEach(String start, List<String> ends) {
+        return graph.shortestPathDataToEach(start, ends);
+    }
+
+    @Override
+    public Map<String,Double> reachableWithin(String start, double limit) {
+        return graph.reachableWithin(start, limit);
+    }
+
+    @Override
+    public List<String> shortestPathToNearest(String start, List<String> targets) {
+        return graph.shortestPathToNearest(start, targets);
+    }
+
+    @Override
+    public Map<String,String> nearestTargets(List<String> targets) {
+        return graph.nearestTargets(targets);
+    }
+}
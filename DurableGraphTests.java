@@ -0,0 +1,123 @@
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of DurableGraph, kept apart from it because JUnit can only create a
+ * test class that has a single constructor that it knows how to call.
+ */
+public class DurableGraphTests {
+
+    /**
+     * Test that changes made through a DurableGraph are recovered after it
+     * is reopened, from its snapshot and log, even when the log ends with a
+     * partly written record.
+     */
+    @Test
+    public void durableTest1() throws Exception {
+        Path directory = Files.createTempDirectory("durable");
+        try {
+            DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+            graph.insertNode("A");
+            DurableGraph durable = new DurableGraph(directory, graph, Long.MAX_VALUE);
+            assertTrue(durable.insertNode("B"));
+            assertFalse(durable.insertNode("B"));
+            assertTrue(durable.insertNode("C"));
+            assertTrue(durable.insertEdge("A", "B", 2.0));
+            assertTrue(durable.insertEdge("B", "C", 3.0));
+            assertTrue(durable.insertEdge("A", "C", 9.0));
+            assertTrue(durable.setTravelTime("A", "B", TravelTimeFunction.parse("8:00=2 9:00=5")));
+            assertEquals(6, durable.getSequence());
+            durable.compact();
+            assertEquals(6, durable.getSnapshotSequence());
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(List.of("graph-6.snap", "mutations-6.log"),
+                             files.map(file -> file.getFileName().toString()).sorted().toList());
+            }
+            assertTrue(durable.removeEdge("A", "C"));
+            assertTrue(durable.insertEdge("B", "C", 4.0));
+
+            //Changes from several threads at once are all logged.
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int id = t;
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 25; i++) durable.insertNode("T" + id + "-" + i);
+                }));
+            }
+            for (Thread thread : threads) thread.start();
+            for (Thread thread : threads) thread.join();
+            assertTrue(durable.getSyncCount() <= durable.getSequence());
+            durable.close();
+            assertThrows(IllegalStateException.class, () -> durable.insertNode("D"));
+
+            //A record cut short at the end of the log is dropped.
+            try (FileOutputStream log = new FileOutputStream(directory.resolve("mutations-6.log").toFile(), true)) {
+                log.write(new byte[] { 0, 0, 0, 40, 1, 2, 3 });
+            }
+            for (int reopen = 0; reopen < 2; reopen++) {
+                DijkstraGraph<String, Double> recovered = new DijkstraGraph<>();
+                try (DurableGraph again = new DurableGraph(directory, recovered, Long.MAX_VALUE)) {
+                    assertEquals(108, again.getSequence());
+                    assertEquals(102, again.getRecoveredCount());
+                    assertEquals(103, recovered.getNodeCount());
+                    assertEquals(2, recovered.getEdgeCount());
+                    assertFalse(recovered.containsEdge("A", "C"));
+                    assertEquals(4.0, recovered.getEdge("B", "C"));
+                    assertEquals(5.0, recovered.shortestPathCost("A", "B", 9 * 3600));
+                }
+            }
+            assertThrows(IllegalArgumentException.class, () -> new DurableGraph(directory, graph, 1));
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+                    Files.delete(file);
+            }
+        }
+    }
+
+
+    /**
+     * Test that the change listener is told of each change that alters the
+     * graph, once it is logged, as a delta of that one change.
+     */
+    @Test
+    public void durableTest2() throws Exception {
+        Path directory = Files.createTempDirectory("durable");
+        try (DurableGraph durable = new DurableGraph(directory, new DijkstraGraph<>(), Long.MAX_VALUE)) {
+            List<GraphDelta> deltas = new ArrayList<>();
+            durable.setChangeListener(delta -> {
+                assertTrue(durable.getSequence() > deltas.size());
+                deltas.add(delta);
+            });
+            durable.insertNode("A");
+            durable.insertNode("B");
+            assertFalse(durable.insertNode("A"));
+            durable.insertEdge("A", "B", 5.0);
+            durable.insertEdge("A", "B", 7.0);
+            durable.setTravelTime("A", "B", null);
+            durable.removeEdge("A", "B");
+            assertFalse(durable.removeEdge("A", "B"));
+            durable.removeNode("B");
+            assertEquals(7, deltas.size());
+            assertEquals(List.of("A"), deltas.get(0).getAddedNodes());
+            assertEquals(5.0, deltas.get(2).getAddedEdges().get(0).weight);
+
+            //Slowing a path cannot shorten any other, and keeping its time changes no weight.
+            assertEquals(5.0, deltas.get(3).getReweightedEdges().get(0).previousWeight);
+            assertTrue(deltas.get(3).shortensNoPaths());
+            assertFalse(deltas.get(4).changesWeights());
+            assertEquals(Set.of("A", "B"), deltas.get(5).getAffectedNodes());
+            assertEquals(List.of("B"), deltas.get(6).getRemovedNodes());
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+                    Files.delete(file);
+            }
+        }
+    }
+}
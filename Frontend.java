@@ -1,4 +1,9 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * The Frontend class implements the FrontendInterface,
@@ -40,35 +45,72 @@ public class Frontend implements FrontendInterface {
      * - An ordered list (ol) of locations along the shortest path.
      * - A paragraph with the total travel time.
      * If no path exists, an appropriate error message is returned.
+     * Mistyped locations are resolved to the most similar location names first.
      * @param start the starting location.
      * @param end the destination location.
      * @return an HTML string describing the shortest path and travel time.
      */
     @Override
     public String generateShortestPathResponseHTML(String start, String end) {
-        List<String> locations = backend.findLocationsOnShortestPath(start, end);
-        List<Double> times = backend.findTimesOnShortestPath(start, end);
+        return toHTML(out -> writeShortestPathResponseHTML(start, end, out));
+    }
+
+    /**
+     * Writes the fragment described by generateShortestPathResponseHTML to out.
+     * @param start the starting location.
+     * @param end the destination location.
+     * @param out the writer the fragment is written to.
+     * @throws IOException if out cannot be written to.
+     */
+    @Override
+    public void writeShortestPathResponseHTML(String start, String end, HtmlWriter out)
+        throws IOException {
+        String typedStart = start;
+        String typedEnd = end;
+        start = resolve(start);
+        end = resolve(end);
+        if (start == null) {
+            out.markup("<p>No location matches ").text(typedStart).markup(".</p>");
+            return;
+        }
+        if (end == null) {
+            out.markup("<p>No location matches ").text(typedEnd).markup(".</p>");
+            return;
+        }
+
+        List<String> locations;
+        List<Double> times;
+        try {
+            locations = backend.findLocationsOnShortestPath(start, end);
+            times = backend.findTimesOnShortestPath(start, end);
+        } catch (NoSuchElementException e) {
+            locations = null;
+            times = null;
+        }
         
-        // Return error message if no path is found.
+        // Write error message if no path is found.
         if (locations == null || locations.isEmpty()) {
-            return "<p>No path found from " + start + " to " + end + ".</p>";
+            out.markup("<p>No path found from ").text(start).markup(" to ").text(end).markup(".</p>");
+            return;
         }
         
-        StringBuilder sb = new StringBuilder();
-        sb.append("<p>Shortest path from ").append(start)
-          .append(" to ").append(end).append(":</p>");
-        sb.append("<ol>");
+        if (!start.equals(typedStart) || !end.equals(typedEnd)) {
+            out.markup("<p>Showing results for ").text(start)
+               .markup(" to ").text(end).markup(".</p>");
+        }
+        out.markup("<p>Shortest path from ").text(start)
+           .markup(" to ").text(end).markup(":</p>");
+        out.markup("<ol>");
         for (String location : locations) {
-            sb.append("<li>").append(location).append("</li>");
+            out.markup("<li>").text(location).markup("</li>");
         }
-        sb.append("</ol>");
+        out.markup("</ol>");
         
         double totalTime = 0;
         for (double t : times) {
             totalTime += t;
         }
-        sb.append("<p>Total travel time: ").append(totalTime).append(" seconds.</p>");
-        return sb.toString();
+        out.markup("<p>Total travel time: ").text(totalTime).markup(" seconds.</p>");
     }
 
     /**
@@ -92,27 +134,72 @@ public class Frontend implements FrontendInterface {
      * - A paragraph with the furthest destination found.
      * - An ordered list (ol) of locations along the path between the start and the furthest destination.
      * If an error occurs (e.g., no path exists), an error message is returned.
+     * A mistyped start location is resolved to the most similar location name first.
      * @param start the starting location.
      * @return an HTML string describing the furthest destination and the path.
      */
     @Override
     public String generateFurthestDestinationFromResponseHTML(String start) {
+        return toHTML(out -> writeFurthestDestinationFromResponseHTML(start, out));
+    }
+
+    /**
+     * Writes the fragment described by generateFurthestDestinationFromResponseHTML to out.
+     * @param start the starting location.
+     * @param out the writer the fragment is written to.
+     * @throws IOException if out cannot be written to.
+     */
+    @Override
+    public void writeFurthestDestinationFromResponseHTML(String start, HtmlWriter out)
+        throws IOException {
+        String resolved = resolve(start);
+        if (resolved == null) {
+            out.markup("<p>No location matches ").text(start).markup(".</p>");
+            return;
+        }
+        start = resolved;
         String furthest;
         try {
             furthest = backend.getFurthestDestinationFrom(start);
         } catch (Exception e) {
-            return "<p>Error: " + e.getMessage() + "</p>";
+            out.markup("<p>Error: ").text(e.getMessage()).markup("</p>");
+            return;
         }
         
         List<String> locations = backend.findLocationsOnShortestPath(start, furthest);
-        StringBuilder sb = new StringBuilder();
-        sb.append("<p>Searching for the furthest destination from ").append(start).append(":</p>");
-        sb.append("<p>Furthest destination: ").append(furthest).append("</p>");
-        sb.append("<ol>");
+        out.markup("<p>Searching for the furthest destination from ").text(start).markup(":</p>");
+        out.markup("<p>Furthest destination: ").text(furthest).markup("</p>");
+        out.markup("<ol>");
         for (String loc : locations) {
-            sb.append("<li>").append(loc).append("</li>");
+            out.markup("<li>").text(loc).markup("</li>");
         }
-        sb.append("</ol>");
-        return sb.toString();
+        out.markup("</ol>");
+    }
+
+    /**
+     * Renders a fragment into a String, for the methods that return one.
+     */
+    private static String toHTML(HtmlWriter.Fragment fragment) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            HtmlWriter out = HtmlWriter.acquire(bytes);
+            try {
+                fragment.write(out);
+            } finally {
+                out.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // never thrown when writing to memory
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the location that best matches a typed name, or null if no
+     * location is similar enough.
+     */
+    private String resolve(String typed) {
+        List<String> matches = backend.resolveLocation(typed, 1);
+        return matches.isEmpty() ? null : matches.get(0);
     }
 }
@@ -1,3 +1,5 @@
+import java.io.IOException;
+
 /**
  * This is the interface that a frontend developer will implement.  It will 
  * enable users to access the functionality exposed by the BackendInterface.
@@ -47,6 +49,19 @@ public interface FrontendInterface {
      */
     public String generateShortestPathResponseHTML(String start, String end);
 
+    /**
+     * Writes the same HTML fragment as generateShortestPathResponseHTML to
+     * out, without first building it as a String. Any text in the fragment,
+     * such as location names, is written with out.text() so that it is
+     * escaped.
+     * @param start is the starting location to find a shortest path from
+     * @param end is the destination that this shortest path should end at
+     * @param out is the writer that the fragment is written to
+     * @throws IOException if out cannot be written to
+     */
+    public void writeShortestPathResponseHTML(String start, String end, HtmlWriter out)
+        throws IOException;
+
     /**
      * Returns an HTML fragment that can be embedded within the body of a
      * larger html page.  This HTML output should include:
@@ -72,5 +87,16 @@ public interface FrontendInterface {
      *        specified start location
      */
     public String generateFurthestDestinationFromResponseHTML(String start);
+
+    /**
+     * Writes the same HTML fragment as
+     * generateFurthestDestinationFromResponseHTML to out, without first
+     * building it as a String, and with any text in it escaped.
+     * @param start is the starting location to find the furthest dest from
+     * @param out is the writer that the fragment is written to
+     * @throws IOException if out cannot be written to
+     */
+    public void writeFurthestDestinationFromResponseHTML(String start, HtmlWriter out)
+        throws IOException;
  
 }
@@ -1,4 +1,5 @@
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
@@ -99,6 +100,30 @@ public interface GraphADT<NodeType, EdgeType extends Number> {
    */
   public EdgeType getEdge(NodeType pred, NodeType succ);
 
+  /**
+   * Sets the travel time of an edge to depend on the time of day that it is
+   * taken, or to be its weight at all times. Only searches that are given a
+   * departure time use this travel time; all others use the edge's weight.
+   *
+   * @param pred the data item contained in the source node for the edge
+   * @param succ the data item contained in the target node for the edge
+   * @param travelTime the edge's travel time, or null to use its weight
+   * @return true if the travel time was set, or false if such an edge is not
+   *         found in the graph
+   */
+  public boolean setTravelTime(NodeType pred, NodeType succ, TravelTimeFunction travelTime);
+
+  /**
+   * Return the time of day dependent travel time of a specific edge.
+   *
+   * @param pred the data item contained in the source node for the edge
+   * @param succ the data item contained in the target node for the edge
+   * @return the edge's travel time, or null if it is always the edge's weight
+   * @throws NoSuchElementException if either node or the edge between them 
+   *         are not found within this graph
+   */
+  public TravelTimeFunction getTravelTime(NodeType pred, NodeType succ);
+
   /**
    * Return the number of edges in the graph.
    *
@@ -106,6 +131,24 @@ public interface GraphADT<NodeType, EdgeType extends Number> {
    */
   public int getEdgeCount();
 
+  /**
+   * Returns the data of each node that an edge leaves the provided node
+   * for, in the order that those edges were inserted.
+   *
+   * @param data the data item contained in the node
+   * @return the data in the successor of each edge leaving that node
+   * @throws NoSuchElementException if the node is not found in the graph
+   */
+  public List<NodeType> getSuccessors(NodeType data);
+
+  /**
+   * Estimates the memory taken up by this graph, broken down by the parts of
+   * its representation.
+   *
+   * @return the bytes taken up by each part of this graph
+   */
+  public MemoryFootprint getFootprint();
+
   /**
    * Returns the list of data values from nodes along the shortest path from 
    * the node with the provided start value through the node with the provided
@@ -137,5 +180,167 @@ public interface GraphADT<NodeType, EdgeType extends Number> {
    *         start node to the end node
    */
   public double shortestPathCost(NodeType start, NodeType end);
+
+  /**
+   * Returns the list of data values from nodes along the quickest path from
+   * the node with the provided start value to the node with the provided end
+   * value, when leaving start at the provided time. Each edge takes its
+   * travel time at the time that the path reaches it, or its weight when it
+   * has no travel time.
+   *
+   * @param start the data item in the starting node for the path
+   * @param end the data item in the destination node for the path
+   * @param departure the time that the path leaves start, in seconds after
+   *        midnight
+   * @return list of data item from node along this quickest path
+   * @throws NoSuchElementException if either the start or end node cannot
+   *         be found in the graph, or if there is no directed path from the
+   *         start node to the end node
+   */
+  public List<NodeType> shortestPathData(NodeType start, NodeType end, double departure);
+
+  /**
+   * Returns the time that the quickest path from the node containing the
+   * start data to the node containing the end data takes, when leaving
+   * start at the provided time, as in shortestPathData(start, end, departure).
+   *
+   * @param start the data item in the starting node for the path
+   * @param end the data item in the destination node for the path
+   * @param departure the time that the path leaves start, in seconds after
+   *        midnight
+   * @return the seconds from leaving start until arriving at end
+   * @throws NoSuchElementException if either the start or end node cannot
+   *         be found in the graph, or if there is no directed path from the
+   *         start node to the end node
+   */
+  public double shortestPathCost(NodeType start, NodeType end, double departure);
+
+  /**
+   * Returns the list of data values from nodes along the shortest path from
+   * the node with the provided start value to the node with the provided end
+   * value, as in shortestPathData(start, end), but with the nodes and edges
+   * that the overlay avoids left out and the weight of each other edge
+   * multiplied by the overlay's factor for it. The graph is not changed, so
+   * other searches (including ones running at the same time) are unaffected.
+   *
+   * @param start the data item in the starting node for the path
+   * @param end the data item in the destination node for the path
+   * @param overlay the changes to make for this search only, or null
+   * @return list of data item from node along this shortest path
+   * @throws NoSuchElementException if either the start or end node cannot
+   *         be found in the graph, or if there is no directed path from the
+   *         start node to the end node that the overlay allows
+   */
+  public List<NodeType> shortestPathData(NodeType start, NodeType end, RouteOverlay<NodeType> overlay);
+
+  /**
+   * Returns the cost of the path that shortestPathData(start, end, overlay)
+   * returns, with the weight of each edge multiplied by its overlay factor.
+   *
+   * @param start the data item in the starting node for the path
+   * @param end the data item in the destination node for the path
+   * @param overlay the changes to make for this search only, or null
+   * @return the cost of the shortest path between these nodes
+   * @throws NoSuchElementException if either the start or end node cannot
+   *         be found in the graph, or if there is no directed path from the
+   *         start node to the end node that the overlay allows
+   */
+  public double shortestPathCost(NodeType start, NodeType end, RouteOverlay<NodeType> overlay);
+
+  /**
+   * Returns the list of data values from nodes along the quickest path when
+   * leaving start at the provided time, as in
+   * shortestPathData(start, end, departure), but with the overlay applied
+   * to the travel time of each edge.
+   *
+   * @param start the data item in the starting node for the path
+   * @param end the data item in the destination node for the path
+   * @param departure the time that the path leaves start, in seconds after
+   *        midnight
+   * @param overlay the changes to make for this search only, or null
+   * @return list of data item from node along this quickest path
+   * @throws NoSuchElementException if either the start or end node cannot
+   *         be found in the graph, or if there is no directed path from the
+   *         start node to the end node that the overlay allows
+   */
+  public List<NodeType> shortestPathData(NodeType start, NodeType end, double departure,
+                                         RouteOverlay<NodeType> overlay);
+
+  /**
+   * Returns the time that shortestPathData(start, end, departure, overlay)
+   * takes, with the travel time of each edge multiplied by its overlay factor.
+   *
+   * @param start the data item in the starting node for the path
+   * @param end the data item in the destination node for the path
+   * @param departure the time that the path leaves start, in seconds after
+   *        midnight
+   * @param overlay the changes to make for this search only, or null
+   * @return the seconds from leaving start until arriving at end
+   * @throws NoSuchElementException if either the start or end node cannot
+   *         be found in the graph, or if there is no directed path from the
+   *         start node to the end node that the overlay allows
+   */
+  public double shortestPathCost(NodeType start, NodeType end, double departure, RouteOverlay<NodeType> overlay);
+
+  /**
+   * Returns the shortest paths from the node with the provided start value to
+   * each of the nodes with the provided end values. Unlike calling
+   * shortestPathData once for each end, this method should compute all of
+   * these paths with a single search from the start node.
+   *
+   * @param start the data item in the starting node for the paths
+   * @param ends the data items in the destination nodes for the paths
+   * @return list holding the shortest path to each end, in the same order as
+   *         ends, where an end that cannot be found in the graph or that 
+   *         cannot be reached from start has an empty path
+   * @throws NoSuchElementException if the start node cannot be found in the
+   *         graph
+   */
+  public List<List<NodeType>> shortestPathDataToEach(NodeType start, List<NodeType> ends);
+
+  /**
+   * Returns every node that can be reached from the node with the provided
+   * start value by a path whose cost is no more than limit, mapped to the cost
+   * of its shortest path. The search should stop as soon as the cheapest path
+   * that remains to be explored costs more than limit.
+   *
+   * @param start the data item in the starting node
+   * @param limit the greatest path cost to include
+   * @return map from the data in each reachable node to the cost of its 
+   *         shortest path, iterating in order of increasing cost and 
+   *         beginning with start
+   * @throws NoSuchElementException if the start node cannot be found in the
+   *         graph
+   */
+  public Map<NodeType,Double> reachableWithin(NodeType start, double limit);
+
+  /**
+   * Returns the list of data values from nodes along the shortest path from
+   * the node with the provided start value to whichever of the nodes with the
+   * provided target values is nearest to it. The path should be found with a
+   * single search from all of the targets, rather than one search per target.
+   *
+   * @param start the data item in the starting node for the path
+   * @param targets the data items in the nodes that the path may end at
+   * @return list of data items from nodes along the shortest path from start
+   *         to its nearest target, which ends with that target
+   * @throws NoSuchElementException if the start node cannot be found in the
+   *         graph, or if there is no directed path from the start node to any
+   *         of the targets
+   */
+  public List<NodeType> shortestPathToNearest(NodeType start, List<NodeType> targets);
+
+  /**
+   * Labels every node with whichever of the nodes with the provided target
+   * values is nearest to it, by the cost of the shortest path from that node
+   * to the target. Every label should be found with a single search from all
+   * of the targets.
+   *
+   * @param targets the data items in the nodes to label other nodes with
+   * @return map from the data in each node that has a path to some target to
+   *         the data in its nearest target (nodes without any such path are 
+   *         left out)
+   */
+  public Map<NodeType,NodeType> nearestTargets(List<NodeType> targets);
     
 }
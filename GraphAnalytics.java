@@ -0,0 +1,380 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes distance statistics over a whole graph. These include every node's
+ * eccentricity, which is the cost of the shortest path to the furthest node
+ * that it can reach. From these come the graph's diameter (the greatest
+ * eccentricity), its radius (the least eccentricity of any node that can
+ * reach every other node), its center (the nodes whose eccentricity is the
+ * radius), and its periphery (the nodes whose eccentricity is the
+ * diameter). The k furthest destinations from each node can also be found.
+ *
+ * Each source node is searched once with an unbounded reachableWithin
+ * search, and searches run in parallel on a fork-join pool. When the top k
+ * destinations are not needed and the graph is symmetric (every edge has an
+ * equal reverse edge), most of these searches can be skipped. Each search
+ * from v bounds the eccentricity of every node w that it reaches by
+ *     max(d(v,w), ecc(v) - d(v,w)) <= ecc(w) <= ecc(v) + d(v,w)
+ * Searches then continue from the unresolved nodes with the widest bounds,
+ * until every node's lower and upper bounds meet. This is the bounding
+ * eccentricities algorithm of Takes and Kosters, and the same bounds are the
+ * basis of iFUB. On road-like maps, it usually needs a small fraction of n
+ * searches.
+ *
+ * Statistics for a map can be printed from the command line, with settings
+ * given as key=value arguments:
+ *     map=FILE       dot file or graph snapshot to analyze (./campus.dot)
+ *     top=K          furthest destinations to find from each location (0)
+ *     threads=N      searches to run in parallel (available processors)
+ *     prune=BOOL     skip searches using eccentricity bounds when possible,
+ *                    which is only done when top=0 (true)
+ *     out=FILE       write every location's statistics to this json file
+ *     footprint=BOOL print an estimate of the memory the graph takes up,
+ *                    by part, before analyzing it (false)
+ */
+public class GraphAnalytics<NodeType> {
+
+    // nodes searched by one fork-join task before it stops splitting
+    private static final int SEARCHES_PER_TASK = 4;
+    // relative difference at which an eccentricity's bounds are equal
+    private static final double TOLERANCE = 1e-9;
+
+    /**
+     * The statistics found by one analysis of a graph. Per node values are
+     * indexed by the position of that node in getNodes().
+     */
+    public class Result {
+        private final List<NodeType> nodes;
+        private final double[] eccentricity;
+        private final boolean[] reachesAll;
+        private final List<List<NodeType>> furthest;
+        private int searches = 0;
+        private long nanos;
+
+        private Result(List<NodeType> nodes, int k) {
+            this.nodes = nodes;
+            this.eccentricity = new double[nodes.size()];
+            this.reachesAll = new boolean[nodes.size()];
+            this.furthest = k > 0 ? new ArrayList<>(Collections.nCopies(nodes.size(), null)) : null;
+        }
+
+        public List<NodeType> getNodes() { return nodes; }
+        public int getSearches() { return searches; }
+        public long getNanos() { return nanos; }
+
+        /**
+         * Returns the eccentricity of every node, as a map from each node to
+         * the cost of its shortest path to the furthest node that it reaches.
+         */
+        public Map<NodeType,Double> getEccentricities() {
+            Map<NodeType,Double> result = new LinkedHashMap<>();
+            for (int i = 0; i < nodes.size(); i++) result.put(nodes.get(i), eccentricity[i]);
+            return result;
+        }
+
+        /**
+         * Returns the furthest destinations from each node, furthest first,
+         * or null when the analysis was not asked to find them.
+         */
+        public Map<NodeType,List<NodeType>> getFurthest() {
+            if (furthest == null) return null;
+            Map<NodeType,List<NodeType>> result = new LinkedHashMap<>();
+            for (int i = 0; i < nodes.size(); i++) result.put(nodes.get(i), furthest.get(i));
+            return result;
+        }
+
+        /**
+         * Returns the greatest eccentricity of any node, or 0 for an empty
+         * graph.
+         */
+        public double getDiameter() {
+            double diameter = 0;
+            for (double value : eccentricity) diameter = Math.max(diameter, value);
+            return diameter;
+        }
+
+        /**
+         * Returns the least eccentricity of any node that can reach every
+         * other node, or infinity when no node can.
+         */
+        public double getRadius() {
+            double radius = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < nodes.size(); i++)
+                if (reachesAll[i]) radius = Math.min(radius, eccentricity[i]);
+            return radius;
+        }
+
+        /**
+         * Returns the nodes that can reach every other node with the least
+         * eccentricity.
+         */
+        public List<NodeType> getCenter() {
+            double radius = getRadius();
+            List<NodeType> center = new ArrayList<>();
+            for (int i = 0; i < nodes.size(); i++)
+                if (reachesAll[i] && equal(eccentricity[i], radius)) center.add(nodes.get(i));
+            return center;
+        }
+
+        /**
+         * Returns the nodes whose eccentricity is the diameter.
+         */
+        public List<NodeType> getPeriphery() {
+            double diameter = getDiameter();
+            List<NodeType> periphery = new ArrayList<>();
+            for (int i = 0; i < nodes.size(); i++)
+                if (equal(eccentricity[i], diameter)) periphery.add(nodes.get(i));
+            return periphery;
+        }
+    }
+
+    private final DijkstraGraph<NodeType,?> graph;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an analysis of a graph, whose searches run in parallel.
+     * @param graph the graph to analyze, which must not change while any
+     *        analysis is running
+     * @param parallelism the number of searches to run at once
+     */
+    public GraphAnalytics(DijkstraGraph<NodeType,?> graph, int parallelism) {
+        this.graph = graph;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Computes the eccentricity of every node, and also the k furthest
+     * destinations from every node when k is positive.
+     * @param k the number of furthest destinations to find from each node
+     * @param prune whether searches may be skipped using eccentricity bounds,
+     *        which is only done when k is 0 and the graph is symmetric
+     * @return the statistics that were found
+     */
+    public Result analyze(int k, boolean prune) {
+        long startTime = System.nanoTime();
+        Result result = new Result(new ArrayList<>(graph.getAllNodes()), k);
+        if (prune && k == 0 && graph.isSymmetric())
+            analyzeBounded(result);
+        else
+            analyzeAll(result, k);
+        result.nanos = System.nanoTime() - startTime;
+        return result;
+    }
+
+    /**
+     * Stops the threads used for searching.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // searches from every node, splitting the nodes across the pool
+    private void analyzeAll(Result result, int k) {
+        class SearchTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            final int from, to;
+            SearchTask(int from, int to) { this.from = from; this.to = to; }
+
+            @Override
+            protected void compute() {
+                if (to - from <= SEARCHES_PER_TASK) {
+                    for (int i = from; i < to; i++) searchFrom(result, i, k);
+                } else {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new SearchTask(from, middle), new SearchTask(middle, to));
+                }
+            }
+        }
+        pool.invoke(new SearchTask(0, result.nodes.size()));
+        result.searches = result.nodes.size();
+    }
+
+    // records the eccentricity and furthest destinations of node i
+    private Map<NodeType,Double> searchFrom(Result result, int i, int k) {
+        NodeType start = result.nodes.get(i);
+        Map<NodeType,Double> reached = graph.reachableWithin(start, Double.POSITIVE_INFINITY);
+        ArrayDeque<NodeType> last = new ArrayDeque<>();
+        double eccentricity = 0;
+        for (Map.Entry<NodeType,Double> entry : reached.entrySet()) {
+            eccentricity = entry.getValue();
+            if (k > 0 && !entry.getKey().equals(start)) {
+                if (last.size() == k) last.removeFirst();
+                last.addLast(entry.getKey());
+            }
+        }
+        result.eccentricity[i] = eccentricity;
+        result.reachesAll[i] = reached.size() == result.nodes.size();
+        if (k > 0) {
+            List<NodeType> furthest = new ArrayList<>(last);
+            Collections.reverse(furthest);
+            result.furthest.set(i, furthest);
+        }
+        return reached;
+    }
+
+    // resolves every eccentricity from bounds, searching in rounds of up to
+    // one search per thread from the unresolved nodes whose bounds are
+    // loosest (in a symmetric graph, the bounds from v hold for each node in
+    // v's connected component, which are exactly the nodes it reaches)
+    private void analyzeBounded(Result result) {
+        int n = result.nodes.size();
+        Map<NodeType,Integer> index = new HashMap<>();
+        for (int i = 0; i < n; i++) index.put(result.nodes.get(i), i);
+        double[] lower = new double[n];
+        double[] upper = new double[n];
+        boolean[] resolved = new boolean[n];
+        Arrays.fill(upper, Double.POSITIVE_INFINITY);
+        int unresolved = n;
+        boolean pickUpper = true;
+
+        while (unresolved > 0) {
+            //Alternate between the highest upper bound and the lowest lower.
+            List<Integer> batch = new ArrayList<>();
+            while (batch.size() < pool.getParallelism() && batch.size() < unresolved) {
+                int best = -1;
+                for (int i = 0; i < n; i++) {
+                    if (resolved[i] || batch.contains(i)) continue;
+                    if (best == -1 || (pickUpper ? upper[i] > upper[best] : lower[i] < lower[best]))
+                        best = i;
+                }
+                batch.add(best);
+                pickUpper = !pickUpper;
+            }
+
+            List<Callable<Map<NodeType,Double>>> searches = new ArrayList<>();
+            for (int i : batch) searches.add(() -> searchFrom(result, i, 0));
+            List<Map<NodeType,Double>> reached = new ArrayList<>();
+            try {
+                for (Future<Map<NodeType,Double>> search : pool.invokeAll(searches))
+                    reached.add(search.get());
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException("Search failed while analyzing graph.", e);
+            }
+            result.searches += batch.size();
+
+            for (int b = 0; b < batch.size(); b++) {
+                int v = batch.get(b);
+                double eccentricity = result.eccentricity[v];
+                if (!resolved[v]) {
+                    resolved[v] = true;
+                    unresolved--;
+                }
+                lower[v] = upper[v] = eccentricity;
+                for (Map.Entry<NodeType,Double> entry : reached.get(b).entrySet()) {
+                    int w = index.get(entry.getKey());
+                    if (resolved[w]) continue;
+                    double distance = entry.getValue();
+                    lower[w] = Math.max(lower[w], Math.max(distance, eccentricity - distance));
+                    upper[w] = Math.min(upper[w], eccentricity + distance);
+                    if (equal(lower[w], upper[w])) {
+                        resolved[w] = true;
+                        unresolved--;
+                        result.eccentricity[w] = lower[w];
+                        result.reachesAll[w] = result.reachesAll[v];
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean equal(double a, double b) {
+        return Math.abs(a - b) <= TOLERANCE * Math.max(1, Math.max(Math.abs(a), Math.abs(b)));
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String,String> settings = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2)
+                throw new IllegalArgumentException("Settings must be key=value, not: " + arg);
+            settings.put(pair[0], pair[1]);
+        }
+        String map = settings.getOrDefault("map", ServerConfig.DEFAULT_MAP);
+        int k = Integer.parseInt(settings.getOrDefault("top", "0"));
+        int threads = Integer.parseInt(settings.getOrDefault("threads",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+        boolean prune = Boolean.parseBoolean(settings.getOrDefault("prune", "true"));
+        boolean footprint = Boolean.parseBoolean(settings.getOrDefault("footprint", "false"));
+
+        long loadStart = System.nanoTime();
+        DijkstraGraph<String,Double> graph = new DijkstraGraph<>();
+        new Backend(graph).loadGraphData(map);
+        System.out.printf("Loaded %s: %d locations and %d edges in %.3f s%n", map,
+                          graph.getNodeCount(), graph.getEdgeCount(), (System.nanoTime() - loadStart) / 1e9);
+        if (footprint)
+            System.out.print(graph.getFootprint().render());
+
+        GraphAnalytics<String> analytics = new GraphAnalytics<>(graph, threads);
+        GraphAnalytics<String>.Result result = analytics.analyze(k, prune);
+        analytics.shutdown();
+
+        System.out.printf("Searches:    %d of %d locations, in %.3f s on %d threads%n", result.getSearches(),
+                          result.getNodes().size(), result.getNanos() / 1e9, threads);
+        System.out.printf("Diameter:    %.1f s, from %s%n", result.getDiameter(), result.getPeriphery());
+        if (Double.isInfinite(result.getRadius()))
+            System.out.println("Radius:      none, since no location can reach every other location");
+        else
+            System.out.printf("Radius:      %.1f s, from %s%n", result.getRadius(), result.getCenter());
+        if (k > 0) {
+            List<String> periphery = result.getPeriphery();
+            if (!periphery.isEmpty())
+                System.out.println("Furthest from " + periphery.get(0) + ": " +
+                                   result.getFurthest().get(periphery.get(0)));
+        }
+
+        if (settings.containsKey("out")) {
+            try (OutputStream out = new FileOutputStream(settings.get("out"))) {
+                writeJson(result, out);
+            }
+            System.out.println("Statistics written to " + settings.get("out"));
+        }
+    }
+
+    // writes the summary and every location's statistics as json
+    private static void writeJson(GraphAnalytics<String>.Result result, OutputStream out) throws IOException {
+        Map<String,List<String>> furthest = result.getFurthest();
+        JsonWriter json = JsonWriter.acquire(out);
+        try {
+            json.beginObject();
+            json.name("diameter").value(result.getDiameter());
+            json.name("radius").value(result.getRadius());
+            json.name("center").beginArray();
+            for (String location : result.getCenter()) json.value(location);
+            json.endArray();
+            json.name("periphery").beginArray();
+            for (String location : result.getPeriphery()) json.value(location);
+            json.endArray();
+            json.name("locations").beginArray();
+            for (Map.Entry<String,Double> entry : result.getEccentricities().entrySet()) {
+                json.beginObject();
+                json.name("location").value(entry.getKey());
+                json.name("eccentricity").value(entry.getValue());
+                if (furthest != null) {
+                    json.name("furthest").beginArray();
+                    for (String location : furthest.get(entry.getKey())) json.value(location);
+                    json.endArray();
+                }
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        } finally {
+            json.release();
+        }
+    }
+}
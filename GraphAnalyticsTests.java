@@ -0,0 +1,39 @@
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of GraphAnalytics, kept apart from it because JUnit can only create a
+ * test class that has a single constructor that it knows how to call.
+ */
+public class GraphAnalyticsTests {
+
+    /**
+     * Test that analyzing a symmetric graph with pruning finds the same
+     * statistics as searching from every node, with fewer searches, whether
+     * or not the graph is connected.
+     */
+    @Test
+    public void analyticsTest1() {
+        //A connected road map, then a sparse geometric map in several pieces.
+        for (GraphGenerator generator : List.of(new GraphGenerator("road", 400, 4, 3),
+                                                new GraphGenerator("geometric", 300, 2, 3))) {
+            DijkstraGraph<String, Double> generated = new DijkstraGraph<>();
+            generator.insertInto(generated);
+            assertTrue(generated.isSymmetric());
+            GraphAnalytics<String> analytics = new GraphAnalytics<>(generated, 2);
+            GraphAnalytics<String>.Result pruned = analytics.analyze(0, true);
+            GraphAnalytics<String>.Result all = analytics.analyze(0, false);
+            analytics.shutdown();
+
+            assertEquals(generated.getNodeCount(), all.getSearches());
+            assertTrue(pruned.getSearches() < all.getSearches());
+            for (String node : all.getNodes())
+                assertEquals(all.getEccentricities().get(node), pruned.getEccentricities().get(node), 1e-9);
+            assertEquals(all.getDiameter(), pruned.getDiameter(), 1e-9);
+            assertEquals(all.getRadius(), pruned.getRadius(), 1e-9);
+            assertEquals(all.getCenter(), pruned.getCenter());
+            assertEquals(all.getPeriphery(), pruned.getPeriphery());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmarks for the map, graph, search, and loading code behind the campus
+ * navigator, run with BenchmarkRunner. For example, to run every benchmark
+ * and save machine readable results for later comparison:
+ *     java GraphBenchmarks out=results.json
+ * or to run only the shortest path benchmarks with shorter iterations:
+ *     java GraphBenchmarks filter=shortestPath time=0.5
+ *
+ * Synthetic graphs come from GraphGenerator, where the size parameter of a
+ * grid is the length of its side.
+ */
+public class GraphBenchmarks {
+
+    // sides of the synthetic grid graphs: about 1k, 10k, and 100k nodes
+    private static final int[] GRID_SIDES = { 32, 100, 316 };
+    private static final int[] MAP_SIZES = { 1000, 100000 };
+    private static final String CAMPUS_FILE = "campus.dot";
+    private static final long SEED = 400;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        addMapBenchmarks(runner);
+        addGraphBenchmarks(runner);
+        addSearchBenchmarks(runner);
+        addBackendBenchmarks(runner);
+        runner.run(args);
+    }
+
+    // HashtableMap put (growing through every resize from the default
+    // capacity, or presized so that it never resizes) and get
+    private static void addMapBenchmarks(BenchmarkRunner runner) {
+        for (int size : MAP_SIZES) {
+            runner.add("HashtableMap.putWithResize", params("size", size), () -> () -> {
+                MapADT<Integer,Integer> map = new HashtableMap<>();
+                for (int i = 0; i < size; i++) map.put(i, i);
+                return map;
+            });
+            runner.add("HashtableMap.putPresized", params("size", size), () -> () -> {
+                MapADT<Integer,Integer> map = new HashtableMap<>(size * 2);
+                for (int i = 0; i < size; i++) map.put(i, i);
+                return map;
+            });
+            runner.add("HashtableMap.get", params("size", size), () -> {
+                MapADT<Integer,Integer> map = new HashtableMap<>();
+                for (int i = 0; i < size; i++) map.put(i, i);
+                int[] keys = new Random(SEED).ints(4096, 0, size).toArray();
+                int[] next = {0};
+                return () -> map.get(keys[next[0]++ & 4095]);
+            });
+        }
+    }
+
+    // BaseGraph insertEdge (building a whole grid) and getEdge
+    private static void addGraphBenchmarks(BenchmarkRunner runner) {
+        for (int side : GRID_SIDES) {
+            runner.add("BaseGraph.insertEdge", params("size", side), () -> () -> grid(side));
+            runner.add("BaseGraph.getEdge", params("size", side), () -> {
+                DijkstraGraph<String,Double> graph = grid(side);
+                Random random = new Random(SEED);
+                String[][] edges = new String[4096][];
+                for (int i = 0; i < edges.length; i++) {
+                    int row = random.nextInt(side), col = random.nextInt(side - 1);
+                    edges[i] = new String[] { GraphGenerator.nameOf(row * side + col),
+                                              GraphGenerator.nameOf(row * side + col + 1) };
+                }
+                int[] next = {0};
+                return () -> {
+                    String[] edge = edges[next[0]++ & 4095];
+                    return graph.getEdge(edge[0], edge[1]);
+                };
+            });
+        }
+    }
+
+    // DijkstraGraph shortestPathData between random pairs of locations
+    private static void addSearchBenchmarks(BenchmarkRunner runner) {
+        runner.add("DijkstraGraph.shortestPathData", params("graph", "campus"), () -> {
+            DijkstraGraph<String,Double> graph = new DijkstraGraph<>();
+            new Backend(graph).loadGraphData(CAMPUS_FILE);
+            return shortestPaths(graph);
+        });
+        for (int side : GRID_SIDES)
+            runner.add("DijkstraGraph.shortestPathData", params("graph", "grid" + side),
+                       () -> shortestPaths(grid(side)));
+        for (String type : new String[] { "geometric", "road", "powerlaw" })
+            runner.add("DijkstraGraph.shortestPathData", params("graph", type + "10000"), () -> {
+                DijkstraGraph<String,Double> graph = new DijkstraGraph<>();
+                new GraphGenerator(type, 10000, 4, SEED).insertInto(graph);
+                return shortestPaths(graph);
+            });
+    }
+
+    // Backend loadGraphData and getFurthestDestinationFrom
+    private static void addBackendBenchmarks(BenchmarkRunner runner) {
+        runner.add("Backend.loadGraphData", params("graph", "campus"), () -> {
+            Backend backend = new Backend(new DijkstraGraph<>());
+            return () -> {
+                backend.loadGraphData(CAMPUS_FILE);
+                return backend;
+            };
+        });
+        for (int side : GRID_SIDES) {
+            for (String format : new String[] { "dot", "snapshot" }) {
+                Map<String,String> params = params("graph", "grid" + side);
+                params.put("format", format);
+                runner.add("Backend.loadGraphData", params, () -> {
+                    String file = writeGraphFile("grid", side * side, format);
+                    Backend backend = new Backend(new DijkstraGraph<>());
+                    return () -> {
+                        backend.loadGraphData(file);
+                        return backend;
+                    };
+                });
+            }
+        }
+        runner.add("Backend.getFurthestDestinationFrom", params("graph", "campus"), () -> {
+            Backend backend = new Backend(new DijkstraGraph<>());
+            backend.loadGraphData(CAMPUS_FILE);
+            List<String> locations = backend.getListOfAllLocations();
+            Random random = new Random(SEED);
+            return () -> backend.getFurthestDestinationFrom(
+                locations.get(random.nextInt(locations.size())));
+        });
+    }
+
+    // returns an operation that finds the shortest path between a random
+    // pair of the graph's nodes (chosen ahead of time from a fixed seed, out
+    // of the pairs that are connected by some path)
+    private static BenchmarkRunner.Operation shortestPaths(DijkstraGraph<String,Double> graph) {
+        List<String> nodes = new ArrayList<>(graph.getAllNodes());
+        Random random = new Random(SEED);
+        List<String[]> connected = new ArrayList<>();
+        while (connected.size() < 1024) {
+            //One search from each start finds which of 32 random ends connect.
+            String start = nodes.get(random.nextInt(nodes.size()));
+            List<String> ends = new ArrayList<>();
+            for (int i = 0; i < 32; i++) ends.add(nodes.get(random.nextInt(nodes.size())));
+            for (List<String> path : graph.shortestPathDataToEach(start, ends))
+                if (!path.isEmpty()) connected.add(new String[] { start, path.get(path.size() - 1) });
+        }
+        String[][] pairs = connected.subList(0, 1024).toArray(new String[0][]);
+        int[] next = {0};
+        return () -> {
+            String[] pair = pairs[next[0]++ & 1023];
+            return graph.shortestPathData(pair[0], pair[1]);
+        };
+    }
+
+    // builds a side by side grid with edges both ways between neighbors
+    private static DijkstraGraph<String,Double> grid(int side) {
+        DijkstraGraph<String,Double> graph = new DijkstraGraph<>();
+        new GraphGenerator("grid", side * side, 4, SEED).insertInto(graph);
+        return graph;
+    }
+
+    // writes a generated graph as a dot or snapshot file that Backend can load
+    private static String writeGraphFile(String type, int nodes, String format) throws IOException {
+        File file = File.createTempFile(type + nodes + "-", "." + format);
+        file.deleteOnExit();
+        GraphGenerator generator = new GraphGenerator(type, nodes, 4, SEED);
+        if (format.equals("dot")) generator.writeDot(file.getPath());
+        else generator.writeSnapshot(file.getPath());
+        return file.getPath();
+    }
+
+    private static Map<String,String> params(String key, Object value) {
+        Map<String,String> params = new LinkedHashMap<>();
+        params.put(key, String.valueOf(value));
+        return params;
+    }
+}
@@ -0,0 +1,261 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A set of changes to a graph of named locations: nodes added and removed,
+ * and edges added, removed, and given a new weight or travel time. A delta
+ * is found by comparing a graph to an updated copy of it (see between), or
+ * read from a patch file (see Backend.updateGraphData), and applied with
+ * apply, which only touches the nodes and edges that changed. It also
+ * serves as a report of what changed, so that anything computed from the
+ * graph can tell whether it is still valid.
+ *
+ * Removing a node removes its edges with it, whether or not they are listed
+ * among the removed edges.
+ */
+public class GraphDelta {
+
+    /**
+     * An edge that was added, removed or reweighted.
+     */
+    public static class EdgeChange {
+        public final String predecessor;
+        public final String successor;
+        public final Double previousWeight; // null when the edge was added
+        public final Double weight; // null when the edge was removed
+        public final TravelTimeFunction travelTime; // null when always the weight
+
+        public EdgeChange(String predecessor, String successor, Double previousWeight, Double weight,
+                          TravelTimeFunction travelTime) {
+            this.predecessor = predecessor;
+            this.successor = successor;
+            this.previousWeight = previousWeight;
+            this.weight = weight;
+            this.travelTime = travelTime;
+        }
+
+        @Override
+        public String toString() {
+            return "\"" + predecessor + "\" -> \"" + successor + "\" " +
+                (previousWeight == null ? "" : previousWeight) + (weight == null ? "" : " => " + weight);
+        }
+    }
+
+    private final List<String> addedNodes = new ArrayList<>();
+    private final List<String> removedNodes = new ArrayList<>();
+    private final List<EdgeChange> addedEdges = new ArrayList<>();
+    private final List<EdgeChange> removedEdges = new ArrayList<>();
+    private final List<EdgeChange> reweightedEdges = new ArrayList<>();
+
+    public void addNode(String node) {
+        addedNodes.add(node);
+    }
+
+    public void removeNode(String node) {
+        removedNodes.add(node);
+    }
+
+    public void addEdge(String pred, String succ, double weight, TravelTimeFunction travelTime) {
+        addedEdges.add(new EdgeChange(pred, succ, null, weight, travelTime));
+    }
+
+    public void removeEdge(String pred, String succ, double previousWeight) {
+        removedEdges.add(new EdgeChange(pred, succ, previousWeight, null, null));
+    }
+
+    public void reweightEdge(String pred, String succ, double previousWeight, double weight,
+                             TravelTimeFunction travelTime) {
+        reweightedEdges.add(new EdgeChange(pred, succ, previousWeight, weight, travelTime));
+    }
+
+    /**
+     * Finds the changes that turn one graph into another, by comparing the
+     * edges leaving each node of either graph.
+     * @param graph the graph as it is
+     * @param updated the graph as it should be
+     * @return the changes to make to graph
+     */
+    public static GraphDelta between(GraphADT<String,Double> graph, GraphADT<String,Double> updated) {
+        GraphDelta delta = new GraphDelta();
+        for (String node : updated.getAllNodes())
+            if (!graph.containsNode(node)) delta.addNode(node);
+        for (String node : graph.getAllNodes()) {
+            if (!updated.containsNode(node)) {
+                delta.removeNode(node);
+                for (String succ : graph.getSuccessors(node))
+                    delta.removeEdge(node, succ, graph.getEdge(node, succ));
+            }
+        }
+        for (String node : updated.getAllNodes()) {
+            Map<String,Double> previous = new HashMap<>();
+            if (graph.containsNode(node))
+                for (String succ : graph.getSuccessors(node)) previous.put(succ, graph.getEdge(node, succ));
+            for (String succ : updated.getSuccessors(node)) {
+                double weight = updated.getEdge(node, succ);
+                TravelTimeFunction travelTime = updated.getTravelTime(node, succ);
+                Double before = previous.remove(succ);
+                if (before == null)
+                    delta.addEdge(node, succ, weight, travelTime);
+                else if (before != weight || !sameTravelTime(graph.getTravelTime(node, succ), travelTime))
+                    delta.reweightEdge(node, succ, before, weight, travelTime);
+            }
+            for (Map.Entry<String,Double> removed : previous.entrySet())
+                delta.removeEdge(node, removed.getKey(), removed.getValue());
+        }
+        return delta;
+    }
+
+    private static boolean sameTravelTime(TravelTimeFunction a, TravelTimeFunction b) {
+        if (a == null || b == null) return a == b;
+        return Arrays.equals(a.getTimes(), b.getTimes()) && Arrays.equals(a.getDurations(), b.getDurations());
+    }
+
+    /**
+     * Checks that these changes fit a graph without changing it: that added
+     * nodes are new, removed nodes exist, removed and reweighted edges exist,
+     * added edges are new and join nodes that exist or are added, no edge
+     * joins a removed node unless it is removed, and nothing changes twice.
+     * @param graph the graph that these changes would be made to
+     * @throws IllegalArgumentException if any change does not fit the graph
+     */
+    public void validate(GraphADT<String,Double> graph) {
+        Set<String> added = new HashSet<>();
+        for (String node : addedNodes)
+            if (graph.containsNode(node) || !added.add(node))
+                throw new IllegalArgumentException("Location is already in the map: " + node);
+        Set<String> removed = new HashSet<>();
+        for (String node : removedNodes)
+            if (!graph.containsNode(node) || added.contains(node) || !removed.add(node))
+                throw new IllegalArgumentException("Location is not in the map: " + node);
+        Set<List<String>> changed = new HashSet<>();
+        for (List<EdgeChange> edges : List.of(addedEdges, removedEdges, reweightedEdges)) {
+            for (EdgeChange edge : edges) {
+                if (!changed.add(List.of(edge.predecessor, edge.successor)))
+                    throw new IllegalArgumentException("Path is changed twice: " + edge);
+                boolean exists = graph.containsNode(edge.predecessor) && graph.containsNode(edge.successor)
+                    && graph.containsEdge(edge.predecessor, edge.successor);
+                if (edges == addedEdges) {
+                    if (exists)
+                        throw new IllegalArgumentException("Path is already in the map: " + edge);
+                    for (String node : List.of(edge.predecessor, edge.successor))
+                        if (removed.contains(node) || !graph.containsNode(node) && !added.contains(node))
+                            throw new IllegalArgumentException("No locations for path " + edge);
+                } else {
+                    if (!exists)
+                        throw new IllegalArgumentException("Path is not in the map: " + edge);
+                    if (edges == reweightedEdges
+                        && (removed.contains(edge.predecessor) || removed.contains(edge.successor)))
+                        throw new IllegalArgumentException("Path to or from a removed location: " + edge);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes these changes to a graph: adds nodes, removes edges, adds and
+     * reweights edges, then removes nodes. Every change is checked with
+     * validate before any is made, so a delta that does not fit leaves the
+     * graph as it was.
+     * @param graph the graph to change, which these changes must fit
+     * @throws IllegalArgumentException if a change does not fit the graph,
+     *         such as an edge between nodes that it does not contain
+     */
+    public void apply(GraphADT<String,Double> graph) {
+        validate(graph);
+        for (String node : addedNodes)
+            graph.insertNode(node);
+        for (EdgeChange edge : removedEdges)
+            graph.removeEdge(edge.predecessor, edge.successor);
+        for (List<EdgeChange> edges : List.of(addedEdges, reweightedEdges)) {
+            for (EdgeChange edge : edges) {
+                graph.insertEdge(edge.predecessor, edge.successor, edge.weight);
+                if (edge.travelTime != null || edges == reweightedEdges)
+                    graph.setTravelTime(edge.predecessor, edge.successor, edge.travelTime);
+            }
+        }
+        for (String node : removedNodes)
+            graph.removeNode(node);
+    }
+
+    public List<String> getAddedNodes() { return Collections.unmodifiableList(addedNodes); }
+    public List<String> getRemovedNodes() { return Collections.unmodifiableList(removedNodes); }
+    public List<EdgeChange> getAddedEdges() { return Collections.unmodifiableList(addedEdges); }
+    public List<EdgeChange> getRemovedEdges() { return Collections.unmodifiableList(removedEdges); }
+    public List<EdgeChange> getReweightedEdges() { return Collections.unmodifiableList(reweightedEdges); }
+
+    /**
+     * Returns the number of nodes and edges that change.
+     */
+    public int getChangeCount() {
+        return addedNodes.size() + removedNodes.size() + addedEdges.size() + removedEdges.size() +
+            reweightedEdges.size();
+    }
+
+    public boolean isEmpty() {
+        return getChangeCount() == 0;
+    }
+
+    /**
+     * Checks whether nodes are added or removed, which changes the list of
+     * locations and anything indexed by their names.
+     */
+    public boolean changesNodes() {
+        return !addedNodes.isEmpty() || !removedNodes.isEmpty();
+    }
+
+    /**
+     * Checks whether the weight of any path may change: whether edges or
+     * nodes are added or removed, or any edge gets a new weight. A delta
+     * that only changes travel times leaves every weight as it was.
+     */
+    public boolean changesWeights() {
+        if (changesNodes() || !addedEdges.isEmpty() || !removedEdges.isEmpty()) return true;
+        for (EdgeChange edge : reweightedEdges)
+            if (!edge.weight.equals(edge.previousWeight)) return true;
+        return false;
+    }
+
+    /**
+     * Checks whether no path can get shorter: no nodes or edges are added,
+     * and no edge's weight goes down. After such changes, a shortest path
+     * that passes through none of the affected nodes is still a shortest
+     * path, since its weight is the same and no other path's went down.
+     */
+    public boolean shortensNoPaths() {
+        if (!addedNodes.isEmpty() || !addedEdges.isEmpty()) return false;
+        for (EdgeChange edge : reweightedEdges)
+            if (edge.weight < edge.previousWeight) return false;
+        return true;
+    }
+
+    /**
+     * Returns every node that is added or removed, or that an added, removed
+     * or reweighted edge leaves or enters. A path can only change where it
+     * passes through one of these nodes.
+     */
+    public Set<String> getAffectedNodes() {
+        Set<String> affected = new LinkedHashSet<>(addedNodes);
+        affected.addAll(removedNodes);
+        for (List<EdgeChange> edges : List.of(addedEdges, removedEdges, reweightedEdges)) {
+            for (EdgeChange edge : edges) {
+                affected.add(edge.predecessor);
+                affected.add(edge.successor);
+            }
+        }
+        return affected;
+    }
+
+    @Override
+    public String toString() {
+        return addedNodes.size() + " locations added, " + removedNodes.size() + " removed; " +
+            addedEdges.size() + " paths added, " + removedEdges.size() + " removed, " +
+            reweightedEdges.size() + " reweighted";
+    }
+}
@@ -0,0 +1,159 @@
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Java Flight Recorder events for loading maps, searching them, and handling
+ * requests, so that a recording shows slow queries alongside the garbage
+ * collections and lock contention that happened at the same time. They are
+ * recorded by any recording that includes them, for example:
+ *     java -XX:StartFlightRecording=filename=webapp.jfr WebApp 8080
+ *
+ * Each event skips its stack trace, and only fills in its fields once
+ * shouldCommit() says a recording wants it, so events cost a couple of
+ * clock reads when nothing is recording them. Searches are only recorded
+ * when they take at least 1 ms by default; this can be lowered with
+ * webapp.Search#threshold=0ms in a recording's settings.
+ */
+public class GraphEvents {
+
+    private static final String CATEGORY = "Campus Navigator";
+
+    @Name("webapp.GraphLoad")
+    @Label("Graph Load")
+    @Description("A map loaded from a dot file or snapshot")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Load extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("File Size")
+        @DataAmount
+        public long bytes;
+
+        @Label("Locations")
+        public int nodes;
+
+        @Label("Paths")
+        public int edges;
+    }
+
+    @Name("webapp.Search")
+    @Label("Shortest Path Search")
+    @Description("A search for the shortest or quickest path between two locations")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static class Search extends Event {
+        @Label("Start")
+        public String start;
+
+        @Label("End")
+        public String end;
+
+        @Label("Settled Locations")
+        public long settled;
+
+        @Label("Queue Peak")
+        @Description("The most entries in the search's priority queue at once")
+        public long queuePeak;
+    }
+
+    @Name("webapp.Request")
+    @Label("HTTP Request")
+    @Description("A request handled by the server, including any time waiting for a permit")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Request extends Event {
+        @Label("Method")
+        public String method;
+
+        @Label("Path")
+        public String path;
+
+        @Label("Query")
+        public String query;
+
+        @Label("Status")
+        public int status;
+    }
+
+    /**
+     * Wraps a handler so that each request it handles is recorded as a
+     * Request event.
+     * @param handler the handler to record requests to
+     * @return a handler that records each request, then passes it on
+     */
+    public static HttpHandler recorded(HttpHandler handler) {
+        return exchange -> {
+            Request event = new Request();
+            event.begin();
+            try {
+                handler.handle(exchange);
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.method = exchange.getRequestMethod();
+                    event.path = exchange.getRequestURI().getPath();
+                    event.query = exchange.getRequestURI().getRawQuery();
+                    event.status = exchange.getResponseCode();
+                    event.commit();
+                }
+            }
+        };
+    }
+
+    /**
+     * Test that each search is written to a flight recording that asks for
+     * searches, along with the work that it did.
+     */
+    @Test
+    public void eventsTest1() throws IOException {
+        DijkstraGraph<Character, Double> graph = new DijkstraGraph<>();
+        for (char node = 'A'; node <= 'E'; node++) graph.insertNode(node);
+        graph.insertEdge('A', 'B', 4.0);
+        graph.insertEdge('A', 'C', 2.0);
+        graph.insertEdge('B', 'D', 1.0);
+        graph.insertEdge('C', 'D', 5.0);
+        graph.insertEdge('D', 'E', 3.0);
+        Path file = Files.createTempFile("searches", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("webapp.Search").withThreshold(Duration.ZERO);
+            recording.start();
+            graph.shortestPathData('A', 'E');
+            graph.shortestPathCost('A', 'E', 0, null);
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            assertEquals(2, events.size());
+            for (RecordedEvent event : events) {
+                assertEquals("A", event.getString("start"));
+                assertEquals("E", event.getString("end"));
+                assertTrue(event.getLong("settled") > 1);
+                assertTrue(event.getLong("queuePeak") >= 1);
+                assertNull(event.getStackTrace());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates large synthetic maps for benchmarks and scaling tests. The same
+ * type, size, degree, and seed always produce exactly the same graph. Every
+ * connection is walkable in both directions, so each is emitted as a pair of
+ * directed edges with the same walking time in seconds.
+ *
+ * grid      - square grid where each location connects to its four neighbors
+ * geometric - random points in a square, connecting every pair of points
+ *             closer than the radius that gives the requested average degree
+ * road      - jittered grid with about a fifth of its streets missing, plus
+ *             faster arterial roads along every eighth row and column
+ * powerlaw  - preferential attachment (Barabasi-Albert), where each new
+ *             location connects to degree existing ones chosen in proportion
+ *             to how connected they already are
+ *
+ * Edges are streamed to their destination as they are generated, so graphs
+ * with tens of millions of edges can be written without holding them in
+ * memory. From the command line (key=value settings):
+ *     java GraphGenerator type=road nodes=1000000 seed=7 out=road.dot
+ *     java GraphGenerator type=powerlaw nodes=100000 degree=4 out=pl.snap format=snapshot
+ */
+public class GraphGenerator {
+
+    /**
+     * Receives each directed edge of a generated graph, by node index.
+     */
+    public interface EdgeSink {
+        public void accept(int pred, int succ, double seconds) throws IOException;
+    }
+
+    public static final String[] TYPES = { "grid", "geometric", "road", "powerlaw" };
+
+    // walking speed in meters per second, and side of a grid cell in meters
+    private static final double WALKING_SPEED = 1.4;
+    private static final double CELL_METERS = 100;
+
+    private final String type;
+    private final int nodeCount;
+    private final int degree;
+    private final long seed;
+    private final int side; // side of the square for grid and road graphs
+
+    /**
+     * Creates a generator for one particular graph.
+     * @param type one of grid, geometric, road, or powerlaw
+     * @param nodes the number of locations, which is rounded down to a
+     *              square number for grid and road graphs
+     * @param degree the average number of connections per location for
+     *               geometric graphs, or the connections made by each new
+     *               location in powerlaw graphs (ignored by grid and road)
+     * @param seed the seed that every random choice is made from
+     * @throws IllegalArgumentException if the type or sizes are invalid
+     */
+    public GraphGenerator(String type, int nodes, int degree, long seed) {
+        if (!Arrays.asList(TYPES).contains(type))
+            throw new IllegalArgumentException("Unknown graph type: " + type +
+                                               ", expected one of " + Arrays.toString(TYPES));
+        if (nodes < 2) throw new IllegalArgumentException("A graph needs at least 2 nodes.");
+        if (degree < 1) throw new IllegalArgumentException("Degree must be at least 1.");
+        this.type = type;
+        this.degree = degree;
+        this.seed = seed;
+        this.side = (int) Math.sqrt(nodes);
+        this.nodeCount = type.equals("grid") || type.equals("road") ? side * side : nodes;
+    }
+
+    /** @return the number of locations in the generated graph */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the name of the location with the provided index.
+     * @param node the index of a location
+     * @return the location's name
+     */
+    public static String nameOf(int node) {
+        return "Location " + node;
+    }
+
+    /**
+     * Generates every edge of the graph, passing each one to sink.
+     * @param sink receives the edges, in a deterministic order
+     */
+    public void generate(EdgeSink sink) throws IOException {
+        Random random = new Random(seed);
+        switch (type) {
+            case "grid": generateGrid(random, sink); break;
+            case "geometric": generateGeometric(random, sink); break;
+            case "road": generateRoad(random, sink); break;
+            default: generatePowerLaw(random, sink); break;
+        }
+    }
+
+    /**
+     * Writes the graph as a dot file in the same dialect as campus.dot.
+     * @param filename the file to write
+     * @return the number of directed edges written
+     */
+    public long writeDot(String filename) throws IOException {
+        long[] edges = {0};
+        try (Writer out = new BufferedWriter(new FileWriter(filename), 1 << 16)) {
+            out.write("digraph " + type + " {\n");
+            generate((pred, succ, seconds) -> {
+                out.write("\t\"");
+                out.write(nameOf(pred));
+                out.write("\" -> \"");
+                out.write(nameOf(succ));
+                out.write("\" [seconds=");
+                out.write(Double.toString(seconds));
+                out.write("];\n");
+                edges[0]++;
+            });
+            out.write("}\n");
+        }
+        return edges[0];
+    }
+
+    /**
+     * Writes the graph as a binary GraphSnapshot.
+     * @param filename the file to write
+     * @return the number of directed edges written
+     */
+    public long writeSnapshot(String filename) throws IOException {
+        long[] edges = {0};
+        try (GraphSnapshot.Writer out = new GraphSnapshot.Writer(filename, nodeCount)) {
+            for (int i = 0; i < nodeCount; i++) out.writeNode(nameOf(i));
+            generate((pred, succ, seconds) -> {
+                out.writeEdge(pred, succ, seconds);
+                edges[0]++;
+            });
+        }
+        return edges[0];
+    }
+
+    /**
+     * Inserts every location and edge of the graph into an existing graph.
+     * @param graph the graph to insert into
+     */
+    public void insertInto(GraphADT<String,Double> graph) {
+        String[] names = new String[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            names[i] = nameOf(i);
+            graph.insertNode(names[i]);
+        }
+        try {
+            generate((pred, succ, seconds) -> graph.insertEdge(names[pred], names[succ], seconds));
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // never thrown when inserting into memory
+        }
+    }
+
+    // emits a connection as a pair of directed edges
+    private static void connect(EdgeSink sink, int a, int b, double seconds) throws IOException {
+        sink.accept(a, b, seconds);
+        sink.accept(b, a, seconds);
+    }
+
+    // rounds to a tenth of a second, as in campus.dot
+    private static double seconds(double meters, double speed) {
+        return Math.max(0.1, Math.round(meters / speed * 10) / 10.0);
+    }
+
+    private void generateGrid(Random random, EdgeSink sink) throws IOException {
+        for (int row = 0; row < side; row++)
+            for (int col = 0; col < side; col++) {
+                int node = row * side + col;
+                if (col + 1 < side)
+                    connect(sink, node, node + 1, seconds(CELL_METERS * (0.5 + random.nextDouble()), WALKING_SPEED));
+                if (row + 1 < side)
+                    connect(sink, node, node + side, seconds(CELL_METERS * (0.5 + random.nextDouble()), WALKING_SPEED));
+            }
+    }
+
+    private void generateGeometric(Random random, EdgeSink sink) throws IOException {
+        //Place points in a square whose side grows with the number of nodes.
+        double width = CELL_METERS * Math.sqrt(nodeCount);
+        double[] x = new double[nodeCount];
+        double[] y = new double[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            x[i] = random.nextDouble() * width;
+            y[i] = random.nextDouble() * width;
+        }
+        //Radius where a disc holds degree points on average.
+        double radius = Math.sqrt(degree * width * width / (Math.PI * nodeCount));
+
+        //Bucket points into cells one radius wide, so that neighbors are only
+        //searched for in the 3x3 block of cells around each point.
+        int cells = Math.max(1, (int) (width / radius));
+        int[] cellStart = new int[cells * cells + 1];
+        int[] cellOf = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            int cx = Math.min(cells - 1, (int) (x[i] / width * cells));
+            int cy = Math.min(cells - 1, (int) (y[i] / width * cells));
+            cellOf[i] = cy * cells + cx;
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells * cells; c++) cellStart[c + 1] += cellStart[c];
+        int[] fill = Arrays.copyOf(cellStart, cellStart.length);
+        int[] members = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) members[fill[cellOf[i]]++] = i;
+
+        for (int i = 0; i < nodeCount; i++) {
+            int cx = cellOf[i] % cells, cy = cellOf[i] / cells;
+            for (int ny = Math.max(0, cy - 1); ny <= Math.min(cells - 1, cy + 1); ny++)
+                for (int nx = Math.max(0, cx - 1); nx <= Math.min(cells - 1, cx + 1); nx++) {
+                    int cell = ny * cells + nx;
+                    for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                        int j = members[k];
+                        if (j <= i) continue;
+                        double distance = Math.hypot(x[i] - x[j], y[i] - y[j]);
+                        if (distance <= radius)
+                            connect(sink, i, j, seconds(distance, WALKING_SPEED));
+                    }
+                }
+        }
+    }
+
+    private void generateRoad(Random random, EdgeSink sink) throws IOException {
+        //Jitter each intersection so that streets have varied lengths.
+        double[] x = new double[nodeCount];
+        double[] y = new double[nodeCount];
+        for (int row = 0; row < side; row++)
+            for (int col = 0; col < side; col++) {
+                x[row * side + col] = (col + (random.nextDouble() - 0.5) * 0.6) * CELL_METERS;
+                y[row * side + col] = (row + (random.nextDouble() - 0.5) * 0.6) * CELL_METERS;
+            }
+        for (int row = 0; row < side; row++)
+            for (int col = 0; col < side; col++) {
+                int node = row * side + col;
+                //Arterial roads are never missing and are twice as fast.
+                if (col + 1 < side && (row % 8 == 0 || random.nextDouble() >= 0.2))
+                    connect(sink, node, node + 1, seconds(Math.hypot(x[node] - x[node + 1], y[node] - y[node + 1]),
+                                                          row % 8 == 0 ? WALKING_SPEED * 2 : WALKING_SPEED));
+                if (row + 1 < side && (col % 8 == 0 || random.nextDouble() >= 0.2))
+                    connect(sink, node, node + side, seconds(Math.hypot(x[node] - x[node + side], y[node] - y[node + side]),
+                                                             col % 8 == 0 ? WALKING_SPEED * 2 : WALKING_SPEED));
+            }
+    }
+
+    private void generatePowerLaw(Random random, EdgeSink sink) throws IOException {
+        //Every endpoint of every connection made so far, so that choosing a
+        //random entry chooses a node in proportion to its degree.
+        int initial = Math.min(nodeCount, degree + 1);
+        long endpointCount = 2L * degree * nodeCount;
+        if (endpointCount > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Too many edges for a powerlaw graph: " + endpointCount / 2);
+        int[] endpoints = new int[(int) endpointCount];
+        int size = 0;
+
+        //Start from a small fully connected core.
+        for (int i = 0; i < initial; i++)
+            for (int j = i + 1; j < initial; j++) {
+                connect(sink, i, j, seconds(CELL_METERS * (0.5 + 2 * random.nextDouble()), WALKING_SPEED));
+                endpoints[size++] = i;
+                endpoints[size++] = j;
+            }
+        int[] chosen = new int[degree];
+        for (int node = initial; node < nodeCount; node++) {
+            int count = 0;
+            while (count < degree) {
+                int target = endpoints[random.nextInt(size)];
+                boolean duplicate = false;
+                for (int k = 0; k < count; k++) duplicate |= chosen[k] == target;
+                if (!duplicate) chosen[count++] = target;
+            }
+            for (int k = 0; k < degree; k++) {
+                connect(sink, node, chosen[k], seconds(CELL_METERS * (0.5 + 2 * random.nextDouble()), WALKING_SPEED));
+                endpoints[size++] = node;
+                endpoints[size++] = chosen[k];
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String type = "grid", format = "dot", out = null;
+        int nodes = 10000, degree = 4;
+        long seed = 400;
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2)
+                throw new IllegalArgumentException("Settings must be key=value, not: " + arg);
+            switch (pair[0]) {
+                case "type": type = pair[1]; break;
+                case "nodes": nodes = Integer.parseInt(pair[1]); break;
+                case "degree": degree = Integer.parseInt(pair[1]); break;
+                case "seed": seed = Long.parseLong(pair[1]); break;
+                case "format": format = pair[1]; break;
+                case "out": out = pair[1]; break;
+                default: throw new IllegalArgumentException("Unknown setting: " + pair[0]);
+            }
+        }
+        if (out == null)
+            throw new IllegalArgumentException("Usage: java GraphGenerator type=grid|geometric|road|powerlaw " +
+                                               "nodes=N [degree=D] [seed=S] [format=dot|snapshot] out=FILE");
+        GraphGenerator generator = new GraphGenerator(type, nodes, degree, seed);
+        long startTime = System.nanoTime();
+        long edges;
+        if (format.equals("dot")) edges = generator.writeDot(out);
+        else if (format.equals("snapshot")) edges = generator.writeSnapshot(out);
+        else throw new IllegalArgumentException("Unknown format: " + format);
+        System.out.println("Wrote " + generator.getNodeCount() + " nodes and " + edges + " edges to " +
+                           out + " in " + (System.nanoTime() - startTime) / 1000000 + " ms");
+    }
+}
@@ -0,0 +1,357 @@
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits a graph into a number of parts of about equal size while cutting
+ * as few edges as it can, so that each part can be served by its own shard
+ * process (see ShardServer and ShardCoordinator). Edges are treated as
+ * undirected while partitioning, since a cut edge in either direction is a
+ * path out of a part.
+ *
+ * Parts are first grown outward by breadth first search from seeds that are
+ * spread far apart, with the smallest part always taking the next node, so
+ * each part is a connected region. Then nodes on the border between parts
+ * are moved to whichever neighboring part holds most of their neighbors,
+ * whenever that cuts fewer edges and keeps both parts within the allowed
+ * imbalance, until no such move is left.
+ *
+ * A map can be partitioned from the command line, with settings given as
+ * key=value arguments:
+ *     map=FILE        dot file or graph snapshot to partition (./campus.dot)
+ *     parts=K         number of parts (2)
+ *     imbalance=E     fraction that a part may exceed n/K by (0.05)
+ *     out=PREFIX      writes PREFIX-i.snap for each part, and the manifest
+ *                     PREFIX.shards (./shard)
+ */
+public class GraphPartitioner {
+
+    // most passes of moving border nodes, which usually settle in a few
+    private static final int MAX_PASSES = 20;
+
+    private final GraphADT<String,Double> graph; // null when nodes are only numbered
+    private final List<String> nodes;
+    private final int[] first; // neighbors of node i are neighbors[first[i]..first[i+1])
+    private final int[] neighbors;
+
+    /**
+     * Reads the nodes and edges of a graph into the arrays that partitioning
+     * works over.
+     * @param graph the graph to partition, which must not change meanwhile
+     */
+    public GraphPartitioner(GraphADT<String,Double> graph) {
+        this(graph, new ArrayList<>(graph.getAllNodes()));
+    }
+
+    private GraphPartitioner(GraphADT<String,Double> graph, List<String> nodes) {
+        this(graph, nodes, successorsOf(graph, nodes));
+    }
+
+    /**
+     * Reads the edges of a graph whose nodes are only numbered, such as by
+     * their ids within the graph. Such a partitioner cannot write shards.
+     * @param successors the successors of the edges leaving each node
+     */
+    public GraphPartitioner(int[][] successors) {
+        this(null, null, successors);
+    }
+
+    private GraphPartitioner(GraphADT<String,Double> graph, List<String> nodes, int[][] successors) {
+        this.graph = graph;
+        this.nodes = nodes;
+
+        //Count each edge in both directions, then fill them in.
+        int count = successors.length;
+        int[] degree = new int[count];
+        for (int i = 0; i < count; i++) {
+            for (int succ : successors[i]) {
+                degree[i]++;
+                degree[succ]++;
+            }
+        }
+        first = new int[count + 1];
+        for (int i = 0; i < count; i++)
+            first[i + 1] = first[i] + degree[i];
+        neighbors = new int[first[count]];
+        int[] filled = Arrays.copyOf(first, count);
+        for (int i = 0; i < count; i++) {
+            for (int succ : successors[i]) {
+                neighbors[filled[i]++] = succ;
+                neighbors[filled[succ]++] = i;
+            }
+        }
+    }
+
+    // the index in nodes of the successor of each edge leaving each node
+    private static int[][] successorsOf(GraphADT<String,Double> graph, List<String> nodes) {
+        Map<String,Integer> index = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i++)
+            index.put(nodes.get(i), i);
+        int[][] successors = new int[nodes.size()][];
+        for (int i = 0; i < nodes.size(); i++) {
+            List<String> names = graph.getSuccessors(nodes.get(i));
+            successors[i] = new int[names.size()];
+            for (int j = 0; j < names.size(); j++)
+                successors[i][j] = index.get(names.get(j));
+        }
+        return successors;
+    }
+
+    /**
+     * Returns the nodes of the graph, in the order that partition() gives
+     * the part of each one, or null when they are only numbered.
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Splits the graph into parts.
+     * @param parts the number of parts, at least 1
+     * @param imbalance the fraction that a part's size may exceed n / parts
+     *        by, such as 0.05
+     * @return the part of each node, in the order of getNodes()
+     * @throws IllegalArgumentException if parts or imbalance is out of range
+     */
+    public int[] partition(int parts, double imbalance) {
+        if (parts < 1)
+            throw new IllegalArgumentException("A graph must be split into at least one part, not " + parts);
+        if (!(imbalance >= 0))
+            throw new IllegalArgumentException("imbalance must not be negative: " + imbalance);
+        int n = first.length - 1;
+        int capacity = (int) Math.ceil((double) n / parts * (1 + imbalance));
+        int minimum = (int) Math.floor((double) n / parts * (1 - imbalance));
+        int[] part = grow(parts);
+        int[] sizes = new int[parts];
+        for (int p : part)
+            sizes[p]++;
+        refine(part, sizes, capacity, minimum);
+        return part;
+    }
+
+    // grows each part from a seed, giving the next node to the smallest part
+    private int[] grow(int parts) {
+        int n = first.length - 1;
+        int[] part = new int[n];
+        Arrays.fill(part, -1);
+        int[] sizes = new int[parts];
+        List<ArrayDeque<Integer>> frontiers = new ArrayList<>();
+        for (int p = 0; p < parts; p++)
+            frontiers.add(new ArrayDeque<>());
+        int[] seeds = seeds(parts);
+        for (int p = 0; p < seeds.length; p++)
+            frontiers.get(p).add(seeds[p]);
+
+        int assigned = 0;
+        int nextUnassigned = 0;
+        while (assigned < n) {
+            //The smallest part takes the next node, from its own frontier if
+            //it can, or else from that of another part, so that a part which
+            //is cut off keeps growing next to the others.
+            int smallest = 0;
+            int other = -1;
+            for (int p = 0; p < parts; p++) {
+                ArrayDeque<Integer> frontier = frontiers.get(p);
+                while (!frontier.isEmpty() && part[frontier.peek()] != -1)
+                    frontier.poll();
+                if (sizes[p] < sizes[smallest])
+                    smallest = p;
+                if (!frontier.isEmpty() && (other == -1 || sizes[p] > sizes[other]))
+                    other = p;
+            }
+            int node;
+            if (!frontiers.get(smallest).isEmpty()) {
+                node = frontiers.get(smallest).poll();
+            } else if (other != -1) {
+                node = frontiers.get(other).poll();
+            } else {
+                //Nodes that no part can reach start a new region.
+                while (part[nextUnassigned] != -1)
+                    nextUnassigned++;
+                node = nextUnassigned;
+            }
+            part[node] = smallest;
+            sizes[smallest]++;
+            assigned++;
+            for (int i = first[node]; i < first[node + 1]; i++)
+                if (part[neighbors[i]] == -1) frontiers.get(smallest).add(neighbors[i]);
+        }
+        return part;
+    }
+
+    // picks seeds far apart: each is the node furthest (in edges) from the
+    // seeds before it, or a node that none of them can reach once every
+    // reachable node is a seed
+    private int[] seeds(int parts) {
+        int n = first.length - 1;
+        int[] seeds = new int[Math.min(parts, n)];
+        if (seeds.length == 0)
+            return seeds;
+        int[] hops = new int[n];
+        Arrays.fill(hops, Integer.MAX_VALUE);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int seed = 0;
+        for (int s = 0; s < seeds.length; s++) {
+            seeds[s] = seed;
+            hops[seed] = 0;
+            queue.add(seed);
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                for (int i = first[node]; i < first[node + 1]; i++) {
+                    if (hops[neighbors[i]] > hops[node] + 1) {
+                        hops[neighbors[i]] = hops[node] + 1;
+                        queue.add(neighbors[i]);
+                    }
+                }
+            }
+            for (int node = 0; node < n; node++)
+                if (hops[node] != Integer.MAX_VALUE && hops[node] > hops[seed]) seed = node;
+            for (int node = 0; node < n && hops[seed] == 0; node++)
+                if (hops[node] == Integer.MAX_VALUE) seed = node;
+        }
+        return seeds;
+    }
+
+    // moves border nodes to the neighboring part that most of their
+    // neighbors are in, while that cuts fewer edges and stays balanced
+    private void refine(int[] part, int[] sizes, int capacity, int minimum) {
+        int[] counts = new int[sizes.length];
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            int moves = 0;
+            for (int node = 0; node < part.length; node++) {
+                int own = part[node];
+                if (sizes[own] <= minimum)
+                    continue;
+                for (int i = first[node]; i < first[node + 1]; i++)
+                    counts[part[neighbors[i]]]++;
+                int best = own;
+                for (int i = first[node]; i < first[node + 1]; i++) {
+                    int p = part[neighbors[i]];
+                    if (counts[p] > counts[best] && sizes[p] < capacity)
+                        best = p;
+                }
+                for (int i = first[node]; i < first[node + 1]; i++)
+                    counts[part[neighbors[i]]] = 0;
+                if (best != own) {
+                    part[node] = best;
+                    sizes[own]--;
+                    sizes[best]++;
+                    moves++;
+                }
+            }
+            if (moves == 0)
+                break;
+        }
+    }
+
+    /**
+     * Counts the edges of the graph whose predecessor and successor are in
+     * different parts.
+     * @param part the part of each node, in the order of getNodes()
+     * @return the number of cut edges
+     */
+    public int countCutEdges(int[] part) {
+        int cut = 0;
+        for (int node = 0; node < part.length; node++)
+            for (int i = first[node]; i < first[node + 1]; i++)
+                if (part[node] != part[neighbors[i]]) cut++;
+        return cut / 2; // each edge was counted from both of its ends
+    }
+
+    /**
+     * Writes each part of the graph as a GraphSnapshot holding its nodes and
+     * the edges between them, named prefix-i.snap for part i, along with the
+     * manifest prefix.shards. Edges take their weight: travel times that
+     * depend on the time of day are not written.
+     * @param part the part of each node, in the order of getNodes()
+     * @param parts the number of parts
+     * @param prefix the start of the name of each file
+     * @return the manifest that was written
+     * @throws IOException if a file cannot be written
+     * @throws IllegalStateException if the nodes are only numbered
+     */
+    public ShardManifest write(int[] part, int parts, String prefix) throws IOException {
+        if (graph == null)
+            throw new IllegalStateException("Shards can only be written from a graph with named nodes.");
+        //Number the nodes of each part from zero.
+        int[] local = new int[part.length];
+        int[] sizes = new int[parts];
+        for (int node = 0; node < part.length; node++)
+            local[node] = sizes[part[node]]++;
+        Map<String,Integer> index = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i++)
+            index.put(nodes.get(i), i);
+
+        List<Integer> cutPreds = new ArrayList<>();
+        List<Integer> cutSuccs = new ArrayList<>();
+        List<Double> cutSeconds = new ArrayList<>();
+        for (int p = 0; p < parts; p++) {
+            try (GraphSnapshot.Writer writer = new GraphSnapshot.Writer(prefix + "-" + p + ".snap", sizes[p])) {
+                for (int node = 0; node < part.length; node++)
+                    if (part[node] == p) writer.writeNode(nodes.get(node));
+                for (int node = 0; node < part.length; node++) {
+                    if (part[node] != p)
+                        continue;
+                    String pred = nodes.get(node);
+                    for (String succ : graph.getSuccessors(pred)) {
+                        int other = index.get(succ);
+                        double seconds = graph.getEdge(pred, succ);
+                        if (part[other] == p) {
+                            writer.writeEdge(local[node], local[other], seconds);
+                        } else {
+                            cutPreds.add(node);
+                            cutSuccs.add(other);
+                            cutSeconds.add(seconds);
+                        }
+                    }
+                }
+            }
+        }
+        ShardManifest manifest = new ShardManifest(parts, nodes, part,
+            cutPreds.stream().mapToInt(Integer::intValue).toArray(),
+            cutSuccs.stream().mapToInt(Integer::intValue).toArray(),
+            cutSeconds.stream().mapToDouble(Double::doubleValue).toArray());
+        manifest.write(prefix + ".shards");
+        return manifest;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String,String> settings = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2)
+                throw new IllegalArgumentException("Settings must be key=value, not: " + arg);
+            settings.put(pair[0], pair[1]);
+        }
+        String map = settings.getOrDefault("map", ServerConfig.DEFAULT_MAP);
+        int parts = Integer.parseInt(settings.getOrDefault("parts", "2"));
+        double imbalance = Double.parseDouble(settings.getOrDefault("imbalance", "0.05"));
+        String prefix = settings.getOrDefault("out", "./shard");
+
+        DijkstraGraph<String,Double> graph = new DijkstraGraph<>();
+        new Backend(graph).loadGraphData(map);
+        long start = System.nanoTime();
+        GraphPartitioner partitioner = new GraphPartitioner(graph);
+        int[] part = partitioner.partition(parts, imbalance);
+        System.out.printf("Partitioned %s: %d locations and %d edges into %d parts in %.3f s%n", map,
+                          graph.getNodeCount(), graph.getEdgeCount(), parts, (System.nanoTime() - start) / 1e9);
+        int[] sizes = new int[parts];
+        for (int p : part)
+            sizes[p]++;
+        System.out.println("Part sizes:  " + Arrays.toString(sizes));
+        System.out.println("Cut edges:   " + partitioner.countCutEdges(part));
+
+        ShardManifest manifest = partitioner.write(part, parts, prefix);
+        List<int[]> boundaries = manifest.getBoundaries();
+        int boundary = 0;
+        for (int[] nodes : boundaries)
+            boundary += nodes.length;
+        System.out.println("Boundary:    " + boundary + " locations");
+        System.out.println("Wrote " + prefix + "-0.snap to " + prefix + "-" + (parts - 1) + ".snap and " +
+                           prefix + ".shards");
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary format for graphs that loads much faster than a dot file,
+ * since nothing has to be searched for or parsed from text. A snapshot holds:
+ *
+ *     int     MAGIC
+ *     int     VERSION
+ *     int     number of nodes
+ *     UTF     name of each node, in order of node index
+ *     edges:  int predecessor index, int successor index, double seconds
+ *     int     END_OF_EDGES, in place of the next predecessor index
+ *     travel times of edges that depend on the time of day, since version 2:
+ *             int predecessor index, int successor index, int point count,
+ *             then double seconds after midnight, double seconds of each point
+ *     int     END_OF_EDGES, in place of the next predecessor index
+ *     hub labels, since version 3: int 0 when there are none, or 1 followed
+ *             by the labels in HubLabels.write() order of node index
+ *
+ * Backend.loadGraphData recognizes snapshots by their first four bytes, so
+ * they can be loaded anywhere that a dot file can.
+ */
+public class GraphSnapshot {
+
+    public static final int MAGIC = 0x47534E50; // "GSNP"
+    public static final int VERSION = 3;
+    private static final int END_OF_EDGES = -1;
+
+    /**
+     * Streams a snapshot to a file: every node name must be written first,
+     * then any number of edges, then the travel times of any of those edges
+     * that depend on the time of day, then optionally the graph's hub labels,
+     * and finally the writer must be closed.
+     */
+    public static class Writer implements AutoCloseable {
+        private final DataOutputStream out;
+        private final int nodeCount;
+        private int namesWritten = 0;
+        private boolean edgesEnded = false;
+        private boolean travelTimesEnded = false;
+
+        /**
+         * Starts a snapshot file holding the provided number of nodes.
+         * @param filename the file to write the snapshot to
+         * @param nodeCount the number of node names that will be written
+         * @throws IOException if the file cannot be created
+         */
+        public Writer(String filename, int nodeCount) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(filename), 1 << 16));
+            this.nodeCount = nodeCount;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nodeCount);
+        }
+
+        /**
+         * Writes the name of the next node, whose index is the number of
+         * names that were written before it.
+         * @param name the name of the node
+         */
+        public void writeNode(String name) throws IOException {
+            if (namesWritten == nodeCount)
+                throw new IllegalStateException("All " + nodeCount + " node names were already written.");
+            out.writeUTF(name);
+            namesWritten++;
+        }
+
+        /**
+         * Writes a directed edge between two nodes, by their indexes.
+         * @param pred index of the edge's predecessor node
+         * @param succ index of the edge's successor node
+         * @param seconds the weight of the edge
+         */
+        public void writeEdge(int pred, int succ, double seconds) throws IOException {
+            if (namesWritten != nodeCount)
+                throw new IllegalStateException("Every node name must be written before any edge.");
+            if (edgesEnded)
+                throw new IllegalStateException("Every edge must be written before any travel time.");
+            checkEdge(pred, succ);
+            out.writeInt(pred);
+            out.writeInt(succ);
+            out.writeDouble(seconds);
+        }
+
+        /**
+         * Writes the time of day dependent travel time of an edge that was
+         * already written, by the indexes of its nodes.
+         * @param pred index of the edge's predecessor node
+         * @param succ index of the edge's successor node
+         * @param travelTime the travel time of the edge
+         */
+        public void writeTravelTime(int pred, int succ, TravelTimeFunction travelTime) throws IOException {
+            if (namesWritten != nodeCount)
+                throw new IllegalStateException("Every node name must be written before any travel time.");
+            if (travelTimesEnded)
+                throw new IllegalStateException("Every travel time must be written before the labels.");
+            checkEdge(pred, succ);
+            if (!edgesEnded) {
+                out.writeInt(END_OF_EDGES);
+                edgesEnded = true;
+            }
+            double[] times = travelTime.getTimes();
+            double[] durations = travelTime.getDurations();
+            out.writeInt(pred);
+            out.writeInt(succ);
+            out.writeInt(times.length);
+            for (int i = 0; i < times.length; i++) {
+                out.writeDouble(times[i]);
+                out.writeDouble(durations[i]);
+            }
+        }
+
+        // checks that both of an edge's nodes exist
+        private void checkEdge(int pred, int succ) {
+            if (pred < 0 || pred >= nodeCount || succ < 0 || succ >= nodeCount)
+                throw new IllegalArgumentException("Edge " + pred + " -> " + succ +
+                                                   " refers to a node that does not exist.");
+        }
+
+        /**
+         * Writes the hub labels of the graph, which must have been built with
+         * its nodes in the same order that their names were written.
+         * @param labels the labels of every node
+         */
+        public void writeLabels(HubLabels labels) throws IOException {
+            if (namesWritten != nodeCount)
+                throw new IllegalStateException("Every node name must be written before the labels.");
+            if (travelTimesEnded)
+                throw new IllegalStateException("The labels were already written.");
+            if (labels.getNodes().size() != nodeCount)
+                throw new IllegalArgumentException("The labels are for " + labels.getNodes().size() +
+                                                   " nodes, not " + nodeCount + ".");
+            endTravelTimes();
+            out.writeInt(1);
+            labels.write(out);
+        }
+
+        // ends the lists of edges and travel times, if they have not ended
+        private void endTravelTimes() throws IOException {
+            if (!edgesEnded) out.writeInt(END_OF_EDGES);
+            if (!travelTimesEnded) out.writeInt(END_OF_EDGES);
+            edgesEnded = true;
+            travelTimesEnded = true;
+        }
+
+        /**
+         * Ends the lists of edges and travel times and closes the file.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (namesWritten == nodeCount && !travelTimesEnded) {
+                    endTravelTimes();
+                    out.writeInt(0);
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Checks whether a file starts with the snapshot format's magic number.
+     * @param filename the file to check
+     * @return true if the file is a graph snapshot, or false otherwise
+     *         (including when the file cannot be read)
+     */
+    public static boolean isSnapshot(String filename) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes every node, edge, and travel time of a graph to a snapshot file,
+     * along with its hub labels when it has them.
+     * @param filename the file to write
+     * @param graph the graph to write
+     * @param labels the graph's hub labels, or null for none
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(String filename, GraphADT<String,Double> graph, HubLabels labels)
+        throws IOException {
+        List<String> names = labels != null ? labels.getNodes() : new ArrayList<>(graph.getAllNodes());
+        Map<String,Integer> index = new HashMap<>();
+        for (int i = 0; i < names.size(); i++)
+            index.put(names.get(i), i);
+        try (Writer out = new Writer(filename, names.size())) {
+            for (String name : names)
+                out.writeNode(name);
+            for (String pred : names)
+                for (String succ : graph.getSuccessors(pred))
+                    out.writeEdge(index.get(pred), index.get(succ), graph.getEdge(pred, succ));
+            for (String pred : names) {
+                for (String succ : graph.getSuccessors(pred)) {
+                    TravelTimeFunction travelTime = graph.getTravelTime(pred, succ);
+                    if (travelTime != null) out.writeTravelTime(index.get(pred), index.get(succ), travelTime);
+                }
+            }
+            if (labels != null) out.writeLabels(labels);
+        }
+    }
+
+    /**
+     * Inserts every node and edge from a snapshot file into a graph.
+     * @param filename the snapshot to read
+     * @param graph the graph to insert the snapshot's contents into
+     * @return the hub labels stored with the graph, or null if it has none
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static HubLabels read(String filename, GraphADT<String,Double> graph) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                 new FileInputStream(filename), 1 << 16))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(filename + " is not a graph snapshot.");
+            int version = in.readInt();
+            if (version < 1 || version > VERSION)
+                throw new IOException(filename + " is snapshot version " + version +
+                                      ", but only versions 1 to " + VERSION + " are supported.");
+            String[] names = new String[in.readInt()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = in.readUTF();
+                graph.insertNode(names[i]);
+            }
+            for (int pred = in.readInt(); pred != END_OF_EDGES; pred = in.readInt()) {
+                int succ = in.readInt();
+                double seconds = in.readDouble();
+                if (pred < 0 || pred >= names.length || succ < 0 || succ >= names.length)
+                    throw new IOException(filename + " has an edge to a node that does not exist.");
+                graph.insertEdge(names[pred], names[succ], seconds);
+            }
+            if (version < 2) return null;
+            for (int pred = in.readInt(); pred != END_OF_EDGES; pred = in.readInt()) {
+                int succ = in.readInt();
+                int count = in.readInt();
+                if (count < 1 || count > 1 << 20)
+                    throw new IOException(filename + " has a travel time with " + count + " points.");
+                double[] times = new double[count];
+                double[] durations = new double[count];
+                for (int i = 0; i < count; i++) {
+                    times[i] = in.readDouble();
+                    durations[i] = in.readDouble();
+                }
+                if (pred < 0 || pred >= names.length || succ < 0 || succ >= names.length
+                    || !graph.setTravelTime(names[pred], names[succ], new TravelTimeFunction(times, durations)))
+                    throw new IOException(filename + " has a travel time for an edge that does not exist.");
+            }
+            if (version < 3 || in.readInt() == 0) return null;
+            try {
+                return HubLabels.read(in, Arrays.asList(names));
+            } catch (EOFException e) {
+                throw e;
+            } catch (IOException e) {
+                throw new IOException(filename + " has invalid hub labels: " + e.getMessage());
+            }
+        } catch (EOFException e) {
+            throw new IOException(filename + " ends before the end of its snapshot.");
+        }
+    }
+}
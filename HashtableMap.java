@@ -1,4 +1,5 @@
 import java.util.NoSuchElementException;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -140,11 +141,15 @@ public class HashtableMap<KeyType, ValueType> implements MapADT<KeyType, ValueTy
         LinkedList<Pair> pairs = table[index];
 
         if (pairs != null) {
-            for (Pair p : pairs) {
+            //Remove through the iterator, since keys are unique there is at most one match.
+            Iterator<Pair> iterator = pairs.iterator();
+            while (iterator.hasNext()) {
+                Pair p = iterator.next();
                 if (p.key.equals(key)) {
                     result = p.value;
-                    pairs.remove(p);
+                    iterator.remove();
                     size--;
+                    break;
                 }
             }
         }
@@ -202,6 +207,30 @@ public class HashtableMap<KeyType, ValueType> implements MapADT<KeyType, ValueTy
         return keys;
     }
     
+    /**
+     * Adds the table, buckets and pairs of this map to an estimate of the
+     * memory that it takes up, along with a note of how full the table is.
+     * The keys and values are not counted, since they belong to whatever
+     * put them here.
+     * @param footprint the estimate to add to
+     * @param name what this map holds, which names its parts
+     */
+    public void addFootprint(MemoryFootprint footprint, String name) {
+        int buckets = 0, longest = 0;
+        for (LinkedList<Pair> pairs : table) {
+            if (pairs != null) {
+                buckets++;
+                longest = Math.max(longest, pairs.size());
+            }
+        }
+        footprint.add(name + " table", capacity, footprint.arrayBytes(footprint.getReferenceBytes(), capacity));
+        footprint.add(name + " buckets", buckets, buckets * footprint.objectBytes(2, 8));
+        footprint.add(name + " entries", size, size * footprint.objectBytes(3, 0));
+        footprint.add(name + " pairs", size, size * footprint.objectBytes(2, 0));
+        footprint.note(name + " load", String.format("%d pairs in %d slots (%.2f), %d buckets in use, longest %d",
+                                                     size, capacity, (double) size / capacity, buckets, longest));
+    }
+
     /**
      * Helper method that finds the index to insert a key.
      */
@@ -0,0 +1,106 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An html template that has been split, once, into static segments of utf-8
+ * bytes separated by named slots. A slot is written in the template as a
+ * placeholder comment such as <!-- RESPONSE GOES HERE -->. Rendering writes
+ * each static segment as is, with the bytes provided for each slot between
+ * them, so no searching or string replacement happens per request.
+ */
+public class HtmlTemplate {
+
+    private final byte[][] segments; // static bytes before, between, and after slots
+    private final int[] slotOrder;   // index into the placeholders for each slot
+
+    /**
+     * Splits a template around every occurrence of the provided placeholders.
+     * @param template the complete template text
+     * @param placeholders the text that marks each slot within the template
+     * @throws IllegalArgumentException if a placeholder is not in the template
+     */
+    public HtmlTemplate(String template, String... placeholders) {
+        List<byte[]> segmentList = new ArrayList<>();
+        List<Integer> slotList = new ArrayList<>();
+        for (int i = 0; i < placeholders.length; i++)
+            if (!template.contains(placeholders[i]))
+                throw new IllegalArgumentException("Template does not contain: " + placeholders[i]);
+
+        //Repeatedly cut at the earliest remaining placeholder.
+        int position = 0;
+        while (true) {
+            int next = -1;
+            int slot = -1;
+            for (int i = 0; i < placeholders.length; i++) {
+                int index = template.indexOf(placeholders[i], position);
+                if (index != -1 && (next == -1 || index < next)) {
+                    next = index;
+                    slot = i;
+                }
+            }
+            if (next == -1) break;
+            segmentList.add(template.substring(position, next).getBytes(StandardCharsets.UTF_8));
+            slotList.add(slot);
+            position = next + placeholders[slot].length();
+        }
+        segmentList.add(template.substring(position).getBytes(StandardCharsets.UTF_8));
+
+        segments = segmentList.toArray(new byte[0][]);
+        slotOrder = new int[slotList.size()];
+        for (int i = 0; i < slotOrder.length; i++) slotOrder[i] = slotList.get(i);
+    }
+
+    /**
+     * Writes the template to out, with the bytes for each slot in place of
+     * its placeholder.
+     * @param out the stream to write the rendered page to
+     * @param slotValues bytes for each slot, in the order that the
+     *                   placeholders were provided to the constructor
+     */
+    public void render(OutputStream out, byte[]... slotValues) throws IOException {
+        for (int i = 0; i < slotOrder.length; i++) {
+            out.write(segments[i]);
+            out.write(slotValues[slotOrder[i]]);
+        }
+        out.write(segments[segments.length - 1]);
+    }
+
+    /**
+     * Writes the template to out, calling the fragment for each slot in
+     * place of its placeholder, so that slots are written straight into the
+     * writer's buffer rather than first being rendered into bytes of their own.
+     * @param out the writer to write the rendered page to
+     * @param slotFragments writes each slot, in the order that the
+     *                      placeholders were provided to the constructor
+     */
+    public void render(HtmlWriter out, HtmlWriter.Fragment... slotFragments) throws IOException {
+        for (int i = 0; i < slotOrder.length; i++) {
+            out.bytes(segments[i]);
+            slotFragments[slotOrder[i]].write(out);
+        }
+        out.bytes(segments[segments.length - 1]);
+    }
+
+    /**
+     * Renders the template into a new byte array.
+     * @param slotValues bytes for each slot, in the order that the
+     *                   placeholders were provided to the constructor
+     * @return the bytes of the rendered page
+     */
+    public byte[] render(byte[]... slotValues) {
+        int length = segments[segments.length - 1].length;
+        for (int i = 0; i < slotOrder.length; i++)
+            length += segments[i].length + slotValues[slotOrder[i]].length;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        try {
+            render(out, slotValues);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // never thrown by ByteArrayOutputStream
+        }
+        return out.toByteArray();
+    }
+}
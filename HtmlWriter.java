@@ -0,0 +1,177 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writes HTML directly as UTF-8 bytes into a fixed size buffer that is
+ * flushed to an OutputStream whenever it fills up, in the same way that
+ * JsonWriter writes JSON. Markup is written as is, while text (such as a
+ * location name, or anything else that a user typed) is escaped so that it
+ * can never be read as markup. Writers, along with their buffers, are pooled
+ * so that each page reuses an existing buffer:
+ *     out.markup("<li>").text(location).markup("</li>");
+ */
+public class HtmlWriter {
+
+    /**
+     * A piece of a page that is written by a call rather than held as bytes,
+     * such as the response slot of an HtmlTemplate.
+     */
+    public interface Fragment {
+        public void write(HtmlWriter out) throws IOException;
+    }
+
+    // writers that are not currently in use, ready to be reused
+    private static final ConcurrentLinkedQueue<HtmlWriter> pool = new ConcurrentLinkedQueue<>();
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private OutputStream out = null;
+
+    private HtmlWriter() { }
+
+    /**
+     * Takes a writer from the pool (or creates one when the pool is empty)
+     * that writes to the provided stream. Writers must be returned to the
+     * pool by calling release() once the page is complete.
+     * @param out the stream the HTML is written to
+     * @return a writer with an empty buffer
+     */
+    public static HtmlWriter acquire(OutputStream out) {
+        HtmlWriter writer = pool.poll();
+        if (writer == null) writer = new HtmlWriter();
+        writer.out = out;
+        writer.position = 0;
+        return writer;
+    }
+
+    /**
+     * Flushes any buffered bytes and returns this writer to the pool. The
+     * underlying stream is flushed but not closed.
+     * @throws IOException if the buffered bytes cannot be written
+     */
+    public void release() throws IOException {
+        try {
+            flush();
+        } finally {
+            out = null;
+            pool.offer(this);
+        }
+    }
+
+    /**
+     * Writes any buffered bytes through to the underlying stream.
+     * @throws IOException if the stream cannot be written to
+     */
+    public void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes markup without escaping it, so this must never be passed text
+     * that came from a user or from a map file.
+     * @param html the markup to write
+     * @return this writer
+     */
+    public HtmlWriter markup(String html) throws IOException {
+        for (int i = 0; i < html.length(); i++)
+            i = writeChar(html, i);
+        return this;
+    }
+
+    /**
+     * Writes text, escaping each character that has a meaning in HTML.
+     * @param text the text to write, where null is written as "null"
+     * @return this writer
+     */
+    public HtmlWriter text(String text) throws IOException {
+        if (text == null) text = "null";
+        for (int i = 0; i < text.length(); i++) {
+            switch (text.charAt(i)) {
+                case '&': writeAscii("&amp;"); break;
+                case '<': writeAscii("&lt;"); break;
+                case '>': writeAscii("&gt;"); break;
+                case '"': writeAscii("&quot;"); break;
+                case '\'': writeAscii("&#39;"); break;
+                default: i = writeChar(text, i);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes a number as text, formatted as Double.toString() formats it.
+     * @param value the number to write
+     * @return this writer
+     */
+    public HtmlWriter text(double value) throws IOException {
+        writeAscii(Double.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes bytes that are already encoded as UTF-8 HTML, such as a
+     * pre-rendered part of a page, without copying them into the buffer
+     * when they would not fit.
+     * @param html the bytes to write
+     * @return this writer
+     */
+    public HtmlWriter bytes(byte[] html) throws IOException {
+        if (html.length <= buffer.length - position) {
+            System.arraycopy(html, 0, buffer, position, html.length);
+            position += html.length;
+        } else {
+            if (position > 0) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+            out.write(html);
+        }
+        return this;
+    }
+
+    // utf-8 encodes the character at index i of value, and returns the index
+    // of its last char (which is i + 1 for a surrogate pair)
+    private int writeChar(String value, int i) throws IOException {
+        char c = value.charAt(i);
+        if (c < 0x80) {
+            writeByte(c);
+        } else if (c < 0x800) {
+            writeByte(0xC0 | (c >> 6));
+            writeByte(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                   && Character.isLowSurrogate(value.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(++i));
+            writeByte(0xF0 | (codePoint >> 18));
+            writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+            writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+            writeByte(0x80 | (codePoint & 0x3F));
+        } else {
+            writeByte(0xE0 | (c >> 12));
+            writeByte(0x80 | ((c >> 6) & 0x3F));
+            writeByte(0x80 | (c & 0x3F));
+        }
+        return i;
+    }
+
+    // writes a string known to contain only ascii characters
+    private void writeAscii(String ascii) throws IOException {
+        for (int i = 0; i < ascii.length(); i++)
+            writeByte(ascii.charAt(i));
+    }
+
+    // appends a byte to the buffer, flushing it to the stream when full
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        buffer[position++] = (byte) b;
+    }
+}
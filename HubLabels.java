@@ -0,0 +1,438 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A distance oracle that answers the cost of the shortest path between any
+ * two nodes of a graph in microseconds, without searching the graph. Each
+ * node has a forward label, holding the cost from it to each of a few hub
+ * nodes, and a backward label, holding the cost to it from each of a few
+ * hubs. The labels are built so that every shortest path passes through
+ * some hub in both the start's forward label and the end's backward label,
+ * so the cost of the path is the least sum of the two costs over the hubs
+ * that the labels share. Each label is sorted by hub, so those shared hubs
+ * are found by one merge of the two labels.
+ *
+ * Labels are built by pruned landmark labeling (Akiba, Iwata and Yoshida).
+ * Nodes are ranked by importance, and a search is run forwards and then
+ * backwards from each node in turn. A search adds the node it started from
+ * as a hub to the labels of each node that it reaches, except that it does
+ * not add to, or continue past, a node whose cost the labels already give.
+ * Nodes that lie on many shortest paths are ranked first, found by counting
+ * the descendants of each node in shortest path trees from a sample of
+ * start nodes, so that later searches are pruned early.
+ *
+ * Labels only give costs, using the weight of each edge: paths are still
+ * found by searching the graph. The graph must not change once its labels
+ * have been built. Labels can be stored with a GraphSnapshot, so that they
+ * load with the graph rather than being built again:
+ *     java HubLabels map=FILE out=FILE.snap
+ */
+public class HubLabels {
+
+    // start nodes of the shortest path trees that nodes are ranked by
+    private static final int SAMPLE_TREES = 32;
+
+    private final List<String> nodes;
+    private final Map<String,Integer> index = new HashMap<>();
+    // forward label of node i is hubs [forwardFirst[i], forwardFirst[i+1])
+    // of forwardHubs, which are ranks in increasing order, with their costs
+    private final int[] forwardFirst;
+    private final int[] forwardHubs;
+    private final double[] forwardCosts;
+    private final int[] backwardFirst;
+    private final int[] backwardHubs;
+    private final double[] backwardCosts;
+    // costs by hub rank, for queries that compare one label to many
+    private final ConcurrentLinkedQueue<double[]> scratch = new ConcurrentLinkedQueue<>();
+
+    private HubLabels(List<String> nodes, int[] forwardFirst, int[] forwardHubs, double[] forwardCosts,
+                      int[] backwardFirst, int[] backwardHubs, double[] backwardCosts) {
+        this.nodes = nodes;
+        for (int i = 0; i < nodes.size(); i++)
+            index.put(nodes.get(i), i);
+        this.forwardFirst = forwardFirst;
+        this.forwardHubs = forwardHubs;
+        this.forwardCosts = forwardCosts;
+        this.backwardFirst = backwardFirst;
+        this.backwardHubs = backwardHubs;
+        this.backwardCosts = backwardCosts;
+    }
+
+    /**
+     * The labels of every node while they are being built, each growing as
+     * hubs are added to it.
+     */
+    private static final class Builder {
+        final int[][] hubs;
+        final double[][] costs;
+        final int[] sizes;
+
+        Builder(int count) {
+            hubs = new int[count][];
+            costs = new double[count][];
+            sizes = new int[count];
+            Arrays.fill(hubs, new int[0]);
+            Arrays.fill(costs, new double[0]);
+        }
+
+        void add(int node, int hub, double cost) {
+            if (sizes[node] == hubs[node].length) {
+                hubs[node] = Arrays.copyOf(hubs[node], Math.max(4, sizes[node] * 2));
+                costs[node] = Arrays.copyOf(costs[node], hubs[node].length);
+            }
+            hubs[node][sizes[node]] = hub;
+            costs[node][sizes[node]++] = cost;
+        }
+    }
+
+    /**
+     * Builds the labels of every node in a graph.
+     * @param graph the graph to label, which must not change meanwhile
+     * @return the labels
+     */
+    public static HubLabels build(GraphADT<String,Double> graph) {
+        List<String> nodes = new ArrayList<>(graph.getAllNodes());
+        int count = nodes.size();
+        Map<String,Integer> index = new HashMap<>();
+        for (int i = 0; i < count; i++)
+            index.put(nodes.get(i), i);
+
+        //Read the edges in both directions, as arrays of node indexes.
+        int[][] successors = new int[count][];
+        double[][] weights = new double[count][];
+        int[] inDegree = new int[count];
+        for (int i = 0; i < count; i++) {
+            List<String> names = graph.getSuccessors(nodes.get(i));
+            successors[i] = new int[names.size()];
+            weights[i] = new double[names.size()];
+            for (int j = 0; j < names.size(); j++) {
+                successors[i][j] = index.get(names.get(j));
+                weights[i][j] = graph.getEdge(nodes.get(i), names.get(j));
+                inDegree[successors[i][j]]++;
+            }
+        }
+        int[][] predecessors = new int[count][];
+        double[][] reverseWeights = new double[count][];
+        for (int i = 0; i < count; i++) {
+            predecessors[i] = new int[inDegree[i]];
+            reverseWeights[i] = new double[inDegree[i]];
+            inDegree[i] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < successors[i].length; j++) {
+                int succ = successors[i][j];
+                predecessors[succ][inDegree[succ]] = i;
+                reverseWeights[succ][inDegree[succ]++] = weights[i][j];
+            }
+        }
+
+        int[] order = rank(successors, weights, predecessors);
+        Builder forward = new Builder(count);
+        Builder backward = new Builder(count);
+        double[] byHub = new double[count];
+        Arrays.fill(byHub, Double.POSITIVE_INFINITY);
+        SearchWorkspace workspace = new SearchWorkspace();
+        for (int rank = 0; rank < count; rank++) {
+            //The forward search adds this hub to backward labels, and the
+            //backward search to forward labels.
+            prunedSearch(order[rank], rank, successors, weights, forward, backward, byHub, workspace);
+            prunedSearch(order[rank], rank, predecessors, reverseWeights, backward, forward, byHub, workspace);
+        }
+
+        int[] forwardFirst = new int[count + 1];
+        int[] backwardFirst = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            forwardFirst[i + 1] = forwardFirst[i] + forward.sizes[i];
+            backwardFirst[i + 1] = backwardFirst[i] + backward.sizes[i];
+        }
+        int[] forwardHubs = new int[forwardFirst[count]];
+        double[] forwardCosts = new double[forwardFirst[count]];
+        int[] backwardHubs = new int[backwardFirst[count]];
+        double[] backwardCosts = new double[backwardFirst[count]];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(forward.hubs[i], 0, forwardHubs, forwardFirst[i], forward.sizes[i]);
+            System.arraycopy(forward.costs[i], 0, forwardCosts, forwardFirst[i], forward.sizes[i]);
+            System.arraycopy(backward.hubs[i], 0, backwardHubs, backwardFirst[i], backward.sizes[i]);
+            System.arraycopy(backward.costs[i], 0, backwardCosts, backwardFirst[i], backward.sizes[i]);
+        }
+        return new HubLabels(nodes, forwardFirst, forwardHubs, forwardCosts,
+                             backwardFirst, backwardHubs, backwardCosts);
+    }
+
+    // orders nodes by the total number of descendants that they have in
+    // shortest path trees from a sample of start nodes, breaking ties by
+    // degree, and returns the node of each rank
+    private static int[] rank(int[][] successors, double[][] weights, int[][] predecessors) {
+        int count = successors.length;
+        long[] scores = new long[count];
+        int[] settledOrder = new int[count];
+        int[] descendants = new int[count];
+        SearchWorkspace workspace = new SearchWorkspace();
+        Random random = new Random(count);
+        for (int tree = 0; tree < Math.min(SAMPLE_TREES, count); tree++) {
+            int settled = 0;
+            workspace.reset(count);
+            workspace.improve(random.nextInt(count), 0, -1);
+            while (!workspace.isEmpty()) {
+                int current = workspace.pop();
+                if (workspace.isSettled(current)) continue;
+                workspace.settle(current);
+                settledOrder[settled++] = current;
+                double cost = workspace.getCost(current);
+                for (int j = 0; j < successors[current].length; j++)
+                    workspace.improve(successors[current][j], cost + weights[current][j], current);
+            }
+            //Each node's subtree is settled after it, so counting back from
+            //the last node settled adds each subtree up before its parent.
+            for (int i = settled - 1; i >= 0; i--) {
+                int node = settledOrder[i];
+                descendants[node] += 1;
+                scores[node] += descendants[node];
+                if (workspace.getPrevious(node) != -1) descendants[workspace.getPrevious(node)] += descendants[node];
+            }
+            for (int i = 0; i < settled; i++)
+                descendants[settledOrder[i]] = 0;
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> scores[a] != scores[b] ? Long.compare(scores[b], scores[a])
+                    : Integer.compare(successors[b].length + predecessors[b].length,
+                                      successors[a].length + predecessors[a].length));
+        int[] ranked = new int[count];
+        for (int i = 0; i < count; i++)
+            ranked[i] = order[i];
+        return ranked;
+    }
+
+    // searches out from one node, adding it as a hub to the reached labels
+    // of each node whose cost the labels do not already give, where the
+    // start's own labels are its known labels
+    private static void prunedSearch(int start, int rank, int[][] edges, double[][] weights,
+                                     Builder known, Builder reached, double[] byHub, SearchWorkspace workspace) {
+        for (int i = 0; i < known.sizes[start]; i++)
+            byHub[known.hubs[start][i]] = known.costs[start][i];
+        workspace.reset(edges.length);
+        workspace.improve(start, 0, -1);
+        while (!workspace.isEmpty()) {
+            int current = workspace.pop();
+            if (workspace.isSettled(current)) continue;
+            workspace.settle(current);
+            double cost = workspace.getCost(current);
+            double labelled = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < reached.sizes[current]; i++)
+                labelled = Math.min(labelled, byHub[reached.hubs[current][i]] + reached.costs[current][i]);
+            if (labelled <= cost)
+                continue;
+            reached.add(current, rank, cost);
+            for (int j = 0; j < edges[current].length; j++)
+                if (!workspace.isSettled(edges[current][j]))
+                    workspace.improve(edges[current][j], cost + weights[current][j], current);
+        }
+        for (int i = 0; i < known.sizes[start]; i++)
+            byHub[known.hubs[start][i]] = Double.POSITIVE_INFINITY;
+    }
+
+    // the index of a node, which must be in the graph
+    private int indexOf(String data) {
+        Integer i = index.get(data);
+        if (i == null)
+            throw new NoSuchElementException("No node holds " + data);
+        return i;
+    }
+
+    /**
+     * Returns the cost of the shortest path between two nodes.
+     * @param start the data item in the node that the path starts at
+     * @param end the data item in the node that the path ends at
+     * @return the cost of the path, or positive infinity if there is none
+     * @throws NoSuchElementException if either node is not labelled
+     */
+    public double distance(String start, String end) {
+        int from = indexOf(start);
+        int to = indexOf(end);
+        double best = Double.POSITIVE_INFINITY;
+        int i = forwardFirst[from];
+        int j = backwardFirst[to];
+        int iEnd = forwardFirst[from + 1];
+        int jEnd = backwardFirst[to + 1];
+        while (i < iEnd && j < jEnd) {
+            if (forwardHubs[i] < backwardHubs[j]) {
+                i++;
+            } else if (forwardHubs[i] > backwardHubs[j]) {
+                j++;
+            } else {
+                best = Math.min(best, forwardCosts[i++] + backwardCosts[j++]);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the node whose shortest path from start costs the most, among
+     * the nodes that can be reached from it. This compares the forward label
+     * of start to the backward label of every other node, in one pass over
+     * the labels.
+     * @param start the data item in the node that the paths start at
+     * @return the data item in the furthest node, or null if no other node
+     *         can be reached
+     * @throws NoSuchElementException if start is not labelled
+     */
+    public String furthestFrom(String start) {
+        int from = indexOf(start);
+        double[] byHub = scratch.poll();
+        if (byHub == null) {
+            byHub = new double[nodes.size()];
+            Arrays.fill(byHub, Double.POSITIVE_INFINITY);
+        }
+        try {
+            for (int i = forwardFirst[from]; i < forwardFirst[from + 1]; i++)
+                byHub[forwardHubs[i]] = forwardCosts[i];
+            int furthest = -1;
+            double furthestCost = -1;
+            for (int to = 0; to < nodes.size(); to++) {
+                double cost = Double.POSITIVE_INFINITY;
+                for (int j = backwardFirst[to]; j < backwardFirst[to + 1]; j++)
+                    cost = Math.min(cost, byHub[backwardHubs[j]] + backwardCosts[j]);
+                if (to != from && cost != Double.POSITIVE_INFINITY && cost >= furthestCost) {
+                    furthest = to;
+                    furthestCost = cost;
+                }
+            }
+            return furthest == -1 ? null : nodes.get(furthest);
+        } finally {
+            for (int i = forwardFirst[from]; i < forwardFirst[from + 1]; i++)
+                byHub[forwardHubs[i]] = Double.POSITIVE_INFINITY;
+            scratch.offer(byHub);
+        }
+    }
+
+    /**
+     * Returns the labelled nodes, in the order that labels are stored in.
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public boolean containsNode(String data) {
+        return index.containsKey(data);
+    }
+
+    /**
+     * Returns the number of hubs in every forward and backward label.
+     */
+    public long getEntryCount() {
+        return (long) forwardHubs.length + backwardHubs.length;
+    }
+
+    /**
+     * Returns the number of bytes that the label arrays take up.
+     */
+    public long getBytes() {
+        return 4L * (forwardFirst.length + backwardFirst.length) + 12 * getEntryCount();
+    }
+
+    /**
+     * Writes every label, in the order of getNodes(): for each node, the
+     * size of its forward label then each hub's int rank and double cost,
+     * then its backward label the same way.
+     * @param out the stream to write to
+     * @throws IOException if the labels cannot be written
+     */
+    public void write(DataOutputStream out) throws IOException {
+        for (int i = 0; i < nodes.size(); i++) {
+            writeLabel(out, forwardHubs, forwardCosts, forwardFirst[i], forwardFirst[i + 1]);
+            writeLabel(out, backwardHubs, backwardCosts, backwardFirst[i], backwardFirst[i + 1]);
+        }
+    }
+
+    private static void writeLabel(DataOutputStream out, int[] hubs, double[] costs, int from, int to)
+        throws IOException {
+        out.writeInt(to - from);
+        for (int i = from; i < to; i++) {
+            out.writeInt(hubs[i]);
+            out.writeDouble(costs[i]);
+        }
+    }
+
+    /**
+     * Reads labels written by write().
+     * @param in the stream to read from
+     * @param nodes the labelled nodes, in the order that they were written
+     * @return the labels
+     * @throws IOException if the labels cannot be read, or are not sorted
+     */
+    public static HubLabels read(DataInputStream in, List<String> nodes) throws IOException {
+        int count = nodes.size();
+        int[] forwardFirst = new int[count + 1];
+        int[] backwardFirst = new int[count + 1];
+        Builder forward = new Builder(count);
+        Builder backward = new Builder(count);
+        for (int i = 0; i < count; i++) {
+            readLabel(in, forward, i);
+            readLabel(in, backward, i);
+            forwardFirst[i + 1] = forwardFirst[i] + forward.sizes[i];
+            backwardFirst[i + 1] = backwardFirst[i] + backward.sizes[i];
+        }
+        int[] forwardHubs = new int[forwardFirst[count]];
+        double[] forwardCosts = new double[forwardFirst[count]];
+        int[] backwardHubs = new int[backwardFirst[count]];
+        double[] backwardCosts = new double[backwardFirst[count]];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(forward.hubs[i], 0, forwardHubs, forwardFirst[i], forward.sizes[i]);
+            System.arraycopy(forward.costs[i], 0, forwardCosts, forwardFirst[i], forward.sizes[i]);
+            System.arraycopy(backward.hubs[i], 0, backwardHubs, backwardFirst[i], backward.sizes[i]);
+            System.arraycopy(backward.costs[i], 0, backwardCosts, backwardFirst[i], backward.sizes[i]);
+        }
+        return new HubLabels(nodes, forwardFirst, forwardHubs, forwardCosts,
+                             backwardFirst, backwardHubs, backwardCosts);
+    }
+
+    private static void readLabel(DataInputStream in, Builder labels, int node) throws IOException {
+        int size = in.readInt();
+        if (size < 0 || size > labels.sizes.length)
+            throw new IOException("A label has " + size + " hubs, but there are " + labels.sizes.length + " nodes.");
+        labels.hubs[node] = new int[size];
+        labels.costs[node] = new double[size];
+        for (int i = 0; i < size; i++) {
+            int hub = in.readInt();
+            if (hub < 0 || hub >= labels.sizes.length || (i > 0 && hub <= labels.hubs[node][i - 1]))
+                throw new IOException("A label's hubs are out of range or out of order.");
+            labels.add(node, hub, in.readDouble());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String,String> settings = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2)
+                throw new IllegalArgumentException("Settings must be key=value, not: " + arg);
+            settings.put(pair[0], pair[1]);
+        }
+        String map = settings.getOrDefault("map", ServerConfig.DEFAULT_MAP);
+        String out = settings.get("out");
+        if (out == null)
+            throw new IllegalArgumentException("out=FILE is required, to write the labelled snapshot to.");
+
+        DijkstraGraph<String,Double> graph = new DijkstraGraph<>();
+        new Backend(graph).loadGraphData(map);
+        long start = System.nanoTime();
+        HubLabels labels = build(graph);
+        System.out.printf("Labelled %s: %d locations and %d edges in %.3f s%n", map,
+                          graph.getNodeCount(), graph.getEdgeCount(), (System.nanoTime() - start) / 1e9);
+        System.out.printf("Hubs per label: %.1f (%d MB)%n", labels.getEntryCount() / (2.0 * graph.getNodeCount()),
+                          labels.getBytes() >> 20);
+        GraphSnapshot.write(out, graph, labels);
+        System.out.println("Wrote " + out);
+    }
+}
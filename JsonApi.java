@@ -0,0 +1,649 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * JSON endpoints for programmatic clients of the campus navigator. These
+ * answer the same questions as the html pages, but encode their responses
+ * with a pooled JsonWriter that streams bytes straight into the response
+ * body using chunked transfer encoding.
+ *
+ * GET /api/path?start=A&end=B      {"start":A,"end":B,"path":[...]}
+ * GET /api/times?start=A&end=B     {"start":A,"end":B,"times":[...],"total":T}
+ * GET /api/cost?start=A&end=B      {"start":A,"end":B,"total":T}
+ * GET /api/furthest?from=A         {"from":A,"furthest":B,"path":[...]}
+ * GET /api/autocomplete?prefix=P&limit=N
+ *                                  {"prefix":P,"matches":[...]}
+ * GET /api/resolve?name=N&limit=L   {"name":N,"matches":[...]}
+ * GET /api/reachable?from=A&seconds=T
+ *                                  {"from":A,"seconds":T,"reachable":
+ *                                   [{"location":B,"seconds":t},...]}
+ * POST /api/batch                  [{"start":A,"end":B,"path":[...]},...]
+ * POST /api/nearest                {"from":A,"nearest":B,"path":[...]}
+ *                               or {"nearest":{A:B,...}}
+ * POST /api/route                  {"start":A,"end":B,"path":[...],
+ *                                   "times":[...],"total":T}
+ *
+ * The path and times endpoints also accept depart=H:MM (or seconds after
+ * midnight), which finds the quickest path when leaving at that time of day
+ * and adds "depart":seconds to the response. They also accept avoid=A|B|...,
+ * a list of locations separated by | that the path may not pass through.
+ *
+ * The body of a batch request is a json array of [start,end] pairs (or of
+ * {"start":A,"end":B} objects). Pairs that share a start location are
+ * answered by a single search, and results are streamed back in the same
+ * order as the pairs as soon as they are ready. The request's own thread
+ * runs these searches, helped by up to parallelism - 1 tasks on the
+ * server's executor. Helpers only take searches that have not started, so a
+ * busy executor slows a batch down but never stalls it.
+ * A pair with no path has {"error":message} in place of its path.
+ *
+ * The body of a nearest request is {"from":A,"among":[B,C,...]}, which finds
+ * the path from A to whichever of the candidates is nearest. Without from,
+ * every location that can reach a candidate is labeled with its nearest one.
+ *
+ * The body of a route request is {"start":A,"end":B} with any of "depart"
+ * (as in the path endpoint), "avoid":[locations], "avoidEdges":[[A,B],...],
+ * "slower":{location:factor,...} (which slows every path into a location)
+ * and "slowerEdges":[[A,B,factor],...]. These only apply to this request,
+ * and the map is not changed.
+ *
+ * Failed requests are answered with {"error":message}, and a status of 400
+ * for malformed queries, or 404 when a location or path does not exist.
+ */
+public class JsonApi {
+
+    // writes the body of a json response
+    protected interface JsonBody {
+        public void write(JsonWriter json) throws IOException;
+    }
+
+    // computes the answer to a request before any of the response is sent,
+    // so that failures can still be reported with an error status
+    protected interface JsonQuery {
+        public JsonBody compute();
+    }
+
+    // most (start, end) pairs that one batch request may contain
+    public static final int MAX_BATCH_SIZE = 10000;
+    // matches returned by autocomplete and resolve, by default and at most
+    public static final int DEFAULT_MATCHES = 10;
+    public static final int MAX_MATCHES = 100;
+
+    private final BackendInterface backend;
+    private final Executor executor; // runs helpers for batch requests, or null for none
+    private final int parallelism;
+
+    /**
+     * Creates the json api over a backend that has already loaded its graph,
+     * which answers batch requests on the request's thread alone.
+     * @param backend the backend used to answer every request
+     */
+    public JsonApi(BackendInterface backend) {
+        this(backend, null, 1);
+    }
+
+    /**
+     * Creates the json api over a backend that has already loaded its graph.
+     * @param backend the backend used to answer every request
+     * @param executor the executor that requests run on, which also runs the
+     *        searches of batch requests, or null to run them on the request's
+     *        thread alone
+     * @param parallelism the most threads that one batch request searches on
+     * @throws IllegalArgumentException if parallelism is not positive
+     */
+    public JsonApi(BackendInterface backend, Executor executor, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive, not " + parallelism);
+        this.backend = backend;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Adds a context to the server for each of this api's endpoints.
+     * @param server the server to register endpoints with
+     * @param wrapper applied to each endpoint's handler before registering it
+     */
+    public void register(HttpServer server, UnaryOperator<HttpHandler> wrapper) {
+        server.createContext("/api/path", wrapper.apply(this::handleShortestPath));
+        server.createContext("/api/times", wrapper.apply(this::handlePathTimes));
+        server.createContext("/api/cost", wrapper.apply(this::handleCost));
+        server.createContext("/api/furthest", wrapper.apply(this::handleFurthestDestination));
+        server.createContext("/api/reachable", wrapper.apply(this::handleReachable));
+        server.createContext("/api/autocomplete", wrapper.apply(this::handleAutocomplete));
+        server.createContext("/api/resolve", wrapper.apply(this::handleResolve));
+        server.createContext("/api/batch", wrapper.apply(this::handleBatch));
+        server.createContext("/api/nearest", wrapper.apply(this::handleNearest));
+        server.createContext("/api/route", wrapper.apply(this::handleRoute));
+    }
+
+    // GET /api/path?start=A&end=B, optionally with &depart=H:MM and &avoid=C|D
+    private void handleShortestPath(HttpExchange exchange) throws IOException {
+        respond(exchange, () -> {
+            Map<String,String> args = WebApp.parseQuery(exchange.getRequestURI().getQuery());
+            String start = require(args, "start");
+            String end = require(args, "end");
+            Double depart = parseDeparture(args);
+            RouteOverlay<String> overlay = parseAvoid(args);
+            Map<String,Double> steps = findSteps(start, end, depart, overlay);
+            return json -> {
+                json.beginObject();
+                json.name("start").value(start);
+                json.name("end").value(end);
+                if (depart != null) json.name("depart").value(depart);
+                json.name("path").beginArray();
+                for (String location : steps.keySet()) json.value(location);
+                json.endArray();
+                json.endObject();
+            };
+        });
+    }
+
+    // GET /api/times?start=A&end=B, optionally with &depart=H:MM and &avoid=C|D
+    private void handlePathTimes(HttpExchange exchange) throws IOException {
+        respond(exchange, () -> {
+            Map<String,String> args = WebApp.parseQuery(exchange.getRequestURI().getQuery());
+            String start = require(args, "start");
+            String end = require(args, "end");
+            Double depart = parseDeparture(args);
+            RouteOverlay<String> overlay = parseAvoid(args);
+            Map<String,Double> steps = findSteps(start, end, depart, overlay);
+            return json -> {
+                json.beginObject();
+                json.name("start").value(start);
+                json.name("end").value(end);
+                if (depart != null) json.name("depart").value(depart);
+                double total = writeTimes(json, steps);
+                json.name("total").value(total);
+                json.endObject();
+            };
+        });
+    }
+
+    // GET /api/cost?start=A&end=B
+    private void handleCost(HttpExchange exchange) throws IOException {
+        respond(exchange, () -> {
+            Map<String,String> args = WebApp.parseQuery(exchange.getRequestURI().getQuery());
+            String start = require(args, "start");
+            String end = require(args, "end");
+            double total = backend.findTimeOfShortestPath(start, end);
+            return json -> {
+                json.beginObject();
+                json.name("start").value(start);
+                json.name("end").value(end);
+                json.name("total").value(total);
+                json.endObject();
+            };
+        });
+    }
+
+    // GET /api/furthest?from=A
+    private void handleFurthestDestination(HttpExchange exchange) throws IOException {
+        respond(exchange, () -> {
+            Map<String,String> args = WebApp.parseQuery(exchange.getRequestURI().getQuery());
+            String from = require(args, "from");
+            String furthest = backend.getFurthestDestinationFrom(from);
+            if (furthest.isEmpty())
+                throw new NoSuchElementException("No other location can be reached from " + from + ".");
+            List<String> path = backend.findLocationsOnShortestPath(from, furthest);
+            return json -> {
+                json.beginObject();
+                json.name("from").value(from);
+                json.name("furthest").value(furthest);
+                json.name("path").beginArray();
+                for (String location : path) json.value(location);
+                json.endArray();
+                json.endObject();
+            };
+        });
+    }
+
+    // GET /api/autocomplete?prefix=P&limit=N
+    private void handleAutocomplete(HttpExchange exchange) throws IOException {
+        respond(exchange, () -> {
+            Map<String,String> args = WebApp.parseQuery(exchange.getRequestURI().getQuery());
+            String prefix = args.getOrDefault("prefix", "");
+            List<String> matches = backend.findLocationsStartingWith(prefix, parseLimit(args));
+            return json -> {
+                json.beginObject();
+                json.name("prefix").value(prefix);
+                json.name("matches").beginArray();
+                for (String location : matches) json.value(location);
+                json.endArray();
+                json.endObject();
+            };
+        });
+    }
+
+    // GET /api/resolve?name=N&limit=L
+    private void handleResolve(HttpExchange exchange) throws IOException {
+        respond(exchange, () -> {
+            Map<String,String> args = WebApp.parseQuery(exchange.getRequestURI().getQuery());
+            String name = require(args, "name");
+            List<String> matches = backend.resolveLocation(name, parseLimit(args));
+            return json -> {
+                json.beginObject();
+                json.name("name").value(name);
+                json.name("matches").beginArray();
+                for (String location : matches) json.value(location);
+                json.endArray();
+                json.endObject();
+            };
+        });
+    }
+
+    // reads the optional limit on the number of matches to return
+    private static int parseLimit(Map<String,String> args) {
+        if (!args.containsKey("limit")) return DEFAULT_MATCHES;
+        int limit;
+        try {
+            limit = Integer.parseInt(args.get("limit"));
+        } catch (NumberFormatException e) {
+            limit = -1;
+        }
+        if (limit < 1 || limit > MAX_MATCHES)
+            throw new IllegalArgumentException("limit must be from 1 to " + MAX_MATCHES + ".");
+        return limit;
+    }
+
+    // parses the optional depart argument, as a time of day or as seconds
+    // after midnight, or returns null when it is not given
+    private static Double parseDeparture(Map<String,String> args) {
+        return args.containsKey("depart") ? parseDeparture(args.get("depart")) : null;
+    }
+
+    // parses a departure from a query argument or a json string or number
+    private static double parseDeparture(Object depart) {
+        double seconds;
+        try {
+            seconds = depart instanceof Double ? (Double) depart : TravelTimeFunction.parseTime((String) depart);
+        } catch (NumberFormatException | ClassCastException e) {
+            seconds = Double.NaN;
+        }
+        if (!(seconds >= 0) || Double.isInfinite(seconds))
+            throw new IllegalArgumentException("depart must be a time of day such as 8:05, " +
+                                               "or seconds after midnight.");
+        return seconds;
+    }
+
+    // reads the optional avoid argument, a list of locations separated by |
+    // (since names may contain commas), or returns null when it is not given
+    private static RouteOverlay<String> parseAvoid(Map<String,String> args) {
+        String avoid = args.get("avoid");
+        if (avoid == null || avoid.isEmpty()) return null;
+        RouteOverlay<String> overlay = new RouteOverlay<>();
+        for (String location : avoid.split("\\|"))
+            if (!location.isEmpty()) overlay.avoid(location);
+        return overlay;
+    }
+
+    // GET /api/reachable?from=A&seconds=T
+    private void handleReachable(HttpExchange exchange) throws IOException {
+        respond(exchange, () -> {
+            Map<String,String> args = WebApp.parseQuery(exchange.getRequestURI().getQuery());
+            String from = require(args, "from");
+            double seconds;
+            try {
+                seconds = Double.parseDouble(require(args, "seconds"));
+            } catch (NumberFormatException e) {
+                seconds = Double.NaN;
+            }
+            if (!(seconds >= 0) || Double.isInfinite(seconds))
+                throw new IllegalArgumentException("seconds must be a non-negative number.");
+            double limit = seconds;
+            Map<String,Double> reachable = backend.findLocationsReachableWithin(from, limit);
+            return json -> {
+                json.beginObject();
+                json.name("from").value(from);
+                json.name("seconds").value(limit);
+                json.name("reachable").beginArray();
+                for (Map.Entry<String,Double> location : reachable.entrySet()) {
+                    json.beginObject();
+                    json.name("location").value(location.getKey());
+                    json.name("seconds").value(location.getValue());
+                    json.endObject();
+                }
+                json.endArray();
+                json.endObject();
+            };
+        });
+    }
+
+    // POST /api/batch with a json array of (start, end) pairs
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        String text = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        respond(exchange, () -> {
+            if (!exchange.getRequestMethod().equals("POST"))
+                throw new IllegalArgumentException("Batch requests must be sent with POST.");
+            List<String[]> pairs = parsePairs(JsonReader.parse(text));
+
+            //Group the index of each pair by its start location.
+            Map<String,List<Integer>> groups = new LinkedHashMap<>();
+            for (int i = 0; i < pairs.size(); i++)
+                groups.computeIfAbsent(pairs.get(i)[0], start -> new ArrayList<>()).add(i);
+
+            //One search per start location, each taken by the next free thread.
+            List<String> starts = new ArrayList<>();
+            List<List<String>> ends = new ArrayList<>();
+            List<CompletableFuture<List<List<String>>>> futures = new ArrayList<>();
+            int[] groupOf = new int[pairs.size()];
+            int[] indexInGroup = new int[pairs.size()];
+            for (Map.Entry<String,List<Integer>> group : groups.entrySet()) {
+                List<String> groupEnds = new ArrayList<>();
+                for (int index : group.getValue()) {
+                    groupOf[index] = futures.size();
+                    indexInGroup[index] = groupEnds.size();
+                    groupEnds.add(pairs.get(index)[1]);
+                }
+                starts.add(group.getKey());
+                ends.add(groupEnds);
+                futures.add(new CompletableFuture<>());
+            }
+            AtomicInteger next = new AtomicInteger();
+            BooleanSupplier searchNext = () -> {
+                int group = next.getAndIncrement();
+                if (group >= futures.size())
+                    return false;
+                try {
+                    futures.get(group).complete(backend.findLocationsOnShortestPaths(starts.get(group),
+                                                                                     ends.get(group)));
+                } catch (RuntimeException e) {
+                    futures.get(group).completeExceptionally(e);
+                }
+                return true;
+            };
+            int helpers = executor == null ? 0 : Math.min(parallelism, futures.size()) - 1;
+            try {
+                for (int i = 0; i < helpers; i++)
+                    executor.execute(() -> { while (searchNext.getAsBoolean()) { } });
+            } catch (RejectedExecutionException e) {
+                // the searches not taken by a helper are run by this thread
+            }
+
+            //Write each result in request order once its group has finished,
+            //running searches that no helper has started while waiting. The
+            //response has begun by then, so a failed search is reported in
+            //each of its group's pairs rather than as an error response.
+            String[] failures = new String[futures.size()];
+            return json -> {
+                json.beginArray();
+                for (int i = 0; i < pairs.size(); i++) {
+                    CompletableFuture<List<List<String>>> group = futures.get(groupOf[i]);
+                    while (!group.isDone() && searchNext.getAsBoolean()) { }
+                    List<String> path = null;
+                    String error = null;
+                    try {
+                        path = group.join().get(indexInGroup[i]);
+                        if (path.isEmpty())
+                            error = "No path found from " + pairs.get(i)[0] + " to " + pairs.get(i)[1] + ".";
+                    } catch (CompletionException e) {
+                        if (failures[groupOf[i]] == null)
+                            failures[groupOf[i]] = describe(e.getCause());
+                        error = failures[groupOf[i]];
+                    }
+                    json.beginObject();
+                    json.name("start").value(pairs.get(i)[0]);
+                    json.name("end").value(pairs.get(i)[1]);
+                    if (error != null) {
+                        json.name("error").value(error);
+                    } else {
+                        json.name("path").beginArray();
+                        for (String location : path) json.value(location);
+                        json.endArray();
+                    }
+                    json.endObject();
+                }
+                json.endArray();
+            };
+        });
+    }
+
+    // POST /api/nearest with {"from":A,"among":[...]}, or {"among":[...]}
+    private void handleNearest(HttpExchange exchange) throws IOException {
+        String text = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        respond(exchange, () -> {
+            if (!exchange.getRequestMethod().equals("POST"))
+                throw new IllegalArgumentException("Nearest requests must be sent with POST.");
+            Object body = JsonReader.parse(text);
+            if (!(body instanceof Map) || !(((Map<?,?>) body).get("among") instanceof List))
+                throw new IllegalArgumentException("Nearest body must be {\"from\":start,\"among\":[locations]}.");
+            Object from = ((Map<?,?>) body).get("from");
+            List<String> among = new ArrayList<>();
+            for (Object location : (List<?>) ((Map<?,?>) body).get("among")) {
+                if (!(location instanceof String))
+                    throw new IllegalArgumentException("Each location in among must be a string, not: " + location);
+                among.add((String) location);
+            }
+
+            //Without a start location, label every location with its nearest.
+            if (from == null) {
+                Map<String,String> nearest = backend.findNearestOfEach(among);
+                return json -> {
+                    json.beginObject();
+                    json.name("nearest").beginObject();
+                    for (Map.Entry<String,String> label : nearest.entrySet())
+                        json.name(label.getKey()).value(label.getValue());
+                    json.endObject();
+                    json.endObject();
+                };
+            }
+            if (!(from instanceof String))
+                throw new IllegalArgumentException("from must be a string, not: " + from);
+            String start = (String) from;
+            List<String> path = backend.findLocationsOnPathToNearest(start, among);
+            if (path.isEmpty())
+                throw new NoSuchElementException("No path found from " + start + " to any of " + among + ".");
+            return json -> {
+                json.beginObject();
+                json.name("from").value(start);
+                json.name("nearest").value(path.get(path.size() - 1));
+                json.name("path").beginArray();
+                for (String location : path) json.value(location);
+                json.endArray();
+                json.endObject();
+            };
+        });
+    }
+
+    // POST /api/route with {"start":A,"end":B} and any of "depart", "avoid",
+    // "avoidEdges", "slower" and "slowerEdges"
+    private void handleRoute(HttpExchange exchange) throws IOException {
+        String text = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        respond(exchange, () -> {
+            if (!exchange.getRequestMethod().equals("POST"))
+                throw new IllegalArgumentException("Route requests must be sent with POST.");
+            Object parsed = JsonReader.parse(text);
+            if (!(parsed instanceof Map) || !(((Map<?,?>) parsed).get("start") instanceof String)
+                || !(((Map<?,?>) parsed).get("end") instanceof String))
+                throw new IllegalArgumentException("Route body must be {\"start\":start,\"end\":end,...}.");
+            Map<?,?> body = (Map<?,?>) parsed;
+            String start = (String) body.get("start");
+            String end = (String) body.get("end");
+            Double depart = body.get("depart") == null ? null : parseDeparture(body.get("depart"));
+            RouteOverlay<String> overlay = parseOverlay(body);
+
+            Map<String,Double> steps = findSteps(start, end, depart, overlay);
+            return json -> {
+                json.beginObject();
+                json.name("start").value(start);
+                json.name("end").value(end);
+                if (depart != null) json.name("depart").value(depart);
+                json.name("path").beginArray();
+                for (String location : steps.keySet()) json.value(location);
+                json.endArray();
+                double total = writeTimes(json, steps);
+                json.name("total").value(total);
+                json.endObject();
+            };
+        });
+    }
+
+    // finds the path from start to end, leaving at depart unless it is null,
+    // along with the time of each of its steps, with a single search
+    private Map<String,Double> findSteps(String start, String end, Double depart, RouteOverlay<String> overlay) {
+        Map<String,Double> steps = depart == null ? backend.findStepsOnShortestPath(start, end, overlay)
+            : backend.findStepsOnShortestPath(start, end, depart, overlay);
+        if (steps.isEmpty())
+            throw new NoSuchElementException("No path found from " + start + " to " + end + ".");
+        return steps;
+    }
+
+    // writes the times of every step after the start as an array named
+    // times, and returns their total
+    private static double writeTimes(JsonWriter json, Map<String,Double> steps) throws IOException {
+        double total = 0;
+        boolean first = true;
+        json.name("times").beginArray();
+        for (double time : steps.values()) {
+            if (!first) {
+                json.value(time);
+                total += time;
+            }
+            first = false;
+        }
+        json.endArray();
+        return total;
+    }
+
+    // reads the overlay of a route request from its parsed body
+    private static RouteOverlay<String> parseOverlay(Map<?,?> body) {
+        RouteOverlay<String> overlay = new RouteOverlay<>();
+        for (Object location : list(body, "avoid")) {
+            if (!(location instanceof String))
+                throw new IllegalArgumentException("Each location in avoid must be a string, not: " + location);
+            overlay.avoid((String) location);
+        }
+        for (Object edge : list(body, "avoidEdges")) {
+            List<?> pair = edge instanceof List ? (List<?>) edge : List.of();
+            if (pair.size() != 2 || !(pair.get(0) instanceof String) || !(pair.get(1) instanceof String))
+                throw new IllegalArgumentException("Each of avoidEdges must be [from,to], not: " + edge);
+            overlay.avoid((String) pair.get(0), (String) pair.get(1));
+        }
+        Object slower = body.get("slower");
+        if (slower != null && !(slower instanceof Map))
+            throw new IllegalArgumentException("slower must be an object of location:factor, not: " + slower);
+        if (slower != null) {
+            for (Map.Entry<?,?> entry : ((Map<?,?>) slower).entrySet()) {
+                if (!(entry.getValue() instanceof Double))
+                    throw new IllegalArgumentException("Each factor in slower must be a number, not: " +
+                                                       entry.getValue());
+                overlay.slower((String) entry.getKey(), (Double) entry.getValue());
+            }
+        }
+        for (Object edge : list(body, "slowerEdges")) {
+            List<?> triple = edge instanceof List ? (List<?>) edge : List.of();
+            if (triple.size() != 3 || !(triple.get(0) instanceof String) || !(triple.get(1) instanceof String)
+                || !(triple.get(2) instanceof Double))
+                throw new IllegalArgumentException("Each of slowerEdges must be [from,to,factor], not: " + edge);
+            overlay.slower((String) triple.get(0), (String) triple.get(1), (Double) triple.get(2));
+        }
+        return overlay;
+    }
+
+    // returns the array member of a json object, or an empty list without it
+    private static List<?> list(Map<?,?> body, String name) {
+        Object value = body.get(name);
+        if (value == null) return List.of();
+        if (!(value instanceof List))
+            throw new IllegalArgumentException(name + " must be a json array, not: " + value);
+        return (List<?>) value;
+    }
+
+    // reads the (start, end) pairs of a batch request from its parsed body
+    private static List<String[]> parsePairs(Object body) {
+        if (!(body instanceof List))
+            throw new IllegalArgumentException("Batch body must be a json array of pairs.");
+        List<?> items = (List<?>) body;
+        if (items.size() > MAX_BATCH_SIZE)
+            throw new IllegalArgumentException("Batch requests may contain at most " +
+                                               MAX_BATCH_SIZE + " pairs.");
+        List<String[]> pairs = new ArrayList<>();
+        for (Object item : items) {
+            Object start = null;
+            Object end = null;
+            if (item instanceof List && ((List<?>) item).size() == 2) {
+                start = ((List<?>) item).get(0);
+                end = ((List<?>) item).get(1);
+            } else if (item instanceof Map) {
+                start = ((Map<?,?>) item).get("start");
+                end = ((Map<?,?>) item).get("end");
+            }
+            if (!(start instanceof String) || !(end instanceof String))
+                throw new IllegalArgumentException("Each batch pair must be [start,end] or " +
+                                                   "{\"start\":start,\"end\":end}, not: " + item);
+            pairs.add(new String[] {(String) start, (String) end});
+        }
+        return pairs;
+    }
+
+    // answers a request with the body produced by query, or with an error
+    protected static void respond(HttpExchange exchange, JsonQuery query) throws IOException {
+        JsonBody body;
+        int status = 200;
+        try {
+            body = query.compute();
+        } catch (NoSuchElementException e) {
+            status = 404;
+            body = error(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (RuntimeException e) {
+            System.out.println("Exception Thrown: " + e.toString());
+            status = 500;
+            body = error(e.toString());
+        }
+        send(exchange, status, body);
+    }
+
+    // describes why a query failed, as respond does in an error response
+    protected static String describe(Throwable e) {
+        if (e instanceof NoSuchElementException || e instanceof IllegalArgumentException)
+            return e.getMessage();
+        System.out.println("Exception Thrown: " + e.toString());
+        return e.toString();
+    }
+
+    // streams a json body to the client using chunked transfer encoding
+    protected static void send(HttpExchange exchange, int status, JsonBody body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        OutputStream out = exchange.getResponseBody();
+        JsonWriter json = JsonWriter.acquire(out);
+        try {
+            body.write(json);
+        } finally {
+            json.release();
+            out.close();
+        }
+    }
+
+    // creates the body of an error response
+    protected static JsonBody error(String message) {
+        return json -> json.beginObject().name("error").value(message).endObject();
+    }
+
+    // returns the value of a required query argument
+    protected static String require(Map<String,String> args, String key) {
+        String value = args.get(key);
+        if (value == null)
+            throw new IllegalArgumentException("Missing required query argument: " + key);
+        return value;
+    }
+}
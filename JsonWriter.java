@@ -0,0 +1,255 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writes JSON directly as UTF-8 bytes into a fixed size buffer that is
+ * flushed to an OutputStream whenever it fills up. No intermediate Strings
+ * are built for the document, and writers (along with their buffers) are
+ * pooled so that each response reuses an existing buffer.
+ *
+ * Commas between values are inserted automatically, so a document is written
+ * as a sequence of begin/end, name, and value calls:
+ *     out.beginObject().name("path").beginArray().value("A").value("B")
+ *        .endArray().endObject();
+ */
+public class JsonWriter {
+
+    // writers that are not currently in use, ready to be reused
+    private static final ConcurrentLinkedQueue<JsonWriter> pool = new ConcurrentLinkedQueue<>();
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_DEPTH = 64;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private OutputStream out = null;
+
+    // whether the container at each depth already holds a value, and whether
+    // the next value is the value of a name (and so needs no comma)
+    private final boolean[] hasValue = new boolean[MAX_DEPTH];
+    private int depth = 0;
+    private boolean afterName = false;
+
+    private JsonWriter() { }
+
+    /**
+     * Takes a writer from the pool (or creates one when the pool is empty)
+     * that writes to the provided stream. Writers must be returned to the
+     * pool by calling release() once the document is complete.
+     * @param out the stream the JSON document is written to
+     * @return a writer with an empty buffer
+     */
+    public static JsonWriter acquire(OutputStream out) {
+        JsonWriter writer = pool.poll();
+        if (writer == null) writer = new JsonWriter();
+        writer.out = out;
+        writer.position = 0;
+        writer.depth = 0;
+        writer.afterName = false;
+        return writer;
+    }
+
+    /**
+     * Flushes any buffered bytes and returns this writer to the pool. The
+     * underlying stream is flushed but not closed.
+     * @throws IOException if the buffered bytes cannot be written
+     */
+    public void release() throws IOException {
+        try {
+            flush();
+        } finally {
+            out = null;
+            pool.offer(this);
+        }
+    }
+
+    /**
+     * Writes any buffered bytes through to the underlying stream.
+     * @throws IOException if the stream cannot be written to
+     */
+    public void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        out.flush();
+    }
+
+    public JsonWriter beginObject() throws IOException { return open('{'); }
+    public JsonWriter endObject() throws IOException { return close('}'); }
+    public JsonWriter beginArray() throws IOException { return open('['); }
+    public JsonWriter endArray() throws IOException { return close(']'); }
+
+    /**
+     * Writes the name of the next member of the current object.
+     * @param name the member name
+     * @return this writer
+     */
+    public JsonWriter name(String name) throws IOException {
+        separate();
+        writeString(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * Writes a string value, or null when the string is null.
+     * @param value the string to write with json escaping
+     * @return this writer
+     */
+    public JsonWriter value(String value) throws IOException {
+        separate();
+        if (value == null) writeAscii("null");
+        else writeString(value);
+        return this;
+    }
+
+    /**
+     * Writes a numeric value. Integral values are written without a
+     * fractional part, and non-finite values (which json cannot represent)
+     * are written as null.
+     * @param value the number to write
+     * @return this writer
+     */
+    public JsonWriter value(double value) throws IOException {
+        separate();
+        if (Double.isNaN(value) || Double.isInfinite(value)) writeAscii("null");
+        else if (value == (long) value && Math.abs(value) < 1e15) writeLong((long) value);
+        else writeAscii(Double.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes an integer value.
+     * @param value the number to write
+     * @return this writer
+     */
+    public JsonWriter value(long value) throws IOException {
+        separate();
+        writeLong(value);
+        return this;
+    }
+
+    /**
+     * Writes a boolean value.
+     * @param value the boolean to write
+     * @return this writer
+     */
+    public JsonWriter value(boolean value) throws IOException {
+        separate();
+        writeAscii(value ? "true" : "false");
+        return this;
+    }
+
+    // starts a new object or array nested within the current one
+    private JsonWriter open(char bracket) throws IOException {
+        separate();
+        if (depth == MAX_DEPTH)
+            throw new IllegalStateException("JSON nested more than " + MAX_DEPTH + " levels deep.");
+        writeByte(bracket);
+        hasValue[depth++] = false;
+        return this;
+    }
+
+    // ends the current object or array
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0)
+            throw new IllegalStateException("No open JSON object or array to close.");
+        depth--;
+        writeByte(bracket);
+        return this;
+    }
+
+    // writes a comma when the current container already holds a value
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasValue[depth - 1]) writeByte(',');
+            hasValue[depth - 1] = true;
+        }
+    }
+
+    // writes a quoted string, escaping and utf-8 encoding each character; a
+    // surrogate that is not part of a pair has no utf-8 encoding, so it is
+    // written as a hex escape instead, as control characters are
+    private void writeString(String value) throws IOException {
+        writeByte('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writeByte('\\');
+                writeByte(c);
+            } else if (c < 0x20) {
+                writeEscape(c);
+            } else if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                       && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                writeEscape(c);
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    // writes a character as a backslash, u, and four hex digits
+    private void writeEscape(char c) throws IOException {
+        writeByte('\\');
+        writeByte('u');
+        writeByte(HEX[c >> 12]);
+        writeByte(HEX[(c >> 8) & 0xF]);
+        writeByte(HEX[(c >> 4) & 0xF]);
+        writeByte(HEX[c & 0xF]);
+    }
+
+    // writes the decimal digits of a long without creating a String
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) divisor *= 10;
+        while (divisor > 0) {
+            writeByte((int) ('0' + value / divisor % 10));
+            divisor /= 10;
+        }
+    }
+
+    // writes a string known to contain only ascii characters
+    private void writeAscii(String ascii) throws IOException {
+        for (int i = 0; i < ascii.length(); i++)
+            writeByte(ascii.charAt(i));
+    }
+
+    // appends a byte to the buffer, flushing it to the stream when full
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        buffer[position++] = (byte) b;
+    }
+}
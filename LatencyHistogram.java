@@ -0,0 +1,136 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds, with buckets laid out like an HDR
+ * histogram: values below 32 each have their own bucket, and every power of
+ * two above that is divided into 16 equal sub-buckets, so any recorded value
+ * is known to within about 6% across the entire range of a long. Recording
+ * is lock-free (a single atomic increment on the value's bucket), so many
+ * request threads can record into one histogram at once.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;       // 16
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;            // 32
+    private static final int BUCKET_COUNT = (62 - SUB_BUCKET_BITS) * SUB_BUCKETS + LINEAR_LIMIT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a single latency.
+     * @param nanos the latency in nanoseconds, where negative values are
+     *              recorded as zero
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        sum.add(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Records a latency that was measured by a client that waits for each
+     * response before sending its next request, once every expectedInterval
+     * nanoseconds. When a response takes longer than that interval, the
+     * requests that would have been sent (and delayed) while waiting are
+     * recorded as well, correcting for coordinated omission.
+     * @param nanos the measured latency in nanoseconds
+     * @param expectedInterval nanoseconds between requests, or 0 for none
+     */
+    public void recordWithExpectedInterval(long nanos, long expectedInterval) {
+        record(nanos);
+        if (expectedInterval <= 0) return;
+        for (long missing = nanos - expectedInterval; missing >= expectedInterval;
+             missing -= expectedInterval)
+            record(missing);
+    }
+
+    /**
+     * Adds every value recorded in another histogram to this one.
+     * @param other the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long bucketCount = other.counts.get(i);
+            if (bucketCount != 0) counts.addAndGet(i, bucketCount);
+        }
+        count.add(other.count.sum());
+        sum.add(other.sum.sum());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /** @return the number of values recorded */
+    public long getCount() { return count.sum(); }
+
+    /** @return the sum of every value recorded, in nanoseconds */
+    public long getSum() { return sum.sum(); }
+
+    /** @return the largest value recorded, in nanoseconds */
+    public long getMax() { return max.get(); }
+
+    /** @return the mean of every value recorded, in nanoseconds */
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * Returns the value that the provided percentage of recorded values are
+     * at or below, reported as the upper end of its bucket.
+     * @param percentile the percentage, from 0 to 100
+     * @return the value at this percentile in nanoseconds, or 0 when empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) return Math.min(highestValueIn(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns the number of recorded values that are at most the provided
+     * value, counting each bucket whose range starts at or below it.
+     * @param nanos the upper bound, in nanoseconds
+     * @return the number of values recorded at or below nanos
+     */
+    public long getCountAtOrBelow(long nanos) {
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT && lowestValueIn(i) <= nanos; i++)
+            seen += counts.get(i);
+        return seen;
+    }
+
+    // index of the bucket that holds a non-negative value
+    private static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    // smallest value that falls within a bucket
+    private static long lowestValueIn(int bucket) {
+        if (bucket < LINEAR_LIMIT) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return mantissa << shift;
+    }
+
+    // largest value that falls within a bucket
+    private static long highestValueIn(int bucket) {
+        if (bucket == BUCKET_COUNT - 1) return Long.MAX_VALUE;
+        return lowestValueIn(bucket + 1) - 1;
+    }
+}
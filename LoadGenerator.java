@@ -0,0 +1,239 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Starts a WebApp server for a map, then drives it with a number of
+ * concurrent simulated clients and reports the throughput and latency that
+ * they observed. Each client is closed-loop: it sends one query, waits for
+ * the response, and then sends its next query.
+ *
+ * When a target rate is given, each client sends its queries on a fixed
+ * schedule, and latency is measured from when each query was scheduled to
+ * be sent rather than from when it actually was. A response that stalls a
+ * client therefore also counts against every query that it delayed, which
+ * corrects for coordinated omission. Both the corrected and the raw service
+ * time latencies are reported.
+ *
+ * Settings are key=value arguments, with defaults in parentheses:
+ *     map=FILE        map to start the server with (./campus.dot)
+ *     clients=N       concurrent simulated clients (16)
+ *     duration=S      seconds to measure for (30)
+ *     warmup=S        seconds to run before measuring (5)
+ *     rate=R          total queries per second across all clients, or 0 to
+ *                     send each query as soon as the last one returns (0)
+ *     furthest=F      fraction of queries that ask for the furthest
+ *                     destination rather than a shortest path (0.1)
+ *     queries=FILE    query log to replay instead of random location pairs:
+ *                     lines of "start=A&end=B" or "from=A", or tab separated
+ *                     "A<tab>B" or "A", with # comments
+ *     endpoint=E      api to query the json api, or page for html (api)
+ *     seed=N          seed for random queries (400)
+ * Any other settings (such as executor=pool) configure the server, as in
+ * ServerConfig.
+ */
+public class LoadGenerator {
+
+    private String map = ServerConfig.DEFAULT_MAP;
+    private int clients = 16;
+    private double duration = 30;
+    private double warmup = 5;
+    private double rate = 0;
+    private double furthest = 0.1;
+    private String queryFile = null;
+    private String endpoint = "api";
+    private long seed = 400;
+    private final List<String> serverSettings = new ArrayList<>();
+
+    // measurements shared by every client
+    private final LatencyHistogram corrected = new LatencyHistogram();
+    private final LatencyHistogram raw = new LatencyHistogram();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2)
+                throw new IllegalArgumentException("Settings must be key=value, not: " + arg);
+            switch (pair[0]) {
+                case "map": generator.map = pair[1]; break;
+                case "clients": generator.clients = Integer.parseInt(pair[1]); break;
+                case "duration": generator.duration = Double.parseDouble(pair[1]); break;
+                case "warmup": generator.warmup = Double.parseDouble(pair[1]); break;
+                case "rate": generator.rate = Double.parseDouble(pair[1]); break;
+                case "furthest": generator.furthest = Double.parseDouble(pair[1]); break;
+                case "queries": generator.queryFile = pair[1]; break;
+                case "endpoint": generator.endpoint = pair[1]; break;
+                case "seed": generator.seed = Long.parseLong(pair[1]); break;
+                default: generator.serverSettings.add(arg);
+            }
+        }
+        if (!generator.endpoint.equals("api") && !generator.endpoint.equals("page"))
+            throw new IllegalArgumentException("endpoint must be api or page, not: " + generator.endpoint);
+        generator.run();
+    }
+
+    // starts the server, runs every client to completion, and reports
+    private void run() throws Exception {
+        serverSettings.add("map=" + map);
+        ServerConfig config = ServerConfig.fromArgs(serverSettings.toArray(new String[0]));
+        HttpServer server = WebApp.launch(0, config);
+        String base = "http://localhost:" + server.getAddress().getPort();
+        List<String> queries = queryFile == null ? randomQueries() : readQueries(queryFile);
+        if (queries.isEmpty())
+            throw new IllegalArgumentException("There are no queries to send.");
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        long startTime = System.nanoTime();
+        long measureFrom = startTime + (long) (warmup * 1e9);
+        long endTime = measureFrom + (long) (duration * 1e9);
+        long interval = rate > 0 ? (long) (clients * 1e9 / rate) : 0;
+        System.out.println("Running " + clients + " clients for " + warmup + "s warmup and " +
+                           duration + "s measurement" +
+                           (rate > 0 ? " at " + rate + " queries/s" : " as fast as possible") + "...");
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Random random = new Random(seed + i);
+            // stagger the clients' schedules evenly across one interval
+            long firstSend = startTime + (interval * i) / clients;
+            Thread thread = new Thread(() -> runClient(client, base, queries, random,
+                                                       firstSend, interval, measureFrom, endTime),
+                                       "client-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+        server.stop(0);
+        report();
+        System.exit(0);
+    }
+
+    // sends queries one at a time until endTime, recording their latencies
+    private void runClient(HttpClient client, String base, List<String> queries, Random random,
+                           long firstSend, long interval, long measureFrom, long endTime) {
+        long scheduled = firstSend;
+        while (true) {
+            long now = System.nanoTime();
+            if (interval > 0 && scheduled > now) {
+                sleepUntil(scheduled);
+                now = System.nanoTime();
+            } else if (interval == 0) {
+                scheduled = now;
+            }
+            if (now >= endTime) return;
+
+            String query = queries.get(random.nextInt(queries.size()));
+            boolean ok;
+            try {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(base + pathOf(query))).build();
+                HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                ok = response.statusCode() == 200;
+            } catch (IOException e) {
+                ok = false;
+            } catch (InterruptedException e) {
+                return;
+            }
+            long done = System.nanoTime();
+            if (now >= measureFrom) {
+                corrected.record(done - scheduled);
+                raw.record(done - now);
+                if (ok) completed.increment();
+                else failed.increment();
+            }
+            scheduled += interval;
+        }
+    }
+
+    // the request path for a query string, for the configured endpoint
+    private String pathOf(String query) {
+        if (endpoint.equals("page")) return "/?" + query;
+        return (query.startsWith("from=") ? "/api/furthest?" : "/api/path?") + query;
+    }
+
+    // chooses random pairs of locations from the server's loaded map
+    private List<String> randomQueries() {
+        List<String> locations = new ArrayList<>(WebApp.getSharedBackend().getListOfAllLocations());
+        Random random = new Random(seed);
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            String start = locations.get(random.nextInt(locations.size()));
+            if (random.nextDouble() < furthest)
+                queries.add("from=" + encode(start));
+            else
+                queries.add("start=" + encode(start) + "&end=" +
+                            encode(locations.get(random.nextInt(locations.size()))));
+        }
+        return queries;
+    }
+
+    // reads queries from a query log
+    private static List<String> readQueries(String filename) throws IOException {
+        List<String> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(Path.of(filename), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            if (line.contains("=")) {
+                queries.add(line);
+            } else {
+                String[] locations = line.split("\t");
+                if (locations.length == 1) queries.add("from=" + encode(locations[0]));
+                else queries.add("start=" + encode(locations[0]) + "&end=" + encode(locations[1]));
+            }
+        }
+        return queries;
+    }
+
+    // percent encodes a location name for use in a query string
+    private static String encode(String location) {
+        return URLEncoder.encode(location, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // prints throughput and latency percentiles
+    private void report() {
+        long total = completed.sum() + failed.sum();
+        System.out.println();
+        System.out.printf("Requests:    %d (%d failed or not 200 OK)%n", total, failed.sum());
+        System.out.printf("Throughput:  %.1f requests/s%n", total / duration);
+        System.out.printf("%-28s %10s %10s %10s %10s %10s%n", "Latency (ms)", "p50", "p99", "p99.9", "max", "mean");
+        if (rate > 0)
+            printLatency("corrected (from schedule)", corrected);
+        printLatency("service time", raw);
+        if (rate == 0)
+            System.out.println("Latencies are not corrected for coordinated omission unless a rate is given.");
+    }
+
+    private static void printLatency(String label, LatencyHistogram histogram) {
+        System.out.printf("%-28s %10.3f %10.3f %10.3f %10.3f %10.3f%n", label,
+                          histogram.getValueAtPercentile(50) / 1e6,
+                          histogram.getValueAtPercentile(99) / 1e6,
+                          histogram.getValueAtPercentile(99.9) / 1e6,
+                          histogram.getMax() / 1e6,
+                          histogram.getMean() / 1e6);
+    }
+}
@@ -0,0 +1,224 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact, immutable index over location names that finds the names
+ * matching a typed prefix with a binary search, rather than by scanning
+ * every location. Matching ignores case, and a prefix matches the start of
+ * any word in a name: "eng" matches both "Engineering Hall" and
+ * "1410 Engineering Dr". Names that start with the prefix are listed first,
+ * in alphabetical order, followed by names in which only a later word does,
+ * in order of the text from that word on.
+ *
+ * The index holds two sorted arrays. The first has every lower cased name.
+ * The second has every lower cased suffix that starts at a later word. A
+ * lookup binary searches each array for the first entry at or after the
+ * prefix, then reads forward only as far as the number of matches asked for.
+ *
+ * Names added or removed later (see withChanges) are kept beside the arrays,
+ * in a small index of their own and a set of removed names, which lookups
+ * merge in. Once they grow past a sixteenth of the names, the arrays are
+ * rebuilt with them, so each change costs about the same on average no
+ * matter how many names there are.
+ */
+public class LocationIndex {
+
+    // changes that are kept beside the arrays before they are rebuilt, when
+    // a sixteenth of the names is fewer than this
+    private static final int MIN_PENDING = 64;
+
+    private static final Comparator<String> ORDER =
+        Comparator.comparing((String name) -> name.toLowerCase(Locale.ROOT)).thenComparing(Comparator.naturalOrder());
+
+    private final String[] names;        // sorted by lower cased name
+    private final String[] nameKeys;     // lower cased names, same order
+    private final String[] wordKeys;     // sorted suffixes from later words
+    private final int[] wordOwners;      // index into names of each suffix
+    private final LocationIndex added;   // names added since, or null
+    private final Set<String> removed;   // names removed since
+
+    /**
+     * Builds an index over a collection of location names.
+     * @param locations the names to index
+     */
+    public LocationIndex(Collection<String> locations) {
+        added = null;
+        removed = Set.of();
+        names = locations.toArray(new String[0]);
+        Arrays.sort(names, ORDER);
+        nameKeys = new String[names.length];
+        for (int i = 0; i < names.length; i++) nameKeys[i] = names[i].toLowerCase(Locale.ROOT);
+
+        //Collect the start of each later word in every name, then sort them.
+        List<String> keys = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            String key = nameKeys[i];
+            for (int c = 1; c < key.length(); c++) {
+                if (Character.isLetterOrDigit(key.charAt(c)) && !Character.isLetterOrDigit(key.charAt(c - 1))) {
+                    keys.add(key.substring(c));
+                    owners.add(i);
+                }
+            }
+        }
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparing(keys::get));
+        wordKeys = new String[order.length];
+        wordOwners = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            wordKeys[i] = keys.get(order[i]);
+            wordOwners[i] = owners.get(order[i]);
+        }
+    }
+
+    // shares the arrays of base, along with the names added and removed since
+    private LocationIndex(LocationIndex base, LocationIndex added, Set<String> removed) {
+        names = base.names;
+        nameKeys = base.nameKeys;
+        wordKeys = base.wordKeys;
+        wordOwners = base.wordOwners;
+        this.added = added;
+        this.removed = removed;
+    }
+
+    /**
+     * Returns an index over these names along with the added ones and
+     * without the removed ones, leaving this index as it was. Only the names
+     * that changed are indexed, until enough have changed that rebuilding
+     * the whole index is worth it.
+     * @param addedNames names that are not in this index
+     * @param removedNames names that are in this index
+     * @return the index after these changes
+     */
+    public LocationIndex withChanges(Collection<String> addedNames, Collection<String> removedNames) {
+        Set<String> extra = new LinkedHashSet<>();
+        if (added != null) extra.addAll(Arrays.asList(added.names));
+        Set<String> gone = new HashSet<>(removed);
+        for (String name : removedNames)
+            if (!extra.remove(name) && containsInArrays(name)) gone.add(name);
+        for (String name : addedNames)
+            if (!gone.remove(name)) extra.add(name);
+        if (extra.size() + gone.size() > Math.max(MIN_PENDING, names.length / 16)) {
+            List<String> all = new ArrayList<>(extra);
+            for (String name : names)
+                if (!gone.contains(name)) all.add(name);
+            return new LocationIndex(all);
+        }
+        return new LocationIndex(this, extra.isEmpty() ? null : new LocationIndex(extra), gone);
+    }
+
+    // checks whether a name is in the arrays, whether or not it was removed
+    private boolean containsInArrays(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        for (int i = lowerBound(nameKeys, key); i < names.length && nameKeys[i].equals(key); i++)
+            if (names[i].equals(name)) return true;
+        return false;
+    }
+
+    /**
+     * Returns the number of locations in this index.
+     */
+    public int size() {
+        return names.length - removed.size() + (added == null ? 0 : added.size());
+    }
+
+    /**
+     * Returns every indexed name, in alphabetical order.
+     * @return unmodifiable list of all location names
+     */
+    public List<String> getAllLocations() {
+        if (added == null && removed.isEmpty())
+            return Collections.unmodifiableList(Arrays.asList(names));
+        List<String> kept = new ArrayList<>();
+        for (String name : names)
+            if (!removed.contains(name)) kept.add(name);
+        List<String> extra = added == null ? List.of() : added.getAllLocations();
+        return Collections.unmodifiableList(merge(kept, extra, ORDER, kept.size() + extra.size()));
+    }
+
+    /**
+     * Returns up to limit location names in which some word starts with the
+     * provided prefix, ignoring case. Names that start with the prefix come
+     * first.
+     * @param prefix the text typed so far, where surrounding whitespace is
+     *        ignored and an empty prefix matches every name
+     * @param limit the most names to return
+     * @return the matching names, in order of preference
+     */
+    public List<String> startingWith(String prefix, int limit) {
+        String key = prefix.trim().toLowerCase(Locale.ROOT);
+        List<String> matches = namesStartingWith(key, limit);
+        if (added != null)
+            matches = merge(matches, added.namesStartingWith(key, limit), ORDER, limit);
+
+        //Names matched by a later word, skipping those that already matched.
+        int remaining = limit - matches.size();
+        List<Map.Entry<String,String>> words = wordsStartingWith(key, remaining, matches);
+        if (added != null)
+            words = merge(words, added.wordsStartingWith(key, remaining, matches), Map.Entry.comparingByKey(),
+                          remaining);
+        for (Map.Entry<String,String> word : words)
+            matches.add(word.getValue());
+        return matches;
+    }
+
+    // returns up to limit names in the arrays that start with key, in order,
+    // leaving out removed names
+    private List<String> namesStartingWith(String key, int limit) {
+        List<String> found = new ArrayList<>();
+        for (int i = lowerBound(nameKeys, key); i < names.length && found.size() < limit
+                 && nameKeys[i].startsWith(key); i++)
+            if (!removed.contains(names[i])) found.add(names[i]);
+        return found;
+    }
+
+    // returns up to limit names in the arrays with a later word that starts
+    // with key, each along with the first such suffix, in order of those
+    // suffixes, leaving out removed names, names that start with key, and
+    // names in exclude
+    private List<Map.Entry<String,String>> wordsStartingWith(String key, int limit, Collection<String> exclude) {
+        List<Map.Entry<String,String>> found = new ArrayList<>();
+        Set<String> seen = new HashSet<>(exclude);
+        for (int i = lowerBound(wordKeys, key); i < wordKeys.length && found.size() < limit
+                 && wordKeys[i].startsWith(key); i++) {
+            int owner = wordOwners[i];
+            if (nameKeys[owner].startsWith(key) || removed.contains(names[owner])) continue;
+            if (seen.add(names[owner])) found.add(Map.entry(wordKeys[i], names[owner]));
+        }
+        return found;
+    }
+
+    // merges two lists that are each in order into one, up to limit long
+    private static <T> List<T> merge(List<T> a, List<T> b, Comparator<? super T> order, int limit) {
+        List<T> merged = new ArrayList<>();
+        int i = 0, j = 0;
+        while (merged.size() < limit && (i < a.size() || j < b.size())) {
+            if (j == b.size() || i < a.size() && order.compare(a.get(i), b.get(j)) <= 0)
+                merged.add(a.get(i++));
+            else
+                merged.add(b.get(j++));
+        }
+        return merged;
+    }
+
+    // returns the index of the first key that is not less than target
+    private static int lowerBound(String[] keys, String target) {
+        int low = 0, high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(target) < 0) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,324 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves typed text to location names while tolerating typos. Each name is
+ * indexed by its trigrams: the three character substrings of its normalized
+ * (lower cased, single spaced) text, padded with two markers at each end.
+ *
+ * A typo changes at most four distinct trigrams (a swap of two adjacent
+ * characters changes four, and any other single edit changes three). So a
+ * name within k typos of the input shares all but at most 4k of the input's
+ * distinct trigrams, and must appear in at least one of the 4k + 1 rarest
+ * trigram lists of the input. Only names in those short lists are counted
+ * against the rest of the lists, by merging the sorted candidates with each
+ * sorted list, and names that share enough trigrams are then checked using an
+ * edit distance that counts adjacent swaps as one edit and stops as soon as
+ * the distance must exceed k. Names with one typo are looked for first, and
+ * more typos are only allowed when too few names matched.
+ *
+ * As with LocationIndex, names added or removed later (see withChanges) are
+ * kept in a small resolver of their own and a set of removed names, whose
+ * matches are merged in, until there are enough of them to rebuild.
+ */
+public class LocationResolver {
+
+    private static final char PAD = '\u0000';
+
+    // changes that are kept beside the index before it is rebuilt, when a
+    // sixteenth of the names is fewer than this
+    private static final int MIN_PENDING = 64;
+
+    // orders names within a few typos by their number of typos, then by name
+    private static final Comparator<Map.Entry<String,Integer>> ORDER =
+        Map.Entry.<String,Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey());
+
+    private final String[] names;
+    private final char[] text;           // every normalized name, end to end
+    private final int[] starts;          // where each name starts in text,
+                                         // with the end of text last
+    private final Map<String,int[]> postings;
+    private final Set<String> exactNames;
+    private final Map<String,Integer> normalizedNames;
+    private final LocationResolver added;   // names added since, or null
+    private final Set<String> removed;      // names removed since
+
+    /**
+     * Builds the trigram index over a collection of location names.
+     * @param locations the names to resolve input to
+     */
+    public LocationResolver(Collection<String> locations) {
+        added = null;
+        removed = Set.of();
+        postings = new HashMap<>();
+        exactNames = new HashSet<>();
+        normalizedNames = new HashMap<>();
+        names = locations.toArray(new String[0]);
+        starts = new int[names.length + 1];
+        StringBuilder all = new StringBuilder();
+        Map<String,List<Integer>> lists = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            String normalized = normalize(names[i]);
+            starts[i] = all.length();
+            all.append(normalized);
+            exactNames.add(names[i]);
+            normalizedNames.putIfAbsent(normalized, i);
+            for (String gram : trigrams(normalized))
+                lists.computeIfAbsent(gram, g -> new ArrayList<>()).add(i);
+        }
+        starts[names.length] = all.length();
+        text = all.toString().toCharArray();
+        for (Map.Entry<String,List<Integer>> list : lists.entrySet())
+            postings.put(list.getKey(), list.getValue().stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    // shares the index of base, along with the names added and removed since
+    private LocationResolver(LocationResolver base, LocationResolver added, Set<String> removed) {
+        names = base.names;
+        text = base.text;
+        starts = base.starts;
+        postings = base.postings;
+        exactNames = base.exactNames;
+        normalizedNames = base.normalizedNames;
+        this.added = added;
+        this.removed = removed;
+    }
+
+    /**
+     * Returns a resolver over these names along with the added ones and
+     * without the removed ones, leaving this resolver as it was. Only the
+     * names that changed are indexed, until enough have changed that
+     * rebuilding the whole index is worth it.
+     * @param addedNames names that this resolver does not have
+     * @param removedNames names that this resolver has
+     * @return the resolver after these changes
+     */
+    public LocationResolver withChanges(Collection<String> addedNames, Collection<String> removedNames) {
+        Set<String> extra = new LinkedHashSet<>();
+        if (added != null) extra.addAll(Arrays.asList(added.names));
+        Set<String> gone = new HashSet<>(removed);
+        for (String name : removedNames)
+            if (!extra.remove(name) && exactNames.contains(name)) gone.add(name);
+        for (String name : addedNames)
+            if (!gone.remove(name)) extra.add(name);
+        if (extra.size() + gone.size() > Math.max(MIN_PENDING, names.length / 16)) {
+            List<String> all = new ArrayList<>(extra);
+            for (String name : names)
+                if (!gone.contains(name)) all.add(name);
+            return new LocationResolver(all);
+        }
+        return new LocationResolver(this, extra.isEmpty() ? null : new LocationResolver(extra), gone);
+    }
+
+    /**
+     * Returns the location names that best match the input. A name that
+     * equals the input is returned alone, and one that differs only by case
+     * or spacing is preferred next. Otherwise, up to limit names within a few
+     * typos of the input are returned, fewest typos first. One typo is
+     * allowed in inputs of up to 8 characters, two in inputs of up to 16,
+     * and three in longer ones.
+     * @param input the text that was typed
+     * @param limit the most names to return
+     * @return the matching names, best first, or an empty list if none match
+     */
+    public List<String> resolve(String input, int limit) {
+        List<String> result = new ArrayList<>();
+        String typed = normalize(input);
+        String same = sameName(input, typed);
+        if (same != null) {
+            result.add(same);
+            return result;
+        }
+
+        //Merge the names within a few typos with those among the added ones,
+        //fewest typos first, as each list is.
+        List<Map.Entry<String,Integer>> found = withTypos(typed, limit);
+        if (added != null) {
+            List<Map.Entry<String,Integer>> others = added.withTypos(typed, limit);
+            int i = 0, j = 0;
+            while (result.size() < limit && (i < found.size() || j < others.size())) {
+                if (j == others.size() || i < found.size() && ORDER.compare(found.get(i), others.get(j)) <= 0)
+                    result.add(found.get(i++).getKey());
+                else
+                    result.add(others.get(j++).getKey());
+            }
+            return result;
+        }
+        for (Map.Entry<String,Integer> name : found)
+            result.add(name.getKey());
+        return result;
+    }
+
+    // returns input when it is a name, or otherwise a name that differs from
+    // it only by case or spacing, or null when there is neither
+    private String sameName(String input, String typed) {
+        if (exactNames.contains(input) && !removed.contains(input)) return input;
+        if (added != null && added.exactNames.contains(input)) return input;
+        Integer same = normalizedNames.get(typed);
+        if (same != null && !removed.contains(names[same])) return names[same];
+        return added == null ? null : added.sameName(input, typed);
+    }
+
+    // returns up to limit names that are within a few typos of the typed
+    // text, each with its number of typos, fewest first and then by name,
+    // leaving out removed names
+    private List<Map.Entry<String,Integer>> withTypos(String typed, int limit) {
+        List<Map.Entry<String,Integer>> result = new ArrayList<>();
+        int maxTypos = typed.length() <= 8 ? 1 : typed.length() <= 16 ? 2 : 3;
+        String[] grams = trigrams(typed).toArray(new String[0]);
+        int[][] lists = new int[grams.length][];
+        for (int g = 0; g < grams.length; g++) lists[g] = postings.getOrDefault(grams[g], new int[0]);
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+
+        //Look for names with one typo, then two, and so on, stopping once
+        //there are enough matches.
+        BitSet matched = new BitSet(names.length);
+        char[] a = typed.toCharArray();
+        int[][] rows = new int[3][a.length + 1];
+        for (int k = 1; k <= maxTypos && result.size() < limit && lists.length > 4 * k; k++) {
+            List<int[]> found = new ArrayList<>(); // {name index, distance}
+            for (int i : candidates(lists, k, a.length)) {
+                if (matched.get(i)) continue;
+                int distance = distance(a, starts[i], starts[i + 1], k, rows);
+                if (distance <= k) found.add(new int[] {i, distance});
+            }
+            found.sort(Comparator.<int[]>comparingInt(f -> f[1]).thenComparing(f -> names[f[0]]));
+            for (int f = 0; f < found.size() && result.size() < limit; f++) {
+                matched.set(found.get(f)[0]);
+                if (!removed.contains(names[found.get(f)[0]]))
+                    result.add(Map.entry(names[found.get(f)[0]], found.get(f)[1]));
+            }
+        }
+        return result;
+    }
+
+    // returns the names of about the right length that are in enough of the
+    // input's trigram lists (sorted from rarest) to be within k typos of it
+    private int[] candidates(int[][] lists, int k, int length) {
+        int required = lists.length - 4 * k;
+
+        //Any match appears in at least one of the 4k + 1 rarest lists.
+        int total = 0;
+        for (int g = 0; g <= 4 * k; g++) total += lists[g].length;
+        int[] all = new int[total];
+        total = 0;
+        for (int g = 0; g <= 4 * k; g++)
+            for (int i : lists[g])
+                if (Math.abs(starts[i + 1] - starts[i] - length) <= k) all[total++] = i;
+        Arrays.sort(all, 0, total);
+        int[] ids = new int[total];
+        int[] counts = new int[total];
+        int size = 0;
+        for (int a = 0; a < total; a++) {
+            if (size > 0 && ids[size - 1] == all[a]) {
+                counts[size - 1]++;
+            } else {
+                ids[size] = all[a];
+                counts[size++] = 1;
+            }
+        }
+
+        //Count each remaining list by merging it with the candidates, and
+        //drop candidates as soon as they can no longer reach required.
+        for (int g = 4 * k + 1; g < lists.length && size > 0; g++) {
+            int[] list = lists[g];
+            int position = 0;
+            int kept = 0;
+            for (int c = 0; c < size; c++) {
+                position = seek(list, position, ids[c]);
+                if (position < list.length && list[position] == ids[c]) counts[c]++;
+                if (counts[c] + (lists.length - g - 1) >= required) {
+                    ids[kept] = ids[c];
+                    counts[kept++] = counts[c];
+                }
+            }
+            size = kept;
+        }
+        int[] result = new int[size];
+        int found = 0;
+        for (int c = 0; c < size; c++)
+            if (counts[c] >= required) result[found++] = ids[c];
+        return Arrays.copyOf(result, found);
+    }
+
+    // returns the first position at or after from whose value is at least
+    // target, searching with exponentially growing steps and then halving
+    private static int seek(int[] list, int from, int target) {
+        int step = 1;
+        int high = from;
+        while (high < list.length && list[high] < target) {
+            from = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, list.length);
+        while (from < high) {
+            int middle = (from + high) >>> 1;
+            if (list[middle] < target) from = middle + 1;
+            else high = middle;
+        }
+        return from;
+    }
+
+    // lower cases text and collapses each run of whitespace to one space
+    private static String normalize(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = result.length() > 0;
+            } else {
+                if (space) result.append(' ');
+                result.append(Character.toLowerCase(c));
+                space = false;
+            }
+        }
+        return result.toString();
+    }
+
+    // returns the distinct padded trigrams of normalized text
+    private static Set<String> trigrams(String text) {
+        String padded = "" + PAD + PAD + text + PAD + PAD;
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) grams.add(padded.substring(i, i + 3));
+        return grams;
+    }
+
+    // computes the edit distance between a and the name in text[from, to),
+    // counting insertions, deletions, substitutions, and swaps of adjacent
+    // characters as one edit each, or returns max + 1 as soon as the distance
+    // must exceed max; rows holds three rows of at least a.length + 1 values
+    private int distance(char[] a, int from, int to, int max, int[][] rows) {
+        int[] previous = rows[0], current = rows[1], beforePrevious = rows[2];
+        for (int j = 0; j <= a.length; j++) previous[j] = j;
+        for (int i = 1; i <= to - from; i++) {
+            char b = text[from + i - 1];
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= a.length; j++) {
+                int cost = b == a[j - 1] ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && b == a[j - 2] && text[from + i - 2] == a[j - 1])
+                    value = Math.min(value, beforePrevious[j - 2] + 1);
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > max) return max + 1;
+            int[] recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[a.length];
+    }
+}
@@ -0,0 +1,273 @@
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An estimate of the memory that a graph takes up, broken down by the parts
+ * of its representation: for a DijkstraGraph, its Node and Edge objects, the
+ * entries of their edge lists, boxed weights, names, and the buckets of its
+ * HashtableMap, and for compact representations (an OffHeapGraph, HubLabels
+ * or ArcFlags) the arrays or regions that they keep. Each structure adds its
+ * own parts (see BaseGraph.getFootprint), counting its objects rather than
+ * measuring the heap, so an estimate needs no heap dump and does not depend
+ * on when the garbage collector last ran.
+ *
+ * Object sizes follow HotSpot's layout: a header, then the fields, rounded
+ * up to a multiple of 8 bytes. References take 4 bytes and headers 12 when
+ * compressed oops and class pointers are on (the default for heaps below 32
+ * GB), or 8 and 16 otherwise, as read from the running JVM. Strings are
+ * assumed to be compact, with one byte per character when every character
+ * is latin-1.
+ *
+ * A report for a map, in each representation, can be printed with:
+ *     java MemoryFootprint map=FILE [graph=heap|offheap|both] [arcFlags=K]
+ */
+public class MemoryFootprint {
+
+    /**
+     * A part of a representation: how many objects or records it has, and
+     * the bytes that they take up.
+     */
+    public static class Component {
+        private final String name;
+        private final long count;
+        private final long bytes;
+        private final boolean offHeap;
+
+        private Component(String name, long count, long bytes, boolean offHeap) {
+            this.name = name;
+            this.count = count;
+            this.bytes = bytes;
+            this.offHeap = offHeap;
+        }
+
+        public String getName() { return name; }
+        public long getCount() { return count; }
+        public long getBytes() { return bytes; }
+        public boolean isOffHeap() { return offHeap; }
+    }
+
+    private final int referenceBytes;
+    private final int headerBytes;
+    private final List<Component> components = new ArrayList<>();
+    private final Map<String,String> notes = new LinkedHashMap<>();
+
+    /**
+     * Creates an empty estimate for the object layout of the running JVM.
+     */
+    public MemoryFootprint() {
+        this(vmFlag("UseCompressedOops") ? 4 : 8, vmFlag("UseCompressedClassPointers") ? 12 : 16);
+    }
+
+    /**
+     * Creates an empty estimate for a particular object layout, for example
+     * to compare what a graph would take up without compressed oops.
+     * @param referenceBytes the size of a reference, 4 or 8
+     * @param headerBytes the size of an object header, 12 or 16
+     * @throws IllegalArgumentException if either size is not one of those
+     */
+    public MemoryFootprint(int referenceBytes, int headerBytes) {
+        if ((referenceBytes != 4 && referenceBytes != 8) || (headerBytes != 12 && headerBytes != 16))
+            throw new IllegalArgumentException("References take 4 or 8 bytes and headers 12 or 16, not " +
+                                               referenceBytes + " and " + headerBytes);
+        this.referenceBytes = referenceBytes;
+        this.headerBytes = headerBytes;
+    }
+
+    // reads a boolean option of the running JVM, assuming it is on when the
+    // JVM does not say, as it is by default on 64-bit HotSpot
+    private static boolean vmFlag(String name) {
+        try {
+            HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            return bean == null || Boolean.parseBoolean(bean.getVMOption(name).getValue());
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Returns the size of an object with these fields.
+     * @param references the number of reference fields
+     * @param primitiveBytes the total size of the primitive fields
+     */
+    public long objectBytes(int references, int primitiveBytes) {
+        return align(headerBytes + (long) references * referenceBytes + primitiveBytes);
+    }
+
+    /**
+     * Returns the size of an array, including its header and length.
+     * @param elementBytes the size of each element, which for an array of
+     *        references is getReferenceBytes()
+     * @param length the number of elements
+     */
+    public long arrayBytes(int elementBytes, long length) {
+        return align(align(headerBytes + 4) + elementBytes * length);
+    }
+
+    /**
+     * Returns the size of a String, including its array of characters.
+     */
+    public long stringBytes(String value) {
+        int bytesPerChar = 1;
+        for (int i = 0; i < value.length() && bytesPerChar == 1; i++)
+            if (value.charAt(i) > 0xff) bytesPerChar = 2;
+        // value reference, hash, coder and hashIsZero
+        return objectBytes(1, 6) + arrayBytes(bytesPerChar, value.length());
+    }
+
+    /**
+     * Returns the size of an object held as a node's data or an edge's
+     * weight: a String, or a boxed primitive. Other objects are counted as
+     * having no fields, so their size is a lower bound.
+     */
+    public long valueBytes(Object value) {
+        if (value instanceof String) return stringBytes((String) value);
+        if (value instanceof Double || value instanceof Long) return objectBytes(0, 8);
+        if (value instanceof Integer || value instanceof Float) return objectBytes(0, 4);
+        if (value instanceof Character || value instanceof Short) return objectBytes(0, 2);
+        if (value instanceof Byte || value instanceof Boolean) return objectBytes(0, 1);
+        return objectBytes(0, 0);
+    }
+
+    public int getReferenceBytes() {
+        return referenceBytes;
+    }
+
+    /**
+     * Adds a part of a representation that is kept on the heap.
+     * @param name what the part is, such as "edges"
+     * @param count the number of objects or records in it
+     * @param bytes the bytes that it takes up
+     */
+    public void add(String name, long count, long bytes) {
+        components.add(new Component(name, count, bytes, false));
+    }
+
+    /**
+     * Adds a part of a representation that is kept outside of the heap.
+     */
+    public void addOffHeap(String name, long count, long bytes) {
+        components.add(new Component(name, count, bytes, true));
+    }
+
+    /**
+     * Records a measurement that is not a size, such as a table's load.
+     */
+    public void note(String name, String value) {
+        notes.put(name, value);
+    }
+
+    public List<Component> getComponents() {
+        return components;
+    }
+
+    public Map<String,String> getNotes() {
+        return notes;
+    }
+
+    /**
+     * Returns the bytes taken up by the named part, or 0 if there is none.
+     */
+    public long getBytes(String name) {
+        long bytes = 0;
+        for (Component component : components)
+            if (component.name.equals(name)) bytes += component.bytes;
+        return bytes;
+    }
+
+    public long getHeapBytes() {
+        long bytes = 0;
+        for (Component component : components)
+            if (!component.offHeap) bytes += component.bytes;
+        return bytes;
+    }
+
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (Component component : components)
+            if (component.offHeap) bytes += component.bytes;
+        return bytes;
+    }
+
+    /**
+     * Renders a table of every part, with its share of the total, followed
+     * by the totals and notes.
+     */
+    public String render() {
+        long total = getHeapBytes() + getOffHeapBytes();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-28s %12s %14s %6s%n", "part", "count", "bytes", "share"));
+        for (Component component : components)
+            sb.append(String.format("%-28s %12d %14d %5.1f%%%n", component.name + (component.offHeap ? " *" : ""),
+                                    component.count, component.bytes,
+                                    total == 0 ? 0 : 100.0 * component.bytes / total));
+        sb.append(String.format("%-28s %12s %14d  (%.1f MB)%n", "heap total", "", getHeapBytes(),
+                                getHeapBytes() / 1e6));
+        if (getOffHeapBytes() > 0)
+            sb.append(String.format("%-28s %12s %14d  (%.1f MB)%n", "off heap total (*)", "", getOffHeapBytes(),
+                                    getOffHeapBytes() / 1e6));
+        for (Map.Entry<String,String> note : notes.entrySet())
+            sb.append(note.getKey()).append(": ").append(note.getValue()).append(System.lineSeparator());
+        sb.append(String.format("(%d-byte references, %d-byte headers)%n", referenceBytes, headerBytes));
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return render();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String,String> settings = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2)
+                throw new IllegalArgumentException("Settings must be key=value, not: " + arg);
+            settings.put(pair[0], pair[1]);
+        }
+        String map = settings.getOrDefault("map", ServerConfig.DEFAULT_MAP);
+        String graphs = settings.getOrDefault("graph", "both");
+        int arcFlags = Integer.parseInt(settings.getOrDefault("arcFlags", "0"));
+        if (!graphs.equals("heap") && !graphs.equals("offheap") && !graphs.equals("both"))
+            throw new IllegalArgumentException("graph must be heap, offheap or both, not: " + graphs);
+
+        if (!graphs.equals("offheap")) {
+            DijkstraGraph<String,Double> graph = new DijkstraGraph<>();
+            HubLabels labels = load(map, graph);
+            if (arcFlags > 0)
+                graph.buildArcFlags(arcFlags, Runtime.getRuntime().availableProcessors());
+            report("heap graph", graph, labels);
+        }
+        if (!graphs.equals("heap")) {
+            try (OffHeapGraph graph = new OffHeapGraph()) {
+                report("offheap graph", graph, load(map, graph));
+            }
+        }
+    }
+
+    // loads a map into a graph, returning the labels from its snapshot if
+    // it has some
+    private static HubLabels load(String map, GraphADT<String,Double> graph) throws IOException {
+        if (GraphSnapshot.isSnapshot(map))
+            return GraphSnapshot.read(map, graph);
+        new Backend(graph).loadGraphData(map);
+        return null;
+    }
+
+    private static void report(String title, GraphADT<String,Double> graph, HubLabels labels) {
+        MemoryFootprint footprint = graph.getFootprint();
+        if (labels != null)
+            footprint.add("hub labels", labels.getEntryCount(), labels.getBytes());
+        System.out.printf("%s: %d locations and %d edges%n", title, graph.getNodeCount(), graph.getEdgeCount());
+        System.out.println(footprint.render());
+    }
+}
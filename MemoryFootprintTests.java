@@ -0,0 +1,50 @@
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of MemoryFootprint, kept apart from it because JUnit can only create a
+ * test class that has a single constructor.
+ */
+public class MemoryFootprintTests {
+
+    /**
+     * Test that a footprint counts each node, edge and list entry of a graph,
+     * and sizes objects by HotSpot's layout.
+     */
+    @Test
+    public void footprintTest1() {
+        MemoryFootprint layout = new MemoryFootprint(4, 12);
+        assertEquals(32, layout.objectBytes(3, 4));
+        assertEquals(16, layout.objectBytes(0, 4));
+        assertEquals(32, layout.arrayBytes(4, 3));
+        assertEquals(48, layout.stringBytes("abcde"));
+        assertEquals(56, layout.stringBytes("\u00e9\u00e9\u4e2d\u4e2d\u6587"));
+        assertEquals(48, new MemoryFootprint(8, 16).objectBytes(3, 4));
+        assertThrows(IllegalArgumentException.class, () -> new MemoryFootprint(6, 12));
+
+        DijkstraGraph<Character, Double> graph = new DijkstraGraph<>();
+        for (char node = 'A'; node <= 'E'; node++) graph.insertNode(node);
+        graph.insertEdge('A', 'B', 4.0);
+        graph.insertEdge('A', 'C', 2.0);
+        graph.insertEdge('B', 'D', 1.0);
+        graph.insertEdge('C', 'D', 5.0);
+        graph.insertEdge('D', 'E', 3.0);
+        MemoryFootprint footprint = graph.getFootprint();
+        Map<String, Long> counts = new HashMap<>();
+        for (MemoryFootprint.Component component : footprint.getComponents())
+            counts.put(component.getName(), component.getCount());
+        assertEquals(graph.getNodeCount(), counts.get("nodes").longValue());
+        assertEquals(graph.getEdgeCount(), counts.get("edges").longValue());
+        assertEquals(2L * graph.getEdgeCount(), counts.get("edge list entries").longValue());
+        assertEquals(graph.getNodeCount(), counts.get("node map pairs").longValue());
+        assertNull(counts.get("arc flags"));
+        assertTrue(footprint.getBytes("edges") > 0);
+        assertEquals(0, footprint.getOffHeapBytes());
+        assertTrue(footprint.getNotes().containsKey("node map load"));
+
+        graph.buildArcFlags(2, 1);
+        assertEquals(graph.getArcFlags().getBytes(), graph.getFootprint().getBytes("arc flags"));
+    }
+}
@@ -0,0 +1,179 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects measurements from a running WebApp: a latency histogram and
+ * response counts for each endpoint, how long the graph took to load, and
+ * the search work counted by the graph. These are served in the Prometheus
+ * text exposition format from the /metrics endpoint.
+ */
+public class Metrics {
+
+    // upper bounds (in seconds) of the histogram buckets that are exported,
+    // each aggregated from the much finer buckets of a LatencyHistogram
+    private static final double[] EXPORTED_BOUNDS = {
+        0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025,
+        0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+    private static final double[] EXPORTED_QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final Map<String,LatencyHistogram> latencies = new ConcurrentSkipListMap<>();
+    private final Map<String,LongAdder> responses = new ConcurrentSkipListMap<>();
+
+    private volatile GraphADT<String,Double> graph = null;
+    private volatile long graphLoadNanos = 0;
+
+    /**
+     * Records the graph that the server answers queries with, along with how
+     * long it took to load.
+     * @param graph the loaded graph
+     * @param loadNanos time taken to load the graph, in nanoseconds
+     */
+    public void setGraph(GraphADT<String,Double> graph, long loadNanos) {
+        this.graphLoadNanos = loadNanos;
+        this.graph = graph;
+    }
+
+    /**
+     * Returns the latency histogram for an endpoint, creating it if needed.
+     * @param endpoint the name of the endpoint
+     * @return the histogram that this endpoint's latencies are recorded in
+     */
+    public LatencyHistogram latencyOf(String endpoint) {
+        return latencies.computeIfAbsent(endpoint, name -> new LatencyHistogram());
+    }
+
+    /**
+     * Wraps a handler so that the latency and response code of every request
+     * it handles are recorded under the path of the request's context.
+     * @param handler the handler to measure
+     * @return a handler that measures and then delegates to handler
+     */
+    public HttpHandler timed(HttpHandler handler) {
+        return exchange -> {
+            long startTime = System.nanoTime();
+            try {
+                handler.handle(exchange);
+            } finally {
+                String endpoint = exchange.getHttpContext().getPath();
+                latencyOf(endpoint).record(System.nanoTime() - startTime);
+                responses.computeIfAbsent(endpoint + " " + exchange.getResponseCode(),
+                                          key -> new LongAdder()).increment();
+            }
+        };
+    }
+
+    /**
+     * Handles requests for the metrics themselves.
+     * @param exchange a request for /metrics
+     */
+    public void handle(HttpExchange exchange) throws IOException {
+        byte[] bytes = render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    /**
+     * Renders every metric in the Prometheus text exposition format.
+     * @return the current value of every metric
+     */
+    public String render() {
+        StringBuilder sb = new StringBuilder();
+
+        header(sb, "webapp_request_duration_seconds", "histogram",
+               "Time taken to handle each request, by endpoint.");
+        for (Map.Entry<String,LatencyHistogram> entry : latencies.entrySet()) {
+            String label = "endpoint=\"" + escape(entry.getKey()) + "\"";
+            LatencyHistogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            for (double bound : EXPORTED_BOUNDS)
+                sample(sb, "webapp_request_duration_seconds_bucket", label + ",le=\"" + BigDecimal.valueOf(bound).toPlainString() + "\"",
+                       histogram.getCountAtOrBelow((long) (bound * 1e9)));
+            sample(sb, "webapp_request_duration_seconds_bucket", label + ",le=\"+Inf\"", count);
+            sample(sb, "webapp_request_duration_seconds_sum", label, histogram.getSum() / 1e9);
+            sample(sb, "webapp_request_duration_seconds_count", label, count);
+        }
+
+        header(sb, "webapp_request_duration_quantile_seconds", "gauge",
+               "Latency quantiles of each endpoint since the server started.");
+        for (Map.Entry<String,LatencyHistogram> entry : latencies.entrySet())
+            for (double quantile : EXPORTED_QUANTILES)
+                sample(sb, "webapp_request_duration_quantile_seconds",
+                       "endpoint=\"" + escape(entry.getKey()) + "\",quantile=\"" + quantile + "\"",
+                       entry.getValue().getValueAtPercentile(quantile * 100) / 1e9);
+
+        header(sb, "webapp_responses_total", "counter", "Responses sent, by endpoint and status code.");
+        for (Map.Entry<String,LongAdder> entry : responses.entrySet()) {
+            int split = entry.getKey().lastIndexOf(' ');
+            sample(sb, "webapp_responses_total",
+                   "endpoint=\"" + escape(entry.getKey().substring(0, split)) +
+                   "\",code=\"" + entry.getKey().substring(split + 1) + "\"",
+                   entry.getValue().sum());
+        }
+
+        GraphADT<String,Double> loaded = graph;
+        if (loaded != null) {
+            header(sb, "graph_load_seconds", "gauge", "Time taken to load the graph.");
+            sample(sb, "graph_load_seconds", null, graphLoadNanos / 1e9);
+            header(sb, "graph_nodes", "gauge", "Nodes in the loaded graph.");
+            sample(sb, "graph_nodes", null, loaded.getNodeCount());
+            header(sb, "graph_edges", "gauge", "Edges in the loaded graph.");
+            sample(sb, "graph_edges", null, loaded.getEdgeCount());
+        }
+        SearchCounters counters = null;
+        if (loaded instanceof DijkstraGraph)
+            counters = ((DijkstraGraph<String,Double>) loaded).getSearchCounters();
+        else if (loaded instanceof OffHeapGraph)
+            counters = ((OffHeapGraph) loaded).getSearchCounters();
+        if (loaded instanceof OffHeapGraph) {
+            header(sb, "graph_off_heap_bytes", "gauge", "Bytes of the loaded graph held outside of the heap.");
+            sample(sb, "graph_off_heap_bytes", null, ((OffHeapGraph) loaded).getOffHeapBytes());
+        }
+        if (counters != null) {
+            counter(sb, "dijkstra_searches_total", "Shortest path searches run.",
+                    counters.getSearches());
+            counter(sb, "dijkstra_nodes_settled_total", "Nodes settled by all searches.",
+                    counters.getNodesSettled());
+            counter(sb, "dijkstra_edges_relaxed_total", "Edges relaxed by all searches.",
+                    counters.getEdgesRelaxed());
+            counter(sb, "dijkstra_queue_pushes_total", "Priority queue pushes by all searches.",
+                    counters.getQueuePushes());
+            counter(sb, "dijkstra_stale_pops_total",
+                    "Priority queue pops of already settled nodes by all searches.",
+                    counters.getStalePops());
+        }
+        return sb.toString();
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, "counter", help);
+        sample(sb, name, null, value);
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, double value) {
+        sb.append(name);
+        if (labels != null) sb.append('{').append(labels).append('}');
+        sb.append(' ');
+        if (value == (long) value) sb.append((long) value);
+        else sb.append(value);
+        sb.append('\n');
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
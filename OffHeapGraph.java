@@ -0,0 +1,1016 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntPredicate;
+
+/**
+ * A graph of named locations that keeps its nodes, edges, and names outside
+ * of the java heap, in OffHeapRegions, so that a graph with tens of millions
+ * of edges neither fills the heap nor slows down garbage collection. Where
+ * DijkstraGraph creates a Node, an Edge, two list entries and a boxed weight
+ * for every edge, this graph stores each node and each edge as a fixed size
+ * record, addressed by its id:
+ *
+ * node record (32 bytes): name offset, name length, name hash, and the first
+ *     and last edge of its lists of edges leaving and entering it
+ * edge record (32 bytes): predecessor, successor, weight, the next edge in
+ *     each of its two lists, and its travel time function (or -1 for none)
+ *
+ * Names are stored end to end as utf-8 in a string table, and found by an
+ * open addressing hash table of node ids. Searches run directly over these
+ * records, recording their progress in pooled SearchWorkspaces as
+ * DijkstraGraph's searches with a departure time do. Travel time functions
+ * are the only part of the graph kept on the heap, since few edges have one.
+ *
+ * The records may be kept in memory, or in files in a directory, which lets
+ * the operating system page a graph larger than memory in from disk. Those
+ * files only hold the graph while it is open: GraphSnapshot is used to save
+ * a graph between runs.
+ */
+public class OffHeapGraph implements GraphADT<String, Double>, AutoCloseable {
+
+    private static final int NONE = -1;
+
+    // offsets of each field within a node record
+    private static final int NODE_BYTES = 32;
+    private static final int NAME_OFFSET = 0; // long
+    private static final int NAME_LENGTH = 8; // -1 once the node is removed
+    private static final int NAME_HASH = 12;
+    private static final int FIRST_OUT = 16;
+    private static final int LAST_OUT = 20;
+    private static final int FIRST_IN = 24;
+    private static final int LAST_IN = 28;
+
+    // offsets of each field within an edge record
+    private static final int EDGE_BYTES = 32;
+    private static final int PRED = 0; // -1 once the edge is removed
+    private static final int SUCC = 4;
+    private static final int WEIGHT = 8; // double
+    private static final int NEXT_OUT = 16;
+    private static final int NEXT_IN = 20;
+    private static final int TRAVEL_TIME = 24;
+
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+    private final Path directory; // where regions are stored, or null for memory
+    private final OffHeapRegion nodeRecords;
+    private final OffHeapRegion edgeRecords;
+    private final OffHeapRegion names;
+    private OffHeapRegion index; // slots holding a node id + 1, or 0 when empty
+    private int indexCapacity = INITIAL_INDEX_CAPACITY;
+
+    private int nodeIds = 0; // ids given out, including those of removed nodes
+    private int nodeCount = 0;
+    private int edgeIds = 0;
+    private int edgeCount = 0;
+
+    // travel time functions, by the index stored in an edge record
+    private final List<TravelTimeFunction> travelTimes = new ArrayList<>();
+
+    // Totals of the work done by every search over this graph
+    protected SearchCounters counters = new SearchCounters();
+
+    private final ConcurrentLinkedQueue<SearchWorkspace> workspaces = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates an empty graph that is stored in direct memory.
+     */
+    public OffHeapGraph() {
+        this.directory = null;
+        this.nodeRecords = new OffHeapRegion();
+        this.edgeRecords = new OffHeapRegion();
+        this.names = new OffHeapRegion();
+        this.index = new OffHeapRegion();
+        index.allocate(4L * indexCapacity);
+    }
+
+    /**
+     * Creates an empty graph that is stored in files mapped from the provided
+     * directory. The files are deleted when the graph is closed.
+     * @param directory an existing directory to create the files in
+     * @throws IOException if the files cannot be created
+     */
+    public OffHeapGraph(Path directory) throws IOException {
+        this.directory = directory;
+        this.nodeRecords = new OffHeapRegion(directory, "nodes");
+        this.edgeRecords = new OffHeapRegion(directory, "edges");
+        this.names = new OffHeapRegion(directory, "names");
+        this.index = new OffHeapRegion(directory, "index");
+        index.allocate(4L * indexCapacity);
+    }
+
+    /**
+     * Returns the running totals of work done by this graph's searches.
+     *
+     * @return the search counters for this graph
+     */
+    public SearchCounters getSearchCounters() {
+        return counters;
+    }
+
+    /**
+     * Returns the number of bytes that this graph holds outside of the heap.
+     */
+    public long getOffHeapBytes() {
+        return nodeRecords.capacity() + edgeRecords.capacity() + names.capacity() + index.capacity();
+    }
+
+    /**
+     * Estimates the memory taken up by this graph: its records, names and
+     * index outside of the heap, and its travel time functions and pooled
+     * search workspaces on it.
+     *
+     * @return the bytes taken up by each part of this graph
+     */
+    @Override
+    public MemoryFootprint getFootprint() {
+        MemoryFootprint footprint = new MemoryFootprint();
+        footprint.addOffHeap("node records", nodeIds, nodeRecords.capacity());
+        footprint.addOffHeap("edge records", edgeIds, edgeRecords.capacity());
+        footprint.addOffHeap("names", nodeCount, names.capacity());
+        footprint.addOffHeap("name index", indexCapacity, index.capacity());
+        long travelTimeBytes = 0;
+        int count = 0;
+        for (TravelTimeFunction travelTime : travelTimes) {
+            if (travelTime == null) continue;
+            count++;
+            travelTimeBytes += footprint.objectBytes(1, 8) + footprint.arrayBytes(8, 2L * travelTime.getTimes().length);
+        }
+        if (count > 0)
+            footprint.add("travel time functions", count, travelTimeBytes);
+        long bytes = 0;
+        count = 0;
+        for (SearchWorkspace workspace : workspaces) {
+            bytes += workspace.getBytes();
+            count++;
+        }
+        if (count > 0)
+            footprint.add("search workspaces", count, bytes);
+        footprint.note("name index load", String.format("%d names in %d slots (%.2f)", nodeCount, indexCapacity,
+                                                        (double) nodeCount / indexCapacity));
+        return footprint;
+    }
+
+    // offset of the record of a node or an edge
+    private static long node(int id) {
+        return (long) id * NODE_BYTES;
+    }
+
+    private static long edge(int id) {
+        return (long) id * EDGE_BYTES;
+    }
+
+    // mixes the high bits of a hash code into the low bits used for slots
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    // returns the index slot holding the node with this name, or -1
+    private int slotOf(String data) {
+        int hash = data.hashCode(); // throws NPE when data is null
+        byte[] utf8 = data.getBytes(StandardCharsets.UTF_8);
+        int mask = indexCapacity - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = index.getInt(4L * slot);
+            if (entry == 0) return NONE;
+            if (hasName(entry - 1, hash, utf8)) return slot;
+        }
+    }
+
+    // checks whether a node's name is the one that was encoded as utf8
+    private boolean hasName(int id, int hash, byte[] utf8) {
+        long record = node(id);
+        if (nodeRecords.getInt(record + NAME_HASH) != hash
+            || nodeRecords.getInt(record + NAME_LENGTH) != utf8.length)
+            return false;
+        long offset = nodeRecords.getLong(record + NAME_OFFSET);
+        for (int i = 0; i < utf8.length; i++)
+            if (names.getByte(offset + i) != utf8[i]) return false;
+        return true;
+    }
+
+    /**
+     * Returns the id of the node holding data, or -1 when it is not in this
+     * graph.
+     */
+    protected int idOf(String data) {
+        int slot = slotOf(data);
+        return slot == NONE ? NONE : index.getInt(4L * slot) - 1;
+    }
+
+    /**
+     * Returns the name held by the node with this id.
+     */
+    protected String nameOf(int id) {
+        long record = node(id);
+        byte[] utf8 = new byte[nodeRecords.getInt(record + NAME_LENGTH)];
+        names.get(nodeRecords.getLong(record + NAME_OFFSET), utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    // adds a node id to the index, in the first free slot from its hash
+    private static void addToIndex(OffHeapRegion index, int capacity, int id, int hash) {
+        int mask = capacity - 1;
+        int slot = spread(hash) & mask;
+        while (index.getInt(4L * slot) != 0) slot = (slot + 1) & mask;
+        index.putInt(4L * slot, id + 1);
+    }
+
+    // empties a slot, moving later entries back so that none is left past a
+    // gap that would end its probe
+    private void removeFromIndex(int slot) {
+        int mask = indexCapacity - 1;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            int entry = index.getInt(4L * next);
+            if (entry == 0) break;
+            int home = spread(nodeRecords.getInt(node(entry - 1) + NAME_HASH)) & mask;
+            //Move the entry back unless its home lies after the gap.
+            boolean after = slot <= next ? (slot < home && home <= next) : (slot < home || home <= next);
+            if (!after) {
+                index.putInt(4L * slot, entry);
+                slot = next;
+            }
+        }
+        index.putInt(4L * slot, 0);
+    }
+
+    // doubles the capacity of the index, rehashing every node into it
+    private void growIndex() {
+        int capacity = indexCapacity * 2;
+        OffHeapRegion grown;
+        try {
+            grown = directory == null ? new OffHeapRegion() : new OffHeapRegion(directory, "index");
+            grown.allocate(4L * capacity);
+            for (int id = 0; id < nodeIds; id++)
+                if (nodeRecords.getInt(node(id) + NAME_LENGTH) != NONE)
+                    addToIndex(grown, capacity, id, nodeRecords.getInt(node(id) + NAME_HASH));
+            index.close();
+        } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+        index = grown;
+        indexCapacity = capacity;
+    }
+
+    // empties every region, so that ids start over from zero
+    private void clear() {
+        nodeRecords.clear();
+        edgeRecords.clear();
+        names.clear();
+        index.clear();
+        index.allocate(4L * indexCapacity);
+        travelTimes.clear();
+        nodeIds = 0;
+        edgeIds = 0;
+        edgeCount = 0;
+    }
+
+    /**
+     * Insert a new node into the graph.
+     *
+     * @param data is the data item stored in the new node
+     * @return true if the data is unique and can be inserted into a new node,
+     *         or false if this data is already in the graph
+     * @throws NullPointerException if data is null
+     */
+    public boolean insertNode(String data) {
+        if (slotOf(data) != NONE)
+            return false;
+        // ids start over once every node has been removed
+        if (nodeCount == 0 && nodeIds > 0)
+            clear();
+        if (2 * (nodeCount + 1) > indexCapacity)
+            growIndex();
+        byte[] utf8 = data.getBytes(StandardCharsets.UTF_8);
+        long nameOffset = names.allocate(utf8.length);
+        names.put(nameOffset, utf8);
+
+        int id = nodeIds++;
+        long record = nodeRecords.allocate(NODE_BYTES);
+        nodeRecords.putLong(record + NAME_OFFSET, nameOffset);
+        nodeRecords.putInt(record + NAME_LENGTH, utf8.length);
+        nodeRecords.putInt(record + NAME_HASH, data.hashCode());
+        nodeRecords.putInt(record + FIRST_OUT, NONE);
+        nodeRecords.putInt(record + LAST_OUT, NONE);
+        nodeRecords.putInt(record + FIRST_IN, NONE);
+        nodeRecords.putInt(record + LAST_IN, NONE);
+        addToIndex(index, indexCapacity, id, data.hashCode());
+        nodeCount++;
+        return true;
+    }
+
+    /**
+     * Remove a node from the graph, along with every edge leaving or
+     * entering it. The space its records used is not reused until every
+     * node has been removed.
+     *
+     * @param data is the data item stored in the node to be removed
+     * @return true if a vertex with data is found and removed, or
+     *         false if that data value is not found in the graph
+     * @throws NullPointerException if data is null
+     */
+    public boolean removeNode(String data) {
+        int slot = slotOf(data);
+        if (slot == NONE)
+            return false;
+        int id = index.getInt(4L * slot) - 1;
+        removeFromIndex(slot);
+        long record = node(id);
+        for (int edge = nodeRecords.getInt(record + FIRST_OUT); edge != NONE;
+             edge = edgeRecords.getInt(edge(edge) + NEXT_OUT)) {
+            int succ = edgeRecords.getInt(edge(edge) + SUCC);
+            if (succ != id) unlink(edge, succ, FIRST_IN, LAST_IN, NEXT_IN);
+            kill(edge);
+        }
+        for (int edge = nodeRecords.getInt(record + FIRST_IN); edge != NONE;
+             edge = edgeRecords.getInt(edge(edge) + NEXT_IN)) {
+            int pred = edgeRecords.getInt(edge(edge) + PRED);
+            if (pred == NONE) continue; // a loop, already removed above
+            unlink(edge, pred, FIRST_OUT, LAST_OUT, NEXT_OUT);
+            kill(edge);
+        }
+        nodeRecords.putInt(record + NAME_LENGTH, NONE);
+        nodeRecords.putInt(record + FIRST_OUT, NONE);
+        nodeRecords.putInt(record + LAST_OUT, NONE);
+        nodeRecords.putInt(record + FIRST_IN, NONE);
+        nodeRecords.putInt(record + LAST_IN, NONE);
+        nodeCount--;
+        return true;
+    }
+
+    // removes an edge from one of a node's lists, given the offsets of that
+    // list's first and last fields and of the edge record's next field
+    private void unlink(int edge, int id, int firstField, int lastField, int nextField) {
+        long record = node(id);
+        int previous = NONE;
+        int current = nodeRecords.getInt(record + firstField);
+        while (current != edge) {
+            previous = current;
+            current = edgeRecords.getInt(edge(current) + nextField);
+        }
+        int next = edgeRecords.getInt(edge(edge) + nextField);
+        if (previous == NONE) nodeRecords.putInt(record + firstField, next);
+        else edgeRecords.putInt(edge(previous) + nextField, next);
+        if (nodeRecords.getInt(record + lastField) == edge) nodeRecords.putInt(record + lastField, previous);
+    }
+
+    // marks an edge that has been unlinked as removed
+    private void kill(int edge) {
+        int travelTime = edgeRecords.getInt(edge(edge) + TRAVEL_TIME);
+        if (travelTime != NONE) travelTimes.set(travelTime, null);
+        edgeRecords.putInt(edge(edge) + PRED, NONE);
+        edgeCount--;
+    }
+
+    // appends an edge to the end of one of a node's lists
+    private void append(int edge, int id, int firstField, int lastField, int nextField) {
+        long record = node(id);
+        int last = nodeRecords.getInt(record + lastField);
+        if (last == NONE) nodeRecords.putInt(record + firstField, edge);
+        else edgeRecords.putInt(edge(last) + nextField, edge);
+        nodeRecords.putInt(record + lastField, edge);
+    }
+
+    // returns the id of the edge from pred to succ, or -1 when there is none
+    private int findEdge(int pred, int succ) {
+        for (int edge = nodeRecords.getInt(node(pred) + FIRST_OUT); edge != NONE;
+             edge = edgeRecords.getInt(edge(edge) + NEXT_OUT))
+            if (edgeRecords.getInt(edge(edge) + SUCC) == succ) return edge;
+        return NONE;
+    }
+
+    // returns the id of the edge from pred to succ, or throws NSE
+    private int requireEdge(String pred, String succ) {
+        int predId = idOf(pred);
+        int succId = idOf(succ);
+        int edge = predId == NONE || succId == NONE ? NONE : findEdge(predId, succId);
+        if (edge == NONE)
+            throw new NoSuchElementException("No edge from " + pred + " to " + succ);
+        return edge;
+    }
+
+    /**
+     * Check whether the graph contains a node with the provided data.
+     *
+     * @param data the node contents to check for
+     * @return true if data item is stored in a node within the graph, or
+     *         false otherwise
+     */
+    public boolean containsNode(String data) {
+        return slotOf(data) != NONE;
+    }
+
+    /**
+     * Retrieves a list of all node data from this graph, in the order that
+     * the nodes were inserted.
+     *
+     * @return list of all node data
+     */
+    public List<String> getAllNodes() {
+        List<String> all = new ArrayList<>(nodeCount);
+        for (int id = 0; id < nodeIds; id++)
+            if (nodeRecords.getInt(node(id) + NAME_LENGTH) != NONE) all.add(nameOf(id));
+        return all;
+    }
+
+    /**
+     * Return the number of nodes in the graph
+     *
+     * @return the number of nodes in the graph
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Insert a new directed edge with positive edges weight into the graph.
+     * Or if an edge between pred and succ already exists, update the data
+     * stored in that edge to be weight.
+     *
+     * @param pred   is the data item contained in the new edge's predecesor node
+     * @param succ   is the data item contained in the new edge's successor node
+     * @param weight is the non-negative data item stored in the new edge
+     * @return true if the edge could be inserted or updated, or
+     *         false if the pred or succ data are not found in any graph nodes
+     */
+    public boolean insertEdge(String pred, String succ, Double weight) {
+        int predId = idOf(pred);
+        int succId = idOf(succ);
+        if (predId == NONE || succId == NONE)
+            return false;
+        int edge = findEdge(predId, succId);
+        if (edge != NONE) {
+            edgeRecords.putDouble(edge(edge) + WEIGHT, weight);
+            return true;
+        }
+        edge = edgeIds++;
+        long record = edgeRecords.allocate(EDGE_BYTES);
+        edgeRecords.putInt(record + PRED, predId);
+        edgeRecords.putInt(record + SUCC, succId);
+        edgeRecords.putDouble(record + WEIGHT, weight);
+        edgeRecords.putInt(record + NEXT_OUT, NONE);
+        edgeRecords.putInt(record + NEXT_IN, NONE);
+        edgeRecords.putInt(record + TRAVEL_TIME, NONE);
+        append(edge, predId, FIRST_OUT, LAST_OUT, NEXT_OUT);
+        append(edge, succId, FIRST_IN, LAST_IN, NEXT_IN);
+        edgeCount++;
+        return true;
+    }
+
+    /**
+     * Remove an edge from the graph.
+     *
+     * @param pred the data item contained in the source node for the edge
+     * @param succ the data item contained in the target node for the edge
+     * @return true if the edge could be removed, or
+     *         false if such an edge is not found in the graph
+     */
+    public boolean removeEdge(String pred, String succ) {
+        int predId = idOf(pred);
+        int succId = idOf(succ);
+        int edge = predId == NONE || succId == NONE ? NONE : findEdge(predId, succId);
+        if (edge == NONE)
+            return false;
+        unlink(edge, predId, FIRST_OUT, LAST_OUT, NEXT_OUT);
+        unlink(edge, succId, FIRST_IN, LAST_IN, NEXT_IN);
+        kill(edge);
+        return true;
+    }
+
+    /**
+     * Check if edge is in the graph.
+     *
+     * @param pred the data item contained in the source node for the edge
+     * @param succ the data item contained in the target node for the edge
+     * @return true if the edge is found in the graph, or false other
+     */
+    public boolean containsEdge(String pred, String succ) {
+        int predId = idOf(pred);
+        int succId = idOf(succ);
+        return predId != NONE && succId != NONE && findEdge(predId, succId) != NONE;
+    }
+
+    /**
+     * Return the data associated with a specific edge.
+     *
+     * @param pred the data item contained in the source node for the edge
+     * @param succ the data item contained in the target node for the edge
+     * @return the non-negative data from the edge between those nodes
+     * @throws NoSuchElementException if either node or the edge between them
+     *                                are not found within this graph
+     */
+    public Double getEdge(String pred, String succ) {
+        return edgeRecords.getDouble(edge(requireEdge(pred, succ)) + WEIGHT);
+    }
+
+    /**
+     * Sets the travel time of an edge to depend on the time of day that it
+     * is taken, or to be its weight at all times.
+     *
+     * @param pred       the data item contained in the source node for the edge
+     * @param succ       the data item contained in the target node for the edge
+     * @param travelTime the edge's travel time, or null to use its weight
+     * @return true if the travel time was set, or
+     *         false if such an edge is not found in the graph
+     */
+    public boolean setTravelTime(String pred, String succ, TravelTimeFunction travelTime) {
+        int predId = idOf(pred);
+        int succId = idOf(succ);
+        int edge = predId == NONE || succId == NONE ? NONE : findEdge(predId, succId);
+        if (edge == NONE)
+            return false;
+        long record = edge(edge);
+        int existing = edgeRecords.getInt(record + TRAVEL_TIME);
+        if (existing != NONE) {
+            travelTimes.set(existing, travelTime);
+            if (travelTime == null) edgeRecords.putInt(record + TRAVEL_TIME, NONE);
+        } else if (travelTime != null) {
+            edgeRecords.putInt(record + TRAVEL_TIME, travelTimes.size());
+            travelTimes.add(travelTime);
+        }
+        return true;
+    }
+
+    /**
+     * Return the time of day dependent travel time of a specific edge.
+     *
+     * @param pred the data item contained in the source node for the edge
+     * @param succ the data item contained in the target node for the edge
+     * @return the edge's travel time, or null if it is always its weight
+     * @throws NoSuchElementException if either node or the edge between them
+     *                                are not found within this graph
+     */
+    public TravelTimeFunction getTravelTime(String pred, String succ) {
+        int travelTime = edgeRecords.getInt(edge(requireEdge(pred, succ)) + TRAVEL_TIME);
+        return travelTime == NONE ? null : travelTimes.get(travelTime);
+    }
+
+    /**
+     * Return the number of edges in the graph.
+     *
+     * @return the number of edges in the graph
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Returns the data of each node that an edge leaves the provided node
+     * for, in the order that those edges were inserted.
+     *
+     * @param data the data item contained in the node
+     * @return the data in the successor of each edge leaving that node
+     * @throws NoSuchElementException if the node is not found in the graph
+     */
+    public List<String> getSuccessors(String data) {
+        int id = idOf(data);
+        if (id == NONE)
+            throw new NoSuchElementException("No node holds " + data);
+        List<String> successors = new ArrayList<>();
+        for (int edge = nodeRecords.getInt(node(id) + FIRST_OUT); edge != NONE;
+             edge = edgeRecords.getInt(edge(edge) + NEXT_OUT))
+            successors.add(nameOf(edgeRecords.getInt(edge(edge) + SUCC)));
+        return successors;
+    }
+
+    /**
+     * Runs a Dijkstra search over the node and edge records, settling nodes
+     * in order of cost starting from every source at the initial cost, and
+     * passing each settled node to visit until it returns true. A backwards
+     * search follows the edges entering each node rather than leaving it.
+     * Edges whose cost would take a path beyond the limit are not followed.
+     *
+     * @param workspace the workspace to record the search in, which holds
+     *                  each node's cost and previous node once it returns
+     * @param sources   the ids of the nodes to start from
+     * @param initial   the cost of starting at a source (a departure time)
+     * @param backward  whether to walk edges from their successors
+     * @param timed     whether edges take their travel time, or their weight
+     * @param filter    an overlay by node id, or null
+     * @param limit     the greatest cost of any path that is followed
+     * @param visit     called with each node as it is settled
+     * @return true if visit stopped the search, or false if it ran out of
+     *         nodes to settle first
+     */
+    protected boolean search(SearchWorkspace workspace, int[] sources, double initial, boolean backward,
+                             boolean timed, RouteOverlay.Resolved filter, double limit, IntPredicate visit) {
+        int firstField = backward ? FIRST_IN : FIRST_OUT;
+        int nextField = backward ? NEXT_IN : NEXT_OUT;
+        int otherField = backward ? PRED : SUCC;
+        workspace.reset(nodeIds);
+        for (int source : sources) {
+            workspace.improve(source, initial, -1);
+        }
+        long settled = 0, relaxed = 0, pushes = sources.length, stale = 0;
+        boolean stopped = false;
+
+        while (!workspace.isEmpty()) {
+            int current = workspace.pop();
+            if (workspace.isSettled(current)) {
+                stale++;
+                continue;
+            }
+            workspace.settle(current);
+            settled++;
+            if (visit.test(current)) {
+                stopped = true;
+                break;
+            }
+
+            double cost = workspace.getCost(current);
+            for (int edge = nodeRecords.getInt(node(current) + firstField); edge != NONE;
+                 edge = edgeRecords.getInt(edge(edge) + nextField)) {
+                relaxed++;
+                long record = edge(edge);
+                int next = edgeRecords.getInt(record + otherField);
+                if (workspace.isSettled(next)) {
+                    continue;
+                }
+                double factor = filter == null ? 1.0
+                    : backward ? filter.factor(next, current) : filter.factor(current, next);
+                if (factor == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                double travel = edgeRecords.getDouble(record + WEIGHT) * factor;
+                if (timed) {
+                    int travelTime = edgeRecords.getInt(record + TRAVEL_TIME);
+                    if (travelTime != NONE) travel = travelTimes.get(travelTime).travelTime(cost, factor);
+                }
+                if (cost + travel <= limit && workspace.improve(next, cost + travel, current)) {
+                    pushes++;
+                }
+            }
+        }
+        counters.recordSearch(settled, relaxed, pushes, stale);
+        return stopped;
+    }
+
+    // takes a workspace from the pool, which must be offered back after use
+    private SearchWorkspace acquireWorkspace() {
+        SearchWorkspace workspace = workspaces.poll();
+        return workspace == null ? new SearchWorkspace() : workspace;
+    }
+
+    // finds the path from start to end, adding its names to path when it is
+    // not null, and returns its cost
+    private double route(String start, String end, double departure, boolean timed,
+                         RouteOverlay<String> overlay, List<String> path) {
+        int first = idOf(start);
+        int last = idOf(end);
+        if (first == NONE || last == NONE) {
+            throw new NoSuchElementException("Start or end data does not correspond to a graph node.");
+        }
+        RouteOverlay.Resolved filter = overlay == null || overlay.isEmpty() ? null
+                : overlay.resolve(this::idOf, nodeIds);
+        SearchWorkspace workspace = acquireWorkspace();
+        try {
+            if (!search(workspace, new int[] {first}, departure, false, timed, filter,
+                        Double.POSITIVE_INFINITY, id -> id == last)) {
+                throw new NoSuchElementException("Path does not exist.");
+            }
+            if (path != null) {
+                for (int id = last; id != -1; id = workspace.getPrevious(id)) {
+                    path.add(nameOf(id));
+                }
+                Collections.reverse(path);
+            }
+            return workspace.getCost(last) - departure;
+        } finally {
+            workspaces.offer(workspace);
+        }
+    }
+
+    /**
+     * Returns the list of data values from nodes along the shortest path
+     * from the node with the provided start value through the node with the
+     * provided end value.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return list of data item from node along this shortest path
+     */
+    public List<String> shortestPathData(String start, String end) {
+        return shortestPathData(start, end, null);
+    }
+
+    /**
+     * Returns the cost of the shortest path from the node containing the
+     * start data to the node containing the end data.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return the cost of the shortest path between these nodes
+     */
+    public double shortestPathCost(String start, String end) {
+        return route(start, end, 0, false, null, null);
+    }
+
+    /**
+     * Returns the list of data values from nodes along the quickest path
+     * when leaving start at the provided time.
+     *
+     * @param start     the data item in the starting node for the path
+     * @param end       the data item in the destination node for the path
+     * @param departure seconds after midnight that the path leaves start
+     * @return list of data item from node along this quickest path
+     */
+    public List<String> shortestPathData(String start, String end, double departure) {
+        return shortestPathData(start, end, departure, null);
+    }
+
+    /**
+     * Returns the time taken by the quickest path when leaving start at the
+     * provided time.
+     *
+     * @param start     the data item in the starting node for the path
+     * @param end       the data item in the destination node for the path
+     * @param departure seconds after midnight that the path leaves start
+     * @return the seconds from leaving start until arriving at end
+     */
+    public double shortestPathCost(String start, String end, double departure) {
+        return route(start, end, departure, true, null, null);
+    }
+
+    /**
+     * Returns the list of data values from nodes along the shortest path
+     * after the provided overlay has avoided or scaled some of the edges.
+     *
+     * @param start   the data item in the starting node for the path
+     * @param end     the data item in the destination node for the path
+     * @param overlay the changes to make for this path only, or null for none
+     * @return list of data item from node along this shortest path
+     */
+    public List<String> shortestPathData(String start, String end, RouteOverlay<String> overlay) {
+        List<String> path = new ArrayList<>();
+        route(start, end, 0, false, overlay, path);
+        return path;
+    }
+
+    /**
+     * Returns the cost of the shortest path after the provided overlay has
+     * avoided or scaled some of the edges.
+     *
+     * @param start   the data item in the starting node for the path
+     * @param end     the data item in the destination node for the path
+     * @param overlay the changes to make for this path only, or null for none
+     * @return the cost of the shortest path between these nodes
+     */
+    public double shortestPathCost(String start, String end, RouteOverlay<String> overlay) {
+        return route(start, end, 0, false, overlay, null);
+    }
+
+    /**
+     * Returns the list of data values from nodes along the quickest path
+     * when leaving start at the provided time, after the provided overlay has
+     * avoided or scaled some of the edges.
+     *
+     * @param start     the data item in the starting node for the path
+     * @param end       the data item in the destination node for the path
+     * @param departure seconds after midnight that the path leaves start
+     * @param overlay   the changes to make for this path only, or null
+     * @return list of data item from node along this quickest path
+     */
+    public List<String> shortestPathData(String start, String end, double departure,
+                                         RouteOverlay<String> overlay) {
+        List<String> path = new ArrayList<>();
+        route(start, end, departure, true, overlay, path);
+        return path;
+    }
+
+    /**
+     * Returns the time taken by the quickest path when leaving start at the
+     * provided time, after the provided overlay has avoided or scaled some
+     * of the edges.
+     *
+     * @param start     the data item in the starting node for the path
+     * @param end       the data item in the destination node for the path
+     * @param departure seconds after midnight that the path leaves start
+     * @param overlay   the changes to make for this path only, or null
+     * @return the seconds from leaving start until arriving at end
+     */
+    public double shortestPathCost(String start, String end, double departure, RouteOverlay<String> overlay) {
+        return route(start, end, departure, true, overlay, null);
+    }
+
+    /**
+     * Returns the shortest paths from the node with the provided start value
+     * to each of the nodes with the provided end values, computed with a
+     * single search that stops once every end has been reached.
+     *
+     * @param start the data item in the starting node for the paths
+     * @param ends  the data items in the destination nodes for the paths
+     * @return list holding the shortest path to each end, in the same order as
+     *         ends, where an end that cannot be reached has an empty path
+     * @throws NoSuchElementException if the start node cannot be found
+     */
+    public List<List<String>> shortestPathDataToEach(String start, List<String> ends) {
+        int first = idOf(start);
+        if (first == NONE) {
+            throw new NoSuchElementException("Start data does not correspond to a graph node.");
+        }
+        int[] endIds = new int[ends.size()];
+        BitSet remaining = new BitSet();
+        for (int i = 0; i < endIds.length; i++) {
+            endIds[i] = idOf(ends.get(i));
+            if (endIds[i] != NONE) remaining.set(endIds[i]);
+        }
+
+        SearchWorkspace workspace = acquireWorkspace();
+        try {
+            workspace.reset(nodeIds);
+            if (!remaining.isEmpty()) {
+                search(workspace, new int[] {first}, 0, false, false, null, Double.POSITIVE_INFINITY, id -> {
+                    remaining.clear(id);
+                    return remaining.isEmpty();
+                });
+            }
+            List<List<String>> result = new ArrayList<>();
+            for (int end : endIds) {
+                List<String> path = new ArrayList<>();
+                if (end != NONE && workspace.isSettled(end)) {
+                    for (int id = end; id != -1; id = workspace.getPrevious(id)) {
+                        path.add(nameOf(id));
+                    }
+                    Collections.reverse(path);
+                }
+                result.add(path);
+            }
+            return result;
+        } finally {
+            workspaces.offer(workspace);
+        }
+    }
+
+    /**
+     * Returns the cost of the shortest path from the node with the provided
+     * start value to each of the nodes with the other values or, searching
+     * backwards, from each of the other nodes to start. These are found by a
+     * single search that stops once every other node has been reached.
+     *
+     * @param start    the data item in the node that every path starts (or
+     *                 when backward, ends) at
+     * @param others   the data items in the nodes at the other end of each path
+     * @param backward whether the paths end at start rather than leaving it
+     * @return the cost of each path, in the same order as others, where the
+     *         cost is infinite for a node that is not in this graph or has no
+     *         such path
+     * @throws NoSuchElementException if the start node cannot be found
+     */
+    public double[] shortestPathCosts(String start, List<String> others, boolean backward) {
+        int first = idOf(start);
+        if (first == NONE) {
+            throw new NoSuchElementException("Start data does not correspond to a graph node.");
+        }
+        int[] otherIds = new int[others.size()];
+        BitSet remaining = new BitSet();
+        for (int i = 0; i < otherIds.length; i++) {
+            otherIds[i] = idOf(others.get(i));
+            if (otherIds[i] != NONE) remaining.set(otherIds[i]);
+        }
+        double[] costs = new double[otherIds.length];
+        SearchWorkspace workspace = acquireWorkspace();
+        try {
+            workspace.reset(nodeIds);
+            if (!remaining.isEmpty()) {
+                search(workspace, new int[] {first}, 0, backward, false, null, Double.POSITIVE_INFINITY, id -> {
+                    remaining.clear(id);
+                    return remaining.isEmpty();
+                });
+            }
+            for (int i = 0; i < otherIds.length; i++) {
+                costs[i] = otherIds[i] != NONE && workspace.isSettled(otherIds[i])
+                    ? workspace.getCost(otherIds[i]) : Double.POSITIVE_INFINITY;
+            }
+            return costs;
+        } finally {
+            workspaces.offer(workspace);
+        }
+    }
+
+    /**
+     * Returns every node that can be reached from the node with the provided
+     * start value by a path costing no more than the provided limit, along
+     * with the cost of its shortest path.
+     *
+     * @param start the data item in the starting node
+     * @param limit the greatest path cost to include
+     * @return map from each reachable node's data to its shortest path cost,
+     *         iterating in order of increasing cost and beginning with start
+     * @throws NoSuchElementException if the start node cannot be found
+     */
+    public Map<String, Double> reachableWithin(String start, double limit) {
+        int first = idOf(start);
+        if (first == NONE) {
+            throw new NoSuchElementException("Start data does not correspond to a graph node.");
+        }
+        Map<String, Double> result = new LinkedHashMap<>();
+        SearchWorkspace workspace = acquireWorkspace();
+        try {
+            search(workspace, new int[] {first}, 0, false, false, null, limit, id -> {
+                double cost = workspace.getCost(id);
+                if (cost > limit) return true;
+                result.put(nameOf(id), cost);
+                return false;
+            });
+            return result;
+        } finally {
+            workspaces.offer(workspace);
+        }
+    }
+
+    // returns the ids of those targets that are in this graph
+    private int[] targetIds(List<String> targets) {
+        int[] ids = new int[targets.size()];
+        int count = 0;
+        for (String target : targets) {
+            int id = idOf(target);
+            if (id != NONE) ids[count++] = id;
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Returns the shortest path from the node with the provided start value
+     * to whichever of the nodes with the provided target values is nearest to
+     * it, found by a single search backwards from all of the targets at once.
+     *
+     * @param start   the data item in the starting node for the path
+     * @param targets the data items in the nodes that the path may end at
+     * @return list of data items from nodes along the shortest path from start
+     *         to its nearest target, which ends with that target
+     * @throws NoSuchElementException if the start node cannot be found, or if
+     *                                none of the targets can be reached
+     */
+    public List<String> shortestPathToNearest(String start, List<String> targets) {
+        int first = idOf(start);
+        if (first == NONE) {
+            throw new NoSuchElementException("Start data does not correspond to a graph node.");
+        }
+        SearchWorkspace workspace = acquireWorkspace();
+        try {
+            if (!search(workspace, targetIds(targets), 0, true, false, null, Double.POSITIVE_INFINITY,
+                        id -> id == first)) {
+                throw new NoSuchElementException("Path does not exist.");
+            }
+            //Previous nodes of a backwards search already lead toward the target.
+            List<String> result = new ArrayList<>();
+            for (int id = first; id != -1; id = workspace.getPrevious(id)) {
+                result.add(nameOf(id));
+            }
+            return result;
+        } finally {
+            workspaces.offer(workspace);
+        }
+    }
+
+    /**
+     * Labels every node with whichever of the nodes with the provided target
+     * values is nearest to it, all found by a single search backwards from
+     * every target at once.
+     *
+     * @param targets the data items in the nodes to label other nodes with
+     * @return map from the data in each node that can reach some target to
+     *         the data in its nearest target, in order of increasing cost
+     *         (nodes that cannot reach any target are left out)
+     */
+    public Map<String, String> nearestTargets(List<String> targets) {
+        Map<String, String> labels = new LinkedHashMap<>();
+        Map<Integer, String> targetNames = new HashMap<>();
+        for (String target : targets) {
+            int id = idOf(target);
+            if (id != NONE) targetNames.putIfAbsent(id, target);
+        }
+        int[] label = new int[nodeIds];
+        SearchWorkspace workspace = acquireWorkspace();
+        try {
+            search(workspace, targetIds(targets), 0, true, false, null, Double.POSITIVE_INFINITY, id -> {
+                //A node's previous node was settled first, and shares its target.
+                int previous = workspace.getPrevious(id);
+                label[id] = previous == -1 ? id : label[previous];
+                labels.put(nameOf(id), targetNames.get(label[id]));
+                return false;
+            });
+            return labels;
+        } finally {
+            workspaces.offer(workspace);
+        }
+    }
+
+    /**
+     * Releases the memory or files that hold this graph, after which it must
+     * not be used.
+     * @throws IOException if a file cannot be closed or deleted
+     */
+    @Override
+    public void close() throws IOException {
+        nodeRecords.close();
+        edgeRecords.close();
+        names.close();
+        index.close();
+    }
+}
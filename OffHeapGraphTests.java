@@ -0,0 +1,230 @@
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of OffHeapGraph, kept apart from it because JUnit can only create a
+ * test class that has a single constructor.
+ */
+public class OffHeapGraphTests {
+
+    /**
+     * Makes a small graph of lettered locations, which is the graph that
+     * DijkstraGraph's tests use.
+     */
+    private static <G extends GraphADT<String, Double>> G makeGraph(G graph) {
+        for (String node : List.of("A", "B", "C", "D", "E", "F", "G", "H")) {
+            graph.insertNode(node);
+        }
+        graph.insertEdge("A", "B", 4.0);
+        graph.insertEdge("A", "C", 2.0);
+        graph.insertEdge("A", "E", 15.0);
+        graph.insertEdge("B", "D", 1.0);
+        graph.insertEdge("B", "E", 10.0);
+        graph.insertEdge("C", "D", 5.0);
+        graph.insertEdge("D", "E", 3.0);
+        graph.insertEdge("D", "F", 0.0);
+        graph.insertEdge("F", "D", 2.0);
+        graph.insertEdge("F", "H", 4.0);
+        graph.insertEdge("G", "H", 4.0);
+        return graph;
+    }
+
+    /**
+     * Test that every search finds the same paths and costs as DijkstraGraph.
+     */
+    @Test
+    public void offHeapTest1() {
+        DijkstraGraph<String, Double> expected = makeGraph(new DijkstraGraph<>());
+        OffHeapGraph graph = makeGraph(new OffHeapGraph());
+        assertEquals(8, graph.getNodeCount());
+        assertEquals(11, graph.getEdgeCount());
+        assertEquals(expected.getAllNodes().size(), graph.getAllNodes().size());
+        for (String start : graph.getAllNodes()) {
+            for (String end : graph.getAllNodes()) {
+                if (expected.reachableWithin(start, 100).containsKey(end)) {
+                    assertEquals(expected.shortestPathCost(start, end), graph.shortestPathCost(start, end));
+                    assertEquals(expected.shortestPathData(start, end), graph.shortestPathData(start, end));
+                } else {
+                    assertThrows(NoSuchElementException.class, () -> graph.shortestPathData(start, end));
+                }
+            }
+            assertEquals(expected.reachableWithin(start, 7), graph.reachableWithin(start, 7));
+        }
+        assertEquals(expected.shortestPathDataToEach("A", List.of("E", "G", "F", "Z")),
+                     graph.shortestPathDataToEach("A", List.of("E", "G", "F", "Z")));
+        assertEquals(expected.nearestTargets(List.of("E", "H")), graph.nearestTargets(List.of("E", "H")));
+        assertEquals(expected.shortestPathToNearest("A", List.of("E", "H")),
+                     graph.shortestPathToNearest("A", List.of("E", "H")));
+        assertEquals(List.of("A", "B", "D", "F", "H"), graph.shortestPathToNearest("A", List.of("H")));
+    }
+
+    /**
+     * Test that removing nodes and edges unlinks them from every list, and
+     * that a graph stored in files behaves the same as one in memory.
+     */
+    @Test
+    public void offHeapTest2() throws IOException {
+        Path directory = Files.createTempDirectory("offheap");
+        try (OffHeapGraph graph = makeGraph(new OffHeapGraph(directory))) {
+            assertTrue(graph.containsEdge("D", "F"));
+            assertTrue(graph.removeEdge("D", "F"));
+            assertFalse(graph.removeEdge("D", "F"));
+            assertEquals(10, graph.getEdgeCount());
+            assertThrows(NoSuchElementException.class, () -> graph.getEdge("D", "F"));
+            assertTrue(graph.insertEdge("D", "F", 1.0));
+            assertEquals(1.0, graph.getEdge("D", "F"));
+
+            assertTrue(graph.removeNode("D"));
+            assertFalse(graph.containsNode("D"));
+            assertFalse(graph.removeNode("D"));
+            assertEquals(6, graph.getEdgeCount());
+            assertEquals(List.of("A", "B", "E"), graph.shortestPathData("A", "E"));
+            assertFalse(graph.insertEdge("D", "E", 1.0));
+
+            //Names are stored as utf-8, and the index grows as nodes are added.
+            for (int i = 0; i < 5000; i++) {
+                assertTrue(graph.insertNode("Hall \u00e9\u6771 " + i));
+            }
+            assertTrue(graph.insertEdge("Hall \u00e9\u6771 4999", "A", 2.5));
+            assertEquals(List.of("Hall \u00e9\u6771 4999", "A", "B"),
+                         graph.shortestPathData("Hall \u00e9\u6771 4999", "B"));
+            for (int i = 0; i < 5000; i += 2) {
+                assertTrue(graph.removeNode("Hall \u00e9\u6771 " + i));
+            }
+            for (int i = 0; i < 5000; i++) {
+                assertEquals(i % 2 == 1, graph.containsNode("Hall \u00e9\u6771 " + i));
+            }
+            assertEquals(7 + 2500, graph.getNodeCount());
+
+            //Once every node is removed, the graph starts over.
+            for (String node : graph.getAllNodes()) {
+                graph.removeNode(node);
+            }
+            assertEquals(0, graph.getEdgeCount());
+            assertTrue(graph.insertNode("A"));
+            assertEquals(List.of("A"), graph.getAllNodes());
+        }
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Test that searches with a departure time or an overlay follow the
+     * same rules as DijkstraGraph's.
+     */
+    @Test
+    public void offHeapTest3() {
+        DijkstraGraph<String, Double> expected = makeGraph(new DijkstraGraph<>());
+        OffHeapGraph graph = makeGraph(new OffHeapGraph());
+        TravelTimeFunction rush = TravelTimeFunction.parse("7:00=4 8:00=20 9:00=4");
+        for (GraphADT<String, Double> g : List.<GraphADT<String, Double>>of(expected, graph)) {
+            assertTrue(g.setTravelTime("A", "B", rush));
+            assertFalse(g.setTravelTime("A", "G", rush));
+        }
+        assertEquals(rush, graph.getTravelTime("A", "B"));
+        assertNull(graph.getTravelTime("A", "C"));
+        for (double departure : new double[] {6 * 3600, 7.5 * 3600, 8 * 3600}) {
+            assertEquals(expected.shortestPathData("A", "E", departure), graph.shortestPathData("A", "E", departure));
+            assertEquals(expected.shortestPathCost("A", "E", departure), graph.shortestPathCost("A", "E", departure));
+        }
+        RouteOverlay<String> overlay = new RouteOverlay<String>().slower("B", 3).slower("D", "E", 2);
+        assertEquals(expected.shortestPathData("A", "E", overlay), graph.shortestPathData("A", "E", overlay));
+        assertEquals(13.0, graph.shortestPathCost("A", "E", overlay));
+        overlay.avoid("A", "C");
+        assertEquals(List.of("A", "E"), graph.shortestPathData("A", "E", 8 * 3600, overlay));
+        assertThrows(NoSuchElementException.class, () -> {
+            graph.shortestPathData("A", "E", new RouteOverlay<String>().avoid("E"));
+        });
+
+        assertTrue(graph.setTravelTime("A", "B", null));
+        assertNull(graph.getTravelTime("A", "B"));
+        assertEquals(8.0, graph.shortestPathCost("A", "E", 8 * 3600));
+    }
+
+    /**
+     * Test that a road map split into shards, each served over its own
+     * socket, gives the same shortest paths as the whole map in one graph.
+     */
+    @Test
+    public void offHeapTest4() throws IOException {
+        DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+        GraphGenerator generator = new GraphGenerator("road", 900, 4, 7);
+        for (int i = 0; i < generator.getNodeCount(); i++)
+            graph.insertNode(GraphGenerator.nameOf(i));
+        generator.generate((pred, succ, seconds) ->
+            graph.insertEdge(GraphGenerator.nameOf(pred), GraphGenerator.nameOf(succ), seconds));
+
+        GraphPartitioner partitioner = new GraphPartitioner(graph);
+        int[] part = partitioner.partition(3, 0.05);
+        int[] sizes = new int[3];
+        for (int p : part)
+            sizes[p]++;
+        for (int size : sizes)
+            assertTrue(size <= Math.ceil(900 / 3.0 * 1.05) && size >= Math.floor(900 / 3.0 * 0.95));
+        assertTrue(partitioner.countCutEdges(part) < graph.getEdgeCount() / 10);
+
+        Path directory = Files.createTempDirectory("shards");
+        String prefix = directory.resolve("road").toString();
+        ShardManifest manifest = partitioner.write(part, 3, prefix);
+        assertEquals(manifest.getCutEdgeCount(), ShardManifest.read(prefix + ".shards").getCutEdgeCount());
+        List<ShardServer> servers = new ArrayList<>();
+        List<Path> sockets = new ArrayList<>();
+        List<OffHeapGraph> shardGraphs = new ArrayList<>();
+        try {
+            for (int shard = 0; shard < 3; shard++) {
+                OffHeapGraph shardGraph = new OffHeapGraph();
+                GraphSnapshot.read(prefix + "-" + shard + ".snap", shardGraph);
+                shardGraphs.add(shardGraph);
+                sockets.add(directory.resolve("shard-" + shard + ".sock"));
+                servers.add(new ShardServer(shardGraph, sockets.get(shard)));
+            }
+            try (ShardCoordinator coordinator = new ShardCoordinator(ShardManifest.read(prefix + ".shards"), sockets)) {
+                Random random = new Random(1);
+                List<String> nodes = partitioner.getNodes();
+                for (int query = 0; query < 100; query++) {
+                    String start = nodes.get(random.nextInt(nodes.size()));
+                    String end = nodes.get(random.nextInt(nodes.size()));
+                    double expected = graph.shortestPathCost(start, end);
+                    assertEquals(expected, coordinator.shortestPathCost(start, end), 1e-6);
+                    List<String> path = coordinator.shortestPathData(start, end);
+                    assertEquals(start, path.get(0));
+                    assertEquals(end, path.get(path.size() - 1));
+                    double cost = 0;
+                    for (int i = 1; i < path.size(); i++)
+                        cost += graph.getEdge(path.get(i - 1), path.get(i));
+                    assertEquals(expected, cost, 1e-6);
+                }
+                assertThrows(NoSuchElementException.class, () -> coordinator.shortestPathCost("Nowhere", nodes.get(0)));
+
+                //A shard that no longer has a location replies with an error,
+                //after which its connection is reused rather than abandoned.
+                Set<Integer> boundary = new HashSet<>();
+                for (int[] nodesOfShard : manifest.getBoundaries())
+                    for (int node : nodesOfShard) boundary.add(node);
+                int removed = 0;
+                while (boundary.contains(removed)) removed++;
+                String missing = nodes.get(removed);
+                String last = nodes.get(nodes.size() - 1);
+                assertTrue(shardGraphs.get(part[removed]).removeNode(missing));
+                int opened = coordinator.getOpenedConnectionCount();
+                for (int i = 0; i < 5; i++)
+                    assertThrows(NoSuchElementException.class, () -> coordinator.shortestPathCost(missing, last));
+                assertEquals(opened, coordinator.getOpenedConnectionCount());
+                String other = nodes.get(removed + 1);
+                List<String> detour = coordinator.shortestPathData(other, last);
+                assertEquals(last, detour.get(detour.size() - 1));
+                assertFalse(detour.contains(missing));
+                assertEquals(opened, coordinator.getOpenedConnectionCount());
+            }
+        } finally {
+            for (ShardServer server : servers)
+                server.close();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A growable run of bytes held outside of the java heap, either in direct
+ * ByteBuffers or in a file that is mapped into memory, so that the garbage
+ * collector never scans (or even sees) what is stored in it. Bytes are
+ * addressed by a long offset, which lets a region grow past the 2GB limit of
+ * a single ByteBuffer: the region is made of equal sized chunks, and an offset
+ * selects a chunk by its high bits and a position within it by its low bits.
+ *
+ * An int, long, or double is never split across two chunks as long as its
+ * offset is a multiple of its size, so records should be laid out with each
+ * field aligned to its size. Byte arrays may be stored at any offset.
+ *
+ * Reads use only absolute positions, so any number of threads may read a
+ * region at once, but writes (and growth) must not overlap with other access.
+ */
+public class OffHeapRegion implements AutoCloseable {
+
+    public static final int CHUNK_BITS = 20;
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private int chunkCount = 0;
+    private long size = 0;
+
+    // the file that chunks are mapped from, or null when they are in memory
+    private final Path file;
+    private final FileChannel channel;
+
+    /**
+     * Creates a region in direct memory.
+     */
+    public OffHeapRegion() {
+        this.file = null;
+        this.channel = null;
+    }
+
+    /**
+     * Creates a region that is mapped from a new file in the provided
+     * directory, so that the operating system can page it out to disk when
+     * memory is short. The file is deleted when the region is closed, or
+     * failing that when the jvm exits.
+     * @param directory the directory to create the file in
+     * @param name a prefix for the name of the file
+     * @throws IOException if the file cannot be created
+     */
+    public OffHeapRegion(Path directory, String name) throws IOException {
+        this.file = Files.createTempFile(directory, name, ".bin");
+        file.toFile().deleteOnExit();
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Reserves bytes at the end of this region, growing it when needed.
+     * @param bytes the number of bytes to reserve
+     * @return the offset of the first reserved byte
+     */
+    public long allocate(long bytes) {
+        long offset = size;
+        while (size + bytes > (long) chunkCount * CHUNK_SIZE) addChunk();
+        size += bytes;
+        return offset;
+    }
+
+    // adds one more chunk of zeroed bytes
+    private void addChunk() {
+        if (chunkCount == chunks.length) chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        ByteBuffer chunk;
+        if (channel == null) {
+            chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        } else {
+            try {
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE, (long) chunkCount * CHUNK_SIZE, CHUNK_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to grow " + file, e);
+            }
+        }
+        chunks[chunkCount++] = chunk.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Empties this region, keeping its chunks to be reused. The bytes that
+     * were stored in them are set back to zero.
+     */
+    public void clear() {
+        byte[] zeros = new byte[8192];
+        for (int i = 0; i < chunkCount && (long) i * CHUNK_SIZE < size; i++)
+            for (int position = 0; position < CHUNK_SIZE; position += zeros.length)
+                chunks[i].put(position, zeros);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of bytes that have been allocated in this region.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes held outside of the heap by this region,
+     * which is its size rounded up to a whole number of chunks.
+     */
+    public long capacity() {
+        return (long) chunkCount * CHUNK_SIZE;
+    }
+
+    public int getInt(long offset) {
+        return chunks[(int) (offset >>> CHUNK_BITS)].getInt((int) (offset & CHUNK_MASK));
+    }
+
+    public void putInt(long offset, int value) {
+        chunks[(int) (offset >>> CHUNK_BITS)].putInt((int) (offset & CHUNK_MASK), value);
+    }
+
+    public long getLong(long offset) {
+        return chunks[(int) (offset >>> CHUNK_BITS)].getLong((int) (offset & CHUNK_MASK));
+    }
+
+    public void putLong(long offset, long value) {
+        chunks[(int) (offset >>> CHUNK_BITS)].putLong((int) (offset & CHUNK_MASK), value);
+    }
+
+    public double getDouble(long offset) {
+        return chunks[(int) (offset >>> CHUNK_BITS)].getDouble((int) (offset & CHUNK_MASK));
+    }
+
+    public void putDouble(long offset, double value) {
+        chunks[(int) (offset >>> CHUNK_BITS)].putDouble((int) (offset & CHUNK_MASK), value);
+    }
+
+    public byte getByte(long offset) {
+        return chunks[(int) (offset >>> CHUNK_BITS)].get((int) (offset & CHUNK_MASK));
+    }
+
+    /**
+     * Copies bytes out of this region, which may span more than one chunk.
+     * @param offset the offset of the first byte to copy
+     * @param bytes the array to copy into, which is filled
+     */
+    public void get(long offset, byte[] bytes) {
+        int copied = 0;
+        while (copied < bytes.length) {
+            int position = (int) (offset & CHUNK_MASK);
+            int length = Math.min(bytes.length - copied, CHUNK_SIZE - position);
+            chunks[(int) (offset >>> CHUNK_BITS)].get(position, bytes, copied, length);
+            copied += length;
+            offset += length;
+        }
+    }
+
+    /**
+     * Copies bytes into this region, which may span more than one chunk.
+     * @param offset the offset to copy the first byte to
+     * @param bytes the bytes to copy
+     */
+    public void put(long offset, byte[] bytes) {
+        int copied = 0;
+        while (copied < bytes.length) {
+            int position = (int) (offset & CHUNK_MASK);
+            int length = Math.min(bytes.length - copied, CHUNK_SIZE - position);
+            chunks[(int) (offset >>> CHUNK_BITS)].put(position, bytes, copied, length);
+            copied += length;
+            offset += length;
+        }
+    }
+
+    /**
+     * Releases this region. Direct memory is freed once the chunks are
+     * garbage collected, and a file backed region deletes its file.
+     * @throws IOException if the file cannot be closed or deleted
+     */
+    @Override
+    public void close() throws IOException {
+        chunks = new ByteBuffer[0];
+        chunkCount = 0;
+        size = 0;
+        if (channel != null) {
+            channel.close();
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A bounded, least recently used cache of rendered pages. Until the graph
+ * that pages are computed from is updated, the page for a given query is
+ * always the same: it is rendered once, and then every repeat of that query
+ * is answered from here along with an ETag (so clients can revalidate
+ * without receiving the page again) and a lazily compressed gzip copy of the
+ * page. An update to the graph drops the pages that it may have changed
+ * (see invalidate and clear), and since the ETag is a digest of the page,
+ * clients then revalidate against the page as it is rendered afterwards.
+ */
+public class PageCache {
+
+    /**
+     * A rendered page along with its ETag and compressed form.
+     */
+    public static class Page {
+        public final byte[] body;
+        public final String etag;
+        private volatile byte[] gzipped = null;
+
+        public Page(byte[] body) {
+            this.body = body;
+            this.etag = computeETag(body);
+        }
+
+        /**
+         * Returns this page compressed with gzip, compressing it the first
+         * time that it is requested.
+         * @return the gzip compressed bytes of this page
+         */
+        public byte[] gzipped() {
+            byte[] result = gzipped;
+            if (result == null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                    gzip.write(body);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e); // never thrown when writing to memory
+                }
+                result = out.toByteArray();
+                gzipped = result;
+            }
+            return result;
+        }
+
+        /**
+         * Checks whether an If-None-Match request header matches this page,
+         * in which case the client's copy is current.
+         * @param ifNoneMatch the header's value, or null when not sent
+         * @return true when the client already has this page
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) return false;
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) tag = tag.substring(2);
+                if (tag.equals("*") || tag.equals(etag)) return true;
+            }
+            return false;
+        }
+    }
+
+    private final Map<String,Page> pages;
+    private long generation = 0; // times cleared, guarded by pages
+
+    /**
+     * Creates a cache that holds at most capacity pages.
+     * @param capacity the most pages that are kept at once
+     */
+    public PageCache(int capacity) {
+        this.pages = new LinkedHashMap<String,Page>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Page> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached page for key, rendering and caching it first when
+     * it is not already in the cache. Rendering happens outside of the
+     * cache's lock, so two threads may occasionally render the same page.
+     * @param key identifies the query that the page answers
+     * @param renderer produces the page's bytes when they are not cached
+     * @return the cached page
+     */
+    public Page get(String key, Supplier<byte[]> renderer) {
+        Page page;
+        long started;
+        synchronized (pages) {
+            page = pages.get(key);
+            started = generation;
+        }
+        if (page == null) {
+            page = new Page(renderer.get());
+            synchronized (pages) {
+                if (generation == started)
+                    pages.put(key, page);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Drops every cached page, so that each is rendered again the next time
+     * that it is requested. Pages that were being rendered during this call
+     * are returned to their requests but not cached, since they may have
+     * been rendered from the graph as it was.
+     */
+    public void clear() {
+        synchronized (pages) {
+            pages.clear();
+            generation++;
+        }
+    }
+
+    /**
+     * Drops the cached pages that may have changed, so that each is rendered
+     * again the next time that it is requested. Pages are checked without
+     * holding the cache's lock, so requests are not held up by a slow check.
+     * As with clear, pages that were being rendered during this call are not
+     * cached.
+     * @param stale checks whether the page cached for a key may have changed
+     */
+    public void invalidate(BiPredicate<String,Page> stale) {
+        List<Map.Entry<String,Page>> cached = new ArrayList<>();
+        synchronized (pages) {
+            for (Map.Entry<String,Page> entry : pages.entrySet())
+                cached.add(Map.entry(entry.getKey(), entry.getValue()));
+            generation++;
+        }
+        List<Map.Entry<String,Page>> dropped = new ArrayList<>();
+        for (Map.Entry<String,Page> entry : cached)
+            if (stale.test(entry.getKey(), entry.getValue())) dropped.add(entry);
+        synchronized (pages) {
+            for (Map.Entry<String,Page> entry : dropped)
+                pages.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    // computes a strong ETag from a digest of the page's bytes
+    private static String computeETag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder sb = new StringBuilder("\"");
+            for (int i = 0; i < 12; i++)
+                sb.append(String.format("%02x", digest[i]));
+            return sb.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every jvm provides SHA-256
+        }
+    }
+}
@@ -0,0 +1,227 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * Changes to a graph that apply to a single query, such as a building that
+ * is closed today or a path that is slow while it is under construction,
+ * without modifying the graph that every other query shares. An overlay can
+ * avoid a node or an edge entirely, or multiply the cost of an edge (or of
+ * every edge entering a node) by a factor:
+ *     new RouteOverlay<String>().avoid("Bascom Hall").slower("Library Mall", 2);
+ *
+ * A factor multiplies an edge's weight. When a search follows travel times,
+ * it multiplies the edge's shortest duration of the day instead, and adds
+ * the delay beyond that at the time the edge is reached (see
+ * TravelTimeFunction.travelTime), so that leaving later never means
+ * arriving earlier.
+ *
+ * Searches look each node up once, by id, when they start, so checking the
+ * overlay while relaxing edges costs a bit test and an array read.
+ */
+public class RouteOverlay<NodeType> {
+
+    /**
+     * A directed edge between two nodes, by their data.
+     */
+    public static final class Edge<NodeType> {
+        public final NodeType pred;
+        public final NodeType succ;
+
+        public Edge(NodeType pred, NodeType succ) {
+            this.pred = pred;
+            this.succ = succ;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Edge && Objects.equals(pred, ((Edge<?>) other).pred)
+                && Objects.equals(succ, ((Edge<?>) other).succ);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(pred, succ);
+        }
+    }
+
+    /**
+     * An overlay with its nodes looked up by id, once per search, so that it
+     * can be checked for each edge that the search relaxes without hashing
+     * any data.
+     */
+    public static final class Resolved {
+        private final BitSet avoided = new BitSet();
+        private double[] nodeFactors = null; // per node id, only when some are set
+        private final BitSet edgeSources = new BitSet(); // preds of the edges below
+        private final long[] edgeKeys; // pred id << 32 | succ id, in increasing order
+        private final double[] edgeFactors;
+
+        private <NodeType> Resolved(RouteOverlay<NodeType> overlay, ToIntFunction<NodeType> idOf, int capacity) {
+            for (NodeType data : overlay.avoidedNodes) {
+                int id = idOf.applyAsInt(data);
+                if (id >= 0) avoided.set(id);
+            }
+            for (Map.Entry<NodeType, Double> entry : overlay.nodeFactors.entrySet()) {
+                int id = idOf.applyAsInt(entry.getKey());
+                if (id < 0) continue;
+                if (nodeFactors == null) {
+                    nodeFactors = new double[capacity];
+                    Arrays.fill(nodeFactors, 1.0);
+                }
+                nodeFactors[id] = entry.getValue();
+            }
+            TreeMap<Long, Double> edges = new TreeMap<>();
+            for (Map.Entry<Edge<NodeType>, Double> entry : overlay.edgeFactors.entrySet()) {
+                int pred = idOf.applyAsInt(entry.getKey().pred);
+                int succ = idOf.applyAsInt(entry.getKey().succ);
+                if (pred < 0 || succ < 0) continue;
+                edgeSources.set(pred);
+                edges.put((long) pred << 32 | succ, entry.getValue());
+            }
+            edgeKeys = new long[edges.size()];
+            edgeFactors = new double[edges.size()];
+            int i = 0;
+            for (Map.Entry<Long, Double> entry : edges.entrySet()) {
+                edgeKeys[i] = entry.getKey();
+                edgeFactors[i++] = entry.getValue();
+            }
+        }
+
+        /**
+         * Returns the factor that the cost of the edge from pred to succ is
+         * multiplied by, which is infinite when the edge is avoided.
+         */
+        public double factor(int pred, int succ) {
+            if (avoided.get(succ)) return Double.POSITIVE_INFINITY;
+            double factor = nodeFactors == null ? 1.0 : nodeFactors[succ];
+            if (edgeSources.get(pred)) {
+                int i = Arrays.binarySearch(edgeKeys, (long) pred << 32 | succ);
+                if (i >= 0) {
+                    if (edgeFactors[i] == Double.POSITIVE_INFINITY) return Double.POSITIVE_INFINITY;
+                    factor *= edgeFactors[i];
+                }
+            }
+            return factor;
+        }
+    }
+
+    private final Set<NodeType> avoidedNodes = new HashSet<>();
+    private final Map<NodeType, Double> nodeFactors = new HashMap<>();
+    private final Map<Edge<NodeType>, Double> edgeFactors = new HashMap<>(); // infinity when avoided
+
+    /**
+     * Avoids a node, so that no path passes through or ends at it.
+     * @param node the data item in the node to avoid
+     * @return this overlay
+     */
+    public RouteOverlay<NodeType> avoid(NodeType node) {
+        avoidedNodes.add(node);
+        return this;
+    }
+
+    /**
+     * Avoids an edge, so that no path takes it.
+     * @param pred the data item in the edge's predecessor node
+     * @param succ the data item in the edge's successor node
+     * @return this overlay
+     */
+    public RouteOverlay<NodeType> avoid(NodeType pred, NodeType succ) {
+        edgeFactors.put(new Edge<>(pred, succ), Double.POSITIVE_INFINITY);
+        return this;
+    }
+
+    /**
+     * Multiplies the cost of every edge entering a node by a factor, in
+     * addition to any factor of the edge itself.
+     * @param node the data item in the node
+     * @param factor the non-negative factor to multiply by
+     * @return this overlay
+     * @throws IllegalArgumentException if factor is negative or not a number
+     */
+    public RouteOverlay<NodeType> slower(NodeType node, double factor) {
+        nodeFactors.put(node, checkFactor(factor));
+        return this;
+    }
+
+    /**
+     * Multiplies the cost of an edge by a factor, unless it is avoided.
+     * @param pred the data item in the edge's predecessor node
+     * @param succ the data item in the edge's successor node
+     * @param factor the non-negative factor to multiply by
+     * @return this overlay
+     * @throws IllegalArgumentException if factor is negative or not a number
+     */
+    public RouteOverlay<NodeType> slower(NodeType pred, NodeType succ, double factor) {
+        edgeFactors.merge(new Edge<>(pred, succ), checkFactor(factor),
+                          (old, updated) -> old == Double.POSITIVE_INFINITY ? old : updated);
+        return this;
+    }
+
+    private static double checkFactor(double factor) {
+        if (!(factor >= 0))
+            throw new IllegalArgumentException("A cost can only be multiplied by a non-negative factor, not " + factor);
+        return factor;
+    }
+
+    /**
+     * Checks whether this overlay changes nothing.
+     */
+    public boolean isEmpty() {
+        return avoidedNodes.isEmpty() && nodeFactors.isEmpty() && edgeFactors.isEmpty();
+    }
+
+    /**
+     * Checks whether a node is avoided.
+     */
+    public boolean isAvoided(NodeType node) {
+        return avoidedNodes.contains(node);
+    }
+
+    /**
+     * Returns the factor that the cost of an edge is multiplied by, which is
+     * infinite when either the edge or its successor is avoided.
+     * @param pred the data item in the edge's predecessor node
+     * @param succ the data item in the edge's successor node
+     * @return the factor for that edge, which is 1 when it is unchanged
+     */
+    public double getFactor(NodeType pred, NodeType succ) {
+        if (avoidedNodes.contains(succ)) return Double.POSITIVE_INFINITY;
+        return edgeFactors.getOrDefault(new Edge<>(pred, succ), 1.0) * nodeFactors.getOrDefault(succ, 1.0);
+    }
+
+    /**
+     * Looks up every node of this overlay by its id in a graph, for a search
+     * over that graph. Nodes that are not in the graph are ignored.
+     * @param idOf returns the id of a node's data, or -1 when it is not in
+     *        the graph
+     * @param capacity one more than the largest id in the graph
+     * @return this overlay by node id
+     */
+    public Resolved resolve(ToIntFunction<NodeType> idOf, int capacity) {
+        return new Resolved(this, idOf, capacity);
+    }
+
+    public Set<NodeType> getAvoidedNodes() {
+        return Collections.unmodifiableSet(avoidedNodes);
+    }
+
+    public Map<NodeType, Double> getNodeFactors() {
+        return Collections.unmodifiableMap(nodeFactors);
+    }
+
+    /**
+     * Returns the factor of each edge that is avoided or slower, where the
+     * factor of an avoided edge is infinite.
+     */
+    public Map<Edge<NodeType>, Double> getEdgeFactors() {
+        return Collections.unmodifiableMap(edgeFactors);
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of the work done by a graph's shortest path searches. Each
+ * search counts its own work in local variables, then adds those counts here
+ * once it finishes, so that many threads can search at once without
+ * contending on these counters.
+ */
+public class SearchCounters {
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder nodesSettled = new LongAdder();
+    private final LongAdder edgesRelaxed = new LongAdder();
+    private final LongAdder queuePushes = new LongAdder();
+    private final LongAdder stalePops = new LongAdder();
+
+    /**
+     * Adds the work done by one completed search to these totals.
+     * @param settled nodes whose shortest path cost was finalized
+     * @param relaxed edges examined leaving those settled nodes
+     * @param pushes entries added to the priority queue
+     * @param stale entries removed from the queue for already settled nodes
+     */
+    public void recordSearch(long settled, long relaxed, long pushes, long stale) {
+        searches.increment();
+        nodesSettled.add(settled);
+        edgesRelaxed.add(relaxed);
+        queuePushes.add(pushes);
+        stalePops.add(stale);
+    }
+
+    public long getSearches() { return searches.sum(); }
+    public long getNodesSettled() { return nodesSettled.sum(); }
+    public long getEdgesRelaxed() { return edgesRelaxed.sum(); }
+    public long getQueuePushes() { return queuePushes.sum(); }
+    public long getStalePops() { return stalePops.sum(); }
+}
@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+/**
+ * The arrays that a search over a graph records its progress in, indexed by
+ * the id of each node, along with a binary heap of node ids ordered by cost.
+ * Workspaces are kept in a pool and reused by later searches, rather than
+ * being allocated for each one. Instead of clearing every array before a
+ * search, each entry is stamped with the search that wrote it, so an entry
+ * from an earlier search reads as never having been written.
+ */
+public class SearchWorkspace {
+
+    private double[] cost = new double[0];
+    private int[] previous = new int[0];  // node before each node on its path
+    private int[] reached = new int[0];   // stamp of the search that set cost
+    private int[] settled = new int[0];   // stamp of the search that settled it
+    private int stamp = 0;
+
+    // heap of node ids, each keyed by its cost when it was pushed; a node can
+    // be pushed again when its cost improves, leaving a stale entry behind
+    private int[] heapIds = new int[64];
+    private double[] heapKeys = new double[64];
+    private int heapSize = 0;
+
+    /**
+     * Prepares this workspace for a new search over nodes with ids below
+     * capacity, growing its arrays when they are too small.
+     * @param capacity one more than the largest node id that may be searched
+     */
+    public void reset(int capacity) {
+        if (cost.length < capacity) {
+            int length = Math.max(capacity, cost.length + cost.length / 2);
+            cost = new double[length];
+            previous = new int[length];
+            reached = new int[length];
+            settled = new int[length];
+            stamp = 0;
+        }
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(reached, 0);
+            Arrays.fill(settled, 0);
+            stamp = 1;
+        }
+        heapSize = 0;
+    }
+
+    /**
+     * Returns the cost recorded for a node during this search, or positive
+     * infinity when it has not been reached.
+     */
+    public double getCost(int id) {
+        return reached[id] == stamp ? cost[id] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the id of the node before this one on its path, or -1 for the
+     * node that the search started from.
+     */
+    public int getPrevious(int id) {
+        return previous[id];
+    }
+
+    public boolean isSettled(int id) {
+        return settled[id] == stamp;
+    }
+
+    public void settle(int id) {
+        settled[id] = stamp;
+    }
+
+    /**
+     * Records a path to a node, and pushes the node onto the heap, when that
+     * path costs less than any other path to it found so far.
+     * @param id the node that the path ends at
+     * @param pathCost the cost of the path
+     * @param previousId the node before it on the path, or -1 for none
+     * @return true if the path was recorded, or false if it was no better
+     */
+    public boolean improve(int id, double pathCost, int previousId) {
+        if (reached[id] == stamp && cost[id] <= pathCost) return false;
+        reached[id] = stamp;
+        cost[id] = pathCost;
+        previous[id] = previousId;
+        push(id, pathCost);
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return heapSize == 0;
+    }
+
+    /**
+     * Returns the number of bytes that this workspace's arrays take up.
+     */
+    public long getBytes() {
+        return 8L * (cost.length + heapKeys.length) + 4L * (previous.length + reached.length + settled.length +
+                                                            heapIds.length);
+    }
+
+    /**
+     * Returns the number of entries in the heap, including stale ones.
+     */
+    public int size() {
+        return heapSize;
+    }
+
+    /**
+     * Returns the smallest key in the heap, which must not be empty.
+     */
+    public double peekKey() {
+        return heapKeys[0];
+    }
+
+    /**
+     * Removes and returns the id with the smallest key in the heap. This may
+     * be a stale entry for a node that has already been settled.
+     */
+    public int pop() {
+        int top = heapIds[0];
+        heapSize--;
+        int id = heapIds[heapSize];
+        double key = heapKeys[heapSize];
+        int hole = 0;
+        while (2 * hole + 1 < heapSize) {
+            int child = 2 * hole + 1;
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) child++;
+            if (heapKeys[child] >= key) break;
+            heapIds[hole] = heapIds[child];
+            heapKeys[hole] = heapKeys[child];
+            hole = child;
+        }
+        heapIds[hole] = id;
+        heapKeys[hole] = key;
+        return top;
+    }
+
+    // adds an id to the heap, moving it up past every larger key
+    private void push(int id, double key) {
+        if (heapSize == heapIds.length) {
+            heapIds = Arrays.copyOf(heapIds, heapSize * 2);
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+        }
+        int hole = heapSize++;
+        while (hole > 0) {
+            int parent = (hole - 1) / 2;
+            if (heapKeys[parent] <= key) break;
+            heapIds[hole] = heapIds[parent];
+            heapKeys[hole] = heapKeys[parent];
+            hole = parent;
+        }
+        heapIds[hole] = id;
+        heapKeys[hole] = key;
+    }
+}
@@ -0,0 +1,224 @@
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Settings that control how the WebApp's HttpServer executes requests. These
+ * are read from key=value command line arguments that follow the port number,
+ * for example: java WebApp 8080 executor=virtual maxConcurrency=256
+ *
+ * executor       - virtual (one virtual thread per request), pool (bounded
+ *                  pool of platform threads), or dispatcher (the HttpServer's
+ *                  own single thread, as in earlier versions of this app)
+ * threads        - number of platform threads when executor=pool, and the
+ *                  most threads that one batch request searches on
+ * backlog        - number of pending tcp connections the socket will queue
+ * keepAlive      - seconds that an idle keep-alive connection is kept open
+ * maxConcurrency - requests that may run at once, beyond which clients are
+ *                  sent 503 Service Unavailable (0 means unlimited)
+ * map            - dot file (or graph snapshot) that queries are answered from
+ * graph          - heap (a DijkstraGraph of java objects) or offheap (an
+ *                  OffHeapGraph, for maps too large to keep on the heap)
+ * storage        - directory that an offheap graph is stored in, instead of
+ *                  direct memory
+ * arcFlags       - number of regions to compute arc flags for once the map
+ *                  is loaded, which speeds up long searches (heap graph only)
+ * template       - html template that pages are rendered into
+ * watch          - seconds between checks of the map file, which is applied
+ *                  as an update whenever it has been modified (leave out to
+ *                  never check)
+ */
+public class ServerConfig {
+
+    public static final String VIRTUAL = "virtual";
+    public static final String POOL = "pool";
+    public static final String DISPATCHER = "dispatcher";
+
+    public static final String HEAP = "heap";
+    public static final String OFF_HEAP = "offheap";
+
+    public static final String DEFAULT_MAP = "./campus.dot";
+    public static final String DEFAULT_TEMPLATE = "template.html";
+
+    private String executor = VIRTUAL;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int backlog = 128;
+    private int keepAlive = 30;
+    private int maxConcurrency = 0;
+    private String map = DEFAULT_MAP;
+    private String template = DEFAULT_TEMPLATE;
+    private String graph = HEAP;
+    private String storage = null;
+    private int arcFlags = 0;
+    private int watch = 0;
+
+    /**
+     * Creates a configuration with default settings: a virtual thread per
+     * request, a backlog of 128, 30 second keep-alive, no concurrency limit,
+     * and campus.dot as the map.
+     */
+    public ServerConfig() { }
+
+    /**
+     * Creates a configuration from key=value arguments. Unknown keys and
+     * values that cannot be parsed are reported with an exception.
+     * @param args key=value settings, any of which may be omitted
+     * @throws IllegalArgumentException if an argument is not a valid setting
+     */
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig config = new ServerConfig();
+        Map<String,String> settings = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=");
+            if (pair.length != 2)
+                throw new IllegalArgumentException("Unable to split setting: " + arg +
+                                                   " into a key value pair around a single = delimiter.");
+            settings.put(pair[0], pair[1]);
+        }
+        for (Map.Entry<String,String> setting : settings.entrySet()) {
+            String value = setting.getValue();
+            switch (setting.getKey()) {
+                case "executor":
+                    if (!value.equals(VIRTUAL) && !value.equals(POOL) && !value.equals(DISPATCHER))
+                        throw new IllegalArgumentException("Unknown executor: " + value);
+                    config.executor = value;
+                    break;
+                case "threads": config.threads = parsePositive(setting.getKey(), value); break;
+                case "backlog": config.backlog = parsePositive(setting.getKey(), value); break;
+                case "keepAlive": config.keepAlive = parsePositive(setting.getKey(), value); break;
+                case "maxConcurrency":
+                    config.maxConcurrency = parseNonNegative(setting.getKey(), value); break;
+                case "map": config.map = value; break;
+                case "template": config.template = value; break;
+                case "graph":
+                    if (!value.equals(HEAP) && !value.equals(OFF_HEAP))
+                        throw new IllegalArgumentException("Unknown graph: " + value);
+                    config.graph = value;
+                    break;
+                case "storage":
+                    if (!Files.isDirectory(Paths.get(value)))
+                        throw new IllegalArgumentException("storage must be an existing directory, not: " + value);
+                    config.storage = value;
+                    break;
+                case "arcFlags":
+                    config.arcFlags = parsePositive(setting.getKey(), value);
+                    if (config.arcFlags > ArcFlags.MAX_REGIONS)
+                        throw new IllegalArgumentException("arcFlags may be at most " + ArcFlags.MAX_REGIONS +
+                                                           " regions, not: " + value);
+                    break;
+                case "watch": config.watch = parsePositive(setting.getKey(), value); break;
+                default:
+                    throw new IllegalArgumentException("Unknown server setting: " + setting.getKey());
+            }
+        }
+        if (config.storage != null && !config.graph.equals(OFF_HEAP))
+            throw new IllegalArgumentException("storage may only be set when graph=" + OFF_HEAP);
+        if (config.arcFlags > 0 && !config.graph.equals(HEAP))
+            throw new IllegalArgumentException("arcFlags may only be set when graph=" + HEAP);
+        return config;
+    }
+
+    // parses the value of an integer setting, which must be positive
+    private static int parsePositive(String key, String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0) return number;
+        } catch (NumberFormatException e) { }
+        throw new IllegalArgumentException(key + " must be a positive integer, not: " + value);
+    }
+
+    private static int parseNonNegative(String key, String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= 0) return number;
+        } catch (NumberFormatException e) { }
+        throw new IllegalArgumentException(key + " must be zero or a positive integer, not: " + value);
+    }
+
+    public String getExecutor() { return executor; }
+    public int getThreads() { return threads; }
+    public int getBacklog() { return backlog; }
+    public int getKeepAlive() { return keepAlive; }
+    public int getMaxConcurrency() { return maxConcurrency; }
+    public String getMap() { return map; }
+    public String getTemplate() { return template; }
+    public String getGraph() { return graph; }
+    public String getStorage() { return storage; }
+    public int getArcFlags() { return arcFlags; }
+    public int getWatch() { return watch; }
+
+    /**
+     * Creates the empty graph that the map should be loaded into.
+     * @return a DijkstraGraph, or an OffHeapGraph when graph=offheap
+     * @throws IOException if the files of an offheap graph cannot be created
+     */
+    public GraphADT<String,Double> createGraph() throws IOException {
+        if (graph.equals(HEAP))
+            return new DijkstraGraph<>();
+        return storage == null ? new OffHeapGraph() : new OffHeapGraph(Paths.get(storage));
+    }
+
+    /**
+     * Applies the keep-alive setting. The JDK's HttpServer reads this from a
+     * system property when its first instance is created, so this must be
+     * called before HttpServer.create(). Nagle's algorithm is also disabled
+     * for kept-alive connections, since otherwise the last segment of each
+     * chunked response can wait on the client's delayed ack (about 40ms).
+     */
+    public void applyKeepAlive() {
+        System.setProperty("sun.net.httpserver.idleInterval", String.valueOf(keepAlive));
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /**
+     * Creates the executor that requests should be run on, or returns null
+     * when requests should run on the HttpServer's dispatcher thread. When
+     * virtual threads are not available on this JVM (they require Java 21),
+     * a bounded platform thread pool is used instead.
+     * @return executor for the HttpServer, or null for its default behavior
+     */
+    public ExecutorService createExecutor() {
+        if (executor.equals(DISPATCHER))
+            return null;
+        if (executor.equals(VIRTUAL)) {
+            try {
+                // looked up reflectively so that this still compiles on older JDKs
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads are unavailable on this JVM, " +
+                                   "using a pool of " + threads + " platform threads instead.");
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                                                         60, TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<>(),
+                                                         task -> {
+                                                             Thread thread = new Thread(task, "request-" + count.incrementAndGet());
+                                                             thread.setDaemon(true);
+                                                             return thread;
+                                                         });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    @Override
+    public String toString() {
+        return "map=" + map + " graph=" + graph + (storage != null ? " storage=" + storage : "") +
+            (arcFlags > 0 ? " arcFlags=" + arcFlags : "") + (watch > 0 ? " watch=" + watch : "") +
+            " executor=" + executor + (executor.equals(POOL) ? " threads=" + threads : "") +
+            " backlog=" + backlog + " keepAlive=" + keepAlive +
+            " maxConcurrency=" + (maxConcurrency == 0 ? "unlimited" : String.valueOf(maxConcurrency));
+    }
+}
@@ -0,0 +1,421 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers shortest path queries over a graph that has been split into
+ * shards by GraphPartitioner, where each shard is served by a ShardServer
+ * that may be in another process. The coordinator holds none of the graph
+ * itself, only the name and shard of each node and the cut edges between
+ * shards.
+ *
+ * When it starts, the coordinator asks each shard for the cost of the
+ * shortest path within that shard between each pair of its boundary nodes,
+ * and links these tables together with the cut edges into an overlay graph
+ * of just the boundary nodes. A query then asks the start's shard for the
+ * cost from start to each of its boundary nodes, and the end's shard for the
+ * cost from each of its boundary nodes to end, and searches the overlay
+ * between them. Paths are filled in afterwards by asking each shard that
+ * the path crosses for its piece.
+ *
+ * Searches use the static weight of each edge: travel times that depend on
+ * the time of day, and overlays, are not supported across shards.
+ *
+ * Queries can be run from the command line, reading "start -> end" lines:
+ *     java ShardCoordinator MANIFEST SOCKET_0 ... SOCKET_K-1
+ */
+public class ShardCoordinator implements AutoCloseable {
+
+    /**
+     * One open connection to a shard, which handles one request at a time.
+     */
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final Queue<Connection> pool; // the free connections to the same shard
+
+        Connection(Path socket, Queue<Connection> pool) throws IOException {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+            in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            this.pool = pool;
+        }
+
+        // sends the request, and reads the status byte of its reply; an error
+        // reply has been read in full, so the connection goes back to its
+        // pool before the error is thrown
+        void send() throws IOException {
+            out.flush();
+            byte status = in.readByte();
+            if (status == ShardServer.ERROR) {
+                String message = in.readUTF();
+                pool.offer(this);
+                throw new NoSuchElementException(message);
+            }
+            if (status != ShardServer.OK)
+                throw new IOException("Unexpected reply status " + status + ".");
+        }
+
+        double[] readCosts(int count) throws IOException {
+            double[] costs = new double[count];
+            for (int i = 0; i < count; i++)
+                costs[i] = in.readDouble();
+            return costs;
+        }
+    }
+
+    private final ShardManifest manifest;
+    private final List<Path> sockets;
+    private final List<ConcurrentLinkedQueue<Connection>> connections = new ArrayList<>();
+    private final ConcurrentLinkedQueue<SearchWorkspace> workspaces = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger opened = new AtomicInteger(); // connections ever opened
+
+    private final Map<String,Integer> index = new HashMap<>(); // node name to index in manifest
+    private final List<int[]> boundaries; // boundary nodes of each shard, by index in manifest
+    private final int[] boundaryNodes; // index in manifest of each boundary id
+    private final int[] boundaryShards; // shard of each boundary id
+    private final int[] positions; // position of each boundary id within its shard's boundary
+    private final int[] firstIds; // first boundary id of each shard, and then the total
+
+    // the overlay graph: edges leaving boundary id i are [first[i], first[i+1])
+    private final int[] first;
+    private final int[] targets;
+    private final double[] weights;
+
+    /**
+     * Connects to every shard, and builds the overlay graph from their
+     * tables of boundary costs.
+     * @param manifest the manifest written when the graph was partitioned
+     * @param sockets the socket of the server for each shard, in order
+     * @throws IOException if a shard cannot be reached
+     * @throws IllegalArgumentException if there is not one socket per shard
+     */
+    public ShardCoordinator(ShardManifest manifest, List<Path> sockets) throws IOException {
+        if (sockets.size() != manifest.getShardCount())
+            throw new IllegalArgumentException("The manifest has " + manifest.getShardCount() +
+                                               " shards, but " + sockets.size() + " sockets were given.");
+        this.manifest = manifest;
+        this.sockets = sockets;
+        for (int i = 0; i < manifest.getNodes().size(); i++)
+            index.put(manifest.getNodes().get(i), i);
+        for (int shard = 0; shard < sockets.size(); shard++)
+            connections.add(new ConcurrentLinkedQueue<>());
+
+        //Number the boundary nodes of every shard consecutively.
+        boundaries = manifest.getBoundaries();
+        firstIds = new int[boundaries.size() + 1];
+        for (int shard = 0; shard < boundaries.size(); shard++)
+            firstIds[shard + 1] = firstIds[shard] + boundaries.get(shard).length;
+        int count = firstIds[boundaries.size()];
+        boundaryNodes = new int[count];
+        boundaryShards = new int[count];
+        positions = new int[count];
+        int[] idOfNode = new int[manifest.getNodes().size()];
+        Arrays.fill(idOfNode, -1);
+        for (int shard = 0; shard < boundaries.size(); shard++) {
+            for (int i = 0; i < boundaries.get(shard).length; i++) {
+                int id = firstIds[shard] + i;
+                boundaryNodes[id] = boundaries.get(shard)[i];
+                boundaryShards[id] = shard;
+                positions[id] = i;
+                idOfNode[boundaryNodes[id]] = id;
+            }
+        }
+
+        //Each shard's table gives an edge between each pair of its boundary
+        //nodes that are connected within it, and each cut edge is one more.
+        List<double[]> tables = new ArrayList<>();
+        for (int shard = 0; shard < boundaries.size(); shard++)
+            tables.add(boundaryTable(shard));
+        int[] degree = new int[count];
+        for (int shard = 0; shard < boundaries.size(); shard++) {
+            int size = boundaries.get(shard).length;
+            double[] table = tables.get(shard);
+            for (int i = 0; i < size; i++)
+                for (int j = 0; j < size; j++)
+                    if (i != j && table[i * size + j] != Double.POSITIVE_INFINITY) degree[firstIds[shard] + i]++;
+        }
+        for (int edge = 0; edge < manifest.getCutEdgeCount(); edge++)
+            degree[idOfNode[manifest.getCutPred(edge)]]++;
+        first = new int[count + 1];
+        for (int id = 0; id < count; id++)
+            first[id + 1] = first[id] + degree[id];
+        targets = new int[first[count]];
+        weights = new double[first[count]];
+        int[] filled = Arrays.copyOf(first, count);
+        for (int shard = 0; shard < boundaries.size(); shard++) {
+            int size = boundaries.get(shard).length;
+            double[] table = tables.get(shard);
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    if (i == j || table[i * size + j] == Double.POSITIVE_INFINITY) continue;
+                    int id = firstIds[shard] + i;
+                    targets[filled[id]] = firstIds[shard] + j;
+                    weights[filled[id]++] = table[i * size + j];
+                }
+            }
+        }
+        for (int edge = 0; edge < manifest.getCutEdgeCount(); edge++) {
+            int id = idOfNode[manifest.getCutPred(edge)];
+            targets[filled[id]] = idOfNode[manifest.getCutSucc(edge)];
+            weights[filled[id]++] = manifest.getCutSeconds(edge);
+        }
+    }
+
+    // asks a shard for the costs between its boundary nodes, row by row
+    private double[] boundaryTable(int shard) throws IOException {
+        int[] nodes = boundaries.get(shard);
+        Connection connection = acquire(shard);
+        try {
+            connection.out.writeByte(ShardServer.BOUNDARY);
+            connection.out.writeInt(nodes.length);
+            for (int node : nodes)
+                connection.out.writeUTF(manifest.getNodes().get(node));
+            connection.send();
+            double[] table = connection.readCosts(nodes.length * nodes.length);
+            connections.get(shard).offer(connection);
+            return table;
+        } catch (IOException e) {
+            connection.channel.close();
+            throw e;
+        }
+    }
+
+    // takes a connection to a shard from its pool, opening one when none are
+    // free; it must be offered back once its reply has been read
+    private Connection acquire(int shard) throws IOException {
+        Connection connection = connections.get(shard).poll();
+        if (connection != null)
+            return connection;
+        opened.incrementAndGet();
+        return new Connection(sockets.get(shard), connections.get(shard));
+    }
+
+    // asks a shard for the costs from a node to each of its boundary nodes,
+    // or from each of them to the node
+    private double[] boundaryCosts(int shard, String name, boolean toNode) {
+        try {
+            Connection connection = acquire(shard);
+            try {
+                connection.out.writeByte(toNode ? ShardServer.TO : ShardServer.FROM);
+                connection.out.writeUTF(name);
+                connection.send();
+                double[] costs = connection.readCosts(boundaries.get(shard).length);
+                connections.get(shard).offer(connection);
+                return costs;
+            } catch (IOException e) {
+                connection.channel.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Shard " + shard + " at " + sockets.get(shard) + " failed", e);
+        }
+    }
+
+    // asks a shard for the shortest path within it, adding the names on the
+    // path to path when it is not null, and returns its cost
+    private double shardPath(int shard, String start, String end, List<String> path) {
+        try {
+            Connection connection = acquire(shard);
+            try {
+                connection.out.writeByte(ShardServer.PATH);
+                connection.out.writeUTF(start);
+                connection.out.writeUTF(end);
+                connection.send();
+                double cost = connection.in.readDouble();
+                int count = connection.in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String name = connection.in.readUTF();
+                    //The first name repeats the last one of the piece before.
+                    if (path != null && (i > 0 || path.isEmpty())) path.add(name);
+                }
+                connections.get(shard).offer(connection);
+                return cost;
+            } catch (IOException e) {
+                connection.channel.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Shard " + shard + " at " + sockets.get(shard) + " failed", e);
+        }
+    }
+
+    // takes a workspace from the pool, which must be offered back after use
+    private SearchWorkspace acquireWorkspace() {
+        SearchWorkspace workspace = workspaces.poll();
+        return workspace == null ? new SearchWorkspace() : workspace;
+    }
+
+    // finds the path from start to end, adding its names to path when it is
+    // not null, and returns its cost
+    private double route(String start, String end, List<String> path) {
+        Integer startNode = index.get(start);
+        Integer endNode = index.get(end);
+        if (startNode == null || endNode == null) {
+            throw new NoSuchElementException("Start or end data does not correspond to a graph node.");
+        }
+        int startShard = manifest.getShard(startNode);
+        int endShard = manifest.getShard(endNode);
+        double[] fromStart = boundaryCosts(startShard, start, false);
+        double[] toEnd = boundaryCosts(endShard, end, true);
+        double best = startShard == endShard ? shardPath(startShard, start, end, null) : Double.POSITIVE_INFINITY;
+        int bestExit = -1; // the last boundary node of the best path, or -1 if it stays in one shard
+
+        SearchWorkspace workspace = acquireWorkspace();
+        try {
+            workspace.reset(boundaryNodes.length);
+            for (int i = 0; i < fromStart.length; i++)
+                if (fromStart[i] != Double.POSITIVE_INFINITY) workspace.improve(firstIds[startShard] + i, fromStart[i], -1);
+            while (!workspace.isEmpty() && workspace.peekKey() < best) {
+                int current = workspace.pop();
+                if (workspace.isSettled(current)) continue;
+                workspace.settle(current);
+                double cost = workspace.getCost(current);
+                if (boundaryShards[current] == endShard && cost + toEnd[positions[current]] < best) {
+                    best = cost + toEnd[positions[current]];
+                    bestExit = current;
+                }
+                for (int i = first[current]; i < first[current + 1]; i++)
+                    if (!workspace.isSettled(targets[i])) workspace.improve(targets[i], cost + weights[i], current);
+            }
+            if (best == Double.POSITIVE_INFINITY) {
+                throw new NoSuchElementException("Path does not exist.");
+            }
+            if (path != null) {
+                if (bestExit == -1) {
+                    shardPath(startShard, start, end, path);
+                } else {
+                    List<Integer> hops = new ArrayList<>();
+                    for (int id = bestExit; id != -1; id = workspace.getPrevious(id))
+                        hops.add(id);
+                    Collections.reverse(hops);
+                    shardPath(startShard, start, nameOf(hops.get(0)), path);
+                    for (int i = 1; i < hops.size(); i++) {
+                        if (boundaryShards[hops.get(i - 1)] == boundaryShards[hops.get(i)])
+                            shardPath(boundaryShards[hops.get(i)], nameOf(hops.get(i - 1)), nameOf(hops.get(i)), path);
+                        else
+                            path.add(nameOf(hops.get(i))); // a cut edge
+                    }
+                    shardPath(endShard, nameOf(bestExit), end, path);
+                }
+            }
+            return best;
+        } finally {
+            workspaces.offer(workspace);
+        }
+    }
+
+    private String nameOf(int boundaryId) {
+        return manifest.getNodes().get(boundaryNodes[boundaryId]);
+    }
+
+    /**
+     * Returns the list of data values from nodes along the shortest path
+     * from the node with the provided start value through the node with the
+     * provided end value, across every shard that it passes through.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return list of data item from node along this shortest path
+     * @throws NoSuchElementException if either node or the path between them
+     *         does not exist
+     * @throws UncheckedIOException if a shard cannot be reached
+     */
+    public List<String> shortestPathData(String start, String end) {
+        List<String> path = new ArrayList<>();
+        route(start, end, path);
+        return path;
+    }
+
+    /**
+     * Returns the cost of the shortest path from the node containing the
+     * start data to the node containing the end data.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return the cost of the shortest path between these nodes
+     * @throws NoSuchElementException if either node or the path between them
+     *         does not exist
+     * @throws UncheckedIOException if a shard cannot be reached
+     */
+    public double shortestPathCost(String start, String end) {
+        return route(start, end, null);
+    }
+
+    /**
+     * Returns the number of boundary nodes, which the overlay graph is made
+     * of, and the number of edges between them.
+     */
+    public int getBoundaryCount() {
+        return boundaryNodes.length;
+    }
+
+    public int getOverlayEdgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * Returns the number of connections to shards that have been opened,
+     * which only grows while more queries run at once than ever before.
+     */
+    public int getOpenedConnectionCount() {
+        return opened.get();
+    }
+
+    /**
+     * Closes every pooled connection to the shards. The shards keep running.
+     */
+    @Override
+    public void close() throws IOException {
+        for (ConcurrentLinkedQueue<Connection> pool : connections)
+            for (Connection connection = pool.poll(); connection != null; connection = pool.poll())
+                connection.channel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java ShardCoordinator MANIFEST SOCKET_0 ... SOCKET_K-1");
+            System.exit(2);
+        }
+        List<Path> sockets = new ArrayList<>();
+        for (int i = 1; i < args.length; i++)
+            sockets.add(Path.of(args[i]));
+        long started = System.nanoTime();
+        try (ShardCoordinator coordinator = new ShardCoordinator(ShardManifest.read(args[0]), sockets)) {
+            System.out.printf("Connected to %d shards: %d boundary locations and %d overlay edges in %.3f s%n",
+                              sockets.size(), coordinator.getBoundaryCount(), coordinator.getOverlayEdgeCount(),
+                              (System.nanoTime() - started) / 1e9);
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String[] ends = line.split("->");
+                if (ends.length != 2) {
+                    System.out.println("Expected: start -> end");
+                    continue;
+                }
+                try {
+                    long start = System.nanoTime();
+                    List<String> path = coordinator.shortestPathData(ends[0].trim(), ends[1].trim());
+                    double cost = coordinator.shortestPathCost(ends[0].trim(), ends[1].trim());
+                    System.out.printf("%.1f seconds through %d locations (%.3f ms): %s%n", cost, path.size(),
+                                      (System.nanoTime() - start) / 1e6, String.join(" -> ", path));
+                } catch (NoSuchElementException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Describes how a graph was split into shards by GraphPartitioner: which
+ * shard holds each node, and every cut edge (an edge whose predecessor and
+ * successor are in different shards). Each shard's own nodes and the edges
+ * between them are written separately, as a GraphSnapshot, so a shard server
+ * never needs to read this file. A manifest is stored as:
+ *
+ *     int     MAGIC
+ *     int     VERSION
+ *     int     number of shards
+ *     int     number of nodes
+ *     each node: UTF name, int shard
+ *     cut edges: int predecessor index, int successor index, double seconds
+ *     int     END_OF_EDGES, in place of the next predecessor index
+ *
+ * The nodes at either end of a cut edge are the boundary nodes of their
+ * shards, which are the only nodes that a path can enter or leave a shard by.
+ */
+public class ShardManifest {
+
+    public static final int MAGIC = 0x4753484D; // "GSHM"
+    public static final int VERSION = 1;
+    private static final int END_OF_EDGES = -1;
+
+    private final int shardCount;
+    private final List<String> nodes;
+    private final int[] shards;
+    private final int[] cutPreds;
+    private final int[] cutSuccs;
+    private final double[] cutSeconds;
+
+    /**
+     * Creates a manifest.
+     * @param shardCount the number of shards
+     * @param nodes the name of each node
+     * @param shards the shard of each node, in the same order as nodes
+     * @param cutPreds the index in nodes of each cut edge's predecessor
+     * @param cutSuccs the index in nodes of each cut edge's successor
+     * @param cutSeconds the weight of each cut edge
+     * @throws IllegalArgumentException if a shard or index is out of range
+     */
+    public ShardManifest(int shardCount, List<String> nodes, int[] shards,
+                         int[] cutPreds, int[] cutSuccs, double[] cutSeconds) {
+        if (shards.length != nodes.size() || cutPreds.length != cutSuccs.length
+            || cutPreds.length != cutSeconds.length)
+            throw new IllegalArgumentException("A manifest needs one shard per node and one of each part per cut edge.");
+        for (int shard : shards)
+            if (shard < 0 || shard >= shardCount)
+                throw new IllegalArgumentException("Shard " + shard + " is not one of " + shardCount + " shards.");
+        for (int i = 0; i < cutPreds.length; i++)
+            if (cutPreds[i] < 0 || cutPreds[i] >= shards.length || cutSuccs[i] < 0 || cutSuccs[i] >= shards.length)
+                throw new IllegalArgumentException("Cut edge " + i + " has a node that does not exist.");
+        this.shardCount = shardCount;
+        this.nodes = nodes;
+        this.shards = shards;
+        this.cutPreds = cutPreds;
+        this.cutSuccs = cutSuccs;
+        this.cutSeconds = cutSeconds;
+    }
+
+    public int getShardCount() { return shardCount; }
+    public List<String> getNodes() { return nodes; }
+    public int getShard(int node) { return shards[node]; }
+    public int getCutEdgeCount() { return cutPreds.length; }
+    public int getCutPred(int edge) { return cutPreds[edge]; }
+    public int getCutSucc(int edge) { return cutSuccs[edge]; }
+    public double getCutSeconds(int edge) { return cutSeconds[edge]; }
+
+    /**
+     * Returns the boundary nodes of each shard, as indexes into getNodes()
+     * in increasing order.
+     */
+    public List<int[]> getBoundaries() {
+        boolean[] boundary = new boolean[shards.length];
+        for (int i = 0; i < cutPreds.length; i++) {
+            boundary[cutPreds[i]] = true;
+            boundary[cutSuccs[i]] = true;
+        }
+        int[] counts = new int[shardCount];
+        for (int node = 0; node < shards.length; node++)
+            if (boundary[node]) counts[shards[node]]++;
+        List<int[]> boundaries = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++)
+            boundaries.add(new int[counts[shard]]);
+        Arrays.fill(counts, 0);
+        for (int node = 0; node < shards.length; node++)
+            if (boundary[node]) boundaries.get(shards[node])[counts[shards[node]]++] = node;
+        return boundaries;
+    }
+
+    /**
+     * Writes this manifest to a file.
+     * @param filename the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(filename), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(shardCount);
+            out.writeInt(nodes.size());
+            for (int i = 0; i < shards.length; i++) {
+                out.writeUTF(nodes.get(i));
+                out.writeInt(shards[i]);
+            }
+            for (int i = 0; i < cutPreds.length; i++) {
+                out.writeInt(cutPreds[i]);
+                out.writeInt(cutSuccs[i]);
+                out.writeDouble(cutSeconds[i]);
+            }
+            out.writeInt(END_OF_EDGES);
+        }
+    }
+
+    /**
+     * Reads a manifest from a file.
+     * @param filename the file to read
+     * @return the manifest
+     * @throws IOException if the file cannot be read or is not a manifest
+     */
+    public static ShardManifest read(String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                 new FileInputStream(filename), 1 << 16))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(filename + " is not a shard manifest.");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException(filename + " is manifest version " + version +
+                                      ", but only version " + VERSION + " is supported.");
+            int shardCount = in.readInt();
+            int nodeCount = in.readInt();
+            List<String> nodes = new ArrayList<>(nodeCount);
+            int[] shards = new int[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                nodes.add(in.readUTF());
+                shards[i] = in.readInt();
+            }
+            int count = 0;
+            int[] preds = new int[16];
+            int[] succs = new int[16];
+            double[] seconds = new double[16];
+            for (int pred = in.readInt(); pred != END_OF_EDGES; pred = in.readInt()) {
+                if (count == preds.length) {
+                    preds = Arrays.copyOf(preds, count * 2);
+                    succs = Arrays.copyOf(succs, count * 2);
+                    seconds = Arrays.copyOf(seconds, count * 2);
+                }
+                preds[count] = pred;
+                succs[count] = in.readInt();
+                seconds[count++] = in.readDouble();
+            }
+            try {
+                return new ShardManifest(shardCount, nodes, shards, Arrays.copyOf(preds, count),
+                                         Arrays.copyOf(succs, count), Arrays.copyOf(seconds, count));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(filename + " is not a valid manifest: " + e.getMessage());
+            }
+        } catch (EOFException e) {
+            throw new IOException(filename + " ends before the end of its manifest.");
+        }
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Serves one shard of a partitioned graph (see GraphPartitioner) to a
+ * ShardCoordinator, over a unix domain socket so that any number of shards
+ * can run as separate processes on one machine. The shard is loaded from its
+ * snapshot into an OffHeapGraph.
+ *
+ * Each request is an opcode byte followed by its arguments, and each reply
+ * begins with OK followed by its results, or with ERROR followed by a UTF
+ * message. Costs are doubles, and are infinite when there is no path within
+ * the shard:
+ *     BOUNDARY int n, n UTF names    OK, n * n costs between these nodes
+ *     FROM UTF name                  OK, cost to each boundary node
+ *     TO UTF name                    OK, cost from each boundary node
+ *     PATH UTF start, UTF end        OK, cost, int n, n UTF names on the path
+ * where the boundary nodes are those of the latest BOUNDARY request.
+ *
+ * A shard can be started from the command line with:
+ *     java ShardServer SNAPSHOT SOCKET [storage=DIR]
+ * where storage maps the graph from a file in DIR rather than direct memory.
+ */
+public class ShardServer implements AutoCloseable {
+
+    public static final byte BOUNDARY = 1;
+    public static final byte FROM = 2;
+    public static final byte TO = 3;
+    public static final byte PATH = 4;
+    public static final byte OK = 0;
+    public static final byte ERROR = -1;
+
+    private final OffHeapGraph graph;
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private volatile List<String> boundary = List.of();
+
+    /**
+     * Starts serving a graph on a socket, replacing any socket file left
+     * there by a shard that did not shut down.
+     * @param graph the shard's graph, which is closed along with this server
+     * @param socket the path of the unix domain socket to listen on
+     * @throws IOException if the socket cannot be bound
+     */
+    public ShardServer(OffHeapGraph graph, Path socket) throws IOException {
+        this.graph = graph;
+        this.socket = socket;
+        Files.deleteIfExists(socket);
+        this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        Thread acceptor = new Thread(this::accept, "shard-" + socket.getFileName());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    // hands each connection to a thread of its own until the server closes
+    private void accept() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel channel = server.accept();
+                Thread thread = new Thread(() -> serve(channel), "shard-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                // the server was closed, or the connection was dropped
+            }
+        }
+    }
+
+    // answers requests on one connection until the other end closes it
+    private void serve(SocketChannel channel) {
+        try (channel;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            while (true) {
+                byte opcode;
+                try {
+                    opcode = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                try {
+                    respond(opcode, in, out);
+                } catch (NoSuchElementException | IllegalArgumentException e) {
+                    out.writeByte(ERROR);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the coordinator went away; it will reconnect if it needs to
+        }
+    }
+
+    private void respond(byte opcode, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (opcode) {
+        case BOUNDARY: {
+            int count = in.readInt();
+            List<String> names = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                names.add(in.readUTF());
+            List<double[]> rows = new ArrayList<>(count);
+            for (String name : names)
+                rows.add(graph.shortestPathCosts(name, names, false));
+            boundary = names;
+            out.writeByte(OK);
+            for (double[] row : rows)
+                for (double cost : row) out.writeDouble(cost);
+            break;
+        }
+        case FROM:
+        case TO: {
+            double[] costs = graph.shortestPathCosts(in.readUTF(), boundary, opcode == TO);
+            out.writeByte(OK);
+            for (double cost : costs)
+                out.writeDouble(cost);
+            break;
+        }
+        case PATH: {
+            String start = in.readUTF();
+            String end = in.readUTF();
+            List<String> path;
+            double cost = 0;
+            try {
+                path = graph.shortestPathData(start, end);
+                for (int i = 1; i < path.size(); i++)
+                    cost += graph.getEdge(path.get(i - 1), path.get(i));
+            } catch (NoSuchElementException e) {
+                if (!graph.containsNode(start) || !graph.containsNode(end)) throw e;
+                path = List.of();
+                cost = Double.POSITIVE_INFINITY;
+            }
+            out.writeByte(OK);
+            out.writeDouble(cost);
+            out.writeInt(path.size());
+            for (String name : path)
+                out.writeUTF(name);
+            break;
+        }
+        default:
+            throw new IllegalArgumentException("Unknown shard request " + opcode);
+        }
+    }
+
+    /**
+     * Returns the graph that this shard serves.
+     */
+    public OffHeapGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Stops accepting connections, removes the socket file, and releases the
+     * graph. Connections that are already open are dropped as they finish.
+     * @throws IOException if the socket or graph cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        Files.deleteIfExists(socket);
+        graph.close();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: java ShardServer SNAPSHOT SOCKET [storage=DIR]");
+            System.exit(2);
+        }
+        Path storage = null;
+        for (String arg : Arrays.asList(args).subList(2, args.length)) {
+            if (!arg.startsWith("storage="))
+                throw new IllegalArgumentException("Unknown setting: " + arg);
+            storage = Path.of(arg.substring("storage=".length()));
+        }
+        OffHeapGraph graph = storage == null ? new OffHeapGraph() : new OffHeapGraph(storage);
+        long start = System.nanoTime();
+        GraphSnapshot.read(args[0], graph);
+        ShardServer server = new ShardServer(graph, Path.of(args[1]));
+        System.out.printf("Serving %s (%d locations, %d edges, loaded in %.3f s) on %s%n", args[0],
+                          graph.getNodeCount(), graph.getEdgeCount(), (System.nanoTime() - start) / 1e9, args[1]);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // exiting anyway
+            }
+        }));
+        Thread.currentThread().join();
+    }
+}
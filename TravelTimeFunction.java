@@ -0,0 +1,206 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The time that it takes to walk along an edge as a function of the time of
+ * day that the walk starts, such as a path that is slower while classes let
+ * out, or a building that is faster to cut through while it is open. The
+ * function is piecewise linear: it is given as a duration at each of a few
+ * times of day, and changes linearly between them. It repeats every day, so
+ * the duration between the last and first times changes linearly across
+ * midnight, and a single point gives the same duration all day.
+ *
+ * Durations may only fall as fast as time passes, so that leaving later can
+ * never mean arriving earlier. Searches rely on this to settle each location
+ * once, at its earliest arrival time.
+ *
+ * In a dot file, a function is written as times of day (H:MM or H:MM:SS)
+ * with the duration in seconds from each of them:
+ *     "A" -> "B" [seconds=120, profile="7:50=120 8:00=300 8:10=120"];
+ */
+public class TravelTimeFunction {
+
+    public static final double DAY = 24 * 60 * 60;
+
+    // time of day and duration of each point, in order of time: points[2i]
+    // is the time of point i, and points[2i + 1] is its duration
+    private final double[] points;
+    private final double minimum;
+
+    /**
+     * Creates a function from the duration at each of several times of day.
+     * @param times seconds after midnight of each point, strictly increasing
+     *        and less than DAY
+     * @param durations the duration in seconds at each of those times
+     * @throws IllegalArgumentException if there are no points, if the times
+     *         are out of order or range, if a duration is negative, or if a
+     *         duration falls faster than time passes
+     */
+    public TravelTimeFunction(double[] times, double[] durations) {
+        if (times.length == 0 || times.length != durations.length)
+            throw new IllegalArgumentException("A travel time function needs a duration at each of its times.");
+        points = new double[2 * times.length];
+        double smallest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < times.length; i++) {
+            if (!(times[i] >= 0 && times[i] < DAY) || (i > 0 && times[i] <= times[i - 1]))
+                throw new IllegalArgumentException("Times of day must be increasing and within one day: " +
+                                                   Arrays.toString(times));
+            if (!(durations[i] >= 0 && durations[i] < Double.POSITIVE_INFINITY))
+                throw new IllegalArgumentException("Duration must be non-negative and finite: " + durations[i]);
+            points[2 * i] = times[i];
+            points[2 * i + 1] = durations[i];
+            smallest = Math.min(smallest, durations[i]);
+        }
+        for (int i = 0; i < times.length; i++) {
+            int next = (i + 1) % times.length;
+            double elapsed = next == 0 ? times[0] + DAY - times[i] : times[next] - times[i];
+            if (times.length > 1 && durations[next] - durations[i] < -elapsed)
+                throw new IllegalArgumentException("Leaving at " + formatTime(times[next]) + " would arrive before " +
+                                                   "leaving at " + formatTime(times[i]) + ".");
+        }
+        minimum = smallest;
+    }
+
+    /**
+     * Parses a function written as space separated time=duration points,
+     * such as "7:50=120 8:00=300 8:10=120". The points may be in any order.
+     * @param text the points of the function
+     * @return the function
+     * @throws IllegalArgumentException if text is not a valid function
+     */
+    public static TravelTimeFunction parse(String text) {
+        List<double[]> parsed = new ArrayList<>();
+        for (String point : text.trim().split("\\s+")) {
+            String[] pair = point.split("=");
+            if (pair.length != 2)
+                throw new IllegalArgumentException("Travel time points must be time=seconds, not: " + point);
+            try {
+                parsed.add(new double[] {parseTime(pair[0]), Double.parseDouble(pair[1])});
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Travel time points must be time=seconds, not: " + point);
+            }
+        }
+        parsed.sort((a, b) -> Double.compare(a[0], b[0]));
+        double[] times = new double[parsed.size()];
+        double[] durations = new double[parsed.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = parsed.get(i)[0];
+            durations[i] = parsed.get(i)[1];
+        }
+        return new TravelTimeFunction(times, durations);
+    }
+
+    /**
+     * Parses a time of day written as H:MM or H:MM:SS, or as a number of
+     * seconds after midnight.
+     * @param text the time to parse
+     * @return the seconds after midnight
+     * @throws NumberFormatException if text is not a time
+     */
+    public static double parseTime(String text) {
+        String[] parts = text.trim().split(":");
+        if (parts.length == 1) return Double.parseDouble(parts[0]);
+        if (parts.length > 3) throw new NumberFormatException("Not a time of day: " + text);
+        double seconds = 0;
+        for (int i = 0; i < parts.length; i++) {
+            double part = Double.parseDouble(parts[i]);
+            if (part < 0 || (i > 0 && part >= 60)) throw new NumberFormatException("Not a time of day: " + text);
+            seconds = seconds * 60 + part;
+        }
+        return seconds * (parts.length == 2 ? 60 : 1);
+    }
+
+    /**
+     * Returns the time that it takes to walk the edge when starting at the
+     * provided time. Times beyond the first day repeat the same day.
+     * @param departure seconds after midnight of the first day
+     * @return the duration in seconds
+     */
+    public double travelTime(double departure) {
+        int count = points.length / 2;
+        if (count == 1) return points[1];
+        double time = departure % DAY;
+        if (time < 0) time += DAY;
+
+        //Find the last point at or before this time, if there is one.
+        int low = 0, high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (points[2 * middle] <= time) low = middle + 1;
+            else high = middle;
+        }
+        int before = low - 1;
+        if (before == -1 || before == count - 1) {
+            //Between the last point of one day and the first of the next.
+            double start = points[2 * count - 2];
+            double elapsed = time >= start ? time - start : time + DAY - start;
+            double span = points[0] + DAY - start;
+            return points[2 * count - 1] + (points[1] - points[2 * count - 1]) * elapsed / span;
+        }
+        double start = points[2 * before];
+        double span = points[2 * before + 2] - start;
+        return points[2 * before + 1] + (points[2 * before + 3] - points[2 * before + 1]) * (time - start) / span;
+    }
+
+    /**
+     * Returns the time that it takes to walk the edge when starting at the
+     * provided time, while the edge is slowed down by a factor. The shortest
+     * duration of the day is multiplied by the factor, and the delay beyond
+     * it at this time is added unchanged. Multiplying the whole duration
+     * could make leaving later arrive earlier, where the duration falls.
+     * @param departure seconds after midnight of the first day
+     * @param factor the non-negative factor that the edge is slowed by
+     * @return the duration in seconds
+     */
+    public double travelTime(double departure, double factor) {
+        return travelTime(departure) + (factor - 1) * minimum;
+    }
+
+    /**
+     * Returns the shortest duration at any time of day.
+     */
+    public double getMinimum() {
+        return minimum;
+    }
+
+    /**
+     * Returns the seconds after midnight of each point, in order.
+     */
+    public double[] getTimes() {
+        double[] times = new double[points.length / 2];
+        for (int i = 0; i < times.length; i++) times[i] = points[2 * i];
+        return times;
+    }
+
+    /**
+     * Returns the duration at each point, in the same order as getTimes().
+     */
+    public double[] getDurations() {
+        double[] durations = new double[points.length / 2];
+        for (int i = 0; i < durations.length; i++) durations[i] = points[2 * i + 1];
+        return durations;
+    }
+
+    // writes seconds after midnight as H:MM:SS
+    private static String formatTime(double seconds) {
+        long whole = (long) seconds;
+        return String.format("%d:%02d:%02d", whole / 3600, whole / 60 % 60, whole % 60);
+    }
+
+    /**
+     * Returns this function in the form that parse() reads.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < points.length; i += 2) {
+            if (i > 0) sb.append(' ');
+            //Times that are not whole seconds are written as plain seconds.
+            if (points[i] == Math.floor(points[i])) sb.append(formatTime(points[i]));
+            else sb.append(points[i]);
+            sb.append('=').append(points[i + 1]);
+        }
+        return sb.toString();
+    }
+}
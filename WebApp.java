@@ -5,12 +5,23 @@ import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.File;
-import java.util.Scanner;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
 /**
@@ -26,13 +37,51 @@ import java.util.stream.Stream;
  *     compile WebApp in that location
  *     there is no need to run your sever, the provided index.cgi handles this 
  * Then visit through browser via https://cs400-web.cs.wisc.edu/CS_LOGIN/
+ *
+ * Settings for how the server executes requests may follow the port number
+ * as key=value arguments, see ServerConfig for the available settings:
+ *     java WebApp 8080 executor=pool threads=16 maxConcurrency=64
+ *
+ * With watch=SECONDS, the map file is checked that often and, once it has
+ * been modified, applied to the running server as an update (see updateMap).
  */
 public class WebApp {
+
+    // location of the map and page template loaded by this server
+    private static final String GRAPH_FILE = ServerConfig.DEFAULT_MAP;
+    private static final String TEMPLATE_FILE = ServerConfig.DEFAULT_TEMPLATE;
+    private static final String RESPONSE_SLOT = "<!-- RESPONSE GOES HERE -->";
+    private static final String PROMPTS_SLOT = "<!-- PROMPTS GO HERE -->";
+
+    // most distinct pages that are kept rendered in memory
+    private static final int PAGE_CACHE_SIZE = 4096;
+
+    // used in place of the template file when it cannot be found
+    private static final String FALLBACK_TEMPLATE = "<!DOCTYPE html>\n<html><head>" +
+	"<title>Campus Navigator</title></head><body>\n" + RESPONSE_SLOT +
+	"\n<form>" + PROMPTS_SLOT + "</form>\n</body></html>\n";
+
+    // frontend (along with its backend and graph), template, and prompts
+    // shared by every request thread: these are loaded once before the server
+    // starts, after which only the backend's graph changes, through updates
+    // that the backend makes while no query is reading it (see updateMap)
+    private static volatile BackendInterface sharedBackend = null;
+    private static volatile FrontendInterface sharedFrontend = null;
+    private static volatile HtmlTemplate sharedTemplate = null;
+    private static volatile byte[] sharedPrompts = null;
+
+    // pages that have already been rendered, keyed by the query they answer,
+    // until an update to the graph may have changed them
+    private static final PageCache pageCache = new PageCache(PAGE_CACHE_SIZE);
+
+    // latencies, response counts, and search work served from /metrics
+    private static final Metrics metrics = new Metrics();
+
     public static void main(String[] args) throws IOException {
 	// expects the port number as a command line argument to this program
 	// or if a non-numeric argument is passed treat this like the query
 	// part of a requst URI and display response through standard out
-	if(args.length != 1) {
+	if(args.length < 1) {
 	    throw new IllegalArgumentException("You must pass a command line" +
 					       " argument representing the port that this servers should be" +
 					       " bound to when running this program.  Or a Query string.");
@@ -47,14 +96,162 @@ public class WebApp {
 	    handleSingleResponse(args[0]);
 	    return;
 	}
+	// any remaining arguments configure how requests are executed
+	String[] settings = new String[args.length - 1];
+	System.arraycopy(args, 1, settings, 0, settings.length);
+	ServerConfig config = ServerConfig.fromArgs(settings);
 				
-	// configure and start server on this port, responding in this way
+	launch(portNumber, config);
+    }
+
+    // loads the map and template named by config, then starts a server on
+    // this port that answers queries from them
+    public static HttpServer launch(int portNumber, ServerConfig config) throws IOException {
+	// load graph and template once, before any request can be handled
+	GraphADT<String,Double> graph = config.createGraph();
+	loadSharedState(config.getMap(), config.getTemplate(), graph);
+	if(config.getArcFlags() > 0) {
+	    long startTime = System.nanoTime();
+	    ArcFlags flags = ((DijkstraGraph<String,Double>) graph).buildArcFlags(
+		config.getArcFlags(), Runtime.getRuntime().availableProcessors());
+	    System.out.println("Computed arc flags for " + flags.getRegionCount() + " regions from " +
+			       flags.getBoundaryCount() + " boundary locations in " +
+			       (System.nanoTime() - startTime) / 1000000 + " ms");
+	}
+
+	if(config.getWatch() > 0)
+	    watchMap(config.getMap(), config.getWatch());
+
+	System.out.println("Starting Campus Navigator Server with " + config + "...");
+	return startServer(portNumber, config);
+    }
+
+    // applies a new version of the map, or a patch to it, to the graph that
+    // the running server answers queries from, then drops the rendered pages
+    // that the changes may have made stale
+    static GraphDelta updateMap(String filename) throws IOException {
+	GraphDelta delta = sharedBackend.updateGraphData(filename);
+	invalidatePages(delta);
+	return delta;
+    }
+
+    // drops the rendered pages that a change to the graph may have changed,
+    // which show shortest paths found by their weights: when no weight
+    // changed, none did; when no path got shorter, only pages that show an
+    // affected location did, along with furthest destination pages (which
+    // depend on the paths to every location); otherwise, a new or cheaper
+    // path anywhere may change any page
+    static void invalidatePages(GraphDelta delta) {
+	if(!delta.changesWeights())
+	    return;
+	if(!delta.shortensNoPaths()) {
+	    pageCache.clear();
+	    return;
+	}
+	// locations appear on pages as escaped html text
+	List<byte[]> names = new ArrayList<>();
+	for(String location : delta.getAffectedNodes()) {
+	    ByteArrayOutputStream name = new ByteArrayOutputStream();
+	    try {
+		HtmlWriter out = HtmlWriter.acquire(name);
+		out.text(location);
+		out.release();
+	    } catch(IOException e) {
+		throw new UncheckedIOException(e); // never thrown when writing to memory
+	    }
+	    names.add(name.toByteArray());
+	}
+	pageCache.invalidate((key, page) -> {
+	    if(key.startsWith("from=")) return true;
+	    for(byte[] name : names)
+		if(contains(page.body, name)) return true;
+	    return false;
+	});
+    }
+
+    // checks whether bytes appear, in order, anywhere in body
+    private static boolean contains(byte[] body, byte[] bytes) {
+	for(int i = 0; i + bytes.length <= body.length; i++) {
+	    int j = 0;
+	    while(j < bytes.length && body[i + j] == bytes[j]) j++;
+	    if(j == bytes.length) return true;
+	}
+	return false;
+    }
+
+    // checks the map file every so many seconds on a daemon thread, and
+    // applies it as an update whenever it has been modified since
+    private static void watchMap(String graphFile, int seconds) {
+	ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(task -> {
+		Thread thread = new Thread(task, "map-watcher");
+		thread.setDaemon(true);
+		return thread;
+	    });
+	Path path = Path.of(graphFile);
+	FileTime[] loaded = { lastModified(path) };
+	watcher.scheduleWithFixedDelay(() -> {
+		FileTime modified = lastModified(path);
+		if(modified == null || modified.equals(loaded[0])) return;
+		loaded[0] = modified;
+		try {
+		    long startTime = System.nanoTime();
+		    GraphDelta delta = updateMap(graphFile);
+		    System.out.println("Updated " + graphFile + " (" + delta + ") in " +
+				       (System.nanoTime() - startTime) / 1000000 + " ms");
+		} catch(IOException | RuntimeException e) {
+		    // keep serving the map as it was, and try again once the file changes
+		    System.out.println("Could not update " + graphFile + ": " + e);
+		}
+	    }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    // returns when a file was last modified, or null when it cannot be read
+    private static FileTime lastModified(Path path) {
+	try {
+	    return Files.getLastModifiedTime(path);
+	} catch(IOException e) {
+	    return null;
+	}
+    }
+
+    // configures and starts a server on this port, responding in this way
+    public static HttpServer startServer(int portNumber, ServerConfig config) throws IOException {
+	config.applyKeepAlive();
 	InetSocketAddress address = new InetSocketAddress(portNumber);
-	HttpServer server = HttpServer.create(address,8);
+	HttpServer server = HttpServer.create(address,config.getBacklog());
+	ExecutorService executor = config.createExecutor();
+	server.setExecutor(executor);
+	UnaryOperator<HttpHandler> limiter = concurrencyLimiter(config.getMaxConcurrency());
+	// flight recordings include time spent waiting on the limiter
+	UnaryOperator<HttpHandler> wrapper =
+	    handler -> GraphEvents.recorded(limiter.apply(metrics.timed(handler)));
 	HttpContext context = server.createContext("/");
-	context.setHandler( WebApp::requestHandler );
-	System.out.println("Starting Campus Navigator Server...");
+	context.setHandler( wrapper.apply(WebApp::requestHandler) );
+	// json endpoints for programmatic clients share the same limit
+	// batch requests search on up to threads threads of the same executor
+	new JsonApi(sharedBackend, executor, config.getThreads()).register(server,wrapper);
+	// metrics stay reachable even while the server is saturated
+	server.createContext("/metrics", metrics::handle);
 	server.start();
+	return server;
+    }
+
+    // wraps handlers so that at most maxConcurrency requests (across all of
+    // them) run at once, and any beyond that are turned away with 503 rather
+    // than queued
+    private static UnaryOperator<HttpHandler> concurrencyLimiter(int maxConcurrency) {
+	if(maxConcurrency <= 0) return handler -> handler;
+	Semaphore permits = new Semaphore(maxConcurrency);
+	return handler -> exchange -> {
+	    if(!permits.tryAcquire()) {
+		exchange.getResponseHeaders().set("Retry-After","1");
+		exchange.sendResponseHeaders(503,-1);
+		exchange.close();
+		return;
+	    }
+	    try { handler.handle(exchange); }
+	    finally { permits.release(); }
+	};
     }
 
     // http request handler handler for the context "/"
@@ -68,17 +265,37 @@ public class WebApp {
 							  exchange.getRequestURI().getQuery());
 	    System.out.println("Query includes args: "+keyValuePairs);
 	    
-	    // create backend and frontend objects to respond to this request
-	    FrontendInterface frontend = createWorkingFrontend("./campus.dot");
-	    // compute answer to user's requested problem based on query args:
-	    String response = generateResponseHTML(keyValuePairs,frontend);
-	    // generate HTML prompts for user for make next requests
-	    String prompts = generatePromptHTML(frontend);
-	    // compose response and prompts into a complete html template
-	    String html = composeHTML(response,prompts);
-		
-	    // complete exchange response to send this html back to requester
-	    byte[] bytes = html.getBytes();
+	    // find this query's page, rendering it only the first time that
+	    // the query is made, or the first time since an update to the graph
+	    // may have changed it
+	    PageCache.Page page = pageCache.get(cacheKey(keyValuePairs),
+						() -> renderPage(keyValuePairs));
+
+	    // let the client revalidate its copy of the page through the ETag,
+	    // which is weak since the same tag is sent for gzip and plain bodies
+	    exchange.getResponseHeaders().set("Content-Type","text/html; charset=utf-8");
+	    exchange.getResponseHeaders().set("ETag","W/" + page.etag);
+	    exchange.getResponseHeaders().set("Cache-Control","no-cache");
+	    exchange.getResponseHeaders().set("Vary","Accept-Encoding");
+	    if(page.matches(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+		exchange.sendResponseHeaders(304,-1);
+		exchange.close();
+		return;
+	    }
+
+	    // complete exchange response to send this html back to requester,
+	    // compressed when the client accepts gzip
+	    byte[] bytes = page.body;
+	    String encodings = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+	    if(encodings != null && encodings.contains("gzip")) {
+		bytes = page.gzipped();
+		exchange.getResponseHeaders().set("Content-Encoding","gzip");
+	    }
+	    if(exchange.getRequestMethod().equals("HEAD")) {
+		exchange.sendResponseHeaders(200,-1);
+		exchange.close();
+		return;
+	    }
 	    exchange.sendResponseHeaders(200,bytes.length);
 	    OutputStream out = exchange.getResponseBody();
 	    out.write(bytes);
@@ -95,7 +312,7 @@ public class WebApp {
     }
 
     // reads key value pairs from the query string of a URI into a map
-    private static Map<String,String> parseQuery(String query) {
+    static Map<String,String> parseQuery(String query) {
 	HashMap<String,String> map = new HashMap<>();
 	if(query != null && query.contains("="))
 	    Stream.of(query.split("&")).forEach(arg -> {
@@ -109,33 +326,90 @@ public class WebApp {
 	return map;
     }
 
-    // creates a working Frontend, Backend, DijkstraGraph, and HashtableMap
-    private static FrontendInterface createWorkingFrontend(String filename) throws IOException {
+    // identifies the page for a query by the arguments that affect its response;
+    // start is prefixed by its length, so that no start and end that contain
+    // the separator can give the same key as another pair
+    private static String cacheKey(Map<String,String> keyValuePairs) {
+	if(keyValuePairs.containsKey("start") && keyValuePairs.containsKey("end")) {
+	    String start = keyValuePairs.get("start");
+	    return "start=" + start.length() + ":" + start + "&end=" + keyValuePairs.get("end");
+	}
+	else if(keyValuePairs.containsKey("from"))
+	    return "from=" + keyValuePairs.get("from");
+	return "";
+    }
+
+    // loads the graph and html template that every request thread shares,
+    // reading the graph file into the provided empty graph
+    private static void loadSharedState(String graphFile, String templateFile,
+					GraphADT<String,Double> graph) throws IOException {
+	long startTime = System.nanoTime();
+	BackendInterface backend = new Backend(graph);
+	backend.loadGraphData(graphFile);
+	metrics.setGraph(graph, System.nanoTime() - startTime);
+	FrontendInterface frontend = new Frontend(backend);
+	HtmlTemplate template = readTemplate(templateFile);
+	sharedPrompts = generatePromptHTML(frontend).getBytes(StandardCharsets.UTF_8);
+	sharedTemplate = template;
+	sharedBackend = backend;
+	sharedFrontend = frontend;
+	// changes made straight through a durable graph do not pass through
+	// updateMap, so it reports them itself once the map is loaded
+	if(graph instanceof DurableGraph)
+	    ((DurableGraph) graph).setChangeListener(WebApp::invalidatePages);
+	System.out.println("Loaded " + graphFile + " and " + templateFile + " in " +
+			   (System.nanoTime() - startTime) / 1000000 + " ms");
+    }
+
+    // creates a working Backend, DijkstraGraph, and HashtableMap
+    private static BackendInterface createWorkingBackend(String filename) throws IOException {
 	GraphADT<String,Double> graph = new DijkstraGraph<>();
 	BackendInterface backend = new Backend(graph);
 	backend.loadGraphData(filename);			
-	FrontendInterface frontend = new Frontend(backend);
+	return backend;
+    }
+
+    // creates a working Frontend, Backend, DijkstraGraph, and HashtableMap
+    private static FrontendInterface createWorkingFrontend(String filename) throws IOException {
+	FrontendInterface frontend = new Frontend(createWorkingBackend(filename));
 	return frontend;
     }
 
-    // creates the html response for the kind of question requeted (if any)
-    private static String generateResponseHTML(Map<String,String> keyValuePairs, FrontendInterface frontend) {
+    // renders the complete page for a query: the response is written by the
+    // frontend straight into the page's buffer, between the template's static
+    // segments, rather than being built as a String and then copied in
+    private static byte[] renderPage(Map<String,String> keyValuePairs) {
+	ByteArrayOutputStream page = new ByteArrayOutputStream(8192);
+	try {
+	    HtmlWriter out = HtmlWriter.acquire(page);
+	    try {
+		sharedTemplate.render(out,
+				      response -> writeResponseHTML(keyValuePairs,sharedFrontend,response),
+				      prompts -> prompts.bytes(sharedPrompts));
+	    } finally {
+		out.release();
+	    }
+	} catch(IOException e) {
+	    throw new UncheckedIOException(e); // never thrown when writing to memory
+	}
+	return page.toByteArray();
+    }
+
+    // writes the html response for the kind of question requeted (if any)
+    private static void writeResponseHTML(Map<String,String> keyValuePairs, FrontendInterface frontend,
+					  HtmlWriter out) throws IOException {
 	// compute response for shortest path request
-	String response = "<div id=\"response\">";
+	out.markup("<div id=\"response\">");
 	if(keyValuePairs.containsKey("start") &&
 	   keyValuePairs.containsKey("end")) {
-	    response += frontend.generateShortestPathResponseHTML(
-								  keyValuePairs.get("start"),
-								  keyValuePairs.get("end")) + "</div>";
+	    frontend.writeShortestPathResponseHTML(keyValuePairs.get("start"),
+						   keyValuePairs.get("end"), out);
 	    // compute response for other request
 	} else if(keyValuePairs.containsKey("from")) {
-	    response += frontend.generateFurthestDestinationFromResponseHTML(
-									     keyValuePairs.get("from")) + "</div>";
-	    // otherwise, leave response div blank 
-	} else
-	    response += "</div>";
-
-	return response;
+	    frontend.writeFurthestDestinationFromResponseHTML(keyValuePairs.get("from"), out);
+	}
+	// otherwise, leave response div blank
+	out.markup("</div>");
     }
 
     // generate separate div sections with a prompt for each kind of request
@@ -147,18 +421,20 @@ public class WebApp {
 	return firstPrompt + secondPrompt;
     }
 
-    // compose reponse with prompts inside a complete html tree
-    private static String composeHTML(String response, String prompts) throws IOException {
-	// read contents of template file into html string
-	String html = "";
-	Scanner in = new Scanner(new File("template.html"));
-	while(in.hasNextLine()) html += in.nextLine() + "\n";
+    // reads the html template file and splits it around its placeholders for
+    // the response and prompts
+    private static HtmlTemplate readTemplate(String filename) throws IOException {
+	String html = FALLBACK_TEMPLATE;
+	if(Files.exists(Path.of(filename)))
+	    html = Files.readString(Path.of(filename), StandardCharsets.UTF_8);
+	else
+	    System.out.println("Template " + filename + " not found, using a plain page instead.");
+	return new HtmlTemplate(html,RESPONSE_SLOT,PROMPTS_SLOT);
+    }
 
-	// replace placeholders for response and prompts
-	html = html.replaceFirst("<!-- RESPONSE GOES HERE -->",response);
-	html = html.replaceFirst("<!-- PROMPTS GO HERE -->",prompts);
-	
-	return html;
+    // the backend that the running server answers queries with
+    static BackendInterface getSharedBackend() {
+	return sharedBackend;
     }
 
     // Since we cannot run a public webserver on the department's linux
@@ -170,15 +446,20 @@ public class WebApp {
 	    Map<String,String> keyValuePairs = parseQuery(query);
 	    
 	    // create backend and frontend objects to respond to this request
-	    FrontendInterface frontend = createWorkingFrontend("./campus.dot");
-	    // compute answer to user's requested problem based on query args:
-	    String response = generateResponseHTML(keyValuePairs,frontend);
+	    FrontendInterface frontend = createWorkingFrontend(GRAPH_FILE);
 	    // generate HTML prompts for user for make next requests
 	    String prompts = generatePromptHTML(frontend);
-	    // compose response and prompts into a complete html template
-	    String html = composeHTML(response,prompts);
-		
-	    System.out.println(html);
+	    // compose the answer to user's requested problem and prompts into a
+	    // complete html template, streamed straight to standard out
+	    HtmlWriter out = HtmlWriter.acquire(System.out);
+	    try {
+		readTemplate(TEMPLATE_FILE).render(out,
+		    response -> writeResponseHTML(keyValuePairs,frontend,response),
+		    prompt -> prompt.markup(prompts));
+	    } finally {
+		out.release();
+	    }
+	    System.out.println();
 						
 	    // unless something goes wrong, in which case report problem
 	} catch (Exception e) {